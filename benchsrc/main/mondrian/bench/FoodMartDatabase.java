@@ -0,0 +1,158 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.bench;
+
+import mondrian.olap.*;
+import mondrian.olap.Connection;
+import mondrian.olap.DriverManager;
+import mondrian.rolap.RolapConnection;
+import mondrian.server.Locus;
+import mondrian.test.loader.MondrianFoodMartLoader;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Embedded, in-memory FoodMart database for benchmarks.
+ *
+ * <p>The first call to {@link #connect()} in a JVM loads the FoodMart data
+ * set into an in-memory HSQLDB database, using
+ * {@link MondrianFoodMartLoader}. Loading takes a while, so benchmarks
+ * should connect in a {@code @Setup(Level.Trial)} method; JMH does not
+ * include setup time in its measurements.</p>
+ *
+ * <p>The data set is read from {@code demo/FoodMartCreateData.zip}, or from
+ * the file named by the {@code mondrian.bench.foodmart.dataFile} system
+ * property. The schema is read from {@code demo/FoodMart.xml}, or from the
+ * URL in the {@code mondrian.bench.foodmart.catalogURL} system property.</p>
+ */
+public class FoodMartDatabase {
+    private static final String DRIVER = "org.hsqldb.jdbcDriver";
+    private static final String JDBC_URL = "jdbc:hsqldb:mem:foodmart";
+    private static final String JDBC_USER = "sa";
+
+    private static boolean loaded;
+
+    private FoodMartDatabase() {
+    }
+
+    /**
+     * Returns a mondrian connect string to the FoodMart database, loading
+     * the database if it has not been loaded already.
+     *
+     * @return Connect string
+     */
+    public static synchronized String getConnectString() {
+        if (!loaded) {
+            load();
+            loaded = true;
+        }
+        final Util.PropertyList list = new Util.PropertyList();
+        list.put("Provider", "mondrian");
+        list.put("Jdbc", JDBC_URL);
+        list.put("JdbcUser", JDBC_USER);
+        list.put("JdbcPassword", "");
+        list.put("JdbcDrivers", DRIVER);
+        list.put(
+            "Catalog",
+            System.getProperty(
+                "mondrian.bench.foodmart.catalogURL",
+                "file:demo/FoodMart.xml"));
+        return list.toString();
+    }
+
+    /**
+     * Creates a connection to the FoodMart schema.
+     *
+     * @return Connection
+     */
+    public static Connection connect() {
+        return DriverManager.getConnection(getConnectString(), null);
+    }
+
+    /**
+     * Returns the members of a level of the FoodMart "Sales" cube.
+     *
+     * @param connection Connection
+     * @param levelName Unique name of level, e.g. "[Store].[Store City]"
+     * @return List of members
+     */
+    public static List<Member> getLevelMembers(
+        final Connection connection,
+        final String levelName)
+    {
+        return Locus.execute(
+            (RolapConnection) connection,
+            "FoodMartDatabase.getLevelMembers",
+            new Locus.Action<List<Member>>() {
+                public List<Member> execute() {
+                    final SchemaReader schemaReader =
+                        connection.getSchemaReader();
+                    final Cube cube =
+                        connection.getSchema().lookupCube("Sales", true);
+                    final Level level =
+                        (Level) Util.lookupCompound(
+                            schemaReader,
+                            cube,
+                            Util.parseIdentifier(levelName),
+                            true,
+                            Category.Level);
+                    return schemaReader.getLevelMembers(level, false);
+                }
+            });
+    }
+
+    private static void load() {
+        final String dataFile =
+            System.getProperty(
+                "mondrian.bench.foodmart.dataFile",
+                "demo/FoodMartCreateData.zip");
+        MondrianFoodMartLoader.main(
+            new String[] {
+                "-tables",
+                "-data",
+                "-indexes",
+                "-jdbcDrivers=" + DRIVER,
+                "-inputFile=" + dataFile,
+                "-outputJdbcURL=" + JDBC_URL,
+                "-outputJdbcUser=" + JDBC_USER,
+                "-outputJdbcPassword=",
+            });
+
+        // The loader logs errors rather than throwing them. Make sure that
+        // the fact table arrived.
+        try {
+            final java.sql.Connection connection =
+                java.sql.DriverManager.getConnection(JDBC_URL, JDBC_USER, "");
+            try {
+                final Statement statement = connection.createStatement();
+                final ResultSet resultSet =
+                    statement.executeQuery(
+                        "select count(*) from \"sales_fact_1997\"");
+                resultSet.next();
+                if (resultSet.getInt(1) == 0) {
+                    throw Util.newError(
+                        "FoodMart fact table is empty; check " + dataFile);
+                }
+                resultSet.close();
+                statement.close();
+            } finally {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            throw Util.newError(
+                e, "Error while loading FoodMart from " + dataFile);
+        }
+    }
+}
+
+// End FoodMartDatabase.java
@@ -0,0 +1,98 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.calc.impl;
+
+import mondrian.bench.FoodMartDatabase;
+import mondrian.calc.TupleCursor;
+import mondrian.olap.Connection;
+import mondrian.olap.Member;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for populating and iterating over an {@link ArrayTupleList}.
+ *
+ * <p>The list contains the cross product of FoodMart's store cities and
+ * product brands, a few thousand tuples of arity 2.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ArrayTupleListBenchmark {
+    private Connection connection;
+    private List<Member> cities;
+    private List<Member> brands;
+    private ArrayTupleList list;
+
+    @Setup
+    public void setUp() {
+        connection = FoodMartDatabase.connect();
+        cities =
+            FoodMartDatabase.getLevelMembers(
+                connection, "[Store].[Store City]");
+        brands =
+            FoodMartDatabase.getLevelMembers(
+                connection, "[Product].[Brand Name]");
+        list = populate();
+    }
+
+    @TearDown
+    public void tearDown() {
+        connection.close();
+    }
+
+    @Benchmark
+    public ArrayTupleList populate() {
+        final ArrayTupleList list =
+            new ArrayTupleList(2, cities.size() * brands.size());
+        for (Member city : cities) {
+            for (Member brand : brands) {
+                list.addTuple(city, brand);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Iterates using {@link java.util.Iterator}, which creates a list for
+     * each tuple.
+     */
+    @Benchmark
+    public void iterate(Blackhole blackhole) {
+        for (List<Member> tuple : list) {
+            blackhole.consume(tuple.get(1));
+        }
+    }
+
+    /**
+     * Iterates using {@link TupleCursor}, which does not create a list for
+     * each tuple.
+     */
+    @Benchmark
+    public void cursor(Blackhole blackhole) {
+        final TupleCursor cursor = list.tupleCursor();
+        while (cursor.forward()) {
+            blackhole.consume(cursor.member(1));
+        }
+    }
+
+    @Benchmark
+    public void slice(Blackhole blackhole) {
+        for (Member member : list.slice(1)) {
+            blackhole.consume(member);
+        }
+    }
+}
+
+// End ArrayTupleListBenchmark.java
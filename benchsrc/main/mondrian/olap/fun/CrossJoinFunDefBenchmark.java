@@ -0,0 +1,88 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.olap.fun;
+
+import mondrian.bench.FoodMartDatabase;
+import mondrian.calc.TupleList;
+import mondrian.calc.impl.UnaryTupleList;
+import mondrian.olap.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for {@link CrossJoinFunDef}, both the tuple-list kernel and
+ * the evaluation of a query that uses it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CrossJoinFunDefBenchmark {
+    private static final String QUERY =
+        "select NON EMPTY CrossJoin(\n"
+        + "  [Store].[Store City].Members,\n"
+        + "  [Product].[Brand Name].Members) on 0\n"
+        + "from [Sales]\n"
+        + "where [Time].[1997].[Q1]";
+
+    private Connection connection;
+    private TupleList cities;
+    private TupleList brands;
+    private TupleList genders;
+
+    @Setup
+    public void setUp() {
+        connection = FoodMartDatabase.connect();
+        cities =
+            new UnaryTupleList(
+                FoodMartDatabase.getLevelMembers(
+                    connection, "[Store].[Store City]"));
+        brands =
+            new UnaryTupleList(
+                FoodMartDatabase.getLevelMembers(
+                    connection, "[Product].[Brand Name]"));
+        genders =
+            new UnaryTupleList(
+                FoodMartDatabase.getLevelMembers(
+                    connection, "[Gender].[Gender]"));
+
+        // Populate the cell cache, so that the benchmark measures
+        // evaluation, not SQL.
+        executeQuery();
+    }
+
+    @TearDown
+    public void tearDown() {
+        connection.close();
+    }
+
+    @Benchmark
+    public TupleList crossJoin2() {
+        return CrossJoinFunDef.mutableCrossJoin(cities, brands);
+    }
+
+    @Benchmark
+    public TupleList crossJoin3() {
+        return CrossJoinFunDef.mutableCrossJoin(
+            Arrays.asList(cities, brands, genders));
+    }
+
+    /**
+     * Executes a query with a non-empty cross join, against a warm cache.
+     */
+    @Benchmark
+    public Result executeQuery() {
+        return connection.execute(connection.parseQuery(QUERY));
+    }
+}
+
+// End CrossJoinFunDefBenchmark.java
@@ -0,0 +1,76 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.parser;
+
+import mondrian.bench.FoodMartDatabase;
+import mondrian.olap.Connection;
+import mondrian.olap.Query;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for parsing and validating MDX queries against the FoodMart
+ * schema.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MdxParserBenchmark {
+    private static final String SIMPLE_QUERY =
+        "select {[Measures].[Unit Sales]} on 0,\n"
+        + " {[Gender].Members} on 1\n"
+        + "from [Sales]";
+
+    private static final String COMPLEX_QUERY =
+        "with member [Measures].[Profit Growth] as\n"
+        + "  '([Measures].[Store Sales] - [Measures].[Store Cost])\n"
+        + "   / ([Measures].[Store Sales], [Time].PrevMember)',\n"
+        + "  format_string = '0.0%'\n"
+        + " set [Top Cities] as\n"
+        + "  'TopCount([Store].[Store City].Members, 10,\n"
+        + "      [Measures].[Unit Sales])'\n"
+        + "select {[Measures].[Unit Sales], [Measures].[Profit Growth]}"
+        + " on 0,\n"
+        + " NON EMPTY Filter(\n"
+        + "  CrossJoin([Top Cities],\n"
+        + "    Descendants([Product].[Drink], [Product].[Brand Name])),\n"
+        + "  [Measures].[Unit Sales] > 100\n"
+        + "    and [Product].CurrentMember.Name <> 'Good') on 1\n"
+        + "from [Sales]\n"
+        + "where ([Time].[1997].[Q2], [Customers].[USA])";
+
+    @Param({"simple", "complex"})
+    public String queryName;
+
+    private Connection connection;
+    private String query;
+
+    @Setup
+    public void setUp() {
+        connection = FoodMartDatabase.connect();
+        query = queryName.equals("simple") ? SIMPLE_QUERY : COMPLEX_QUERY;
+        // Load the members that the query references.
+        parse();
+    }
+
+    @TearDown
+    public void tearDown() {
+        connection.close();
+    }
+
+    @Benchmark
+    public Query parse() {
+        return connection.parseQuery(query);
+    }
+}
+
+// End MdxParserBenchmark.java
@@ -0,0 +1,92 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for {@link BitKey} operations.
+ *
+ * <p>The {@code size} parameter selects the implementation: 64 bits is a
+ * {@code BitKey.Small}, 128 bits is a {@code BitKey.Mid128}, and 300 bits is
+ * a {@code BitKey.Big}.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BitKeyBenchmark {
+    @Param({"64", "128", "300"})
+    public int size;
+
+    private BitKey key1;
+    private BitKey key2;
+    private BitKey superKey;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(0);
+        key1 = BitKey.Factory.makeBitKey(size);
+        key2 = BitKey.Factory.makeBitKey(size);
+        for (int i = 0; i < size; i++) {
+            if (random.nextInt(4) == 0) {
+                key1.set(i);
+            }
+            if (random.nextInt(4) == 0) {
+                key2.set(i);
+            }
+        }
+        superKey = key1.or(key2);
+    }
+
+    @Benchmark
+    public BitKey or() {
+        return key1.or(key2);
+    }
+
+    @Benchmark
+    public BitKey and() {
+        return key1.and(key2);
+    }
+
+    @Benchmark
+    public boolean isSuperSetOf() {
+        return superKey.isSuperSetOf(key1);
+    }
+
+    @Benchmark
+    public boolean equalsCopy() {
+        return key1.equals(key1.copy());
+    }
+
+    @Benchmark
+    public int hashCodeBitKey() {
+        return key1.hashCode();
+    }
+
+    @Benchmark
+    public int cardinality() {
+        return superKey.cardinality();
+    }
+
+    @Benchmark
+    public void iterate(Blackhole blackhole) {
+        for (int i = superKey.nextSetBit(0); i >= 0;
+            i = superKey.nextSetBit(i + 1))
+        {
+            blackhole.consume(i);
+        }
+    }
+}
+
+// End BitKeyBenchmark.java
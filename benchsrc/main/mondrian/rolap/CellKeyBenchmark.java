@@ -0,0 +1,77 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for {@link CellKey.Generator} and for the use of cell keys as
+ * hash keys, as in the cell cache of a segment.
+ *
+ * <p>The {@code arity} parameter selects the implementation: arities 1 to 4
+ * have dedicated classes, and higher arities use {@code CellKey.Many}.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CellKeyBenchmark {
+    private static final int KEY_COUNT = 10000;
+
+    @Param({"1", "3", "6"})
+    public int arity;
+
+    private int[][] ordinals;
+    private Map<CellKey, Integer> map;
+    private int i;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(0);
+        ordinals = new int[KEY_COUNT][];
+        map = new HashMap<CellKey, Integer>();
+        for (int k = 0; k < KEY_COUNT; k++) {
+            ordinals[k] = new int[arity];
+            for (int j = 0; j < arity; j++) {
+                ordinals[k][j] = random.nextInt(100);
+            }
+            map.put(CellKey.Generator.newCellKey(ordinals[k]), k);
+        }
+    }
+
+    private int[] nextOrdinals() {
+        if (++i == KEY_COUNT) {
+            i = 0;
+        }
+        return ordinals[i];
+    }
+
+    @Benchmark
+    public CellKey newCellKey() {
+        return CellKey.Generator.newCellKey(nextOrdinals());
+    }
+
+    @Benchmark
+    public CellKey newCellKeyAndSet() {
+        final int[] pos = nextOrdinals();
+        final CellKey key = CellKey.Generator.newCellKey(arity);
+        key.setOrdinals(pos);
+        return key;
+    }
+
+    @Benchmark
+    public Integer lookup() {
+        return map.get(CellKey.Generator.newCellKey(nextOrdinals()));
+    }
+}
+
+// End CellKeyBenchmark.java
@@ -0,0 +1,98 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap;
+
+import mondrian.bench.FoodMartDatabase;
+import mondrian.olap.*;
+import mondrian.server.*;
+import mondrian.server.Statement;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for changing and restoring the context of a
+ * {@link RolapEvaluator}, against the FoodMart "Sales" cube.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RolapEvaluatorBenchmark {
+    private static final String[] MEMBER_NAMES = {
+        "[Gender].[F]",
+        "[Marital Status].[S]",
+        "[Time].[1997].[Q3]",
+        "[Store].[USA].[CA].[San Francisco]",
+        "[Product].[Drink].[Beverages]",
+    };
+
+    private Connection connection;
+    private Locus locus;
+    private RolapEvaluator evaluator;
+    private Member[] members;
+
+    @Setup
+    public void setUp() {
+        connection = FoodMartDatabase.connect();
+        final Query query = connection.parseQuery("select from [Sales]");
+        final Statement statement = query.getStatement();
+        statement.setQuery(query);
+        final Execution execution = new Execution(statement, 0);
+        locus = new Locus(execution, "RolapEvaluatorBenchmark", null);
+        Locus.push(locus);
+        evaluator = new RolapEvaluator(new RolapEvaluatorRoot(execution));
+        final SchemaReader schemaReader = query.getSchemaReader(true);
+        members = new Member[MEMBER_NAMES.length];
+        for (int i = 0; i < MEMBER_NAMES.length; i++) {
+            members[i] =
+                schemaReader.getMemberByUniqueName(
+                    Util.parseIdentifier(MEMBER_NAMES[i]), true);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        Locus.pop(locus);
+        connection.close();
+    }
+
+    /**
+     * Sets one member and restores, as a function such as Filter does for
+     * each member of its set.
+     */
+    @Benchmark
+    public void setContextRestore() {
+        final int savepoint = evaluator.savepoint();
+        evaluator.setContext(members[0]);
+        evaluator.restore(savepoint);
+    }
+
+    /**
+     * Sets several members and restores, as a function such as Filter does
+     * for each tuple of its set.
+     */
+    @Benchmark
+    public void setContextArrayRestore() {
+        final int savepoint = evaluator.savepoint();
+        evaluator.setContext(members);
+        evaluator.restore(savepoint);
+    }
+
+    /**
+     * Creates a child evaluator with several members in its context.
+     */
+    @Benchmark
+    public RolapEvaluator push() {
+        return evaluator.push(members);
+    }
+}
+
+// End RolapEvaluatorBenchmark.java
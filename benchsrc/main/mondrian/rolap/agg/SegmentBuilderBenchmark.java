@@ -0,0 +1,114 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap.agg;
+
+import mondrian.rolap.BitKey;
+import mondrian.rolap.RolapAggregator;
+import mondrian.spi.*;
+import mondrian.util.ByteString;
+import mondrian.util.Pair;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for {@link SegmentBuilder#rollup}.
+ *
+ * <p>Rolls up a dense three-dimensional segment, with 20 &times; 50 &times;
+ * {@code width} cells, to two dimensions. If {@code segmentCount} is greater
+ * than 1, the source is split into that many segments along the first
+ * axis, as happens when segments were loaded for different years.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SegmentBuilderBenchmark {
+    private static final int[] AXIS_SIZES = {20, 50};
+
+    @Param({"10", "100"})
+    public int width;
+
+    @Param({"1", "4"})
+    public int segmentCount;
+
+    private Map<SegmentHeader, SegmentBody> map;
+    private Set<String> keepColumns;
+    private BitKey targetBitKey;
+
+    @Setup
+    public void setUp() {
+        final int[] sizes = {AXIS_SIZES[0], AXIS_SIZES[1], width};
+        final BitKey bitKey = BitKey.Factory.makeBitKey(sizes.length);
+        for (int c = 0; c < sizes.length; c++) {
+            bitKey.set(c);
+        }
+        map = new LinkedHashMap<SegmentHeader, SegmentBody>();
+        final int rowsPerSegment = sizes[0] / segmentCount;
+        for (int s = 0; s < segmentCount; s++) {
+            final List<SegmentColumn> columns =
+                new ArrayList<SegmentColumn>();
+            final List<Pair<SortedSet<Comparable>, Boolean>> axes =
+                new ArrayList<Pair<SortedSet<Comparable>, Boolean>>();
+            for (int c = 0; c < sizes.length; c++) {
+                final SortedSet<Comparable> values = new TreeSet<Comparable>();
+                if (c == 0) {
+                    for (int i = 0; i < rowsPerSegment; i++) {
+                        values.add(s * rowsPerSegment + i);
+                    }
+                } else {
+                    for (int i = 0; i < sizes[c]; i++) {
+                        values.add(i);
+                    }
+                }
+                columns.add(
+                    new SegmentColumn(
+                        "c" + c,
+                        sizes[c],
+                        c == 0 ? values : null));
+                axes.add(Pair.of(values, false));
+            }
+            final int cellCount = rowsPerSegment * sizes[1] * sizes[2];
+            final double[] cells = new double[cellCount];
+            for (int i = 0; i < cellCount; i++) {
+                cells[i] = i % 97;
+            }
+            map.put(
+                new SegmentHeader(
+                    "FoodMart",
+                    new ByteString(new byte[] {1, 2, 3, 4}),
+                    "Sales",
+                    "Unit Sales",
+                    columns,
+                    Collections.<String>emptyList(),
+                    "sales_fact_1997",
+                    bitKey,
+                    Collections.<SegmentColumn>emptyList()),
+                new DenseDoubleSegmentBody(new BitSet(), cells, axes));
+        }
+        keepColumns = new HashSet<String>(Arrays.asList("c0", "c1"));
+        targetBitKey = BitKey.Factory.makeBitKey(sizes.length);
+        targetBitKey.set(0);
+        targetBitKey.set(1);
+    }
+
+    @Benchmark
+    public Pair<SegmentHeader, SegmentBody> rollup() {
+        return SegmentBuilder.rollup(
+            map,
+            keepColumns,
+            targetBitKey,
+            RolapAggregator.Sum,
+            Dialect.Datatype.Numeric);
+    }
+}
+
+// End SegmentBuilderBenchmark.java
@@ -0,0 +1,137 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap.cache;
+
+import mondrian.rolap.BitKey;
+import mondrian.spi.SegmentColumn;
+import mondrian.spi.SegmentHeader;
+import mondrian.util.ByteString;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for {@link SegmentCacheIndexImpl#locate} and
+ * {@link SegmentCacheIndexImpl#findRollupCandidates}.
+ *
+ * <p>The index is populated with synthetic segment headers over a star with
+ * {@link #COLUMN_COUNT} columns. Column 0 plays the role of "year": each
+ * segment is constrained to one year, and the other columns are
+ * unconstrained. There is a segment for each year and each dimensionality
+ * that contains column 0.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SegmentCacheIndexBenchmark {
+    private static final int COLUMN_COUNT = 6;
+    private static final String SCHEMA_NAME = "FoodMart";
+    private static final ByteString SCHEMA_CHECKSUM =
+        new ByteString(new byte[] {1, 2, 3, 4});
+    private static final String CUBE_NAME = "Sales";
+    private static final String MEASURE_NAME = "Unit Sales";
+    private static final String FACT_TABLE_NAME = "sales_fact_1997";
+
+    /**
+     * Number of segments of each dimensionality.
+     */
+    @Param({"10", "100"})
+    public int yearCount;
+
+    private SegmentCacheIndexImpl index;
+    private BitKey locateBitKey;
+    private BitKey rollupBitKey;
+    private int year;
+
+    @Setup
+    public void setUp() {
+        index = new SegmentCacheIndexImpl(Thread.currentThread());
+        // Every subset of columns that contains column 0.
+        for (int mask = 1; mask < 1 << COLUMN_COUNT; mask += 2) {
+            final BitKey bitKey = BitKey.Factory.makeBitKey(COLUMN_COUNT);
+            for (int c = 0; c < COLUMN_COUNT; c++) {
+                if ((mask & (1 << c)) != 0) {
+                    bitKey.set(c);
+                }
+            }
+            for (int y = 0; y < yearCount; y++) {
+                index.add(header(bitKey, y), false, null);
+            }
+        }
+        locateBitKey = BitKey.Factory.makeBitKey(COLUMN_COUNT);
+        locateBitKey.set(0);
+        locateBitKey.set(1);
+        locateBitKey.set(2);
+        rollupBitKey = BitKey.Factory.makeBitKey(COLUMN_COUNT);
+        rollupBitKey.set(0);
+    }
+
+    private static SegmentHeader header(BitKey bitKey, int year) {
+        final List<SegmentColumn> columns = new ArrayList<SegmentColumn>();
+        for (int c = bitKey.nextSetBit(0); c >= 0; c = bitKey.nextSetBit(c + 1))
+        {
+            final SortedSet<Comparable> values;
+            if (c == 0) {
+                values = new TreeSet<Comparable>();
+                values.add(year);
+            } else {
+                values = null;
+            }
+            columns.add(new SegmentColumn("c" + c, 10, values));
+        }
+        return new SegmentHeader(
+            SCHEMA_NAME,
+            SCHEMA_CHECKSUM,
+            CUBE_NAME,
+            MEASURE_NAME,
+            columns,
+            Collections.<String>emptyList(),
+            FACT_TABLE_NAME,
+            bitKey,
+            Collections.<SegmentColumn>emptyList());
+    }
+
+    private Map<String, Comparable> nextCoordinates() {
+        if (++year == yearCount) {
+            year = 0;
+        }
+        return Collections.<String, Comparable>singletonMap("c0", year);
+    }
+
+    @Benchmark
+    public List<SegmentHeader> locate() {
+        return index.locate(
+            SCHEMA_NAME,
+            SCHEMA_CHECKSUM,
+            CUBE_NAME,
+            MEASURE_NAME,
+            FACT_TABLE_NAME,
+            locateBitKey,
+            nextCoordinates(),
+            Collections.<String>emptyList());
+    }
+
+    @Benchmark
+    public List<List<SegmentHeader>> findRollupCandidates() {
+        return index.findRollupCandidates(
+            SCHEMA_NAME,
+            SCHEMA_CHECKSUM,
+            CUBE_NAME,
+            MEASURE_NAME,
+            FACT_TABLE_NAME,
+            rollupBitKey,
+            nextCoordinates(),
+            Collections.<String>emptyList());
+    }
+}
+
+// End SegmentCacheIndexBenchmark.java
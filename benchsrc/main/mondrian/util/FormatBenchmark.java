@@ -0,0 +1,80 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.util;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for {@link Format}: looking up a format in the cache, and
+ * formatting a column of numbers one value at a time, into a shared buffer,
+ * and in bulk.
+ *
+ * <p>Run with several threads (for example "-t 4") to measure contention on
+ * the format cache.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FormatBenchmark {
+    @Param({"#,##0.00", "0.00%", "0.000E+00", "Standard"})
+    public String formatString;
+
+    private static final int COUNT = 1000;
+
+    private Format format;
+    private double[] values;
+    private Object[] boxedValues;
+    private final StringBuilder buf = new StringBuilder();
+
+    @Setup
+    public void setUp() {
+        format = Format.get(formatString, Locale.US);
+        final Random random = new Random(0);
+        values = new double[COUNT];
+        boxedValues = new Object[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            values[i] = (random.nextDouble() - 0.3) * 1000000d;
+            boxedValues[i] = values[i];
+        }
+    }
+
+    @Benchmark
+    public Format get() {
+        return Format.get(formatString, Locale.US);
+    }
+
+    @Benchmark
+    public void formatEach(Blackhole blackhole) {
+        for (Object value : boxedValues) {
+            blackhole.consume(format.format(value));
+        }
+    }
+
+    @Benchmark
+    public int formatToBuffer() {
+        buf.setLength(0);
+        for (Object value : boxedValues) {
+            format.format(value, buf);
+        }
+        return buf.length();
+    }
+
+    @Benchmark
+    public String[] formatBulk() {
+        return format.format(values);
+    }
+}
+
+// End FormatBenchmark.java
@@ -0,0 +1,151 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.xmla.impl;
+
+import mondrian.xmla.XmlaConstants;
+import mondrian.xmla.XmlaRequest;
+import mondrian.xmla.XmlaUtil;
+
+import org.openjdk.jmh.annotations.*;
+
+import org.w3c.dom.*;
+import org.xml.sax.InputSource;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+/**
+ * Benchmark that compares parsing XML/A requests into a DOM tree, as
+ * {@link DefaultXmlaServlet} does by default, with parsing them using
+ * {@link XmlaRequestParser}.
+ *
+ * <p>Measures requests per second for a Discover request, typical of the
+ * many small metadata requests that pivot clients send, and an Execute
+ * request.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class XmlaRequestParserBenchmark {
+    private static final String DISCOVER_REQUEST =
+        "<SOAP-ENV:Envelope"
+        + " xmlns:SOAP-ENV=\"http://schemas.xmlsoap.org/soap/envelope/\""
+        + " SOAP-ENV:encodingStyle="
+        + "\"http://schemas.xmlsoap.org/soap/encoding/\">\n"
+        + "  <SOAP-ENV:Header>\n"
+        + "    <Session xmlns=\"urn:schemas-microsoft-com:xml-analysis\""
+        + " mustUnderstand=\"1\" SessionId=\"3a8a2b1c\"/>\n"
+        + "  </SOAP-ENV:Header>\n"
+        + "  <SOAP-ENV:Body>\n"
+        + "    <Discover xmlns=\"urn:schemas-microsoft-com:xml-analysis\">\n"
+        + "      <RequestType>MDSCHEMA_MEMBERS</RequestType>\n"
+        + "      <Restrictions>\n"
+        + "        <RestrictionList>\n"
+        + "          <CATALOG_NAME>FoodMart</CATALOG_NAME>\n"
+        + "          <CUBE_NAME>Sales</CUBE_NAME>\n"
+        + "          <HIERARCHY_UNIQUE_NAME>[Store]</HIERARCHY_UNIQUE_NAME>\n"
+        + "          <LEVEL_UNIQUE_NAME>[Store].[Store Country]"
+        + "</LEVEL_UNIQUE_NAME>\n"
+        + "        </RestrictionList>\n"
+        + "      </Restrictions>\n"
+        + "      <Properties>\n"
+        + "        <PropertyList>\n"
+        + "          <DataSourceInfo>Provider=Mondrian;DataSource=FoodMart;"
+        + "</DataSourceInfo>\n"
+        + "          <Catalog>FoodMart</Catalog>\n"
+        + "          <Format>Tabular</Format>\n"
+        + "          <Content>SchemaData</Content>\n"
+        + "        </PropertyList>\n"
+        + "      </Properties>\n"
+        + "    </Discover>\n"
+        + "  </SOAP-ENV:Body>\n"
+        + "</SOAP-ENV:Envelope>";
+
+    private static final String EXECUTE_REQUEST =
+        "<SOAP-ENV:Envelope"
+        + " xmlns:SOAP-ENV=\"http://schemas.xmlsoap.org/soap/envelope/\""
+        + " SOAP-ENV:encodingStyle="
+        + "\"http://schemas.xmlsoap.org/soap/encoding/\">\n"
+        + "  <SOAP-ENV:Body>\n"
+        + "    <Execute xmlns=\"urn:schemas-microsoft-com:xml-analysis\">\n"
+        + "      <Command>\n"
+        + "        <Statement>select {[Measures].[Unit Sales]} on 0,\n"
+        + " NON EMPTY [Store].[Store City].Members on 1\n"
+        + "from [Sales]\n"
+        + "where [Time].[1997].[Q2]</Statement>\n"
+        + "      </Command>\n"
+        + "      <Properties>\n"
+        + "        <PropertyList>\n"
+        + "          <DataSourceInfo>Provider=Mondrian;DataSource=FoodMart;"
+        + "</DataSourceInfo>\n"
+        + "          <Catalog>FoodMart</Catalog>\n"
+        + "          <Format>Multidimensional</Format>\n"
+        + "          <AxisFormat>TupleFormat</AxisFormat>\n"
+        + "        </PropertyList>\n"
+        + "      </Properties>\n"
+        + "    </Execute>\n"
+        + "  </SOAP-ENV:Body>\n"
+        + "</SOAP-ENV:Envelope>";
+
+    @Param({"discover", "execute"})
+    public String requestName;
+
+    private byte[] bytes;
+    private DocumentBuilderFactory domFactory;
+    private XmlaRequestParser parser;
+
+    @Setup
+    public void setUp() throws Exception {
+        bytes =
+            (requestName.equals("discover")
+                ? DISCOVER_REQUEST
+                : EXECUTE_REQUEST).getBytes("UTF-8");
+        domFactory = DefaultXmlaServlet.getDocumentBuilderFactory();
+        parser = new XmlaRequestParser();
+    }
+
+    /**
+     * Parses the request into a DOM tree, then creates a request from the
+     * method element.
+     */
+    @Benchmark
+    public XmlaRequest dom() throws Exception {
+        final Document document =
+            domFactory.newDocumentBuilder().parse(
+                new InputSource(new ByteArrayInputStream(bytes)));
+        final Element body =
+            XmlaUtil.filterChildElements(
+                document.getDocumentElement(),
+                XmlaConstants.NS_SOAP_ENV_1_1,
+                "Body")[0];
+        Element[] methods =
+            XmlaUtil.filterChildElements(
+                body, XmlaConstants.NS_XMLA, "Discover");
+        if (methods.length == 0) {
+            methods =
+                XmlaUtil.filterChildElements(
+                    body, XmlaConstants.NS_XMLA, "Execute");
+        }
+        return new DefaultXmlaRequest(methods[0], null, null, null, null);
+    }
+
+    /**
+     * Parses the request using SAX, then creates a request.
+     */
+    @Benchmark
+    public XmlaRequest sax() throws Exception {
+        return new DefaultXmlaRequest(
+            parser.parse(new ByteArrayInputStream(bytes)),
+            null, null, null, null);
+    }
+}
+
+// End XmlaRequestParserBenchmark.java
@@ -30,6 +30,7 @@ import javax.sql.DataSource;
  * <li>{@link #createCrossjoinRegion(mondrian.olap.CacheControl.CellRegion[])}</li>
  * <li>{@link #createMeasuresRegion(Cube)}</li>
  * <li>{@link #flush(mondrian.olap.CacheControl.CellRegion)}</li>
+ * <li>{@link #refresh(CellRegion, String, long)}</li>
  * </ul></p>
  *
  * <p>Methods concerning member cache:<ul>
@@ -178,6 +179,48 @@ public interface CacheControl {
      */
     void flush(CellRegion region);
 
+    /**
+     * Brings the cells in the cell cache that correspond to measures in a
+     * cube and to a given region up to date with rows that have been
+     * appended to the fact table, without flushing them.
+     *
+     * <p>Use this method if the fact table is only ever appended to, and
+     * each batch of rows is marked so that a SQL condition can select it;
+     * for example, by a load timestamp or batch number column. Instead of
+     * discarding cached segments, Mondrian queries only the new rows, at
+     * the granularity of each cached segment, and merges the results
+     * into the segment. Segments whose measure's aggregator cannot combine
+     * partial results (such as distinct-count and avg), segments that are
+     * still loading, and segments that Mondrian cannot be sure predate the
+     * new rows, are flushed as if by {@link #flush(CellRegion)}.</p>
+     *
+     * <p>For example, a loader that appends a batch every five minutes
+     * might do the following:
+     *
+     * <blockquote><pre>long commitTime = System.currentTimeMillis();
+     * connection.commit(); // commit rows with batch_id = 1234
+     * cacheControl.refresh(
+     *     cacheControl.createMeasuresRegion(salesCube),
+     *     "\"sales_fact\".\"batch_id\" = 1234",
+     *     commitTime);</pre></blockquote></p>
+     *
+     * <p>The condition must select exactly the rows that have been appended
+     * since the previous refresh; if it selects rows that are already
+     * reflected in the cache, cells will be counted twice. All of the new
+     * rows must fall within the region. Calls to this method must not
+     * overlap, and this method only refreshes the cache of the current
+     * server; refreshed segments are written back to the external cache,
+     * if any.</p>
+     *
+     * @param region Region; must contain measures
+     * @param factCondition SQL condition on the fact table that selects the
+     *   new rows; refers to the fact table by its alias
+     * @param commitTime Time, as given by
+     *   {@link System#currentTimeMillis()}, no later than the time at which
+     *   the new rows became visible to other transactions
+     */
+    void refresh(CellRegion region, String factCondition, long commitTime);
+
     /**
      * Prints the state of the cell cache as it pertains to a given region.
      * @param pw the output target
@@ -91,7 +91,7 @@ public class Query extends QueryPart {
      */
     private final Cube cube;
 
-    private final Statement statement;
+    private Statement statement;
     public Calc[] axisCalcs;
     public Calc slicerCalc;
 
@@ -120,6 +120,14 @@ public class Query extends QueryPart {
      */
     private List<RolapCube> baseCubes;
 
+    /**
+     * Values of {@link #measuresMembers} and
+     * {@link #nativeCrossJoinVirtualCube} when the query was last resolved.
+     * Execution may change both; {@link #rebind} restores them.
+     */
+    private Set<Member> resolvedMeasuresMembers = Collections.emptySet();
+    private boolean resolvedNativeCrossJoinVirtualCube = true;
+
     /**
      * If true, enforce validation even when ignoreInvalidMembers is set.
      */
@@ -146,6 +154,12 @@ public class Query extends QueryPart {
         new ArrayList<ScopedNamedSet>();
     private boolean ownStatement;
 
+    /**
+     * Key under which this query is returned to its schema's query cache
+     * when its statement has finished with it, or null if it is not cached.
+     */
+    private Object cacheKey;
+
     /**
      * Creates a Query.
      */
@@ -450,6 +464,8 @@ public class Query extends QueryPart {
             createCompiler(
                 evaluator, validator, Collections.singletonList(resultStyle));
         compile(compiler);
+        resolvedMeasuresMembers = new HashSet<Member>(measuresMembers);
+        resolvedNativeCrossJoinVirtualCube = nativeCrossJoinVirtualCube;
     }
 
     /**
@@ -1444,6 +1460,55 @@ public class Query extends QueryPart {
         return statement;
     }
 
+    /**
+     * Binds this query to a different statement, and discards the state left
+     * by previous executions: parameter values, the evaluation cache, the
+     * result style, and what execution learned about measures and base
+     * cubes for native cross joins. Expressions are not validated or
+     * compiled again.
+     *
+     * <p>Called when a query is reused from a
+     * {@link mondrian.rolap.QueryCache}.</p>
+     *
+     * @param statement Statement that will execute this query
+     */
+    public void rebind(Statement statement) {
+        this.statement = statement;
+        this.ownStatement = false;
+        statement.setQuery(this);
+        for (Parameter parameter : parameters) {
+            if (parameter.getScope() == Parameter.Scope.Statement) {
+                parameter.unsetValue();
+            }
+        }
+        clearEvalCache();
+        alertedNonNativeFunDefs = new HashSet<FunDef>();
+        measuresMembers = new HashSet<Member>(resolvedMeasuresMembers);
+        nativeCrossJoinVirtualCube = resolvedNativeCrossJoinVirtualCube;
+        baseCubes = null;
+        setResultStyle(ResultStyle.ITERABLE);
+    }
+
+    /**
+     * Returns the key under which this query is returned to its schema's
+     * query cache, or null if it is not cached.
+     *
+     * @see mondrian.rolap.QueryCache#put
+     */
+    public Object getCacheKey() {
+        return cacheKey;
+    }
+
+    /**
+     * Sets the key under which this query is returned to its schema's
+     * query cache.
+     *
+     * @param cacheKey Cache key, or null
+     */
+    public void setCacheKey(Object cacheKey) {
+        this.cacheKey = cacheKey;
+    }
+
     /**
      * Sets that the query owns its statement; therefore it will need to
      * close it when the query is closed.
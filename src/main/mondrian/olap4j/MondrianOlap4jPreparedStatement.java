@@ -64,6 +64,7 @@ abstract class MondrianOlap4jPreparedStatement
         final Pair<Query, MondrianOlap4jCellSetMetaData> pair = parseQuery(mdx);
         this.query = pair.left;
         this.cellSetMetaData = pair.right;
+        retainQuery(query);
     }
 
     // implement PreparedOlapStatement
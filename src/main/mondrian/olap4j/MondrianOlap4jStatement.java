@@ -11,6 +11,7 @@ package mondrian.olap4j;
 
 import mondrian.calc.ResultStyle;
 import mondrian.olap.*;
+import mondrian.rolap.QueryCache;
 import mondrian.rolap.RolapConnection;
 import mondrian.server.*;
 import mondrian.util.Pair;
@@ -51,6 +52,12 @@ abstract class MondrianOlap4jStatement
      */
     MondrianOlap4jCellSet openCellSet;
 
+    /**
+     * Query that this statement returns to the query cache when it closes or
+     * executes a different query, or null.
+     */
+    private Query cachedQuery;
+
     MondrianOlap4jStatement(
         MondrianOlap4jConnection olap4jConnection)
     {
@@ -143,6 +150,7 @@ abstract class MondrianOlap4jStatement
                 openCellSet = null;
                 c.close();
             }
+            retainQuery(null);
         }
     }
 
@@ -359,12 +367,19 @@ abstract class MondrianOlap4jStatement
                 new Locus.Action<Pair<Query, MondrianOlap4jCellSetMetaData>>() {
                     public Pair<Query, MondrianOlap4jCellSetMetaData> execute()
                     {
-                        final Query query =
-                            (Query) mondrianConnection.parseStatement(
-                                MondrianOlap4jStatement.this,
-                                mdx,
-                                null,
-                                false);
+                        final QueryCache queryCache =
+                            mondrianConnection.getSchema().getQueryCache();
+                        Query query =
+                            queryCache.get(MondrianOlap4jStatement.this, mdx);
+                        if (query == null) {
+                            query =
+                                (Query) mondrianConnection.parseStatement(
+                                    MondrianOlap4jStatement.this,
+                                    mdx,
+                                    null,
+                                    false);
+                            queryCache.register(query, mdx);
+                        }
                         final MondrianOlap4jCellSetMetaData cellSetMetaData =
                             new MondrianOlap4jCellSetMetaData(
                                 MondrianOlap4jStatement.this, query);
@@ -377,6 +392,27 @@ abstract class MondrianOlap4jStatement
         }
     }
 
+    /**
+     * Records the query that this statement is using, and returns the query
+     * it was previously using, if different, to the query cache. Must be
+     * called when no cell set is open.
+     *
+     * @param query Query, or null if the statement is closing
+     */
+    synchronized void retainQuery(Query query) {
+        if (query == cachedQuery) {
+            return;
+        }
+        if (cachedQuery != null) {
+            getMondrianConnection().getSchema().getQueryCache().put(
+                cachedQuery);
+        }
+        cachedQuery =
+            query != null && query.getCacheKey() != null
+                ? query
+                : null;
+    }
+
     /**
      * Executes a parsed query, closing any previously open cellset.
      *
@@ -407,6 +443,7 @@ abstract class MondrianOlap4jStatement
                 query.setResultStyle(ResultStyle.LIST);
             }
             this.query = query;
+            retainQuery(query);
             openCellSet = olap4jConnection.factory.newCellSet(this);
         }
         // Release the monitor before executing, to give another thread the
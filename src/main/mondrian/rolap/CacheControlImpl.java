@@ -184,8 +184,42 @@ public class CacheControlImpl implements CacheControl {
     }
 
     private void flushInternal(CellRegion region) {
+        for (CellRegionImpl cellRegion : normalizeCellRegion(region)) {
+            // Figure out the bits.
+            flushNonUnion(cellRegion);
+        }
+    }
+
+    public void refresh(
+        final CellRegion region,
+        final String factCondition,
+        final long commitTime)
+    {
+        Locus.execute(
+            connection,
+            "Refresh",
+            new Locus.Action<Void>() {
+                public Void execute() {
+                    for (CellRegionImpl cellRegion
+                        : normalizeCellRegion(region))
+                    {
+                        refreshNonUnion(cellRegion, factCondition, commitTime);
+                    }
+                    return null;
+                }
+            });
+    }
+
+    /**
+     * Checks that a region contains measures, and converts it into a list
+     * of regions, none of which is a union.
+     *
+     * @param region Region
+     * @return List of non-union regions
+     */
+    private List<CellRegionImpl> normalizeCellRegion(CellRegion region) {
         if (region instanceof EmptyCellRegion) {
-            return;
+            return Collections.emptyList();
         }
         final List<Dimension> dimensionality = region.getDimensionality();
         boolean found = false;
@@ -199,11 +233,7 @@ public class CacheControlImpl implements CacheControl {
             throw MondrianResource.instance().CacheFlushRegionMustContainMembers
                 .ex();
         }
-        final UnionCellRegion union = normalize((CellRegionImpl) region);
-        for (CellRegionImpl cellRegion : union.regions) {
-            // Figure out the bits.
-            flushNonUnion(cellRegion);
-        }
+        return normalize((CellRegionImpl) region).regions;
     }
 
     /**
@@ -309,6 +339,14 @@ public class CacheControlImpl implements CacheControl {
         throw new UnsupportedOperationException();
     }
 
+    protected void refreshNonUnion(
+        CellRegion region,
+        String factCondition,
+        long commitTime)
+    {
+        throw new UnsupportedOperationException();
+    }
+
     /**
      * Normalizes a CellRegion into a union of crossjoins of member regions.
      *
@@ -841,6 +879,10 @@ public class CacheControlImpl implements CacheControl {
                     new ArrayList<CellRegion>();
                 ((MemberEditCommandPlus) cmd).execute(cellRegionList);
 
+                // Compiled queries may refer to members that have changed.
+                execution.getMondrianStatement().getSchema().getQueryCache()
+                    .clear();
+
                 // Flush the cells touched by the regions
                 for (CellRegion memberRegion : cellRegionList) {
                     // Iterate over the cubes, create a cross region with
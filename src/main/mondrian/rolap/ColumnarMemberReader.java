@@ -0,0 +1,1049 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap;
+
+import mondrian.olap.*;
+import mondrian.resource.MondrianResource;
+import mondrian.rolap.TupleReader.MemberBuilder;
+import mondrian.rolap.sql.MemberChildrenConstraint;
+import mondrian.rolap.sql.TupleConstraint;
+import mondrian.server.monitor.SqlStatementEvent;
+import mondrian.util.Pair;
+
+import org.apache.commons.collections.map.ReferenceMap;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import javax.sql.DataSource;
+
+/**
+ * <code>ColumnarMemberReader</code> implements {@link MemberReader} by
+ * holding all of the members of a hierarchy in columnar form.
+ *
+ * <p>For each level, the reader holds the number of members, the ordinal
+ * of each member's parent within the parent level, and a column each for
+ * the keys, captions, order keys and properties of the members. A column
+ * whose values are all integers is held as an <code>int</code> array;
+ * any other column is held as an array of codes into a dictionary of
+ * distinct values, so that a value that occurs many times (say the city of
+ * a customer) is held only once. Members are sorted as in the hierarchy, so
+ * the children of a member are contiguous, and are found by binary search
+ * on the parent ordinals.</p>
+ *
+ * <p>Member objects are created only when they are needed, and are held
+ * via soft references, so there is at most one object for a given member at
+ * any time. A member created by this reader computes its unique name the
+ * first time it is asked for it.</p>
+ *
+ * <p>The reader is used instead of {@link SmartMemberReader} for a
+ * hierarchy whose leaf level has at least
+ * {@link MondrianProperties#ColumnarMemberThreshold} members. Like
+ * {@link CacheMemberReader}, it reads all of the members of the hierarchy
+ * in one SQL statement, the first time they are needed, and does not
+ * support parent-child or ragged hierarchies. It assumes that the ordinal
+ * expression of each level sorts the members of different parents
+ * separately; if two parents have equal ordinals, their children may be
+ * read as more than one member.</p>
+ */
+class ColumnarMemberReader implements MemberReader {
+    private final SqlMemberSource source;
+    private final RolapHierarchy hierarchy;
+
+    /**
+     * The 'all' member, or null if the hierarchy has no 'all' level.
+     */
+    private final RolapMember allMember;
+
+    /**
+     * Depth of the first level that is not the 'all' level.
+     */
+    private final int firstDepth;
+
+    /**
+     * Columns of each level, excluding the 'all' level, outermost first.
+     * Null until the members have been read.
+     */
+    private LevelStore[] stores;
+
+    /**
+     * Creates a ColumnarMemberReader.
+     *
+     * @param source Source of members and SQL
+     */
+    ColumnarMemberReader(SqlMemberSource source) {
+        this.source = source;
+        this.hierarchy = source.getHierarchy();
+        this.allMember = hierarchy.hasAll() ? hierarchy.getAllMember() : null;
+        this.firstDepth = hierarchy.hasAll() ? 1 : 0;
+    }
+
+    /**
+     * Returns whether a hierarchy should be held in columnar form. It must
+     * be a regular hierarchy (not parent-child or ragged) whose leaf level
+     * has at least {@link MondrianProperties#ColumnarMemberThreshold}
+     * members.
+     *
+     * @param source Source of members of the hierarchy
+     * @return Whether to use a ColumnarMemberReader
+     */
+    static boolean isApplicable(SqlMemberSource source) {
+        final int threshold =
+            MondrianProperties.instance().ColumnarMemberThreshold.get();
+        if (threshold <= 0) {
+            return false;
+        }
+        final RolapHierarchy hierarchy = source.getHierarchy();
+        if (hierarchy.isRagged()) {
+            return false;
+        }
+        final RolapLevel[] levels = (RolapLevel[]) hierarchy.getLevels();
+        for (RolapLevel level : levels) {
+            if (level.isParentChild()) {
+                return false;
+            }
+        }
+        final RolapLevel leafLevel = levels[levels.length - 1];
+        return !leafLevel.isAll()
+            && source.getLevelMemberCount(leafLevel) >= threshold;
+    }
+
+    /**
+     * Returns the columns of each level, reading them if necessary.
+     */
+    private synchronized LevelStore[] stores() {
+        if (stores == null) {
+            stores = load();
+        }
+        return stores;
+    }
+
+    /**
+     * Reads all members of the hierarchy into columns.
+     */
+    private LevelStore[] load() {
+        final RolapLevel[] levels = (RolapLevel[]) hierarchy.getLevels();
+        final List<LevelBuilder> builders = new ArrayList<LevelBuilder>();
+        final boolean assignOrderKeys =
+            MondrianProperties.instance().CompareSiblingsByOrderKey.get();
+        for (RolapLevel level : levels) {
+            if (!level.isAll()) {
+                builders.add(
+                    new LevelBuilder(
+                        level, builders.isEmpty(), assignOrderKeys));
+            }
+        }
+        final DataSource dataSource =
+            hierarchy.getRolapSchema().getInternalConnection().getDataSource();
+        final Pair<String, List<SqlStatement.Type>> pair =
+            source.makeKeysSql(dataSource);
+        final SqlStatement stmt =
+            RolapUtil.executeQuery(
+                dataSource, source.getDialect(), pair.left, pair.right, 0, 0,
+                new SqlStatement.StatementLocus(
+                    null,
+                    "ColumnarMemberReader.load",
+                    "while building columnar member store",
+                    SqlStatementEvent.Purpose.TUPLES, 0),
+                -1, -1);
+        try {
+            final List<SqlStatement.Accessor> accessors = stmt.getAccessors();
+            final int limit = MondrianProperties.instance().ResultLimit.get();
+            final ResultSet resultSet = stmt.getResultSet();
+            while (resultSet.next()) {
+                ++stmt.rowCount;
+                if (limit > 0 && limit < stmt.rowCount) {
+                    throw stmt.handle(
+                        MondrianResource.instance().MemberFetchLimitExceeded.ex(
+                            limit));
+                }
+                int column = 0;
+                int parentOrdinal = -1;
+                boolean parentIsNew = false;
+                for (LevelBuilder builder : builders) {
+                    column =
+                        builder.add(
+                            accessors, column, parentOrdinal, parentIsNew);
+                    parentOrdinal = builder.size - 1;
+                    parentIsNew = builder.lastIsNew;
+                }
+            }
+        } catch (SQLException e) {
+            throw stmt.handle(e);
+        } finally {
+            stmt.close();
+        }
+        final LevelStore[] levelStores = new LevelStore[builders.size()];
+        for (int i = 0; i < levelStores.length; i++) {
+            levelStores[i] = builders.get(i).build();
+        }
+        return levelStores;
+    }
+
+    /**
+     * Returns the member at a given ordinal within a level, creating it if
+     * necessary.
+     *
+     * @param levelIndex Index of level, 0 for the first non-all level
+     * @param ordinal Ordinal of member within its level
+     * @return Member
+     */
+    private RolapMember member(int levelIndex, int ordinal) {
+        final LevelStore store = stores()[levelIndex];
+        final Integer ordinalKey = ordinal;
+        synchronized (store) {
+            final RolapMember member =
+                (RolapMember) store.members.get(ordinalKey);
+            if (member != null) {
+                return member;
+            }
+        }
+        // Create the parent first, outside the lock, so that locks are never
+        // held on two levels at once.
+        final RolapMember parent =
+            levelIndex == 0
+                ? allMember
+                : member(levelIndex - 1, store.parentOrdinals[ordinal]);
+        synchronized (store) {
+            RolapMember member = (RolapMember) store.members.get(ordinalKey);
+            if (member == null) {
+                member = store.create(parent, ordinal);
+                store.members.put(ordinalKey, member);
+            }
+            return member;
+        }
+    }
+
+    /**
+     * Adds to a list the members of a level in a range of ordinals.
+     */
+    private void addMembers(
+        int levelIndex, int start, int end, List<RolapMember> list)
+    {
+        for (int i = start; i < end; i++) {
+            list.add(member(levelIndex, i));
+        }
+    }
+
+    /**
+     * Returns the index of a level among the non-all levels, or -1 if it is
+     * the 'all' level.
+     */
+    private int levelIndex(Level level) {
+        return level.getDepth() - firstDepth;
+    }
+
+    /**
+     * Returns the first ordinal of the children of a member, in the level
+     * below it; the children end at the first ordinal of the children of
+     * the next member in its level.
+     *
+     * @param levelIndex Index of the child level
+     * @param parentOrdinal Ordinal of the parent in its level, or -1 if the
+     *   child level is the first level
+     * @return Ordinal of first child
+     */
+    private int firstChild(int levelIndex, int parentOrdinal) {
+        final LevelStore store = stores()[levelIndex];
+        if (store.parentOrdinals == null) {
+            return parentOrdinal < 0 ? 0 : store.size;
+        }
+        int low = 0;
+        int high = store.size;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (store.parentOrdinals[mid] < parentOrdinal) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the ordinal of a member within its level, or -1 if the member
+     * does not exist.
+     */
+    private int locate(RolapMember member) {
+        if (member instanceof ColumnarMember
+            && member.getHierarchy() == hierarchy)
+        {
+            return ((ColumnarMember) member).position;
+        }
+        final int levelIndex = levelIndex(member.getLevel());
+        if (levelIndex < 0 || levelIndex >= stores().length) {
+            return -1;
+        }
+        final int parentOrdinal;
+        if (levelIndex == 0) {
+            parentOrdinal = -1;
+        } else {
+            final RolapMember parent = member.getParentMember();
+            parentOrdinal = parent == null ? -1 : locate(parent);
+            if (parentOrdinal < 0) {
+                return -1;
+            }
+        }
+        return stores()[levelIndex].ordinal(parentOrdinal, member.getKey());
+    }
+
+    // implement MemberSource
+    public RolapHierarchy getHierarchy() {
+        return hierarchy;
+    }
+
+    public boolean setCache(MemberCache cache) {
+        // Members are created from the columns; there is nothing to write
+        // back.
+        return false;
+    }
+
+    public RolapMember substitute(RolapMember member) {
+        return member;
+    }
+
+    public RolapMember desubstitute(RolapMember member) {
+        return member;
+    }
+
+    public RolapMember getMemberByKey(
+        RolapLevel level, List<Comparable> keyValues)
+    {
+        final int levelIndex = levelIndex(level);
+        if (levelIndex < 0) {
+            return allMember;
+        }
+        // The key values are those of the level and its ancestors, innermost
+        // first, up to the first level whose members are unique. Resolve
+        // them outermost first, each within the parent found so far.
+        int i = levelIndex - keyValues.size() + 1;
+        if (i < 0) {
+            return null;
+        }
+        int ordinal = -1;
+        for (int k = keyValues.size() - 1; k >= 0; k--, i++) {
+            ordinal = stores()[i].ordinal(ordinal, keyValues.get(k));
+            if (ordinal < 0) {
+                return null;
+            }
+        }
+        return member(levelIndex, ordinal);
+    }
+
+    public List<RolapMember> getMembers() {
+        final List<RolapMember> list = new ArrayList<RolapMember>();
+        if (allMember != null) {
+            list.add(allMember);
+        }
+        addDescendants(0, 0, stores()[0].size, list);
+        return list;
+    }
+
+    /**
+     * Adds to a list the members of a level in a range of ordinals, each
+     * followed by its descendants.
+     */
+    private void addDescendants(
+        int levelIndex, int start, int end, List<RolapMember> list)
+    {
+        final boolean hasChildren = levelIndex + 1 < stores().length;
+        int child = hasChildren ? firstChild(levelIndex + 1, start) : 0;
+        for (int i = start; i < end; i++) {
+            list.add(member(levelIndex, i));
+            if (hasChildren) {
+                final int nextChild = firstChild(levelIndex + 1, i + 1);
+                addDescendants(levelIndex + 1, child, nextChild, list);
+                child = nextChild;
+            }
+        }
+    }
+
+    public List<RolapMember> getRootMembers() {
+        final List<RolapMember> list = new ArrayList<RolapMember>();
+        if (allMember != null) {
+            list.add(allMember);
+        } else {
+            addMembers(0, 0, stores()[0].size, list);
+        }
+        return list;
+    }
+
+    public List<RolapMember> getMembersInLevel(RolapLevel level) {
+        final List<RolapMember> list = new ArrayList<RolapMember>();
+        final int levelIndex = levelIndex(level);
+        if (levelIndex < 0) {
+            list.add(allMember);
+        } else {
+            addMembers(levelIndex, 0, stores()[levelIndex].size, list);
+        }
+        return list;
+    }
+
+    public List<RolapMember> getMembersInLevel(
+        RolapLevel level,
+        TupleConstraint constraint)
+    {
+        return getMembersInLevel(level);
+    }
+
+    public int getLevelMemberCount(RolapLevel level) {
+        final int levelIndex = levelIndex(level);
+        return levelIndex < 0 ? 1 : stores()[levelIndex].size;
+    }
+
+    public void getMemberChildren(
+        RolapMember parentMember,
+        List<RolapMember> children)
+    {
+        final int levelIndex = levelIndex(parentMember.getLevel()) + 1;
+        if (levelIndex >= stores().length) {
+            return;
+        }
+        final int parentOrdinal;
+        if (levelIndex == 0) {
+            parentOrdinal = -1;
+        } else {
+            parentOrdinal = locate(parentMember);
+            if (parentOrdinal < 0) {
+                return;
+            }
+        }
+        addMembers(
+            levelIndex,
+            firstChild(levelIndex, parentOrdinal),
+            firstChild(levelIndex, parentOrdinal + 1),
+            children);
+    }
+
+    public Map<? extends Member, Access> getMemberChildren(
+        RolapMember member,
+        List<RolapMember> children,
+        MemberChildrenConstraint constraint)
+    {
+        getMemberChildren(member, children);
+        return Util.toNullValuesMap(children);
+    }
+
+    public void getMemberChildren(
+        List<RolapMember> parentMembers,
+        List<RolapMember> children)
+    {
+        for (RolapMember parentMember : parentMembers) {
+            getMemberChildren(parentMember, children);
+        }
+    }
+
+    public Map<? extends Member, Access> getMemberChildren(
+        List<RolapMember> parentMembers,
+        List<RolapMember> children,
+        MemberChildrenConstraint constraint)
+    {
+        getMemberChildren(parentMembers, children);
+        return Util.toNullValuesMap(children);
+    }
+
+    public int getMemberCount() {
+        int count = allMember == null ? 0 : 1;
+        for (LevelStore store : stores()) {
+            count += store.size;
+        }
+        return count;
+    }
+
+    public RolapMember lookupMember(
+        List<Id.Segment> uniqueNameParts,
+        boolean failIfNotFound)
+    {
+        RolapMember member = lookupMemberInternal(uniqueNameParts, false);
+        if (member == null && allMember != null) {
+            // The 'all' member can be omitted. For example,
+            // '[Gender].[(All Gender)].[F]' can be abbreviated '[Gender].[F]'.
+            member = lookupMemberInternal(uniqueNameParts, true);
+        }
+        if (member == null && failIfNotFound) {
+            throw MondrianResource.instance().MdxCantFindMember.ex(
+                Util.implode(uniqueNameParts));
+        }
+        return member;
+    }
+
+    /**
+     * Looks up a member by the names of it and its ancestors, comparing
+     * names in the columns so that only the member found is created.
+     *
+     * @param segments Name segments
+     * @param skipAll Whether the segments omit the 'all' member
+     * @return Member, or null if not found
+     */
+    private RolapMember lookupMemberInternal(
+        List<Id.Segment> segments,
+        boolean skipAll)
+    {
+        int i = 0;
+        if (allMember != null && !skipAll) {
+            if (segments.isEmpty()
+                || !(segments.get(0) instanceof Id.NameSegment)
+                || !((Id.NameSegment) segments.get(0)).name.equals(
+                    allMember.getName()))
+            {
+                return null;
+            }
+            ++i;
+        }
+        boolean found = allMember != null;
+        int levelIndex = -1;
+        int ordinal = -1;
+        for (; i < segments.size(); i++) {
+            final Id.Segment segment = segments.get(i);
+            if (!(segment instanceof Id.NameSegment)) {
+                break;
+            }
+            if (levelIndex + 1 >= stores().length) {
+                return null;
+            }
+            final LevelStore store = stores()[levelIndex + 1];
+            final int start = firstChild(levelIndex + 1, ordinal);
+            final int end = firstChild(levelIndex + 1, ordinal + 1);
+            final int child =
+                store.indexOfName(((Id.NameSegment) segment).name, start, end);
+            if (child < 0) {
+                return null;
+            }
+            ++levelIndex;
+            ordinal = child;
+            found = true;
+        }
+        if (!found) {
+            return null;
+        }
+        return levelIndex < 0 ? allMember : member(levelIndex, ordinal);
+    }
+
+    public RolapMember getLeadMember(RolapMember member, int n) {
+        final int levelIndex = levelIndex(member.getLevel());
+        if (levelIndex < 0) {
+            return n == 0
+                ? member
+                : (RolapMember) hierarchy.getNullMember();
+        }
+        final int ordinal = locate(member);
+        final int target = ordinal + n;
+        if (ordinal < 0 || target < 0 || target >= stores()[levelIndex].size) {
+            return (RolapMember) hierarchy.getNullMember();
+        }
+        return member(levelIndex, target);
+    }
+
+    public void getMemberRange(
+        RolapLevel level,
+        RolapMember startMember,
+        RolapMember endMember,
+        List<RolapMember> list)
+    {
+        assert startMember != null;
+        assert endMember != null;
+        assert startMember.getLevel() == endMember.getLevel();
+        final int levelIndex = levelIndex(level);
+        if (levelIndex < 0) {
+            list.add(allMember);
+            return;
+        }
+        final int start = locate(startMember);
+        final int end = locate(endMember);
+        if (start >= 0 && end >= 0) {
+            addMembers(levelIndex, start, end + 1, list);
+        }
+    }
+
+    public int compare(
+        RolapMember m1,
+        RolapMember m2,
+        boolean siblingsAreEqual)
+    {
+        if (m1 == m2) {
+            return 0;
+        }
+        if (siblingsAreEqual
+            && Util.equals(m1.getParentMember(), m2.getParentMember()))
+        {
+            return 0;
+        }
+        // Bring the deeper member up to the depth of the other. A member
+        // sorts after its ancestors.
+        int extraDepth = 0;
+        while (m1.getDepth() > m2.getDepth()) {
+            m1 = m1.getParentMember();
+            ++extraDepth;
+        }
+        while (m2.getDepth() > m1.getDepth()) {
+            m2 = m2.getParentMember();
+            --extraDepth;
+        }
+        if (m1.equals(m2)) {
+            return extraDepth > 0 ? 1 : extraDepth < 0 ? -1 : 0;
+        }
+        if (m1.isAll() || m2.isAll()) {
+            return 0;
+        }
+        final int ordinal1 = locate(m1);
+        final int ordinal2 = locate(m2);
+        return ordinal1 < ordinal2 ? -1 : ordinal1 > ordinal2 ? 1 : 0;
+    }
+
+    public MemberBuilder getMemberBuilder() {
+        return null;
+    }
+
+    public RolapMember getDefaultMember() {
+        RolapMember defaultMember =
+            (RolapMember) getHierarchy().getDefaultMember();
+        if (defaultMember != null) {
+            return defaultMember;
+        }
+        return getRootMembers().get(0);
+    }
+
+    public RolapMember getMemberParent(RolapMember member) {
+        return member.getParentMember();
+    }
+
+    /**
+     * Columns of the members of one level.
+     */
+    private static class LevelStore {
+        final RolapLevel level;
+        final int size;
+
+        /**
+         * Ordinal of each member's parent in the parent level; null for the
+         * first level. Ascending.
+         */
+        final int[] parentOrdinals;
+
+        final Column keys;
+        final Column captions;
+        final Column orderKeys;
+        final Column[] properties;
+
+        /**
+         * Index of the column of the {@link Property#NAME} property in
+         * {@link #properties}, or -1 if members are named after their key.
+         */
+        final int nameProperty;
+
+        /**
+         * Members that have been created, by ordinal. Values are soft
+         * references.
+         */
+        final Map members =
+            new ReferenceMap(ReferenceMap.HARD, ReferenceMap.SOFT);
+
+        /**
+         * Whether members are identified by key alone, not by parent and
+         * key; true for the first level and for levels with unique members.
+         */
+        private final boolean keyIsUnique;
+
+        /**
+         * Hash table from (parent ordinal, key) to member ordinal, by open
+         * addressing. Each slot holds an ordinal plus one, or 0 if empty.
+         * Costs two ints per member, rather than an entry object.
+         */
+        private final int[] index;
+
+        LevelStore(
+            RolapLevel level,
+            int size,
+            int[] parentOrdinals,
+            Column keys,
+            Column captions,
+            Column orderKeys,
+            Column[] properties)
+        {
+            this.level = level;
+            this.size = size;
+            this.parentOrdinals = parentOrdinals;
+            this.keys = keys;
+            this.captions = captions;
+            this.orderKeys = orderKeys;
+            this.properties = properties;
+            int nameProperty = -1;
+            final RolapProperty[] levelProperties = level.getProperties();
+            for (int i = 0; i < levelProperties.length; i++) {
+                if (levelProperties[i].getName().equals(Property.NAME.name)) {
+                    nameProperty = i;
+                }
+            }
+            this.nameProperty = nameProperty;
+            this.keyIsUnique = parentOrdinals == null || level.isUnique();
+            this.index = new int[tableSize(size)];
+            for (int i = 0; i < size; i++) {
+                final int parent = keyIsUnique ? -1 : parentOrdinals[i];
+                final Object key = keys.get(i);
+                int slot = slot(parent, key);
+                while (index[slot] != 0) {
+                    if (matches(index[slot] - 1, parent, key)) {
+                        // Duplicate; keep the first, as a scan would.
+                        break;
+                    }
+                    slot = (slot + 1) & (index.length - 1);
+                }
+                if (index[slot] == 0) {
+                    index[slot] = i + 1;
+                }
+            }
+        }
+
+        /**
+         * Returns a power of 2 at least twice a given size.
+         */
+        private static int tableSize(int size) {
+            int n = 2;
+            while (n < size * 2) {
+                n <<= 1;
+            }
+            return n;
+        }
+
+        private int slot(int parentOrdinal, Object key) {
+            int h = key == null ? 0 : key.hashCode();
+            h = h * 31 + parentOrdinal;
+            h ^= (h >>> 20) ^ (h >>> 12);
+            h ^= (h >>> 7) ^ (h >>> 4);
+            return h & (index.length - 1);
+        }
+
+        private boolean matches(int ordinal, int parentOrdinal, Object key) {
+            return (keyIsUnique || parentOrdinals[ordinal] == parentOrdinal)
+                && Util.equals(keys.get(ordinal), key);
+        }
+
+        /**
+         * Returns the ordinal of the member with a given parent and key, or
+         * -1 if there is no such member.
+         *
+         * @param parentOrdinal Ordinal of parent in the parent level; ignored
+         *   if this is the first level or its members are unique
+         * @param key Key
+         * @return Ordinal of member, or -1
+         */
+        int ordinal(int parentOrdinal, Object key) {
+            final int parent = keyIsUnique ? -1 : parentOrdinal;
+            int slot = slot(parent, key);
+            while (index[slot] != 0) {
+                final int ordinal = index[slot] - 1;
+                if (matches(ordinal, parent, key)) {
+                    return ordinal;
+                }
+                slot = (slot + 1) & (index.length - 1);
+            }
+            return -1;
+        }
+
+        /**
+         * Creates the member at a given ordinal.
+         */
+        RolapMember create(RolapMember parent, int ordinal) {
+            final ColumnarMember member =
+                new ColumnarMember(parent, level, keys.get(ordinal), ordinal);
+            if (captions != null) {
+                final Object caption = captions.get(ordinal);
+                if (caption != null) {
+                    member.setCaption(caption.toString());
+                }
+            }
+            if (orderKeys != null) {
+                Object orderKey = orderKeys.get(ordinal);
+                if (orderKey != null && !(orderKey instanceof Comparable)) {
+                    orderKey = orderKey.toString();
+                }
+                member.setOrderKey((Comparable) orderKey);
+            }
+            final RolapProperty[] levelProperties = level.getProperties();
+            for (int i = 0; i < properties.length; i++) {
+                member.setProperty(
+                    levelProperties[i].getName(),
+                    properties[i].get(ordinal));
+            }
+            return member;
+        }
+
+        /**
+         * Returns the ordinal of the first member in a range whose name is
+         * a given string, or -1.
+         */
+        int indexOfName(String name, int start, int end) {
+            for (int i = start; i < end; i++) {
+                final String memberName;
+                if (nameProperty < 0) {
+                    memberName = RolapMemberBase.keyToString(keys.get(i));
+                } else {
+                    final Object value = properties[nameProperty].get(i);
+                    memberName =
+                        value == null
+                            ? RolapUtil.mdxNullLiteral()
+                            : String.valueOf(value);
+                }
+                if (memberName.equals(name)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Collects the columns of one level while the members are being read.
+     */
+    private static class LevelBuilder {
+        final RolapLevel level;
+        final boolean first;
+        final boolean hasOrderKey;
+        int size;
+        int[] parentOrdinals;
+        final ColumnBuilder keys = new ColumnBuilder();
+        final ColumnBuilder captions;
+        final ColumnBuilder orderKeys;
+        final ColumnBuilder[] properties;
+        Object lastKey;
+        boolean lastIsNew;
+
+        LevelBuilder(
+            RolapLevel level,
+            boolean first,
+            boolean assignOrderKeys)
+        {
+            this.level = level;
+            this.first = first;
+            this.parentOrdinals = first ? null : new int[16];
+            this.captions =
+                level.hasCaptionColumn() ? new ColumnBuilder() : null;
+            this.hasOrderKey =
+                !level.getOrdinalExp().equals(level.getKeyExp());
+            this.orderKeys =
+                hasOrderKey && assignOrderKeys ? new ColumnBuilder() : null;
+            this.properties =
+                new ColumnBuilder[level.getProperties().length];
+            for (int i = 0; i < properties.length; i++) {
+                properties[i] = new ColumnBuilder();
+            }
+        }
+
+        /**
+         * Reads this level's columns from the current row, adding a member
+         * if the row starts a new member of this level.
+         *
+         * @param accessors Column accessors
+         * @param column Ordinal of this level's first column in the row
+         * @param parentOrdinal Ordinal of the parent in the parent level
+         * @param parentIsNew Whether the row started a new parent member
+         * @return Ordinal of the next level's first column
+         */
+        int add(
+            List<SqlStatement.Accessor> accessors,
+            int column,
+            int parentOrdinal,
+            boolean parentIsNew)
+            throws SQLException
+        {
+            Object key = accessors.get(column++).get();
+            if (key == null) {
+                key = RolapUtil.sqlNullValue;
+            } else if (key instanceof byte[]) {
+                key = new String((byte[]) key);
+            }
+            lastIsNew = parentIsNew || size == 0 || !key.equals(lastKey);
+            if (!lastIsNew) {
+                return column
+                    + (captions == null ? 0 : 1)
+                    + (hasOrderKey ? 1 : 0)
+                    + properties.length;
+            }
+            lastKey = key;
+            keys.add(key);
+            if (captions != null) {
+                captions.add(accessors.get(column++).get());
+            }
+            if (hasOrderKey) {
+                if (orderKeys != null) {
+                    orderKeys.add(accessors.get(column).get());
+                }
+                ++column;
+            }
+            for (ColumnBuilder property : properties) {
+                property.add(accessors.get(column++).get());
+            }
+            if (!first) {
+                if (size == parentOrdinals.length) {
+                    parentOrdinals = grow(parentOrdinals, size * 2);
+                }
+                parentOrdinals[size] = parentOrdinal;
+            }
+            ++size;
+            return column;
+        }
+
+        LevelStore build() {
+            final Column[] propertyColumns = new Column[properties.length];
+            for (int i = 0; i < properties.length; i++) {
+                propertyColumns[i] = properties[i].build();
+            }
+            return new LevelStore(
+                level,
+                size,
+                first ? null : grow(parentOrdinals, size),
+                keys.build(),
+                captions == null ? null : captions.build(),
+                orderKeys == null ? null : orderKeys.build(),
+                propertyColumns);
+        }
+    }
+
+    /**
+     * Returns a copy of an array with a given length.
+     */
+    private static int[] grow(int[] values, int length) {
+        final int[] newValues = new int[length];
+        System.arraycopy(
+            values, 0, newValues, 0, Math.min(values.length, length));
+        return newValues;
+    }
+
+    /**
+     * Column of values, one per member of a level.
+     */
+    private static abstract class Column {
+        /**
+         * Returns the value at a given ordinal.
+         */
+        abstract Object get(int ordinal);
+    }
+
+    /**
+     * Column whose values are all integers.
+     */
+    private static class IntColumn extends Column {
+        private final int[] values;
+
+        IntColumn(int[] values) {
+            this.values = values;
+        }
+
+        Object get(int ordinal) {
+            return values[ordinal];
+        }
+    }
+
+    /**
+     * Column whose values are codes into a dictionary of distinct values.
+     */
+    private static class DictionaryColumn extends Column {
+        private final int[] codes;
+        private final Object[] dictionary;
+
+        DictionaryColumn(int[] codes, Object[] dictionary) {
+            this.codes = codes;
+            this.dictionary = dictionary;
+        }
+
+        Object get(int ordinal) {
+            return dictionary[codes[ordinal]];
+        }
+    }
+
+    /**
+     * Builds a {@link Column}. Values are held in an <code>int</code> array
+     * until the first value that is not an {@link Integer}; then the values
+     * are converted to dictionary codes.
+     */
+    private static class ColumnBuilder {
+        private int[] values = new int[16];
+        private int size;
+        private Map<Object, Integer> codes;
+        private List<Object> dictionary;
+
+        void add(Object value) {
+            if (codes == null) {
+                if (value instanceof Integer) {
+                    append((Integer) value);
+                    return;
+                }
+                codes = new HashMap<Object, Integer>();
+                dictionary = new ArrayList<Object>();
+                for (int i = 0; i < size; i++) {
+                    values[i] = code(values[i]);
+                }
+            }
+            append(code(value));
+        }
+
+        private int code(Object value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.add(value);
+                codes.put(value, code);
+            }
+            return code;
+        }
+
+        private void append(int value) {
+            if (size == values.length) {
+                values = grow(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        Column build() {
+            final int[] trimmed = grow(values, size);
+            return codes == null
+                ? new IntColumn(trimmed)
+                : new DictionaryColumn(trimmed, dictionary.toArray());
+        }
+    }
+
+    /**
+     * Member created on demand from the columns of a
+     * {@link ColumnarMemberReader}. Its unique name is computed the first time
+     * it is needed.
+     */
+    private static class ColumnarMember extends RolapMemberBase {
+        /**
+         * Ordinal of this member within its level.
+         */
+        final int position;
+
+        ColumnarMember(
+            RolapMember parentMember,
+            RolapLevel level,
+            Object key,
+            int position)
+        {
+            super(parentMember, level, key);
+            this.position = position;
+            setOrdinal(position);
+        }
+
+        protected void setUniqueName(Object key) {
+            // Do nothing; the unique name is computed by getUniqueName.
+        }
+
+        public String getUniqueName() {
+            if (uniqueName == null) {
+                final Object name = getPropertyValue(Property.NAME.name);
+                super.setUniqueName(name == null ? getKey() : name);
+            }
+            return uniqueName;
+        }
+    }
+}
+
+// End ColumnarMemberReader.java
@@ -18,6 +18,9 @@ import mondrian.rolap.cache.SegmentCacheIndex;
 import mondrian.rolap.cache.SegmentCacheIndexImpl;
 import mondrian.server.Execution;
 import mondrian.server.Locus;
+import mondrian.server.Statement;
+import mondrian.server.monitor.CellCacheEvent;
+import mondrian.server.monitor.CellCacheRollupPlanEvent;
 import mondrian.spi.*;
 import mondrian.util.*;
 
@@ -170,6 +173,29 @@ public class FastBatchingCellReader implements CellReader {
         }
     }
 
+    /**
+     * Moves the cell requests, statistics and pinned segments of another
+     * reader into this reader.
+     *
+     * <p>Used when cells are evaluated in parallel. Each worker thread records
+     * requests in its own reader, and when all workers have finished, the
+     * requests are merged into the statement's reader so that they are
+     * loaded in a single phase.
+     *
+     * @param reader Reader used by a worker thread
+     */
+    void merge(FastBatchingCellReader reader) {
+        assert reader != this;
+        missCount += reader.missCount;
+        hitCount += reader.hitCount;
+        pendingCount += reader.pendingCount;
+        dirty |= reader.dirty;
+        cellRequests.addAll(reader.cellRequests);
+        ((AggregationManager.PinSetImpl) pinnedSegments).addAll(
+            (AggregationManager.PinSetImpl) reader.pinnedSegments);
+        reader.cellRequests.clear();
+    }
+
     /**
      * Returns whether this reader has told a lie. This is the case if there
      * are pending batches to load or if {@link #setDirty(boolean)} has been
@@ -231,13 +257,7 @@ public class FastBatchingCellReader implements CellReader {
 
         for (int iteration = 0;; ++iteration) {
             final BatchLoader.LoadBatchResponse response =
-                cacheMgr.execute(
-                    new BatchLoader.LoadBatchCommand(
-                        Locus.peek(),
-                        cacheMgr,
-                        getDialect(),
-                        cube,
-                        Collections.unmodifiableList(cellRequests1)));
+                loadBatch(cellRequests1);
 
             int failureCount = 0;
 
@@ -326,6 +346,7 @@ public class FastBatchingCellReader implements CellReader {
                 if (!MondrianProperties.instance().DisableCaching.get()) {
                     final Locus locus = Locus.peek();
                     cacheMgr.execute(
+                        segmentWithData.getStar(),
                         new SegmentCacheManager.Command<Void>() {
                             public Void call() throws Exception {
                                 SegmentCacheIndex index =
@@ -438,6 +459,67 @@ public class FastBatchingCellReader implements CellReader {
         return true;
     }
 
+    /**
+     * Asks the cache manager which segments need to be loaded to satisfy a
+     * list of cell requests.
+     *
+     * <p>Each star's index is owned by one of the cache manager's actors.
+     * The requests are partitioned by actor, each actor processes its
+     * partition, and the responses are combined.</p>
+     *
+     * @param cellRequests Cell requests
+     * @return Combined response
+     */
+    private BatchLoader.LoadBatchResponse loadBatch(
+        List<CellRequest> cellRequests)
+    {
+        final Map<Integer, List<CellRequest>> requestsByActor =
+            new LinkedHashMap<Integer, List<CellRequest>>();
+        final Map<Integer, RolapStar> starByActor =
+            new HashMap<Integer, RolapStar>();
+        for (CellRequest cellRequest : cellRequests) {
+            final RolapStar star = cellRequest.getMeasure().getStar();
+            final Integer ordinal = cacheMgr.getActorOrdinal(star);
+            List<CellRequest> list = requestsByActor.get(ordinal);
+            if (list == null) {
+                list = new ArrayList<CellRequest>();
+                requestsByActor.put(ordinal, list);
+                starByActor.put(ordinal, star);
+            }
+            list.add(cellRequest);
+        }
+        BatchLoader.LoadBatchResponse response = null;
+        for (Map.Entry<Integer, List<CellRequest>> entry
+            : requestsByActor.entrySet())
+        {
+            final BatchLoader.LoadBatchResponse response1 =
+                cacheMgr.execute(
+                    starByActor.get(entry.getKey()),
+                    new BatchLoader.LoadBatchCommand(
+                        Locus.peek(),
+                        cacheMgr,
+                        getDialect(),
+                        cube,
+                        Collections.unmodifiableList(entry.getValue())));
+            response =
+                response == null
+                    ? response1
+                    : response.merge(response1);
+        }
+        if (response == null) {
+            // No requests. Let an actor build an empty response.
+            response =
+                cacheMgr.execute(
+                    new BatchLoader.LoadBatchCommand(
+                        Locus.peek(),
+                        cacheMgr,
+                        getDialect(),
+                        cube,
+                        Collections.<CellRequest>emptyList()));
+        }
+        return response;
+    }
+
     /**
      * Finds a segment-list among a list of candidate segment-lists
      * for which the bodies of all segments are in cache. Returns a map
@@ -519,7 +601,8 @@ public class FastBatchingCellReader implements CellReader {
 /**
  * Context for processing a request to the cache manager for segments matching a
  * collection of cell requests. All methods except the constructor are executed
- * by the cache manager's dedicated thread.
+ * by the thread of the cache manager actor that owns the stars of those
+ * requests.
  */
 class BatchLoader {
     private static final Logger LOGGER =
@@ -700,10 +783,17 @@ class BatchLoader {
                         star,
                         key.getCompoundPredicateList()));
             if (!rollup.isEmpty()) {
+                // Weigh the rollup against SQL on an aggregate table. The
+                // planner also sorts the candidates, cheapest first.
+                final RollupPlanner.Plan plan =
+                    planRollup(request, key, rollup);
+                if (!plan.isRollup()) {
+                    return false;
+                }
                 rollups.add(
                     new RollupInfo(
                         request,
-                        rollup));
+                        plan.candidates));
                 rollupBitmaps.add(request.getConstrainedColumnsBitKey());
                 converterMap.put(
                     SegmentCacheIndexImpl.makeConverterKey(request, key),
@@ -716,6 +806,63 @@ class BatchLoader {
         return false;
     }
 
+    /**
+     * Estimates the cost of rolling up each candidate set of segments, and
+     * compares it with the cost of SQL. Notifies the monitor of the decision.
+     */
+    private RollupPlanner.Plan planRollup(
+        CellRequest request,
+        AggregationKey key,
+        List<List<SegmentHeader>> candidates)
+    {
+        final RolapStar.Measure measure = request.getMeasure();
+        final BitKey levelBitKey = request.getConstrainedColumnsBitKey();
+        final BitKey measureBitKey = levelBitKey.emptyCopy();
+        measureBitKey.set(measure.getBitPosition());
+        final Set<String> keepColumns = new HashSet<String>();
+        for (RolapStar.Column column : request.getConstrainedColumns()) {
+            keepColumns.add(column.getExpression().getGenericExpression());
+        }
+        final List<StarPredicate> compoundPredicateList =
+            key.getCompoundPredicateList();
+        final RollupPlanner.Plan plan =
+            RollupPlanner.plan(
+                measure.getStar(),
+                levelBitKey,
+                measureBitKey,
+                compoundPredicateList != null
+                    && !compoundPredicateList.isEmpty(),
+                keepColumns,
+                candidates);
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(
+                "Rollup plan for " + measure.getName() + " "
+                + levelBitKey + ": " + plan);
+        }
+        if (locus.execution != null) {
+            final Execution execution = locus.execution;
+            final Statement statement =
+                execution.getMondrianStatement();
+            final RolapConnection connection =
+                statement.getMondrianConnection();
+            final MondrianServer server = connection.getServer();
+            server.getMonitor().sendEvent(
+                new CellCacheRollupPlanEvent(
+                    System.currentTimeMillis(),
+                    server.getId(),
+                    connection.getId(),
+                    statement.getId(),
+                    execution.getId(),
+                    plan.rollupCost,
+                    plan.sqlCost,
+                    plan.aggTableName,
+                    plan.isRollup()
+                        ? CellCacheEvent.Source.ROLLUP
+                        : CellCacheEvent.Source.SQL));
+        }
+        return plan;
+    }
+
     private void loadFromSql(
         final CellRequest request,
         final AggregationKey key,
@@ -1045,6 +1192,36 @@ class BatchLoader {
             this.futures = futures;
         }
 
+        /**
+         * Combines this response with the response to another partition of
+         * the same cell requests.
+         *
+         * @param other Response to other partition
+         * @return Combined response
+         */
+        LoadBatchResponse merge(LoadBatchResponse other) {
+            final Map<List, SegmentBuilder.SegmentConverter> converterMap =
+                new HashMap<List, SegmentBuilder.SegmentConverter>(
+                    this.converterMap);
+            converterMap.putAll(other.converterMap);
+            final Map<SegmentHeader, Future<SegmentBody>> futures =
+                new HashMap<SegmentHeader, Future<SegmentBody>>(this.futures);
+            futures.putAll(other.futures);
+            return new LoadBatchResponse(
+                concat(cellRequests, other.cellRequests),
+                concat(cacheSegments, other.cacheSegments),
+                concat(rollups, other.rollups),
+                converterMap,
+                concat(sqlSegmentMapFutures, other.sqlSegmentMapFutures),
+                futures);
+        }
+
+        private static <E> List<E> concat(List<E> list0, List<E> list1) {
+            final List<E> list = new ArrayList<E>(list0);
+            list.addAll(list1);
+            return list;
+        }
+
         public SegmentWithData convert(
             SegmentHeader header,
             SegmentBody body)
@@ -1202,6 +1379,10 @@ class BatchLoader {
                 }
             }
 
+            // Sketch measures group by their operand, so load them
+            // separately, one query per operand, and without grouping sets.
+            loadSketchMeasures(predicates, segmentFutures);
+
             final int measureCount = measuresList.size();
             if (measureCount > 0) {
                 AggregationManager.loadAggregation(
@@ -1265,6 +1446,58 @@ class BatchLoader {
             }
         }
 
+        /**
+         * Loads measures whose aggregator is a sketch (such as
+         * approx-distinct-count), and removes them from the list of measures.
+         *
+         * <p>The query for a sketch measure returns each distinct value of the
+         * operand in each cell, so cannot contain other measures, or measures
+         * over other operands. Measures with the same operand are loaded
+         * together.</p>
+         */
+        private void loadSketchMeasures(
+            StarColumnPredicate[] predicates,
+            List<Future<Map<Segment, SegmentWithData>>> segmentFutures)
+        {
+            while (true) {
+                RolapStar.Measure sketchMeasure = null;
+                for (RolapStar.Measure measure : measuresList) {
+                    if (measure.getAggregator().isSketch()) {
+                        sketchMeasure = measure;
+                        break;
+                    }
+                }
+                if (sketchMeasure == null) {
+                    break;
+                }
+                final String expr =
+                    sketchMeasure.getExpression().getGenericExpression();
+                final List<RolapStar.Measure> sketchMeasuresList =
+                    new ArrayList<RolapStar.Measure>();
+                for (int i = 0; i < measuresList.size();) {
+                    final RolapStar.Measure measure = measuresList.get(i);
+                    if (measure.getAggregator().isSketch()
+                        && measure.getExpression().getGenericExpression()
+                        .equals(expr))
+                    {
+                        measuresList.remove(i);
+                        sketchMeasuresList.add(measure);
+                    } else {
+                        i++;
+                    }
+                }
+                AggregationManager.loadAggregation(
+                    cacheMgr,
+                    cellRequestCount,
+                    sketchMeasuresList,
+                    columns,
+                    batchKey,
+                    predicates,
+                    new GroupingSetsCollector(false),
+                    segmentFutures);
+            }
+        }
+
         private StarColumnPredicate[] initPredicates() {
             StarColumnPredicate[] predicates =
                 new StarColumnPredicate[columns.length];
@@ -75,7 +75,7 @@ public class HighCardSqlTupleReader extends SqlTupleReader {
                 String sql = pair.left;
                 List<SqlStatement.Type> types = pair.right;
                 stmt = RolapUtil.executeQuery(
-                    dataSource, sql, types, maxRows, 0,
+                    dataSource, getDialect(dataSource), sql, types, maxRows, 0,
                     new SqlStatement.StatementLocus(
                         Locus.peek().execution,
                         "HighCardSqlTupleReader.readTuples " + partialTargets,
@@ -12,23 +12,37 @@
 package mondrian.rolap;
 
 import mondrian.olap.Level;
+import mondrian.olap.MondrianProperties;
 import mondrian.olap.Util;
+import mondrian.rolap.cache.ConcurrentSmartCache;
 import mondrian.rolap.cache.SmartCache;
-import mondrian.rolap.cache.SoftSmartCache;
 import mondrian.rolap.sql.MemberChildrenConstraint;
 import mondrian.rolap.sql.TupleConstraint;
 import mondrian.spi.DataSourceChangeListener;
 import mondrian.util.Pair;
 
+import org.apache.log4j.Logger;
+
 import java.util.*;
 import java.util.Map.Entry;
 
 /**
  * Encapsulation of member caching.
  *
+ * <p>The caches allow concurrent access. The size of the caches of lists of
+ * members is limited by {@link MondrianProperties#MemberCacheSize}. The
+ * cache of members by key has no size limit; a member leaves it only when
+ * the garbage collector reclaims it, which cannot happen while a cached
+ * list still holds it. Otherwise a member could be evicted while a list of
+ * children held it, and a later lookup would create a second instance of
+ * it. Call {@link #getStatistics()} to find out how well the caches are
+ * working.
+ *
  * @author Will Gorman
  */
 public class MemberCacheHelper implements MemberCache {
+    private static final Logger LOGGER =
+        Logger.getLogger(MemberCacheHelper.class);
 
     private final SqlConstraintFactory sqlConstraintFactory =
         SqlConstraintFactory.instance();
@@ -37,7 +51,7 @@ public class MemberCacheHelper implements MemberCache {
     final SmartMemberListCache<RolapMember, List<RolapMember>>
         mapMemberToChildren;
 
-    /** a cache for all members to ensure uniqueness */
+    /** a cache for all members to ensure uniqueness; never evicts */
     SmartCache<Object, RolapMember> mapKeyToMember;
     RolapHierarchy rolapHierarchy;
     DataSourceChangeListener changeListener;
@@ -55,8 +69,7 @@ public class MemberCacheHelper implements MemberCache {
         this.rolapHierarchy = rolapHierarchy;
         this.mapLevelToMembers =
             new SmartMemberListCache<RolapLevel, List<RolapMember>>();
-        this.mapKeyToMember =
-            new SoftSmartCache<Object, RolapMember>();
+        this.mapKeyToMember = new ConcurrentSmartCache<Object, RolapMember>(0);
         this.mapMemberToChildren =
             new SmartMemberListCache<RolapMember, List<RolapMember>>();
 
@@ -94,10 +107,15 @@ public class MemberCacheHelper implements MemberCache {
         return getMember(key, true);
     }
 
-    public synchronized void checkCacheStatus() {
-        if (changeListener != null) {
-            if (changeListener.isHierarchyChanged(rolapHierarchy)) {
-                flushCache();
+    public void checkCacheStatus() {
+        // Only lock if there is a listener; most hierarchies have none, and
+        // this method is called on every lookup.
+        final DataSourceChangeListener listener = changeListener;
+        if (listener != null) {
+            synchronized (this) {
+                if (listener.isHierarchyChanged(rolapHierarchy)) {
+                    flushCache();
+                }
             }
         }
     }
@@ -158,6 +176,11 @@ public class MemberCacheHelper implements MemberCache {
 
     // Must sync here because we want the three maps to be modified together.
     public synchronized void flushCache() {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(
+                "Flushing member cache of " + rolapHierarchy
+                + "; " + getStatistics());
+        }
         mapMemberToChildren.clear();
         mapKeyToMember.clear();
         mapLevelToMembers.clear();
@@ -167,6 +190,31 @@ public class MemberCacheHelper implements MemberCache {
         }
     }
 
+    /**
+     * Returns statistics about the use of this helper's caches, summed over
+     * the caches of members by key, children and level members. Caches
+     * that do not keep statistics are ignored.
+     *
+     * @return Statistics
+     */
+    public ConcurrentSmartCache.Statistics getStatistics() {
+        ConcurrentSmartCache.Statistics statistics =
+            new ConcurrentSmartCache.Statistics(0, 0, 0, 0);
+        for (SmartCache<?, ?> cache
+            : Arrays.<SmartCache<?, ?>>asList(
+                mapKeyToMember,
+                mapMemberToChildren.getCache(),
+                mapLevelToMembers.getCache()))
+        {
+            if (cache instanceof ConcurrentSmartCache) {
+                statistics =
+                    statistics.plus(
+                        ((ConcurrentSmartCache<?, ?>) cache).getStatistics());
+            }
+        }
+        return statistics;
+    }
+
     public DataSourceChangeListener getChangeListener() {
         return changeListener;
     }
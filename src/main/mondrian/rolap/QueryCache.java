@@ -0,0 +1,187 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap;
+
+import mondrian.olap.*;
+import mondrian.server.Statement;
+
+import java.util.*;
+
+/**
+ * Cache of queries that have been parsed, validated and compiled, so that a
+ * statement that executes the same MDX as a previous statement does not need
+ * to parse and compile it again.
+ *
+ * <p>Each schema has a cache (see {@link RolapSchema#getQueryCache()}), so
+ * the key is the MDX text and the properties of the connection that affect
+ * how the query is compiled: its role and its locale (the locale is built
+ * into compiled calls to functions such as <code>Format</code>). A query is
+ * bound
+ * to the statement that executes it, and holds per-execution state such as
+ * parameter values, so it can only be used by one statement at a time. The
+ * cache therefore holds idle queries: {@link #get} removes a query from the
+ * cache and binds it to a statement; {@link #put} returns a query to the
+ * cache when the statement has finished with it.</p>
+ *
+ * <p>A query that references a connection property as a parameter depends
+ * on the connection that created it, and is never cached.</p>
+ *
+ * <p>The number of idle queries is limited by
+ * {@link MondrianProperties#QueryCacheSize}; if it is exceeded, queries of
+ * the least recently used MDX are discarded. If the property is 0, the cache
+ * is disabled.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+public class QueryCache {
+    /**
+     * Idle queries, by key, in order of last use.
+     */
+    private final LinkedHashMap<Key, List<Query>> map =
+        new LinkedHashMap<Key, List<Query>>(16, 0.75f, true);
+
+    /**
+     * Total number of idle queries.
+     */
+    private int size;
+
+    /**
+     * Creates a QueryCache.
+     */
+    QueryCache() {
+    }
+
+    /**
+     * Returns a compiled query for a given MDX string, or null if there is
+     * no idle query in the cache. The query is removed from the cache, and
+     * bound to the statement.
+     *
+     * @param statement Statement that will execute the query
+     * @param mdx MDX string
+     * @return Query bound to the statement, or null
+     */
+    public Query get(Statement statement, String mdx) {
+        final Key key = new Key(mdx, statement.getMondrianConnection());
+        final Query query;
+        synchronized (this) {
+            final List<Query> queries = map.get(key);
+            if (queries == null) {
+                return null;
+            }
+            query = queries.remove(queries.size() - 1);
+            if (queries.isEmpty()) {
+                map.remove(key);
+            }
+            --size;
+        }
+        query.rebind(statement);
+        return query;
+    }
+
+    /**
+     * Marks a newly parsed query as one that can be returned to this cache
+     * by {@link #put} when its statement has finished with it. Does nothing
+     * if the cache is disabled or if the query cannot be cached.
+     *
+     * @param query Query
+     * @param mdx MDX string from which the query was parsed
+     */
+    public void register(Query query, String mdx) {
+        if (MondrianProperties.instance().QueryCacheSize.get() <= 0) {
+            return;
+        }
+        for (Parameter parameter : query.getParameters()) {
+            if (parameter.getScope() == Parameter.Scope.Connection) {
+                return;
+            }
+        }
+        query.setCacheKey(new Key(mdx, query.getConnection()));
+    }
+
+    /**
+     * Returns a query to the cache, so that another statement can execute
+     * it. Does nothing if the query was not {@link #register registered}.
+     *
+     * <p>The caller must not use the query afterwards.</p>
+     *
+     * @param query Query
+     */
+    public void put(Query query) {
+        final Key key = (Key) query.getCacheKey();
+        if (key == null) {
+            return;
+        }
+        final int maxSize =
+            MondrianProperties.instance().QueryCacheSize.get();
+        synchronized (this) {
+            List<Query> queries = map.get(key);
+            if (queries == null) {
+                queries = new ArrayList<Query>(1);
+                map.put(key, queries);
+            }
+            queries.add(query);
+            ++size;
+            final Iterator<List<Query>> iterator = map.values().iterator();
+            while (size > maxSize && iterator.hasNext()) {
+                size -= iterator.next().size();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all queries from the cache.
+     */
+    public synchronized void clear() {
+        map.clear();
+        size = 0;
+    }
+
+    /**
+     * Returns the number of idle queries in the cache.
+     *
+     * @return Number of queries
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Key of a query in the cache: the MDX text, and the properties of the
+     * connection that affect how it is compiled.
+     */
+    private static class Key {
+        private final String mdx;
+        private final Role role;
+        private final Locale locale;
+
+        Key(String mdx, Connection connection) {
+            this.mdx = mdx;
+            this.role = connection.getRole();
+            this.locale = connection.getLocale();
+        }
+
+        public int hashCode() {
+            return Util.hash(Util.hash(mdx.hashCode(), role), locale);
+        }
+
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key that = (Key) obj;
+            return mdx.equals(that.mdx)
+                && Util.equals(role, that.role)
+                && Util.equals(locale, that.locale);
+        }
+    }
+}
+
+// End QueryCache.java
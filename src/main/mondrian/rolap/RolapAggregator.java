@@ -17,7 +17,9 @@ import mondrian.olap.fun.AggregateFunDef;
 import mondrian.olap.fun.FunUtil;
 import mondrian.spi.Dialect;
 import mondrian.spi.Dialect.Datatype;
+import mondrian.util.HyperLogLog;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -243,12 +245,57 @@ public abstract class RolapAggregator
             };
         };
 
+    /**
+     * Aggregator that estimates the number of distinct values, to within
+     * {@link MondrianProperties#ApproxDistinctCountError}.
+     *
+     * <p>Each cell of a segment holds a {@link HyperLogLog} sketch of the
+     * values of the operand. Unlike {@link #DistinctCount}, sketches can be
+     * merged, so cells can be rolled up in memory from cached segments.</p>
+     */
+    public static final RolapAggregator ApproxDistinctCount =
+        new RolapAggregator("approx-distinct-count", index++, false) {
+            public Object aggregate(
+                Evaluator evaluator, TupleList members, Calc exp)
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            public String getExpression(String operand) {
+                // The SQL query returns each distinct value of the operand;
+                // the sketch is built in memory.
+                return operand;
+            }
+
+            public boolean supportsFastAggregates(
+                mondrian.spi.Dialect.Datatype dataType)
+            {
+                return true;
+            }
+
+            public Object aggregate(List<Object> rawData, Datatype datatype) {
+                final List<Object> sketches = new ArrayList<Object>();
+                for (Object data : rawData) {
+                    if (data != null) {
+                        sketches.add(data);
+                    }
+                }
+                return HyperLogLog.union(sketches);
+            }
+
+            public boolean isSketch() {
+                return true;
+            }
+        };
+
     /**
      * List of all valid aggregation operators.
      */
     public static final EnumeratedValues<RolapAggregator> enumeration =
         new EnumeratedValues<RolapAggregator>(
-            new RolapAggregator[] {Sum, Count, Min, Max, Avg, DistinctCount});
+            new RolapAggregator[] {
+                Sum, Count, Min, Max, Avg, DistinctCount, ApproxDistinctCount
+            });
 
     /**
      * This is the base class for implementing aggregators over sum and
@@ -410,6 +457,16 @@ public abstract class RolapAggregator
         return this;
     }
 
+    /**
+     * Returns whether the cells of a segment for this aggregator hold
+     * sketches (such as {@link HyperLogLog}) rather than values. The SQL
+     * query returns each distinct value of the operand, and the sketches are
+     * built as the rows are read.
+     */
+    public boolean isSketch() {
+        return false;
+    }
+
     /**
      * By default, fast rollup is not supported for all classes.
      */
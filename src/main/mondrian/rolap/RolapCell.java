@@ -486,6 +486,7 @@ public class RolapCell implements Cell {
         return
             RolapUtil.executeQuery(
                 connection.getDataSource(),
+                dialect,
                 sql,
                 null,
                 maxRowCount,
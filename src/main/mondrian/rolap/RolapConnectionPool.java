@@ -11,11 +11,13 @@
 */
 package mondrian.rolap;
 
+import mondrian.olap.MondrianProperties;
 import mondrian.olap.Util;
 
 import org.apache.commons.dbcp.*;
+import org.apache.commons.pool.KeyedObjectPoolFactory;
 import org.apache.commons.pool.ObjectPool;
-import org.apache.commons.pool.impl.GenericObjectPool;
+import org.apache.commons.pool.impl.*;
 
 import java.util.*;
 import javax.sql.DataSource;
@@ -204,6 +206,19 @@ class RolapConnectionPool {
             // Flag to log stack traces for application code which abandoned a
             // Statement or Connection
             abandonedConfig.setLogAbandoned(true);
+            // Pool prepared statements, up to a fixed number per connection.
+            final int statementCacheSize =
+                MondrianProperties.instance().PreparedStatementCacheSize.get();
+            final KeyedObjectPoolFactory statementPoolFactory =
+                statementCacheSize <= 0
+                    ? null
+                    : new GenericKeyedObjectPoolFactory(
+                        null, // KeyedPoolableObjectFactory, set by DBCP
+                        -1, // max active per statement; no limit
+                        GenericKeyedObjectPool.WHEN_EXHAUSTED_FAIL,
+                        0, // max wait
+                        1, // max idle per statement
+                        statementCacheSize); // max statements in total
             PoolableConnectionFactory poolableConnectionFactory =
                 new PoolableConnectionFactory(
                     // the connection factory
@@ -212,7 +227,7 @@ class RolapConnectionPool {
                     connectionPool,
                     // statement pool factory for pooling prepared statements,
                     // or null for no pooling
-                    null,
+                    statementPoolFactory,
                     // validation query (must return at least 1 row e.g. Oracle:
                     // select count(*) from dual) to test connection, can be
                     // null
@@ -19,6 +19,7 @@ import mondrian.util.UnsupportedList;
 
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 /**
  * Hierarchy that is associated with a specific Cube.
@@ -510,9 +511,9 @@ public class RolapCubeHierarchy extends RolapHierarchy {
      *  member reader wrapper - uses existing member reader,
      *  but wraps and caches all intermediate members.
      *
-     *  <p>Synchronization. Most synchronization takes place within
-     * SmartMemberReader.  All synchronization is done on the cacheHelper
-     * object.
+     *  <p>Synchronization. As in SmartMemberReader, lookups do not lock,
+     * and members are read outside any lock. Cube members are registered in
+     * a short section synchronized on the cacheHelper object.
       */
     public class CacheRolapCubeHierarchyMemberReader
         extends SmartMemberReader
@@ -649,19 +650,17 @@ public class RolapCubeHierarchy extends RolapHierarchy {
                 cacheList.add(child);
             }
 
-            synchronized (cacheHelper) {
-                for (Map.Entry<RolapMember, List<RolapMember>> entry
-                    : tempMap.entrySet())
+            for (Map.Entry<RolapMember, List<RolapMember>> entry
+                : tempMap.entrySet())
+            {
+                final RolapMember member = entry.getKey();
+                if (rolapCubeCacheHelper.getChildrenFromCache(
+                        member, constraint) == null)
                 {
-                    final RolapMember member = entry.getKey();
-                    if (rolapCubeCacheHelper.getChildrenFromCache(
-                            member, constraint) == null)
-                    {
-                        final List<RolapMember> cacheList = entry.getValue();
-                        if (enableCache) {
-                            rolapCubeCacheHelper.putChildren(
-                                member, constraint, cacheList);
-                        }
+                    final List<RolapMember> cacheList = entry.getValue();
+                    if (enableCache) {
+                        rolapCubeCacheHelper.putChildren(
+                            member, constraint, cacheList);
                     }
                 }
             }
@@ -672,83 +671,102 @@ public class RolapCubeHierarchy extends RolapHierarchy {
             List<RolapMember> children,
             MemberChildrenConstraint constraint)
         {
-            synchronized (cacheHelper) {
-                checkCacheStatus();
-
-                List<RolapMember> missed = new ArrayList<RolapMember>();
-                for (RolapMember parentMember : parentMembers) {
-                    List<RolapMember> list =
-                        rolapCubeCacheHelper.getChildrenFromCache(
-                            parentMember, constraint);
-                    if (list == null) {
-                        // the null member has no children
-                        if (!parentMember.isNull()) {
-                            missed.add(parentMember);
-                        }
-                    } else {
-                        children.addAll(list);
+            checkCacheStatus();
+
+            List<RolapMember> missed = new ArrayList<RolapMember>();
+            for (RolapMember parentMember : parentMembers) {
+                List<RolapMember> list =
+                    rolapCubeCacheHelper.getChildrenFromCache(
+                        parentMember, constraint);
+                if (list == null) {
+                    // the null member has no children
+                    if (!parentMember.isNull()) {
+                        missed.add(parentMember);
                     }
-                }
-                if (missed.size() > 0) {
-                    readMemberChildren(missed, children, constraint);
+                } else {
+                    children.addAll(list);
                 }
             }
+            if (missed.size() > 0) {
+                loadMemberChildren(missed, children, constraint);
+            }
             return Util.toNullValuesMap(children);
         }
 
 
         public List<RolapMember> getMembersInLevel(
+            final RolapLevel level,
+            final TupleConstraint constraint)
+        {
+            checkCacheStatus();
+
+            List<RolapMember> members =
+                rolapCubeCacheHelper.getLevelMembersFromCache(
+                    level, constraint);
+            if (members != null) {
+                return members;
+            }
+            return load(
+                loadKey(level, constraint),
+                new Callable<List<RolapMember>>() {
+                    public List<RolapMember> call() {
+                        return readMembersInLevel(level, constraint);
+                    }
+                });
+        }
+
+        /**
+         * Reads the members of a level into the cache, unless another
+         * thread has done so meanwhile.
+         */
+        private List<RolapMember> readMembersInLevel(
             RolapLevel level,
             TupleConstraint constraint)
         {
-            synchronized (cacheHelper) {
-                checkCacheStatus();
+            List<RolapMember> members =
+                rolapCubeCacheHelper.getLevelMembersFromCache(
+                    level, constraint);
+            if (members != null) {
+                return members;
+            }
 
-                List<RolapMember> members =
-                    rolapCubeCacheHelper.getLevelMembersFromCache(
+            // if a join is required, we need to pass in the RolapCubeLevel
+            // vs. the regular level
+            boolean joinReq =
+                (constraint instanceof SqlContextConstraint);
+            List<RolapMember> list;
+            final RolapCubeLevel cubeLevel = (RolapCubeLevel) level;
+            if (!joinReq) {
+                list =
+                    rolapHierarchy.getMemberReader().getMembersInLevel(
+                        cubeLevel.getRolapLevel(), constraint);
+            } else {
+                list =
+                    super.getMembersInLevel(
                         level, constraint);
-                if (members != null) {
-                    return members;
-                }
-
-                // if a join is required, we need to pass in the RolapCubeLevel
-                // vs. the regular level
-                boolean joinReq =
-                    (constraint instanceof SqlContextConstraint);
-                List<RolapMember> list;
-                final RolapCubeLevel cubeLevel = (RolapCubeLevel) level;
-                if (!joinReq) {
-                    list =
-                        rolapHierarchy.getMemberReader().getMembersInLevel(
-                            cubeLevel.getRolapLevel(), constraint);
+            }
+            List<RolapMember> newlist = new ArrayList<RolapMember>();
+            for (RolapMember member : list) {
+                // note that there is a special case for the all member
+
+                // REVIEW: disabled, to see what happens. if this code is
+                // for performance, we should check level.isAll at the top
+                // of the method; if it is for correctness, leave the code
+                // in
+                if (false && member == rolapHierarchy.getAllMember()) {
+                    newlist.add(getAllMember());
                 } else {
-                    list =
-                        super.getMembersInLevel(
-                            level, constraint);
+                    RolapCubeMember cubeMember =
+                        lookupCubeMemberWithParent(
+                            member,
+                            cubeLevel);
+                    newlist.add(cubeMember);
                 }
-                List<RolapMember> newlist = new ArrayList<RolapMember>();
-                for (RolapMember member : list) {
-                    // note that there is a special case for the all member
-
-                    // REVIEW: disabled, to see what happens. if this code is
-                    // for performance, we should check level.isAll at the top
-                    // of the method; if it is for correctness, leave the code
-                    // in
-                    if (false && member == rolapHierarchy.getAllMember()) {
-                        newlist.add(getAllMember());
-                    } else {
-                        RolapCubeMember cubeMember =
-                            lookupCubeMemberWithParent(
-                                member,
-                                cubeLevel);
-                        newlist.add(cubeMember);
-                    }
-                }
-                rolapCubeCacheHelper.putLevelMembersInCache(
-                    level, constraint, newlist);
-
-                return newlist;
             }
+            rolapCubeCacheHelper.putLevelMembersInCache(
+                level, constraint, newlist);
+
+            return newlist;
         }
 
         private RolapCubeMember lookupCubeMemberWithParent(
@@ -778,12 +796,10 @@ public class RolapCubeHierarchy extends RolapHierarchy {
         public RolapMember getMemberByKey(
             RolapLevel level, List<Comparable> keyValues)
         {
-            synchronized (cacheHelper) {
-                final RolapMember member =
-                    super.getMemberByKey(level, keyValues);
-                return createAncestorMembers(
-                    this, (RolapCubeLevel) level, member);
-            }
+            final RolapMember member =
+                super.getMemberByKey(level, keyValues);
+            return createAncestorMembers(
+                this, (RolapCubeLevel) level, member);
         }
 
         public RolapCubeMember lookupCubeMember(
@@ -791,25 +807,30 @@ public class RolapCubeHierarchy extends RolapHierarchy {
             RolapMember member,
             RolapCubeLevel level)
         {
-            synchronized (cacheHelper) {
-                if (member.getKey() == RolapUtil.sqlNullValue) {
-                    if (member.isAll()) {
-                        return getAllMember();
-                    }
+            if (member.getKey() == RolapUtil.sqlNullValue) {
+                if (member.isAll()) {
+                    return getAllMember();
                 }
+            }
 
-                RolapCubeMember cubeMember;
-                if (enableCache) {
-                    Object key =
-                        rolapCubeCacheHelper.makeKey(parent, member.getKey());
-                    cubeMember = (RolapCubeMember)
-                        rolapCubeCacheHelper.getMember(key, false);
-                    if (cubeMember == null) {
-                        cubeMember = new RolapCubeMember(parent, member, level);
-                        rolapCubeCacheHelper.putMember(key, cubeMember);
-                    }
-                } else {
+            if (!enableCache) {
+                return new RolapCubeMember(parent, member, level);
+            }
+            Object key =
+                rolapCubeCacheHelper.makeKey(parent, member.getKey());
+            RolapCubeMember cubeMember = (RolapCubeMember)
+                rolapCubeCacheHelper.getMember(key, false);
+            if (cubeMember != null) {
+                return cubeMember;
+            }
+            // Look again under the lock, so that concurrent readers do not
+            // create the same member twice.
+            synchronized (cacheHelper) {
+                cubeMember = (RolapCubeMember)
+                    rolapCubeCacheHelper.getMember(key, false);
+                if (cubeMember == null) {
                     cubeMember = new RolapCubeMember(parent, member, level);
+                    rolapCubeCacheHelper.putMember(key, cubeMember);
                 }
                 return cubeMember;
             }
@@ -820,6 +841,10 @@ public class RolapCubeHierarchy extends RolapHierarchy {
         }
 
         protected void checkCacheStatus() {
+            // Most hierarchies have no listener; do not lock on every lookup.
+            if (cacheHelper.getChangeListener() == null) {
+                return;
+            }
             synchronized (cacheHelper) {
                 // if necessary, flush all caches:
                 //   - shared SmartMemberReader RolapMember cache
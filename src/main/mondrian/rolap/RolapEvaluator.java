@@ -521,8 +521,7 @@ public class RolapEvaluator implements Evaluator {
         }
         currentMembers[ordinal] = m;
         if (previous.isAll() && !m.isAll() && isNewPosition(ordinal)) {
-            root.nonAllPositions[root.nonAllPositionCount] = ordinal;
-            root.nonAllPositionCount++;
+            root.addNonAllPosition(ordinal);
         }
         if (m.isEvaluated()) {
             addCalculation(m, false);
@@ -559,8 +558,7 @@ public class RolapEvaluator implements Evaluator {
         }
         currentMembers[ordinal] = m;
         if (previous.isAll() && !m.isAll() && isNewPosition(ordinal)) {
-            root.nonAllPositions[root.nonAllPositionCount] = ordinal;
-            root.nonAllPositionCount++;
+            root.addNonAllPosition(ordinal);
         }
         if (m.isEvaluated()) {
             addCalculation(m, false);
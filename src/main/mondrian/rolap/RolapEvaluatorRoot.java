@@ -24,6 +24,10 @@ import java.util.*;
  * <p>Contains the context that does not change as evaluation context is
  * pushed/popped.
  *
+ * <p>If cells are evaluated in parallel, the evaluators of several threads
+ * share the same root; therefore methods that modify its caches are
+ * synchronized.
+ *
  * @author jhyde
  * @since Nov 11, 2008
  */
@@ -137,7 +141,7 @@ class RolapEvaluatorRoot {
      *     result style; ignored if expression is scalar
      * @return compiled expression
      */
-    final Calc getCompiled(
+    final synchronized Calc getCompiled(
         Exp exp,
         boolean scalar,
         ResultStyle resultStyle)
@@ -254,7 +258,7 @@ class RolapEvaluatorRoot {
      * @param result value to be cached
      * @param isValidResult indicate if this result is valid
      */
-    public final void putCacheResult(
+    public final synchronized void putCacheResult(
         Object key,
         Object result,
         boolean isValidResult)
@@ -272,7 +276,7 @@ class RolapEvaluatorRoot {
      * @param key cache key
      * @return cached expression
      */
-    public final Object getCacheResult(Object key) {
+    public final synchronized Object getCacheResult(Object key) {
         Object result = expResultCache.get(key);
         if (result == null) {
             result = tmpExpResultCache.get(key);
@@ -285,13 +289,31 @@ class RolapEvaluatorRoot {
      *
      * @param clearValidResult whether to clear valid expression results
      */
-    public final void clearResultCache(boolean clearValidResult) {
+    public final synchronized void clearResultCache(
+        boolean clearValidResult)
+    {
         if (clearValidResult) {
             expResultCache.clear();
         }
         tmpExpResultCache.clear();
     }
 
+    /**
+     * Records that a hierarchy has been assigned a member other than its
+     * 'all' member, if it has not been recorded already.
+     *
+     * @param ordinal Ordinal of hierarchy in cube
+     */
+    final synchronized void addNonAllPosition(int ordinal) {
+        for (int i = 0; i < nonAllPositionCount; i++) {
+            if (nonAllPositions[i] == ordinal) {
+                return;
+            }
+        }
+        nonAllPositions[nonAllPositionCount] = ordinal;
+        nonAllPositionCount++;
+    }
+
     /**
      * Get query start time.
      *
@@ -158,6 +158,10 @@ public class RolapNativeSql {
             if (measure.isCalculated()) {
                 return null; // ??
             }
+            if (measure.getAggregator().isSketch()) {
+                // Sketches are built in memory; there is no SQL aggregate.
+                return null;
+            }
             if (!saveStoredMeasure(measure)) {
                 return null;
             }
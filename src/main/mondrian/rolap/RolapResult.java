@@ -29,6 +29,7 @@ import mondrian.util.*;
 import org.apache.log4j.Logger;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 
 /**
@@ -61,6 +62,13 @@ public class RolapResult extends ResultBase {
     private final Map<Integer, List<List<Member>>> positionsCurrent =
         new HashMap<Integer, List<List<Member>>>();
 
+    /**
+     * Executor that evaluates cells in parallel; see
+     * {@link MondrianProperties#CellEvaluationThreads}. Created on demand,
+     * shared by all statements, and never shut down.
+     */
+    private static ExecutorService cellExecutor;
+
     /**
      * Creates a RolapResult.
      *
@@ -96,10 +104,7 @@ public class RolapResult extends ResultBase {
         this.batchingReader =
             new FastBatchingCellReader(execution, cube, aggMgr);
 
-        this.cellInfos =
-            (query.axes.length > 4)
-                ? new CellInfoMap(point)
-                : new CellInfoPool(query.axes.length);
+        this.cellInfos = createCellInfoContainer(false);
 
         if (!execute) {
             return;
@@ -447,6 +452,10 @@ public class RolapResult extends ResultBase {
 
             evaluator.restore(savepoint);
 
+            // Now that the axes are known, choose the best container for the
+            // cells.
+            this.cellInfos = createCellInfoContainer(true);
+
             // Get value for each Cell
             final Locus locus = new Locus(execution, null, "Loading cells");
             Locus.push(locus);
@@ -460,8 +469,8 @@ public class RolapResult extends ResultBase {
             // the number of CellInfo's in cellInfos, then calling this
             // may cause the out of memory one is trying to aviod.
             // On the other hand, calling this can reduce the size of
-            // the ObjectPool's internal storage by half (but, of course,
-            // it will not reduce the size of the stored objects themselves).
+            // the hash table's internal storage by half (but, of course,
+            // it will not reduce the size of the stored values themselves).
             // Only call this if there are lots of CellInfo.
             if (this.cellInfos.size() > 10000) {
                 this.cellInfos.trimToSize();
@@ -849,11 +858,18 @@ public class RolapResult extends ResultBase {
         // Compute the cells several times. The first time, use a dummy
         // evaluator which collects requests.
         int count = 0;
+        final int threadCount = getCellEvaluationThreadCount(evaluator, query);
         final int savepoint = evaluator.savepoint();
         while (true) {
             evaluator.setCellReader(batchingReader);
             try {
-                executeStripe(query.axes.length - 1, evaluator, pos);
+                if (threadCount > 1) {
+                    executeStripesInParallel(evaluator, pos, threadCount);
+                } else {
+                    executeStripe(
+                        query.axes.length - 1, evaluator, pos, point,
+                        cellInfos, true);
+                }
             } catch (CellRequestQuantumExceededException e) {
                 // Safe to ignore. Need to call 'phase' and loop again.
                 // Decrement count because it wasn't a recursive formula that
@@ -905,12 +921,19 @@ public class RolapResult extends ResultBase {
      *
      * <p>Does not modify the contents of the evaluator.
      *
+     * <p>Synchronized because, if cells are being evaluated in parallel,
+     * several threads may need to evaluate named sets at the same time, and
+     * each evaluation calls {@link #phase()}, which loads the requests in
+     * this result's shared cell reader. Parallel evaluation therefore does
+     * not speed up named sets; see
+     * {@link MondrianProperties#CellEvaluationThreads}.
+     *
      * @param calc Compiled expression
      * @param slicerEvaluator Evaluation context for slicers
      * @param contextEvaluator Evaluation context (optional)
      * @return Result
      */
-    Object evaluateExp(
+    synchronized Object evaluateExp(
         Calc calc,
         RolapEvaluator slicerEvaluator,
         Evaluator contextEvaluator)
@@ -975,10 +998,232 @@ public class RolapResult extends ResultBase {
         }
     }
 
+    /**
+     * Returns the number of threads with which to evaluate the cells of a
+     * query, or 1 if the cells should be evaluated serially.
+     *
+     * @param evaluator Evaluator
+     * @param query Query
+     * @return Number of threads
+     */
+    private int getCellEvaluationThreadCount(
+        RolapEvaluator evaluator,
+        Query query)
+    {
+        final int threadCount =
+            MondrianProperties.instance().CellEvaluationThreads.get();
+        if (threadCount <= 1
+            || query.axes.length == 0
+            || evaluator.getClass() != RolapEvaluator.class)
+        {
+            // Profiling and dependency-testing evaluators keep state that
+            // cannot be shared between threads.
+            return 1;
+        }
+        long cellCount = 1;
+        for (int i = 0; i < axes.length; i++) {
+            final TupleList tupleList = ((RolapAxis) axes[i]).getTupleList();
+            if (isAxisHighCardinality(i, tupleList)) {
+                return 1;
+            }
+            cellCount *= tupleList.size();
+        }
+        final int outerAxisSize =
+            axes[axes.length - 1].getPositions().size();
+        if (outerAxisSize < 2
+            || cellCount
+            < MondrianProperties.instance()
+                .CellEvaluationParallelThreshold.get())
+        {
+            return 1;
+        }
+        return Math.min(threadCount, outerAxisSize);
+    }
+
+    /**
+     * Evaluates all cells, partitioning the positions of the outermost axis
+     * into chunks and evaluating each chunk in a separate task.
+     *
+     * <p>Each task has its own evaluator, cell reader, local segment cache
+     * and {@link CellInfoContainer}. When all tasks have finished, their
+     * cells and cell requests are merged into this result's, so that the
+     * caller's {@link #phase()} loop loads the requests of every task in a
+     * single batch.
+     *
+     * <p>The tasks run in a pool shared by all statements; the thread count
+     * only limits how many tasks this statement creates. If any task
+     * exceeded the cell request quantum, throws
+     * {@link CellRequestQuantumExceededException} after merging, exactly as
+     * {@link #executeStripe} does in serial mode.
+     *
+     * @param evaluator Evaluator
+     * @param pos Cell position
+     * @param threadCount Number of threads this statement may use
+     */
+    private void executeStripesInParallel(
+        RolapEvaluator evaluator,
+        final int[] pos,
+        int threadCount)
+    {
+        final int axisOrdinal = axes.length - 1;
+        final TupleList tupleList =
+            ((RolapAxis) axes[axisOrdinal]).getTupleList();
+
+        // Preparing distinct-count measures modifies members that are shared
+        // between tasks, so do it for every axis before the tasks start.
+        for (Axis axis : axes) {
+            prepareDistinctMeasures(((RolapAxis) axis).getTupleList());
+        }
+
+        final int positionCount = tupleList.size();
+        final int chunkCount = Math.min(positionCount, threadCount * 4);
+        final Locus locus = Locus.peek();
+        final RolapCube cube = getCube();
+        final AggregationManager aggMgr =
+            execution.getMondrianStatement()
+                .getMondrianConnection()
+                .getServer().getAggregationManager();
+        final Collection<RolapStar> stars = cube.getSchema().getStars();
+        final List<StripeTask> tasks = new ArrayList<StripeTask>();
+        for (int i = 0; i < chunkCount; i++) {
+            final Map<RolapStar, RolapStar.Bar> bars =
+                new HashMap<RolapStar, RolapStar.Bar>();
+            for (RolapStar star : stars) {
+                bars.put(star, star.copyLocalBar());
+            }
+            final CellKey taskPoint = CellKey.Generator.newCellKey(axes.length);
+            tasks.add(
+                new StripeTask(
+                    locus,
+                    evaluator.push(),
+                    new FastBatchingCellReader(execution, cube, aggMgr),
+                    bars,
+                    taskPoint,
+                    createCellInfoContainer(false),
+                    tupleList,
+                    pos,
+                    (int) ((long) positionCount * i / chunkCount),
+                    (int) ((long) positionCount * (i + 1) / chunkCount)));
+        }
+
+        boolean quantumExceeded = false;
+        final List<Future<StripeTask>> futures =
+            new ArrayList<Future<StripeTask>>();
+        final ExecutorService executor = getCellExecutor();
+        boolean succeeded = false;
+        try {
+            for (StripeTask task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            for (Future<StripeTask> future : futures) {
+                final StripeTask task;
+                try {
+                    task = future.get();
+                } catch (InterruptedException e) {
+                    throw Util.newInternal(e, "while evaluating cells");
+                } catch (ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw Util.newInternal(cause, "while evaluating cells");
+                }
+                cellInfos.addAll(task.cellInfos);
+                batchingReader.merge(task.reader);
+                quantumExceeded |= task.quantumExceeded;
+            }
+            succeeded = true;
+        } finally {
+            if (!succeeded) {
+                // Stop the other tasks, and wait until they have stopped,
+                // so that none is still using this result when the error
+                // reaches the caller.
+                for (StripeTask task : tasks) {
+                    task.cancelled = true;
+                }
+                awaitStripes(futures);
+            }
+        }
+        if (quantumExceeded) {
+            throw CellRequestQuantumExceededException.INSTANCE;
+        }
+    }
+
+    /**
+     * Waits for stripe tasks to finish, ignoring their results and errors.
+     *
+     * @param futures Futures of tasks
+     */
+    private static void awaitStripes(List<Future<StripeTask>> futures) {
+        for (Future<StripeTask> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                // The caller is already throwing the first error.
+                Util.discard(e);
+            }
+        }
+    }
+
+    /**
+     * Returns the executor that evaluates cells in parallel, creating it on
+     * first use.
+     *
+     * <p>The pool has a fixed size, the value of
+     * {@link MondrianProperties#CellEvaluationThreads} when it is created. It
+     * is never shut down or re-created, because other statements may be
+     * submitting tasks to it concurrently.
+     *
+     * @return Executor
+     */
+    private static synchronized ExecutorService getCellExecutor() {
+        if (cellExecutor == null) {
+            cellExecutor =
+                Executors.newFixedThreadPool(
+                    Math.max(
+                        1,
+                        MondrianProperties.instance().CellEvaluationThreads
+                            .get()),
+                    new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            final Thread thread =
+                                Executors.defaultThreadFactory().newThread(r);
+                            thread.setDaemon(true);
+                            thread.setName(
+                                "mondrian.rolap.RolapResult$cellExecutor");
+                            return thread;
+                        }
+                    });
+        }
+        return cellExecutor;
+    }
+
+    /**
+     * Evaluates the cells of the axes up to and including a given axis,
+     * in the current context of an evaluator.
+     *
+     * @param axisOrdinal Ordinal of axis
+     * @param revaluator Evaluator
+     * @param pos Cell position; used by high-cardinality axes
+     * @param point Cell key that is modified to hold the current position
+     * @param cellInfos Container into which to store cells
+     * @param prepareDistinct Whether to prepare distinct-count measures
+     *     before evaluating each axis; false if
+     *     {@link #prepareDistinctMeasures} has already been called
+     */
     private void executeStripe(
         int axisOrdinal,
         RolapEvaluator revaluator,
-        final int[] pos)
+        final int[] pos,
+        CellKey point,
+        CellInfoContainer cellInfos,
+        boolean prepareDistinct)
     {
         if (axisOrdinal < 0) {
             RolapAxis axis = (RolapAxis) slicerAxis;
@@ -999,7 +1244,8 @@ public class RolapResult extends ResultBase {
                     revaluator.restore(savepoint);
                 }
 
-                CellInfo ci = null;
+                String formatString = null;
+                ValueFormatter valueFormatter = ValueFormatter.EMPTY;
 
                 // Get the Cell's format string and value formatting
                 // Object.
@@ -1009,10 +1255,6 @@ public class RolapResult extends ResultBase {
                     // <code>getCellNoDefaultFormatString</code> method and
                     // the old RolapCell <code>getFormattedValue</code> method.
 
-                    // Create a CellInfo object for the given position
-                    // integer array.
-                    ci = cellInfos.create(point.getOrdinals());
-
                     String cachedFormatString = null;
 
                     // Determine if there is a CellFormatter registered for
@@ -1025,20 +1267,20 @@ public class RolapResult extends ResultBase {
                         cube.getMeasuresHierarchy();
                     RolapMeasure m =
                         (RolapMeasure) revaluator.getContext(measuresHierarchy);
-                    ValueFormatter valueFormatter = m.getFormatter();
-                    if (valueFormatter == null) {
+                    ValueFormatter cachedFormatter = m.getFormatter();
+                    if (cachedFormatter == null) {
                         cachedFormatString = revaluator.getFormatString();
                         Locale locale =
                             statement.getMondrianConnection().getLocale();
-                        valueFormatter = formatValueFormatters.get(locale);
-                        if (valueFormatter == null) {
-                            valueFormatter = new FormatValueFormatter(locale);
-                            formatValueFormatters.put(locale, valueFormatter);
+                        cachedFormatter = formatValueFormatters.get(locale);
+                        if (cachedFormatter == null) {
+                            cachedFormatter = new FormatValueFormatter(locale);
+                            formatValueFormatters.put(locale, cachedFormatter);
                         }
                     }
 
-                    ci.formatString = cachedFormatString;
-                    ci.valueFormatter = valueFormatter;
+                    formatString = cachedFormatString;
+                    valueFormatter = cachedFormatter;
                 } catch (ResultLimitExceededException e) {
                     // Do NOT ignore a ResultLimitExceededException!!!
                     throw e;
@@ -1056,9 +1298,13 @@ public class RolapResult extends ResultBase {
                     Util.discard(e);
                 }
 
-                if (o != RolapUtil.valueNotReadyException) {
-                    ci.value = o;
-                }
+                // Store the cell's information for the given position
+                // integer array.
+                cellInfos.store(
+                    point.getOrdinals(),
+                    o == RolapUtil.valueNotReadyException ? null : o,
+                    formatString,
+                    valueFormatter);
             }
         } else {
             RolapAxis axis = (RolapAxis) axes[axisOrdinal];
@@ -1109,29 +1355,17 @@ public class RolapResult extends ResultBase {
                     try {
                         revaluator.setContext(tuple);
                         execution.checkCancelOrTimeout();
-                        executeStripe(axisOrdinal - 1, revaluator, pos);
+                        executeStripe(
+                            axisOrdinal - 1, revaluator, pos, point,
+                            cellInfos, prepareDistinct);
                     } finally {
                         revaluator.restore(savepoint);
                     }
                     pi++;
                 }
             } else {
-                for (List<Member> tuple : tupleList) {
-                    List<Member> measures =
-                        new ArrayList<Member>(
-                            statement.getQuery().getMeasuresMembers());
-                    for (Member measure : measures) {
-                        if (measure instanceof RolapBaseCubeMeasure) {
-                            RolapBaseCubeMeasure baseCubeMeasure =
-                                (RolapBaseCubeMeasure) measure;
-                            if (baseCubeMeasure.getAggregator()
-                                == RolapAggregator.DistinctCount)
-                            {
-                                processDistinctMeasureExpr(
-                                    tuple, baseCubeMeasure);
-                            }
-                        }
-                    }
+                if (prepareDistinct) {
+                    prepareDistinctMeasures(tupleList);
                 }
 
                 int tupleIndex = 0;
@@ -1141,7 +1375,9 @@ public class RolapResult extends ResultBase {
                     try {
                         revaluator.setContext(tuple);
                         execution.checkCancelOrTimeout();
-                        executeStripe(axisOrdinal - 1, revaluator, pos);
+                        executeStripe(
+                            axisOrdinal - 1, revaluator, pos, point,
+                            cellInfos, prepareDistinct);
                     } finally {
                         revaluator.restore(savepoint);
                     }
@@ -1151,6 +1387,34 @@ public class RolapResult extends ResultBase {
         }
     }
 
+    /**
+     * Prepares the distinct-count measures of the query for evaluation
+     * against each tuple of an axis.
+     *
+     * @param tupleList Tuples of an axis
+     */
+    private void prepareDistinctMeasures(TupleList tupleList) {
+        for (List<Member> tuple : tupleList) {
+            List<Member> measures =
+                new ArrayList<Member>(
+                    statement.getQuery().getMeasuresMembers());
+            for (Member measure : measures) {
+                if (measure instanceof RolapBaseCubeMeasure) {
+                    RolapBaseCubeMeasure baseCubeMeasure =
+                        (RolapBaseCubeMeasure) measure;
+                    if (baseCubeMeasure.getAggregator()
+                        == RolapAggregator.DistinctCount
+                        || baseCubeMeasure.getAggregator()
+                        == RolapAggregator.ApproxDistinctCount)
+                    {
+                        processDistinctMeasureExpr(
+                            tuple, baseCubeMeasure);
+                    }
+                }
+            }
+        }
+    }
+
     private boolean isAxisHighCardinality(
         int axisOrdinal,
         TupleList tupleList)
@@ -1262,6 +1526,181 @@ public class RolapResult extends ResultBase {
         }
     }
 
+    /**
+     * Creates a container for the cells of this result.
+     *
+     * <p>If the axes have been evaluated, each cell is identified by its
+     * ordinal in the product of the axes. If moreover that product is at
+     * most {@link CellInfoArray#MAX_CELL_COUNT}, no axis has high
+     * cardinality, and <code>dense</code> is true, the container is an
+     * array with a slot for every cell. Otherwise it is a hash table keyed
+     * by ordinal.</p>
+     *
+     * <p>If the axes have not been evaluated yet, assumes a fixed upper
+     * bound on the size of each axis, and for more than four axes, uses a
+     * map keyed by {@link CellKey}. If the product of the sizes of the axes
+     * does not fit into a <code>long</code>, also uses a map.</p>
+     *
+     * <p>Containers created with the same axes use the same ordinals, so
+     * can be combined using {@link CellInfoContainer#addAll}.</p>
+     *
+     * @param dense Whether to allow an array with a slot for every cell
+     * @return Cell container
+     */
+    private CellInfoContainer createCellInfoContainer(boolean dense) {
+        final int[] sizes = new int[axes.length];
+        boolean highCardinality = false;
+        for (int i = 0; i < axes.length; i++) {
+            if (axes[i] == null) {
+                return query.axes.length > 4
+                    ? new CellInfoMap()
+                    : new CellInfoPool(
+                        CellInfoPool.createCellKeyMaker(query.axes.length));
+            }
+            final TupleList tupleList = ((RolapAxis) axes[i]).getTupleList();
+            sizes[i] = tupleList.size();
+            highCardinality |= isAxisHighCardinality(i, tupleList);
+        }
+        return createCellInfoContainer(sizes, highCardinality, dense);
+    }
+
+    /**
+     * Creates a container for the cells of a result whose axes are known.
+     *
+     * @param sizes Number of positions on each axis
+     * @param highCardinality Whether any axis has high cardinality
+     * @param dense Whether to allow an array with a slot for every cell
+     * @return Cell container
+     */
+    static CellInfoContainer createCellInfoContainer(
+        int[] sizes,
+        boolean highCardinality,
+        boolean dense)
+    {
+        // An empty axis still has a position, for the purposes of cell
+        // ordinals.
+        final int[] radixSizes = new int[sizes.length];
+        long cellCount = 1;
+        for (int i = 0; i < sizes.length; i++) {
+            radixSizes[i] = Math.max(sizes[i], 1);
+            if (cellCount > Long.MAX_VALUE / radixSizes[i]) {
+                return new CellInfoMap();
+            }
+            cellCount *= radixSizes[i];
+        }
+        final CellInfoPool.CellKeyMaker cellKeyMaker =
+            new CellInfoPool.Radix(radixSizes);
+        if (dense
+            && !highCardinality
+            && cellCount <= CellInfoArray.MAX_CELL_COUNT)
+        {
+            return new CellInfoArray(cellKeyMaker, (int) cellCount);
+        }
+        return new CellInfoPool(cellKeyMaker);
+    }
+
+    /**
+     * Task that evaluates the cells of a range of positions of the outermost
+     * axis, on behalf of {@link #executeStripesInParallel}.
+     */
+    private class StripeTask implements Callable<StripeTask> {
+        private final Locus locus;
+        private final RolapEvaluator evaluator;
+        final FastBatchingCellReader reader;
+        private final Map<RolapStar, RolapStar.Bar> bars;
+        private final CellKey point;
+        final CellInfoContainer cellInfos;
+        private final TupleList tupleList;
+        private final int[] pos;
+        private final int start;
+        private final int end;
+
+        /**
+         * Whether evaluation stopped early because there were enough
+         * outstanding cell requests. Read by the coordinating thread after
+         * the task has finished.
+         */
+        boolean quantumExceeded;
+
+        /**
+         * Set by the coordinating thread if another task has failed; the
+         * task then stops before its next position.
+         */
+        volatile boolean cancelled;
+
+        /**
+         * Creates a StripeTask.
+         *
+         * @param locus Locus of the statement
+         * @param evaluator Evaluator, private to this task
+         * @param reader Cell reader, private to this task
+         * @param bars Local segment cache of each star, private to this task
+         * @param point Cell key, private to this task
+         * @param cellInfos Cell container, private to this task
+         * @param tupleList Tuples of the outermost axis
+         * @param pos Cell position
+         * @param start Index of first position to evaluate
+         * @param end Index after last position to evaluate
+         */
+        StripeTask(
+            Locus locus,
+            RolapEvaluator evaluator,
+            FastBatchingCellReader reader,
+            Map<RolapStar, RolapStar.Bar> bars,
+            CellKey point,
+            CellInfoContainer cellInfos,
+            TupleList tupleList,
+            int[] pos,
+            int start,
+            int end)
+        {
+            this.locus = locus;
+            this.evaluator = evaluator;
+            this.reader = reader;
+            this.bars = bars;
+            this.point = point;
+            this.cellInfos = cellInfos;
+            this.tupleList = tupleList;
+            this.pos = pos;
+            this.start = start;
+            this.end = end;
+        }
+
+        public StripeTask call() {
+            final int axisOrdinal = axes.length - 1;
+            Locus.push(locus);
+            for (Map.Entry<RolapStar, RolapStar.Bar> entry : bars.entrySet()) {
+                entry.getKey().setLocalBar(entry.getValue());
+            }
+            try {
+                evaluator.setCellReader(reader);
+                final int savepoint = evaluator.savepoint();
+                for (int i = start; i < end && !cancelled; i++) {
+                    point.setAxis(axisOrdinal, i);
+                    try {
+                        evaluator.setContext(tupleList.get(i));
+                        execution.checkCancelOrTimeout();
+                        executeStripe(
+                            axisOrdinal - 1, evaluator, pos, point,
+                            cellInfos, false);
+                    } finally {
+                        evaluator.restore(savepoint);
+                    }
+                }
+            } catch (CellRequestQuantumExceededException e) {
+                // The coordinating thread rethrows after merging, so that
+                // the caller calls 'phase' and evaluates again.
+                quantumExceeded = true;
+            } finally {
+                for (RolapStar star : bars.keySet()) {
+                    star.setLocalBar(null);
+                }
+                Locus.pop(locus);
+            }
+            return this;
+        }
+    }
+
     /**
      * Converts a set of cell coordinates to a cell ordinal.
      *
@@ -1712,67 +2151,43 @@ public class RolapResult extends ResultBase {
 
     /**
      * A CellInfo contains all of the information that a Cell requires.
-     * It is placed in the cellInfos map during evaluation and
-     * serves as a constructor parameter for {@link RolapCell}.
+     * It is returned by {@link CellInfoContainer#lookup} and serves as a
+     * constructor parameter for {@link RolapCell}.
      *
-     * <p>During the evaluation stage they are mutable but after evaluation has
-     * finished they are not changed.
+     * <p>Containers do not necessarily store CellInfo objects; the object
+     * returned by <code>lookup</code> may be a copy, so changes to it are not
+     * seen by subsequent lookups.
      */
     static class CellInfo {
         Object value;
         String formatString;
         ValueFormatter valueFormatter;
-        long key;
 
         /**
-         * Creates a CellInfo representing the position of a cell.
-         *
-         * @param key Ordinal representing the position of a cell
+         * Creates a CellInfo for a cell whose value is not known.
          */
-        CellInfo(long key) {
-            this(key, null, null, ValueFormatter.EMPTY);
+        CellInfo() {
+            this(null, null, ValueFormatter.EMPTY);
         }
 
         /**
-         * Creates a CellInfo with position, value, format string and formatter
+         * Creates a CellInfo with value, format string and formatter
          * of a cell.
          *
-         * @param key Ordinal representing the position of a cell
          * @param value Value of cell, or null if not yet known
          * @param formatString Format string of cell, or null
          * @param valueFormatter Formatter for cell, or null
          */
         CellInfo(
-            long key,
             Object value,
             String formatString,
             ValueFormatter valueFormatter)
         {
-            this.key = key;
             this.value = value;
             this.formatString = formatString;
             this.valueFormatter = valueFormatter;
         }
 
-        public int hashCode() {
-            // Combine the upper 32 bits of the key with the lower 32 bits.
-            // We used to use 'key ^ (key >>> 32)' but that was bad, because
-            // CellKey.Two encodes (i, j) as
-            // (i * Integer.MAX_VALUE + j), which is practically the same as
-            // (i << 32, j). If i and j were
-            // both k bits long, all of the hashcodes were k bits long too!
-            return (int) (key ^ (key >>> 11) ^ (key >>> 24));
-        }
-
-        public boolean equals(Object o) {
-            if (o instanceof CellInfo) {
-                CellInfo that = (CellInfo) o;
-                return that.key == this.key;
-            } else {
-                return false;
-            }
-        }
-
         /**
          * Returns the formatted value of the Cell
          * @return formatted value of the Cell
@@ -1783,64 +2198,74 @@ public class RolapResult extends ResultBase {
     }
 
     /**
-     * API for the creation and
-     * lookup of {@link CellInfo} objects. There are two implementations,
-     * one that uses a Map for storage and the other uses an ObjectPool.
+     * API for the storage and lookup of the information about cells.
+     * There are three implementations: one that uses a Map keyed by
+     * {@link CellKey}, one that uses a hash table keyed by a
+     * <code>long</code> ordinal, and one that uses arrays indexed by ordinal.
      */
     interface CellInfoContainer {
         /**
-         * Returns the number of CellInfo objects in this container.
-         * @return  the number of CellInfo objects.
+         * Returns the number of cells in this container.
+         * @return  the number of cells.
          */
         int size();
         /**
          * Reduces the size of the internal data structures needed to
          * support the current entries. This should be called after
-         * all CellInfo objects have been added to container.
+         * all cells have been added to container.
          */
         void trimToSize();
         /**
-         * Removes all CellInfo objects from container. Does not
+         * Removes all cells from container. Does not
          * change the size of the internal data structures.
          */
         void clear();
         /**
-         * Creates a new CellInfo object, adds it to the container
-         * a location <code>pos</code> and returns it.
+         * Stores the information about the cell at location
+         * <code>pos</code>, replacing any previous information.
          *
-         * @param pos where to store CellInfo object.
-         * @return the newly create CellInfo object.
+         * @param pos where to store the cell.
+         * @param value Value of cell, or null if not yet known
+         * @param formatString Format string of cell, or null
+         * @param valueFormatter Formatter for cell
          */
-        CellInfo create(int[] pos);
+        void store(
+            int[] pos,
+            Object value,
+            String formatString,
+            ValueFormatter valueFormatter);
         /**
-         * Gets the CellInfo object at the location <code>pos</code>.
+         * Gets the information about the cell at location <code>pos</code>.
          *
-         * @param pos where to find the CellInfo object.
-         * @return the CellInfo found or null.
+         * @param pos where to find the cell.
+         * @return the cell's information; never null, but its value is null
+         *     if the cell is not in this container.
          */
         CellInfo lookup(int[] pos);
+        /**
+         * Adds all cells of another container to this container,
+         * replacing any cell at the same location. The other container
+         * must have been created for the same axes as this one.
+         *
+         * @param container container whose cells to add.
+         */
+        void addAll(CellInfoContainer container);
     }
 
     /**
      * Implementation of {@link CellInfoContainer} which uses a {@link Map} to
      * store CellInfo Objects.
      *
-     * <p>Note that the CellKey point instance variable is the same
-     * Object (NOT a copy) that is used and modified during
-     * the recursive calls to executeStripe - the
-     * <code>create</code> method relies on this fact.
+     * <p>Used only if a cell's position cannot be converted to a
+     * <code>long</code>.
      */
     static class CellInfoMap implements CellInfoContainer {
         private final Map<CellKey, CellInfo> cellInfoMap;
-        private final CellKey point;
 
         /**
-         * Creates a CellInfoMap
-         *
-         * @param point Cell position
+         * Creates a CellInfoMap.
          */
-        CellInfoMap(CellKey point) {
-            this.point = point;
+        CellInfoMap() {
             this.cellInfoMap = new HashMap<CellKey, CellInfo>();
         }
         public int size() {
@@ -1852,42 +2277,42 @@ public class RolapResult extends ResultBase {
         public void clear() {
             this.cellInfoMap.clear();
         }
-        public CellInfo create(int[] pos) {
-            CellKey key = this.point.copy();
-            CellInfo ci = this.cellInfoMap.get(key);
-            if (ci == null) {
-                ci = new CellInfo(0);
-                this.cellInfoMap.put(key, ci);
-            }
-            return ci;
+        public void store(
+            int[] pos,
+            Object value,
+            String formatString,
+            ValueFormatter valueFormatter)
+        {
+            this.cellInfoMap.put(
+                CellKey.Generator.newCellKey(pos),
+                new CellInfo(value, formatString, valueFormatter));
         }
         public CellInfo lookup(int[] pos) {
             CellKey key = CellKey.Generator.newCellKey(pos);
-            return this.cellInfoMap.get(key);
+            final CellInfo ci = this.cellInfoMap.get(key);
+            if (ci == null) {
+                return new CellInfo();
+            }
+            return new CellInfo(ci.value, ci.formatString, ci.valueFormatter);
+        }
+        public void addAll(CellInfoContainer container) {
+            this.cellInfoMap.putAll(((CellInfoMap) container).cellInfoMap);
         }
     }
 
     /**
-     * Implementation of {@link CellInfoContainer} which uses an
-     * {@link ObjectPool} to store {@link CellInfo} Objects.
+     * Implementation of {@link CellInfoContainer} which converts each cell
+     * position to a <code>long</code> ordinal, and stores the cells'
+     * information in an open-addressing hash table keyed by that ordinal.
      *
-     * <p>There is an inner interface (<code>CellKeyMaker</code>) and
-     * implementations for 0 through 4 axes that convert the Cell
-     * position integer array into a long.
+     * <p>The table is held as parallel arrays (keys, values, format strings,
+     * formatters), so there is no object per cell other than its value.
      *
-     * <p>
-     * It should be noted that there is an alternate approach.
-     * As the <code>executeStripe</code>
-     * method is recursively called, at each call it is known which
-     * axis is being iterated across and it is known whether or
-     * not the Position object for that axis is a List or just
-     * an Iterable. It it is a List, then one knows the real
-     * size of the axis. If it is an Iterable, then one has to
-     * use one of the MAX_AXIS_SIZE values. Given that this information
-     * is available when one recursives down to the next
-     * <code>executeStripe</code> call, the Cell ordinal, the position
-     * integer array could converted to an <code>long</code>, could
-     * be generated on the call stack!! Just a thought for the future.
+     * <p>There is an inner interface (<code>CellKeyMaker</code>) with an
+     * implementation based on the actual sizes of the axes
+     * (<code>Radix</code>), and implementations for 0 through 4 axes that
+     * assume a maximum size for each axis, for use before the axes are
+     * known.
      */
     static class CellInfoPool implements CellInfoContainer {
         /**
@@ -1906,6 +2331,12 @@ public class RolapResult extends ResultBase {
          */
         protected static final long MAX_AXIS_SIZE_4 = 50000;
 
+        /**
+         * Value of an unused slot in the array of keys. Ordinals are never
+         * negative.
+         */
+        private static final long EMPTY = -1L;
+
         /**
          * Implementations of CellKeyMaker convert the Cell
          * position integer array to a <code>long</code>.
@@ -1922,8 +2353,12 @@ public class RolapResult extends ResultBase {
          * of members per axis must be less than this maximum 'long'
          * value (otherwise one gets hashing collisions).</p>
          *
-         * <p>For a single axis, the maximum number of members is equal to
-         * the max 'long' number, 9,223,372,036,854,776,000.
+         * <p>If the sizes of the axes are known, {@link Radix} uses them as
+         * the 'large numbers', and works for any number of axes whose
+         * product fits into a <code>long</code>.</p>
+         *
+         * <p>Otherwise, for a single axis, the maximum number of members is
+         * equal to the max 'long' number, 9,223,372,036,854,776,000.
          *
          * <p>For two axes, the maximum number of members is the square root
          * of the max 'long' number, 9,223,372,036,854,776,000, which is
@@ -1999,20 +2434,55 @@ public class RolapResult extends ResultBase {
             }
         }
 
-        private final ObjectPool<CellInfo> cellInfoPool;
+        /**
+         * For any number of axes of known size. The ordinal of a cell is its
+         * offset in the product of the axes, and is less than the number of
+         * cells.
+         */
+        static class Radix implements CellKeyMaker {
+            private final long[] multipliers;
+
+            /**
+             * Creates a Radix.
+             *
+             * @param sizes Number of positions on each axis; each at least 1,
+             *     and their product must not exceed Long.MAX_VALUE
+             */
+            Radix(int[] sizes) {
+                this.multipliers = new long[sizes.length];
+                long multiplier = 1;
+                for (int i = 0; i < sizes.length; i++) {
+                    multipliers[i] = multiplier;
+                    multiplier *= sizes[i];
+                }
+            }
+
+            public long generate(int[] pos) {
+                long l = 0;
+                for (int i = 0; i < pos.length; i++) {
+                    l += multipliers[i] * pos[i];
+                }
+                return l;
+            }
+        }
+
         private final CellKeyMaker cellKeyMaker;
+        private long[] keys;
+        private Object[] values;
+        private String[] formatStrings;
+        private ValueFormatter[] valueFormatters;
+        private int size;
 
-        CellInfoPool(int axisLength) {
-            this.cellInfoPool = new ObjectPool<CellInfo>();
-            this.cellKeyMaker = createCellKeyMaker(axisLength);
+        CellInfoPool(CellKeyMaker cellKeyMaker) {
+            this(cellKeyMaker, 16);
         }
 
-        CellInfoPool(int axisLength, int initialSize) {
-            this.cellInfoPool = new ObjectPool<CellInfo>(initialSize);
-            this.cellKeyMaker = createCellKeyMaker(axisLength);
+        CellInfoPool(CellKeyMaker cellKeyMaker, int initialSize) {
+            this.cellKeyMaker = cellKeyMaker;
+            allocate(capacityFor(initialSize));
         }
 
-        private static CellKeyMaker createCellKeyMaker(int axisLength) {
+        static CellKeyMaker createCellKeyMaker(int axisLength) {
             switch (axisLength) {
             case 0:
                 return new Zero();
@@ -2030,22 +2500,226 @@ public class RolapResult extends ResultBase {
             }
         }
 
+        /**
+         * Returns the smallest power of 2 that holds a given number of
+         * entries without exceeding a load factor of 0.75.
+         */
+        private static int capacityFor(int entryCount) {
+            int capacity = 16;
+            while (capacity * 3 < entryCount * 4) {
+                capacity <<= 1;
+            }
+            return capacity;
+        }
+
+        private void allocate(int capacity) {
+            keys = new long[capacity];
+            Arrays.fill(keys, EMPTY);
+            values = new Object[capacity];
+            formatStrings = new String[capacity];
+            valueFormatters = new ValueFormatter[capacity];
+        }
+
+        /**
+         * Returns the slot of a key, or, if the key is not present, the
+         * slot where it would be inserted.
+         */
+        private int slot(long key) {
+            final int mask = keys.length - 1;
+            int h = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+            int i = (h ^ (h >>> 16)) & mask;
+            while (keys[i] != EMPTY && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        private void rehash(int capacity) {
+            final long[] oldKeys = keys;
+            final Object[] oldValues = values;
+            final String[] oldFormatStrings = formatStrings;
+            final ValueFormatter[] oldValueFormatters = valueFormatters;
+            allocate(capacity);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    final int j = slot(oldKeys[i]);
+                    keys[j] = oldKeys[i];
+                    values[j] = oldValues[i];
+                    formatStrings[j] = oldFormatStrings[i];
+                    valueFormatters[j] = oldValueFormatters[i];
+                }
+            }
+        }
+
+        void put(
+            long key,
+            Object value,
+            String formatString,
+            ValueFormatter valueFormatter)
+        {
+            int i = slot(key);
+            if (keys[i] == EMPTY) {
+                if ((size + 1) * 4 > keys.length * 3) {
+                    rehash(keys.length << 1);
+                    i = slot(key);
+                }
+                keys[i] = key;
+                ++size;
+            }
+            values[i] = value;
+            formatStrings[i] = formatString;
+            valueFormatters[i] = valueFormatter;
+        }
+
         public int size() {
-            return this.cellInfoPool.size();
+            return size;
         }
         public void trimToSize() {
-            this.cellInfoPool.trimToSize();
+            final int capacity = capacityFor(size);
+            if (capacity < keys.length) {
+                rehash(capacity);
+            }
         }
         public void clear() {
-            this.cellInfoPool.clear();
+            Arrays.fill(keys, EMPTY);
+            Arrays.fill(values, null);
+            Arrays.fill(formatStrings, null);
+            Arrays.fill(valueFormatters, null);
+            size = 0;
+        }
+        public void store(
+            int[] pos,
+            Object value,
+            String formatString,
+            ValueFormatter valueFormatter)
+        {
+            put(
+                cellKeyMaker.generate(pos),
+                value,
+                formatString,
+                valueFormatter);
         }
-        public CellInfo create(int[] pos) {
-            long key = this.cellKeyMaker.generate(pos);
-            return this.cellInfoPool.add(new CellInfo(key));
+        public CellInfo lookup(int[] pos) {
+            final int i = slot(cellKeyMaker.generate(pos));
+            if (keys[i] == EMPTY) {
+                return new CellInfo();
+            }
+            return new CellInfo(
+                values[i], formatStrings[i], valueFormatters[i]);
+        }
+        public void addAll(CellInfoContainer container) {
+            final CellInfoPool pool = (CellInfoPool) container;
+            for (int i = 0; i < pool.keys.length; i++) {
+                if (pool.keys[i] != EMPTY) {
+                    put(
+                        pool.keys[i],
+                        pool.values[i],
+                        pool.formatStrings[i],
+                        pool.valueFormatters[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Implementation of {@link CellInfoContainer} which stores the
+     * information of each cell in arrays, indexed by the ordinal of the
+     * cell.
+     *
+     * <p>Used when the sizes of the axes are known and their product is
+     * small. Every cell of such a result is evaluated, so this uses less
+     * memory than a hash table, and lookups are faster.
+     */
+    static class CellInfoArray implements CellInfoContainer {
+        /**
+         * The maximum number of cells for which to use an array.
+         */
+        static final int MAX_CELL_COUNT = 1 << 20;
+
+        private final CellInfoPool.CellKeyMaker cellKeyMaker;
+        private final BitSet present;
+        private final Object[] values;
+        private final String[] formatStrings;
+        private final ValueFormatter[] valueFormatters;
+        private int size;
+
+        /**
+         * Creates a CellInfoArray.
+         *
+         * @param cellKeyMaker Converts a position to an ordinal less than
+         *     <code>cellCount</code>
+         * @param cellCount Number of cells
+         */
+        CellInfoArray(
+            CellInfoPool.CellKeyMaker cellKeyMaker,
+            int cellCount)
+        {
+            this.cellKeyMaker = cellKeyMaker;
+            this.present = new BitSet(cellCount);
+            this.values = new Object[cellCount];
+            this.formatStrings = new String[cellCount];
+            this.valueFormatters = new ValueFormatter[cellCount];
+        }
+
+        private void put(
+            int i,
+            Object value,
+            String formatString,
+            ValueFormatter valueFormatter)
+        {
+            if (!present.get(i)) {
+                present.set(i);
+                ++size;
+            }
+            values[i] = value;
+            formatStrings[i] = formatString;
+            valueFormatters[i] = valueFormatter;
+        }
+
+        public int size() {
+            return size;
+        }
+        public void trimToSize() {
+            // empty
+        }
+        public void clear() {
+            present.clear();
+            Arrays.fill(values, null);
+            Arrays.fill(formatStrings, null);
+            Arrays.fill(valueFormatters, null);
+            size = 0;
+        }
+        public void store(
+            int[] pos,
+            Object value,
+            String formatString,
+            ValueFormatter valueFormatter)
+        {
+            put(
+                (int) cellKeyMaker.generate(pos),
+                value,
+                formatString,
+                valueFormatter);
         }
         public CellInfo lookup(int[] pos) {
-            long key = this.cellKeyMaker.generate(pos);
-            return this.cellInfoPool.add(new CellInfo(key));
+            final int i = (int) cellKeyMaker.generate(pos);
+            if (!present.get(i)) {
+                return new CellInfo();
+            }
+            return new CellInfo(
+                values[i], formatStrings[i], valueFormatters[i]);
+        }
+        public void addAll(CellInfoContainer container) {
+            final CellInfoPool pool = (CellInfoPool) container;
+            for (int i = 0; i < pool.keys.length; i++) {
+                if (pool.keys[i] != CellInfoPool.EMPTY) {
+                    put(
+                        (int) pool.keys[i],
+                        pool.values[i],
+                        pool.formatStrings[i],
+                        pool.valueFormatters[i]);
+                }
+            }
         }
     }
 
@@ -15,6 +15,7 @@ import mondrian.olap.fun.*;
 import mondrian.olap.type.*;
 import mondrian.resource.MondrianResource;
 import mondrian.rolap.aggmatcher.AggTableManager;
+import mondrian.rolap.cache.ConcurrentSmartCache;
 import mondrian.spi.CellFormatter;
 import mondrian.spi.*;
 import mondrian.spi.MemberFormatter;
@@ -69,6 +70,16 @@ public class RolapSchema implements Schema {
     private static final Set<Access> memberAllowed =
         Olap4jUtil.enumSetOf(Access.NONE, Access.ALL);
 
+    /**
+     * Parsed catalogs, keyed by the checksum of their text, so that loading
+     * the same catalog again does not parse it again. The cache holds the
+     * DOM, not the {@link MondrianDef.Schema}, because loading a schema
+     * modifies its definition; each load builds its own definition from the
+     * DOM, holding the DOM's lock.
+     */
+    private static final ConcurrentSmartCache<ByteString, DOMWrapper>
+        parsedCatalogs = new ConcurrentSmartCache<ByteString, DOMWrapper>(16);
+
     private String name;
 
     /**
@@ -109,6 +120,12 @@ public class RolapSchema implements Schema {
      */
     private AggTableManager aggTableManager;
 
+    /**
+     * Snapshot of the metadata this schema derives from its database, or
+     * null if snapshots are not enabled.
+     */
+    private RolapSchemaSnapshot snapshot;
+
     /**
      * This is basically a unique identifier for this RolapSchema instance
      * used it its equals and hashCode methods.
@@ -394,7 +411,15 @@ public class RolapSchema implements Schema {
                         "RolapSchema.load: catalogStr: \n" + catalogStr);
                 }
 
-                def = xmlParser.parse(catalogStr);
+                if (md5Bytes == null) {
+                    md5Bytes = new ByteString(Util.digestMd5(catalogStr));
+                }
+                DOMWrapper parsed = parsedCatalogs.get(md5Bytes);
+                if (parsed == null) {
+                    parsed = xmlParser.parse(catalogStr);
+                    parsedCatalogs.put(md5Bytes, parsed);
+                }
+                def = parsed;
             }
 
             if (md5Bytes == null) {
@@ -404,10 +429,13 @@ public class RolapSchema implements Schema {
                 md5Bytes = new ByteString(Util.digestMd5(catalogStr));
             }
 
-            // throw error if we have an incompatible schema
-            checkSchemaVersion(def);
+            // The DOM may be shared with other loads of the same catalog.
+            synchronized (def) {
+                // throw error if we have an incompatible schema
+                checkSchemaVersion(def);
 
-            xmlSchema = new MondrianDef.Schema(def);
+                xmlSchema = new MondrianDef.Schema(def);
+            }
 
             if (getLogger().isDebugEnabled()) {
                 StringWriter sw = new StringWriter(4096);
@@ -427,10 +455,30 @@ public class RolapSchema implements Schema {
             throw Util.newError(e, "while parsing catalog " + catalogUrl);
         }
 
+        // Restore statistics saved by a previous load of this schema, so
+        // that recognizing aggregate tables does not need to compute them.
+        snapshot = RolapSchemaSnapshot.create(this);
+        if (snapshot != null) {
+            snapshot.read();
+        }
         aggTableManager.initialize();
+        if (snapshot != null) {
+            snapshot.loaded();
+        }
         setSchemaLoadDate();
     }
 
+    /**
+     * Called by a star's {@link RolapStatisticsCache} when it has computed a
+     * statistic, so that the statistic can be saved in this schema's
+     * snapshot.
+     */
+    void statisticsChanged() {
+        if (snapshot != null) {
+            snapshot.changed();
+        }
+    }
+
     private void checkSchemaVersion(final DOMWrapper schemaDom) {
         String schemaVersion = schemaDom.getAttribute("metamodelVersion");
         if (schemaVersion == null) {
@@ -494,6 +542,15 @@ public class RolapSchema implements Schema {
         return defaultRole;
     }
 
+    /**
+     * Returns statistics of the cache of parsed catalogs. For testing.
+     *
+     * @return Statistics of the cache of parsed catalogs
+     */
+    static ConcurrentSmartCache.Statistics getParsedCatalogStatistics() {
+        return parsedCatalogs.getStatistics();
+    }
+
     public MondrianDef.Schema getXMLSchema() {
         return xmlSchema;
     }
@@ -1255,6 +1312,10 @@ System.out.println("RolapSchema.createMemberReader: CONTAINS NAME");
                     // the members or else we get undefined results,
                     // depending on the functions used and all.
                     return new NoCacheMemberReader(source);
+                } else if (ColumnarMemberReader.isApplicable(source)) {
+                    LOGGER.debug(
+                        "Columnar members for " + hierarchy.getDimension());
+                    return new ColumnarMemberReader(source);
                 } else {
                     return new SmartMemberReader(source);
                 }
@@ -1409,6 +1470,17 @@ System.out.println("RolapSchema.createMemberReader: CONTAINS NAME");
         return nativeRegistry;
     }
 
+    private final QueryCache queryCache = new QueryCache();
+
+    /**
+     * Returns the cache of compiled queries against this schema.
+     *
+     * @return Query cache
+     */
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
     /**
      * @return Returns the dataSourceChangeListener.
      */
@@ -31,6 +31,12 @@ import javax.sql.DataSource;
  *
  * <p>To lookup a schema, call
  * <code>RolapSchemaPool.{@link #instance}().{@link #get}</code>.</p>
+ *
+ * <p>The pool does not hold its lock while it reads a catalog or loads a
+ * schema, which may take a long time. Other threads can get schemas that
+ * are already loaded, or load other schemas, in the meantime. If several
+ * threads ask for the same schema while it is loading, one thread loads it
+ * and the others wait for it.</p>
  */
 class RolapSchemaPool {
     static final Logger LOGGER = Logger.getLogger(RolapSchemaPool.class);
@@ -49,6 +55,18 @@ class RolapSchemaPool {
         mapMd5ToSchema =
             new HashMap<ByteString, ExpiringReference<RolapSchema>>();
 
+    /**
+     * Schemas that are being loaded. Each load has two entries: one keyed
+     * by checksum if {@link RolapConnectionProperties#UseContentChecksum} is
+     * set, otherwise by {@link SchemaKey}, which threads asking for the same
+     * schema wait on; and one keyed by a pair of {@link SchemaKey} and
+     * checksum (which may be null), which {@link #remove(SchemaKey)} removes.
+     * Two loads of the same key with different checksums therefore do not
+     * overwrite each other's entries. Guarded by the pool's lock.
+     */
+    private final Map<Object, SlotFuture<RolapSchema>> mapKeyToLoading =
+        new HashMap<Object, SlotFuture<RolapSchema>>();
+
     private RolapSchemaPool() {
     }
 
@@ -56,7 +74,7 @@ class RolapSchemaPool {
         return INSTANCE;
     }
 
-    synchronized RolapSchema get(
+    RolapSchema get(
         final String catalogUrl,
         final String connectionKey,
         final String jdbcUser,
@@ -72,7 +90,7 @@ class RolapSchemaPool {
             connectInfo);
     }
 
-    synchronized RolapSchema get(
+    RolapSchema get(
         final String catalogUrl,
         final DataSource dataSource,
         final Util.PropertyList connectInfo)
@@ -140,7 +158,7 @@ class RolapSchemaPool {
                 connectionKey1);
 
         // Use the schema pool unless "UseSchemaPool" is explicitly false.
-        RolapSchema schema = null;
+        RolapSchema schema;
         if (!useSchemaPool) {
             schema =
                 new RolapSchema(
@@ -159,9 +177,91 @@ class RolapSchemaPool {
             return schema;
         }
 
-        if (useContentChecksum) {
-            final ByteString md5Bytes =
-                new ByteString(Util.digestMd5(catalogStr));
+        final ByteString md5Bytes =
+            useContentChecksum
+                ? new ByteString(Util.digestMd5(catalogStr))
+                : null;
+        final Object loadKey = md5Bytes != null ? md5Bytes : key;
+        final Pair<SchemaKey, ByteString> keyPair = Pair.of(key, md5Bytes);
+        final SlotFuture<RolapSchema> loadingFuture;
+        final SlotFuture<RolapSchema> future = new SlotFuture<RolapSchema>();
+        synchronized (this) {
+            schema = lookup(key, md5Bytes, pinSchemaTimeout);
+            if (schema != null) {
+                return schema;
+            }
+            loadingFuture = mapKeyToLoading.get(loadKey);
+            if (loadingFuture == null) {
+                mapKeyToLoading.put(loadKey, future);
+                mapKeyToLoading.put(keyPair, future);
+            }
+        }
+        if (loadingFuture != null) {
+            // Another thread is loading this schema. Wait for it, without
+            // holding the lock.
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("get(key=" + key + ") waiting for load");
+            }
+            return Util.safeGet(
+                loadingFuture, "while waiting for schema " + catalogUrl);
+        }
+
+        // Load the schema without holding the lock.
+        try {
+            schema = new RolapSchema(
+                key,
+                md5Bytes,
+                catalogUrl,
+                catalogStr,
+                connectInfo,
+                dataSource);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                removeLoading(keyPair, loadKey, future);
+            }
+            future.fail(e);
+            throw e;
+        } catch (Error e) {
+            synchronized (this) {
+                removeLoading(keyPair, loadKey, future);
+            }
+            future.fail(e);
+            throw e;
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(
+                "create: schema-name=" + schema.getName()
+                + ", schema-id=" + System.identityHashCode(schema));
+        }
+        synchronized (this) {
+            // If the pool was cleared, or this schema removed, while we
+            // were loading, do not add it to the pool.
+            if (removeLoading(keyPair, loadKey, future)) {
+                putSchema(schema, md5Bytes, pinSchemaTimeout);
+            }
+        }
+        future.put(schema);
+        return schema;
+    }
+
+    /**
+     * Looks up a schema that has already been loaded. Removes references
+     * to schemas that have been garbage-collected. Caller must hold the
+     * pool's lock.
+     *
+     * @param key Key
+     * @param md5Bytes Checksum of schema content, if
+     *   {@link RolapConnectionProperties#UseContentChecksum} is set, else null
+     * @param pinSchemaTimeout Pin timeout
+     * @return Schema, or null
+     */
+    private RolapSchema lookup(
+        SchemaKey key,
+        ByteString md5Bytes,
+        String pinSchemaTimeout)
+    {
+        RolapSchema schema = null;
+        if (md5Bytes != null) {
             final ExpiringReference<RolapSchema> ref =
                 mapMd5ToSchema.get(md5Bytes);
             if (LOGGER.isDebugEnabled()) {
@@ -178,22 +278,6 @@ class RolapSchemaPool {
                     mapMd5ToSchema.remove(md5Bytes);
                 }
             }
-
-            if (schema == null) {
-                schema = new RolapSchema(
-                    key,
-                    md5Bytes,
-                    catalogUrl,
-                    catalogStr,
-                    connectInfo,
-                    dataSource);
-                if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug(
-                        "create: schema-name=" + schema.getName()
-                        + ", schema-id=" + System.identityHashCode(schema));
-                }
-                putSchema(schema, md5Bytes, pinSchemaTimeout);
-            }
             return schema;
         }
 
@@ -209,22 +293,35 @@ class RolapSchemaPool {
                 mapKeyToSchema.remove(key);
             }
         }
+        return schema;
+    }
 
-        if (schema == null) {
-            schema = new RolapSchema(
-                key,
-                null,
-                catalogUrl,
-                catalogStr,
-                connectInfo,
-                dataSource);
-            if (LOGGER.isDebugEnabled()) {
-                LOGGER.debug("create: " + schema);
+    /**
+     * Removes the entries for a schema that has finished loading, or failed
+     * to load. After this, the next thread to ask for the schema will look
+     * in the pool, or if it is not there, load it again. Caller must hold
+     * the pool's lock.
+     *
+     * @param keyPair Key and checksum
+     * @param loadKey Checksum or key
+     * @param future Future for the schema
+     * @return Whether the entries were present; false if the pool was
+     *   cleared, or the schema removed, while it was loading
+     */
+    private boolean removeLoading(
+        Pair<SchemaKey, ByteString> keyPair,
+        Object loadKey,
+        SlotFuture<RolapSchema> future)
+    {
+        boolean present = true;
+        for (Object k : Arrays.asList(keyPair, loadKey)) {
+            if (mapKeyToLoading.get(k) == future) {
+                mapKeyToLoading.remove(k);
+            } else {
+                present = false;
             }
-            putSchema(schema, null, pinSchemaTimeout);
         }
-
-        return schema;
+        return present;
     }
 
     private void putSchema(
@@ -387,6 +484,16 @@ class RolapSchemaPool {
     }
 
     private void remove(SchemaKey key) {
+        // If the schema is being loaded, the load will complete, but the
+        // schema will not be added to the pool.
+        for (Iterator<Object> iterator = mapKeyToLoading.keySet().iterator();
+            iterator.hasNext();)
+        {
+            final Object k = iterator.next();
+            if (k instanceof Pair && ((Pair) k).left.equals(key)) {
+                iterator.remove();
+            }
+        }
         Reference<RolapSchema> ref = mapKeyToSchema.get(key);
         if (ref != null) {
             RolapSchema schema = ref.get();
@@ -413,6 +520,7 @@ class RolapSchemaPool {
         }
         mapKeyToSchema.clear();
         mapMd5ToSchema.clear();
+        mapKeyToLoading.clear();
         JdbcSchema.clearAllDBs();
     }
 
@@ -0,0 +1,276 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap;
+
+import mondrian.olap.MondrianProperties;
+import mondrian.olap.Util;
+import mondrian.util.ByteString;
+
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.sql.*;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * File holding the metadata that a {@link RolapSchema} derives from its
+ * database, so that it survives a restart of the server.
+ *
+ * <p>At present the snapshot holds the statistics of each star (the
+ * cardinalities of tables, columns and queries, in its
+ * {@link RolapStatisticsCache}). Computing a statistic may require a query
+ * such as <code>select count(distinct ...)</code> on a large fact table; some
+ * are needed while aggregate tables are recognized, during schema load, and
+ * others by the first queries.</p>
+ *
+ * <p>There is one file for each combination of JDBC URL, user and schema
+ * checksum, so that a snapshot is only used by the same schema on the same
+ * database, whichever catalog it comes from. The schema reads the snapshot
+ * when it has created its stars, before it loads aggregate tables. The
+ * snapshot is written when the schema has finished loading, and again
+ * whenever a new statistic is computed. To pick up changes to the database,
+ * delete the file.</p>
+ *
+ * <p>Mondrian creates snapshots if
+ * {@link MondrianProperties#SchemaSnapshotDir} is set.</p>
+ */
+class RolapSchemaSnapshot {
+    private static final Logger LOGGER =
+        Logger.getLogger(RolapSchemaSnapshot.class);
+
+    /**
+     * Version of the format written by {@link #write()}. Increase it if the
+     * format changes, so that old snapshots are ignored.
+     */
+    private static final int VERSION = 1;
+
+    private final RolapSchema schema;
+    private final File file;
+
+    /**
+     * Whether the schema has finished loading. Until it has, new statistics
+     * do not cause the snapshot to be written. Guarded by {@code this}.
+     */
+    private boolean loaded;
+
+    /**
+     * Whether statistics have been computed since the snapshot was last
+     * read or written. Guarded by {@code this}.
+     */
+    private boolean dirty;
+
+    /**
+     * Creates a RolapSchemaSnapshot.
+     *
+     * @param schema Schema
+     * @param file Snapshot file
+     */
+    RolapSchemaSnapshot(RolapSchema schema, File file) {
+        this.schema = schema;
+        this.file = file;
+    }
+
+    /**
+     * Creates the snapshot of a schema, or returns null if
+     * {@link MondrianProperties#SchemaSnapshotDir} is not set, or if the
+     * schema has no checksum.
+     *
+     * <p>The file name is a hash of the JDBC URL and user of the schema's
+     * data source and the checksum of the schema.</p>
+     *
+     * @param schema Schema
+     * @return Snapshot, or null
+     */
+    static RolapSchemaSnapshot create(RolapSchema schema) {
+        final String dir =
+            MondrianProperties.instance().SchemaSnapshotDir.get();
+        final ByteString checksum = schema.getChecksum();
+        if (dir == null || dir.equals("") || checksum == null) {
+            return null;
+        }
+        final StringBuilder buf = new StringBuilder();
+        try {
+            final Connection conn =
+                schema.getInternalConnection().getDataSource().getConnection();
+            try {
+                final DatabaseMetaData dmd = conn.getMetaData();
+                buf.append(dmd.getURL())
+                    .append(Util.nl)
+                    .append(dmd.getUserName());
+            } finally {
+                conn.close();
+            }
+        } catch (SQLException e) {
+            LOGGER.warn(
+                "Cannot identify data source of schema " + schema.getName()
+                + "; schema snapshot is disabled",
+                e);
+            return null;
+        }
+        buf.append(Util.nl)
+            .append(checksum);
+        return new RolapSchemaSnapshot(
+            schema,
+            new File(
+                dir,
+                "schema-" + new ByteString(Util.digestMd5(buf.toString()))
+                + ".dat"));
+    }
+
+    /**
+     * Returns the snapshot file.
+     *
+     * @return Snapshot file
+     */
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Adds the statistics in the snapshot file to the stars of the schema.
+     * Does nothing if the file does not exist; logs a warning if it cannot
+     * be read.
+     *
+     * @return Whether the snapshot was read
+     */
+    synchronized boolean read() {
+        if (!file.exists()) {
+            return false;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != VERSION) {
+                return false;
+            }
+            final Map<String, RolapStar> stars = getStars();
+            final int starCount = in.readInt();
+            for (int i = 0; i < starCount; i++) {
+                final RolapStar star = stars.get(in.readUTF());
+                final RolapStatisticsCache statisticsCache =
+                    star != null
+                        ? star.getStatisticsCache()
+                        : new RolapStatisticsCache(null);
+                statisticsCache.read(in);
+            }
+            return true;
+        } catch (IOException e) {
+            LOGGER.warn("Cannot read schema snapshot " + file, e);
+            return false;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Called when the schema has finished loading. Writes the snapshot if
+     * statistics were computed during the load.
+     */
+    synchronized void loaded() {
+        loaded = true;
+        if (dirty) {
+            write();
+        }
+    }
+
+    /**
+     * Called when a statistic has been computed. Writes the snapshot if the
+     * schema has finished loading.
+     */
+    synchronized void changed() {
+        dirty = true;
+        if (loaded) {
+            write();
+        }
+    }
+
+    /**
+     * Writes the statistics of every star to the snapshot file. Logs a
+     * warning if the file cannot be written.
+     */
+    private void write() {
+        File tempFile = null;
+        DataOutputStream out = null;
+        try {
+            final File dir = file.getAbsoluteFile().getParentFile();
+            dir.mkdirs();
+            // Write to a temporary file and rename it, so that a concurrent
+            // reader never sees a partial file.
+            tempFile = File.createTempFile("schema", ".tmp", dir);
+            out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeInt(VERSION);
+            final Map<String, RolapStar> stars = getStars();
+            out.writeInt(stars.size());
+            for (Map.Entry<String, RolapStar> entry : stars.entrySet()) {
+                out.writeUTF(entry.getKey());
+                entry.getValue().getStatisticsCache().write(out);
+            }
+            out.close();
+            out = null;
+            file.delete();
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Cannot rename " + tempFile);
+            }
+            tempFile = null;
+            dirty = false;
+        } catch (IOException e) {
+            LOGGER.warn("Cannot write schema snapshot " + file, e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Returns the stars of the schema, keyed by the description of their
+     * fact relation.
+     */
+    private Map<String, RolapStar> getStars() {
+        final Map<String, RolapStar> map = new HashMap<String, RolapStar>();
+        for (RolapStar star : schema.getStars()) {
+            map.put(star.getFactTable().getRelation().toString(), star);
+        }
+        return map;
+    }
+
+    static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    static void writeString(
+        DataOutput out,
+        String s)
+        throws IOException
+    {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+}
+
+// End RolapSchemaSnapshot.java
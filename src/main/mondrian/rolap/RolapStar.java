@@ -191,6 +191,38 @@ public class RolapStar {
             new SoftReference<SegmentWithData>(segment));
     }
 
+    /**
+     * Returns a copy of the current thread's local cache.
+     *
+     * <p>The copy is intended to be installed, using
+     * {@link #setLocalBar(Bar)}, in a worker thread that evaluates cells on
+     * behalf of the current thread. Each worker must receive its own copy,
+     * because the local cache is not thread-safe.
+     *
+     * @return Copy of the current thread's local cache
+     */
+    public Bar copyLocalBar() {
+        final Bar bar = localBars.get();
+        final Bar copy = new Bar();
+        copy.aggregations.putAll(bar.aggregations);
+        copy.segmentRefs.addAll(bar.segmentRefs);
+        return copy;
+    }
+
+    /**
+     * Sets the local cache of the current thread. If <code>bar</code> is
+     * null, discards the current thread's local cache.
+     *
+     * @param bar Local cache, or null
+     */
+    public void setLocalBar(Bar bar) {
+        if (bar == null) {
+            Util.threadLocalRemove(localBars);
+        } else {
+            localBars.set(bar);
+        }
+    }
+
     public RolapStatisticsCache getStatisticsCache() {
         return statisticsCache;
     }
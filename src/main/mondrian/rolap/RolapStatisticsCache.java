@@ -15,6 +15,7 @@ import mondrian.server.Execution;
 import mondrian.spi.Dialect;
 import mondrian.spi.StatisticsProvider;
 
+import java.io.*;
 import java.util.*;
 import javax.sql.DataSource;
 
@@ -23,6 +24,10 @@ import javax.sql.DataSource;
  *
  * <p>Wrapper around a chain of {@link mondrian.spi.StatisticsProvider}s,
  * followed by a cache to store the results.</p>
+ *
+ * <p>The cache can be saved to, and restored from, a
+ * {@link RolapSchemaSnapshot}, so that statistics survive a restart of the
+ * server. Each new statistic is reported to the schema's snapshot.</p>
  */
 public class RolapStatisticsCache {
     private final RolapStar star;
@@ -62,8 +67,9 @@ public class RolapStatisticsCache {
     {
         final List<String> key = Arrays.asList(catalog, schema, table);
         int rowCount = -1;
-        if (tableMap.containsKey(key)) {
-            rowCount = tableMap.get(key);
+        final Integer cached = lookup(tableMap, key);
+        if (cached != null) {
+            rowCount = cached;
         } else {
             final Dialect dialect = star.getSqlQueryDialect();
             final List<StatisticsProvider> statisticsProviders =
@@ -88,15 +94,16 @@ public class RolapStatisticsCache {
 
             // Note: If all providers fail, we put -1 into the cache, to ensure
             // that we won't try again.
-            tableMap.put(key, rowCount);
+            store(tableMap, key, rowCount);
         }
         return rowCount;
     }
 
     private int getQueryCardinality(String sql) {
         int rowCount = -1;
-        if (queryMap.containsKey(sql)) {
-            rowCount = queryMap.get(sql);
+        final Integer cached = lookup(queryMap, sql);
+        if (cached != null) {
+            rowCount = cached;
         } else {
             final Dialect dialect = star.getSqlQueryDialect();
             final List<StatisticsProvider> statisticsProviders =
@@ -116,7 +123,7 @@ public class RolapStatisticsCache {
 
             // Note: If all providers fail, we put -1 into the cache, to ensure
             // that we won't try again.
-            queryMap.put(sql, rowCount);
+            store(queryMap, sql, rowCount);
         }
         return rowCount;
     }
@@ -156,8 +163,9 @@ public class RolapStatisticsCache {
     {
         final List<String> key = Arrays.asList(catalog, schema, table, column);
         int rowCount = -1;
-        if (columnMap.containsKey(key)) {
-            rowCount = columnMap.get(key);
+        final Integer cached = lookup(columnMap, key);
+        if (cached != null) {
+            rowCount = cached;
         } else {
             final Dialect dialect = star.getSqlQueryDialect();
             final List<StatisticsProvider> statisticsProviders =
@@ -183,7 +191,7 @@ public class RolapStatisticsCache {
 
             // Note: If all providers fail, we put -1 into the cache, to ensure
             // that we won't try again.
-            columnMap.put(key, rowCount);
+            store(columnMap, key, rowCount);
         }
         return rowCount;
     }
@@ -198,6 +206,101 @@ public class RolapStatisticsCache {
     {
         return -1;
     }
+
+    private synchronized <K> Integer lookup(Map<K, Integer> map, K key) {
+        return map.get(key);
+    }
+
+    private <K> void store(Map<K, Integer> map, K key, int rowCount) {
+        synchronized (this) {
+            map.put(key, rowCount);
+        }
+        if (rowCount >= 0) {
+            star.getSchema().statisticsChanged();
+        }
+    }
+
+    /**
+     * Writes the statistics that were successfully computed. Statistics
+     * that no provider could compute are not written, so that a restarted
+     * server tries again.
+     *
+     * @param out Output stream
+     * @throws IOException on error
+     */
+    synchronized void write(DataOutput out) throws IOException {
+        writeListMap(out, tableMap);
+        writeListMap(out, columnMap);
+        out.writeInt(countKnown(queryMap));
+        for (Map.Entry<String, Integer> entry : queryMap.entrySet()) {
+            if (entry.getValue() >= 0) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Reads statistics written by {@link #write}, and adds them to the
+     * cache.
+     *
+     * @param in Input stream
+     * @throws IOException on error
+     */
+    synchronized void read(DataInput in) throws IOException {
+        readListMap(in, tableMap);
+        readListMap(in, columnMap);
+        final int queryCount = in.readInt();
+        for (int i = 0; i < queryCount; i++) {
+            final String sql = in.readUTF();
+            queryMap.put(sql, in.readInt());
+        }
+    }
+
+    private static void writeListMap(
+        DataOutput out,
+        Map<List, Integer> map)
+        throws IOException
+    {
+        out.writeInt(countKnown(map));
+        for (Map.Entry<List, Integer> entry : map.entrySet()) {
+            if (entry.getValue() < 0) {
+                continue;
+            }
+            final List<?> key = entry.getKey();
+            out.writeInt(key.size());
+            for (Object o : key) {
+                RolapSchemaSnapshot.writeString(out, (String) o);
+            }
+            out.writeInt(entry.getValue());
+        }
+    }
+
+    private static void readListMap(
+        DataInput in,
+        Map<List, Integer> map)
+        throws IOException
+    {
+        final int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            final int size = in.readInt();
+            final List<String> key = new ArrayList<String>(size);
+            for (int j = 0; j < size; j++) {
+                key.add(RolapSchemaSnapshot.readString(in));
+            }
+            map.put(key, in.readInt());
+        }
+    }
+
+    private static int countKnown(Map<?, Integer> map) {
+        int count = 0;
+        for (Integer value : map.values()) {
+            if (value >= 0) {
+                ++count;
+            }
+        }
+        return count;
+    }
 }
 
 // End RolapStatisticsCache.java
@@ -288,7 +288,8 @@ public class RolapUtil {
         String sql,
         Locus locus)
     {
-        return executeQuery(dataSource, sql, null, 0, 0, locus, -1, -1);
+        return executeQuery(
+            dataSource, null, sql, null, 0, 0, locus, -1, -1);
     }
 
     /**
@@ -303,6 +304,8 @@ public class RolapUtil {
      *
      *
      * @param dataSource DataSource
+     * @param dialect Dialect of the data source, or null; used to choose the
+     *     fetch size
      * @param sql SQL string
      * @param types Suggested types of columns, or null;
      *     if present, must have one element for each SQL column;
@@ -317,6 +320,7 @@ public class RolapUtil {
      */
     public static SqlStatement executeQuery(
         DataSource dataSource,
+        Dialect dialect,
         String sql,
         List<SqlStatement.Type> types,
         int maxRowCount,
@@ -327,8 +331,8 @@ public class RolapUtil {
     {
         SqlStatement stmt =
             new SqlStatement(
-                dataSource, sql, types, maxRowCount, firstRowOrdinal, locus,
-                resultSetType, resultSetConcurrency);
+                dataSource, dialect, sql, types, maxRowCount, firstRowOrdinal,
+                locus, resultSetType, resultSetConcurrency);
         stmt.execute();
         return stmt;
     }
@@ -5,16 +5,19 @@
 // You must accept the terms of that agreement to use this software.
 //
 // Copyright (C) 2004-2005 TONBELLER AG
-// Copyright (C) 2006-2010 Pentaho
+// Copyright (C) 2006-2012 Pentaho
 // All Rights Reserved.
 */
 package mondrian.rolap;
 
+import mondrian.olap.MondrianProperties;
+import mondrian.rolap.cache.ConcurrentSmartCache;
 import mondrian.rolap.cache.SmartCache;
-import mondrian.rolap.cache.SoftSmartCache;
 import mondrian.rolap.sql.SqlConstraint;
 import mondrian.util.Pair;
 
+import java.util.List;
+
 /**
  * Uses a {@link mondrian.rolap.cache.SmartCache} to store lists of members,
  * where the key depends on a {@link mondrian.rolap.sql.SqlConstraint}.
@@ -42,6 +45,10 @@ import mondrian.util.Pair;
  * members fetched. For Level.Members the key consists of the Level and the
  * cacheKey of the {@link mondrian.rolap.sql.SqlConstraint}.
  *
+ * <p>The size of the cache is limited by
+ * {@link MondrianProperties#MemberCacheSize}; a list of members weighs as
+ * many members as it contains.
+ *
  * @see mondrian.rolap.sql.SqlConstraint#getCacheKey
  *
  * @author av
@@ -51,7 +58,16 @@ public class SmartMemberListCache <K, V> {
     SmartCache<Pair<K, Object>, V> cache;
 
     public SmartMemberListCache() {
-        cache = new SoftSmartCache<Pair<K, Object>, V>();
+        cache =
+            new ConcurrentSmartCache<Pair<K, Object>, V>(
+                MondrianProperties.instance().MemberCacheSize.get())
+            {
+                protected int weigh(V value) {
+                    return value instanceof List
+                        ? Math.max(1, ((List) value).size())
+                        : 1;
+                }
+            };
     }
 
     public Object put(K key, SqlConstraint constraint, V value) {
@@ -17,19 +17,26 @@ import mondrian.olap.Member;
 import mondrian.olap.Util;
 import mondrian.rolap.TupleReader.MemberBuilder;
 import mondrian.rolap.sql.MemberChildrenConstraint;
+import mondrian.rolap.sql.SqlConstraint;
 import mondrian.rolap.sql.TupleConstraint;
 import mondrian.util.ConcatenableList;
+import mondrian.util.Pair;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * <code>SmartMemberReader</code> implements {@link MemberReader} by keeping a
  * cache of members and their children. If a member is 'in cache', there is a
  * list of its children. It also caches the members of levels.
  *
- * <p>Synchronization: the MemberReader <code>source</code> must be called
- * from synchronized(this) context - it does not synchronize itself (probably
- * it should).</p>
+ * <p>Synchronization: lookups in the cache do not lock. When a list of
+ * members is not in the cache, it is read from the <code>source</code>
+ * outside any lock; if several threads ask for the same list at the same
+ * time, one of them reads it and the others wait for the result (see
+ * {@link #load}). A member object is registered in the cache, and is made
+ * unique, in a short section synchronized on {@link #cacheHelper}; see
+ * {@link TupleReader.MemberBuilder#getMemberCacheLock()}.</p>
  *
  * <p>Constraints: Member.Children and Level.Members may be constrained by a
  * SqlConstraint object. In this case a subset of all members is returned.
@@ -46,12 +53,17 @@ public class SmartMemberReader implements MemberReader {
     private final SqlConstraintFactory sqlConstraintFactory =
         SqlConstraintFactory.instance();
 
-    /** access to <code>source</code> must be synchronized(this) */
     protected final MemberReader source;
 
     protected final MemberCacheHelper cacheHelper;
 
-    protected List<RolapMember> rootMembers;
+    protected volatile List<RolapMember> rootMembers;
+
+    /**
+     * Loads in progress, by key; see {@link #load}.
+     */
+    private final ConcurrentMap<Object, Load<?>> loads =
+        new ConcurrentHashMap<Object, Load<?>>();
 
     SmartMemberReader(MemberReader source) {
         this(source, true);
@@ -132,23 +144,30 @@ public class SmartMemberReader implements MemberReader {
     }
 
     public List<RolapMember> getMembersInLevel(
-        RolapLevel level, TupleConstraint constraint)
+        final RolapLevel level, final TupleConstraint constraint)
     {
-        synchronized (cacheHelper) {
-            checkCacheStatus();
+        checkCacheStatus();
 
-            List<RolapMember> members =
-                cacheHelper.getLevelMembersFromCache(level, constraint);
-            if (members != null) {
-                return members;
-            }
-
-            members =
-                source.getMembersInLevel(
-                    level, constraint);
-            cacheHelper.putLevelMembersInCache(level, constraint, members);
+        List<RolapMember> members =
+            cacheHelper.getLevelMembersFromCache(level, constraint);
+        if (members != null) {
             return members;
         }
+        return load(
+            loadKey(level, constraint),
+            new Callable<List<RolapMember>>() {
+                public List<RolapMember> call() {
+                    List<RolapMember> members =
+                        cacheHelper.getLevelMembersFromCache(
+                            level, constraint);
+                    if (members == null) {
+                        members = source.getMembersInLevel(level, constraint);
+                        cacheHelper.putLevelMembersInCache(
+                            level, constraint, members);
+                    }
+                    return members;
+                }
+            });
     }
 
     public int getLevelMemberCount(RolapLevel level) {
@@ -190,27 +209,107 @@ public class SmartMemberReader implements MemberReader {
         List<RolapMember> children,
         MemberChildrenConstraint constraint)
     {
-        synchronized (cacheHelper) {
-            checkCacheStatus();
-
-            List<RolapMember> missed = new ArrayList<RolapMember>();
-            for (RolapMember parentMember : parentMembers) {
-                List<RolapMember> list =
-                    cacheHelper.getChildrenFromCache(parentMember, constraint);
-                if (list == null) {
-                    // the null member has no children
-                    if (!parentMember.isNull()) {
-                        missed.add(parentMember);
+        checkCacheStatus();
+
+        List<RolapMember> missed = new ArrayList<RolapMember>();
+        for (RolapMember parentMember : parentMembers) {
+            List<RolapMember> list =
+                cacheHelper.getChildrenFromCache(parentMember, constraint);
+            if (list == null) {
+                // the null member has no children
+                if (!parentMember.isNull()) {
+                    missed.add(parentMember);
+                }
+            } else {
+                children.addAll(list);
+            }
+        }
+        if (missed.size() > 0) {
+            loadMemberChildren(missed, children, constraint);
+        }
+        return Util.toNullValuesMap(children);
+    }
+
+    /**
+     * Reads the children of members that are not in the cache, sharing the
+     * read with any other thread that is reading the children of the same
+     * members.
+     *
+     * @param members Members whose children to read
+     * @param children Children are written here, in order
+     * @param constraint Constraint on children
+     */
+    protected void loadMemberChildren(
+        final List<RolapMember> members,
+        List<RolapMember> children,
+        final MemberChildrenConstraint constraint)
+    {
+        children.addAll(
+            load(
+                loadKey(members, constraint),
+                new Callable<List<RolapMember>>() {
+                    public List<RolapMember> call() {
+                        final List<RolapMember> list =
+                            new ArrayList<RolapMember>();
+                        readMemberChildren(members, list, constraint);
+                        return list;
                     }
-                } else {
-                    children.addAll(list);
+                }));
+    }
+
+    /**
+     * Returns the key of a load of members, or null if the load cannot be
+     * shared because its constraint cannot be cached.
+     */
+    protected static Object loadKey(Object key, SqlConstraint constraint) {
+        final Object constraintKey =
+            constraint == null ? null : constraint.getCacheKey();
+        return constraintKey == null
+            ? null
+            : new Pair<Object, Object>(key, constraintKey);
+    }
+
+    /**
+     * Computes a value, making sure that at most one thread at a time
+     * computes the value for a given key. A thread that asks for a key that
+     * another thread is computing waits for that thread and shares its
+     * result. If that thread fails, the waiting thread computes the value
+     * itself, so that one statement does not see another's cancellation.
+     *
+     * @param key Key, or null if the value cannot be shared
+     * @param callable Computes the value
+     * @return Value
+     */
+    protected <T> T load(Object key, Callable<T> callable) {
+        if (key != null) {
+            final Load<T> load = new Load<T>(callable);
+            final Load<?> existing = loads.putIfAbsent(key, load);
+            if (existing == null) {
+                try {
+                    load.run();
+                } finally {
+                    loads.remove(key, load);
                 }
+                return load.getValue();
             }
-            if (missed.size() > 0) {
-                readMemberChildren(missed, children, constraint);
+            if (existing.thread != Thread.currentThread()) {
+                try {
+                    //noinspection unchecked
+                    return (T) existing.get();
+                } catch (InterruptedException e) {
+                    throw Util.newInternal(e, "while loading members");
+                } catch (ExecutionException e) {
+                    // Fall through, and compute the value in this thread.
+                }
             }
         }
-        return Util.toNullValuesMap(children);
+        try {
+            return callable.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw Util.newInternal(e, "while loading members");
+        }
     }
 
     public RolapMember lookupMember(
@@ -277,17 +376,16 @@ public class SmartMemberReader implements MemberReader {
             ((List)list).add(child);
             ((List)result).add(child);
         }
-        synchronized (cacheHelper) {
-            for (Map.Entry<RolapMember, List<RolapMember>> entry
-                : tempMap.entrySet())
-            {
-                final RolapMember member = entry.getKey();
-                if (cacheHelper.getChildrenFromCache(member, constraint)
-                    == null)
-                {
-                    final List<RolapMember> list = entry.getValue();
-                    cacheHelper.putChildren(member, constraint, list);
-                }
+        // If another thread has read the same children meanwhile, its list
+        // holds the same member objects, so it does not matter which list
+        // the cache keeps.
+        for (Map.Entry<RolapMember, List<RolapMember>> entry
+            : tempMap.entrySet())
+        {
+            final RolapMember member = entry.getKey();
+            if (cacheHelper.getChildrenFromCache(member, constraint) == null) {
+                final List<RolapMember> list = entry.getValue();
+                cacheHelper.putChildren(member, constraint, list);
             }
         }
     }
@@ -317,34 +415,31 @@ public class SmartMemberReader implements MemberReader {
     }
 
     public RolapMember getLeadMember(RolapMember member, int n) {
-        // uncertain if this method needs to be synchronized
-        synchronized (cacheHelper) {
-            if (n == 0 || member.isNull()) {
-                return member;
-            } else {
-                SiblingIterator iter = new SiblingIterator(this, member);
-                if (n > 0) {
-                    RolapMember sibling = null;
-                    while (n-- > 0) {
-                        if (!iter.hasNext()) {
-                            return (RolapMember)
-                                member.getHierarchy().getNullMember();
-                        }
-                        sibling = iter.nextMember();
+        if (n == 0 || member.isNull()) {
+            return member;
+        } else {
+            SiblingIterator iter = new SiblingIterator(this, member);
+            if (n > 0) {
+                RolapMember sibling = null;
+                while (n-- > 0) {
+                    if (!iter.hasNext()) {
+                        return (RolapMember)
+                            member.getHierarchy().getNullMember();
                     }
-                    return sibling;
-                } else {
-                    n = -n;
-                    RolapMember sibling = null;
-                    while (n-- > 0) {
-                        if (!iter.hasPrevious()) {
-                            return (RolapMember)
-                                member.getHierarchy().getNullMember();
-                        }
-                        sibling = iter.previousMember();
+                    sibling = iter.nextMember();
+                }
+                return sibling;
+            } else {
+                n = -n;
+                RolapMember sibling = null;
+                while (n-- > 0) {
+                    if (!iter.hasPrevious()) {
+                        return (RolapMember)
+                            member.getHierarchy().getNullMember();
                     }
-                    return sibling;
+                    sibling = iter.previousMember();
                 }
+                return sibling;
             }
         }
     }
@@ -565,6 +660,42 @@ public class SmartMemberReader implements MemberReader {
         }
         return parentMember;
     }
+
+    /**
+     * Computation of a value by a thread, which other threads can wait for.
+     */
+    private static class Load<T> extends FutureTask<T> {
+        /**
+         * Thread that is computing the value. If that thread asks for the
+         * same key again, it must not wait for itself.
+         */
+        final Thread thread = Thread.currentThread();
+
+        Load(Callable<T> callable) {
+            super(callable);
+        }
+
+        /**
+         * Returns the value, having run the computation in this thread,
+         * rethrowing any exception that it threw.
+         */
+        T getValue() {
+            try {
+                return get();
+            } catch (InterruptedException e) {
+                throw Util.newInternal(e, "while loading members");
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw Util.newInternal(cause, "while loading members");
+            }
+        }
+    }
 }
 
 // End SmartMemberReader.java
@@ -188,7 +188,7 @@ public class SqlConstraintUtils {
                         } else {
                             // No extra slicers.... just use the = method
                             final StringBuilder buf = new StringBuilder();
-                            sqlQuery.getDialect().quote(
+                            sqlQuery.quote(
                                 buf, value,
                                 column.getDatatype());
                             sqlQuery.addWhere(
@@ -201,7 +201,7 @@ public class SqlConstraintUtils {
 
                 } else {
                     final StringBuilder buf = new StringBuilder();
-                    sqlQuery.getDialect().quote(
+                    sqlQuery.quote(
                         buf, value,
                         column.getDatatype());
                     sqlQuery.addWhere(
@@ -1144,7 +1144,7 @@ public class SqlConstraintUtils {
                 Double.valueOf(columnValue);
             }
             final StringBuilder buf = new StringBuilder();
-            query.getDialect().quote(buf, columnValue, datatype);
+            query.quote(buf, columnValue, datatype);
             String value = buf.toString();
             if (caseSensitive && datatype == Dialect.Datatype.String) {
                 // Some databases (like DB2) compare case-sensitive. We convert
@@ -1186,7 +1186,7 @@ public class SqlConstraintUtils {
             final StringBuilder buf = new StringBuilder();
             buf.append(columnString);
             buf.append(" = ");
-            query.getDialect().quote(buf, columnValue, datatype);
+            query.quote(buf, columnValue, datatype);
             return buf.toString();
         }
     }
@@ -1220,6 +1220,16 @@ public class SqlConstraintUtils {
         final StringBuilder columnBuf = new StringBuilder();
         final StringBuilder valueBuf = new StringBuilder();
         final StringBuilder memberBuf = new StringBuilder();
+        final List<String> columnList = new ArrayList<String>();
+
+        // If there are many members, and the dialect has a special form for
+        // large lists, collect the values and let the dialect generate the
+        // predicate.
+        final List<String[]> valueList =
+            sqlQuery.isLargeInList(members.size())
+                ? new ArrayList<String[]>(members.size())
+                : null;
+        final List<String> rowList = new ArrayList<String>();
 
         columnBuf.append("(");
 
@@ -1277,6 +1287,7 @@ public class SqlConstraintUtils {
             }
 
             columnBuf.append(columnString);
+            columnList.add(columnString);
 
             // Only needs to compare up to the first(lowest) unique level.
             if (m.getLevel() == fromLevel) {
@@ -1302,6 +1313,7 @@ public class SqlConstraintUtils {
             ordinalInMultiple = 0;
             memberBuf.setLength(0);
             memberBuf.append("(");
+            rowList.clear();
 
             boolean containsNull = false;
             for (RolapMember p = m; p != null; p = p.getParentMember()) {
@@ -1342,8 +1354,12 @@ public class SqlConstraintUtils {
                     memberBuf.append(", ");
                 }
 
-                sqlQuery.getDialect().quote(
+                final int start = memberBuf.length();
+                sqlQuery.quote(
                     memberBuf, value, level.getDatatype());
+                if (valueList != null) {
+                    rowList.add(memberBuf.substring(start));
+                }
 
                 // Only needs to compare up to the first(lowest) unique level.
                 if (p.getLevel() == fromLevel) {
@@ -1356,6 +1372,11 @@ public class SqlConstraintUtils {
             // generated successfully.
             if (!containsNull) {
                 memberBuf.append(")");
+                if (valueList != null) {
+                    ++memberOrdinal;
+                    valueList.add(rowList.toArray(new String[rowList.size()]));
+                    continue;
+                }
                 if (memberOrdinal++ > 0) {
                     valueBuf.append(", ");
                 }
@@ -1364,7 +1385,11 @@ public class SqlConstraintUtils {
         }
 
         StringBuilder condition = new StringBuilder();
-        if (memberOrdinal > 0) {
+        if (memberOrdinal > 0 && valueList != null) {
+            condition.append(
+                sqlQuery.getDialect().generateLargeInList(
+                    columnList, valueList));
+        } else if (memberOrdinal > 0) {
             // SQLs are generated for some members.
             condition.append(columnBuf);
             condition.append(" in ");
@@ -1546,6 +1571,7 @@ public class SqlConstraintUtils {
             StarColumnPredicate cc = getColumnPredicates(column, c);
 
             if (!dialect.supportsUnlimitedValueList()
+                && !dialect.supportsLargeInList()
                 && cc instanceof ListColumnPredicate
                 && ((ListColumnPredicate) cc).getPredicates().size()
                 > maxConstraints)
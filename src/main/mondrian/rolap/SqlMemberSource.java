@@ -20,6 +20,7 @@ import mondrian.rolap.sql.*;
 import mondrian.server.Locus;
 import mondrian.server.monitor.SqlStatementEvent;
 import mondrian.spi.Dialect;
+import mondrian.spi.DialectManager;
 import mondrian.util.*;
 
 import org.eigenbase.util.property.StringProperty;
@@ -44,6 +45,7 @@ class SqlMemberSource
         SqlConstraintFactory.instance();
     private final RolapHierarchy hierarchy;
     private final DataSource dataSource;
+    private volatile Dialect dialect;
     private MemberCache cache;
     private int lastOrdinal = 0;
     private boolean assignOrderKeys;
@@ -58,6 +60,21 @@ class SqlMemberSource
         valuePool = ValuePoolFactoryFactory.getValuePoolFactory().create(this);
     }
 
+    /**
+     * Returns the dialect of this source's data source, creating it the
+     * first time it is needed.
+     *
+     * @return Dialect
+     */
+    Dialect getDialect() {
+        Dialect dialect = this.dialect;
+        if (dialect == null) {
+            dialect = DialectManager.createDialect(dataSource, null);
+            this.dialect = dialect;
+        }
+        return dialect;
+    }
+
     // implement MemberSource
     public RolapHierarchy getHierarchy() {
         return hierarchy;
@@ -321,7 +338,7 @@ class SqlMemberSource
         RolapLevel[] levels = (RolapLevel[]) hierarchy.getLevels();
         SqlStatement stmt =
             RolapUtil.executeQuery(
-                dataSource, sql, types, 0, 0,
+                dataSource, getDialect(), sql, types, 0, 0,
                 new SqlStatement.StatementLocus(
                     null,
                     "SqlMemberSource.getMembers",
@@ -383,7 +400,14 @@ RME is this right
                     }
                     column++;
 
-                    // REVIEW jvs 20-Feb-2007:  What about caption?
+                    if (level.hasCaptionColumn()) {
+                        Object caption = accessors.get(column).get();
+                        if (caption != null) {
+                            ((RolapMemberBase) member).setCaption(
+                                caption.toString());
+                        }
+                        column++;
+                    }
 
                     if (!level.getOrdinalExp().equals(level.getKeyExp())) {
                         if (assignOrderKeys) {
@@ -441,7 +465,7 @@ RME is this right
         list.add(i + 1, member);
     }
 
-    private Pair<String, List<SqlStatement.Type>> makeKeysSql(
+    Pair<String, List<SqlStatement.Type>> makeKeysSql(
         DataSource dataSource)
     {
         SqlQuery sqlQuery =
@@ -457,6 +481,12 @@ RME is this right
             hierarchy.addToFrom(sqlQuery, exp);
             String expString = exp.getExpression(sqlQuery);
             sqlQuery.addSelectGroupBy(expString, null);
+            if (level.hasCaptionColumn()) {
+                exp = level.getCaptionExp();
+                hierarchy.addToFrom(sqlQuery, exp);
+                expString = exp.getExpression(sqlQuery);
+                sqlQuery.addSelectGroupBy(expString, null);
+            }
             exp = level.getOrdinalExp();
             hierarchy.addToFrom(sqlQuery, exp);
             expString = exp.getExpression(sqlQuery);
@@ -922,7 +952,7 @@ RME is this right
         final List<SqlStatement.Type> types = pair.right;
         SqlStatement stmt =
             RolapUtil.executeQuery(
-                dataSource, sql, types, 0, 0,
+                dataSource, getDialect(), sql, types, 0, 0,
                 new SqlStatement.StatementLocus(
                     Locus.peek().execution,
                     "SqlMemberSource.getMemberChildren",
@@ -958,14 +988,19 @@ RME is this right
                     captionValue = null;
                 }
                 Object key = cache.makeKey(parentMember2, value);
-                RolapMember member = cache.getMember(key, checkCacheStatus);
-                checkCacheStatus = false; /* Only check the first time */
-                if (member == null) {
-                    member =
-                        makeMember(
-                            parentMember2, childLevel, value, captionValue,
-                            parentChild, stmt, key, columnOffset);
+                RolapMember member;
+                // Lock while looking up and creating the member, so that
+                // concurrent reads do not create the same member twice.
+                synchronized (getMemberCacheLock()) {
+                    member = cache.getMember(key, checkCacheStatus);
+                    if (member == null) {
+                        member =
+                            makeMember(
+                                parentMember2, childLevel, value, captionValue,
+                                parentChild, stmt, key, columnOffset);
+                    }
                 }
+                checkCacheStatus = false; /* Only check the first time */
                 if (value == RolapUtil.sqlNullValue) {
                     children.toArray();
                     addAsOldestSibling(children, member);
@@ -1191,7 +1226,7 @@ RME is this right
         String parentId = level.getParentExp().getExpression(sqlQuery);
 
         StringBuilder buf = new StringBuilder();
-        sqlQuery.getDialect().quote(buf, member.getKey(), level.getDatatype());
+        sqlQuery.quote(buf, member.getKey(), level.getDatatype());
         sqlQuery.addWhere(parentId, " = ", buf.toString());
 
         hierarchy.addToFrom(sqlQuery, level.getKeyExp());
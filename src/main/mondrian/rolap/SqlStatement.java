@@ -9,7 +9,9 @@
 */
 package mondrian.rolap;
 
+import mondrian.olap.MondrianProperties;
 import mondrian.olap.Util;
+import mondrian.rolap.sql.SqlQuery;
 import mondrian.server.Execution;
 import mondrian.server.Locus;
 import mondrian.server.monitor.*;
@@ -66,9 +68,12 @@ public class SqlStatement {
         RolapUtil.getQuerySemaphore();
 
     private final DataSource dataSource;
+    private final Dialect dialect;
     private Connection jdbcConnection;
+    private Statement statement;
     private ResultSet resultSet;
     private final String sql;
+    private final List<Object> bindValues;
     private final List<Type> types;
     private final int maxRows;
     private final int firstRowOrdinal;
@@ -76,6 +81,7 @@ public class SqlStatement {
     private final int resultSetType;
     private final int resultSetConcurrency;
     private boolean haveSemaphore;
+    private boolean restoreAutoCommit;
     public int rowCount;
     private long startTimeNanos;
     private long startTimeMillis;
@@ -86,7 +92,17 @@ public class SqlStatement {
     /**
      * Creates a SqlStatement.
      *
+     * <p>If the SQL contains bind parameters (see
+     * {@link mondrian.rolap.sql.SqlQuery#setBindParameters(boolean)}), the
+     * statement is executed as a {@link PreparedStatement}, with the
+     * parameters replaced by "?" markers and their values bound. If the data
+     * source pools prepared statements, as do the connection pools that
+     * Mondrian creates, the database need not parse the statement again when
+     * it is next executed with different values.</p>
+     *
      * @param dataSource Data source
+     * @param dialect Dialect of the data source, or null; used to choose the
+     *     fetch size, see {@link Dialect#getFetchSize()}
      * @param sql SQL
      * @param types Suggested types of columns, or null;
      *     if present, must have one element for each SQL column;
@@ -99,6 +115,7 @@ public class SqlStatement {
      */
     public SqlStatement(
         DataSource dataSource,
+        Dialect dialect,
         String sql,
         List<Type> types,
         int maxRows,
@@ -109,7 +126,11 @@ public class SqlStatement {
     {
         this.id = ID_GENERATOR.getAndIncrement();
         this.dataSource = dataSource;
-        this.sql = sql;
+        this.dialect = dialect;
+        final Pair<String, List<Object>> pair =
+            SqlQuery.extractBindValues(sql);
+        this.sql = pair.left;
+        this.bindValues = pair.right;
         this.types = types;
         this.maxRows = maxRows;
         this.firstRowOrdinal = firstRowOrdinal;
@@ -127,7 +148,6 @@ public class SqlStatement {
         Counters.SQL_STATEMENT_EXECUTE_COUNT.incrementAndGet();
         Counters.SQL_STATEMENT_EXECUTING_IDS.add(id);
         String status = "failed";
-        Statement statement;
         try {
             this.jdbcConnection = dataSource.getConnection();
             querySemaphore.enter();
@@ -146,6 +166,9 @@ public class SqlStatement {
                 }
                 sqllog.append(sql);
                 sqllog.append(']');
+                if (!bindValues.isEmpty()) {
+                    sqllog.append(" with parameters ").append(bindValues);
+                }
                 RolapUtil.SQL_LOGGER.debug(sqllog.toString());
             }
 
@@ -156,16 +179,37 @@ public class SqlStatement {
             }
             startTimeNanos = System.nanoTime();
             startTimeMillis = System.currentTimeMillis();
-            if (resultSetType < 0 || resultSetConcurrency < 0) {
-                statement = jdbcConnection.createStatement();
+            final PreparedStatement preparedStatement;
+            if (bindValues.isEmpty()) {
+                preparedStatement = null;
+                if (resultSetType < 0 || resultSetConcurrency < 0) {
+                    statement = jdbcConnection.createStatement();
+                } else {
+                    statement = jdbcConnection.createStatement(
+                        resultSetType,
+                        resultSetConcurrency);
+                }
+                if (maxRows > 0) {
+                    statement.setMaxRows(maxRows);
+                }
             } else {
-                statement = jdbcConnection.createStatement(
-                    resultSetType,
-                    resultSetConcurrency);
-            }
-            if (maxRows > 0) {
-                statement.setMaxRows(maxRows);
+                if (resultSetType < 0 || resultSetConcurrency < 0) {
+                    preparedStatement = jdbcConnection.prepareStatement(sql);
+                } else {
+                    preparedStatement = jdbcConnection.prepareStatement(
+                        sql,
+                        resultSetType,
+                        resultSetConcurrency);
+                }
+                statement = preparedStatement;
+                // A pooled statement may have been used with a different
+                // limit, so always set it.
+                statement.setMaxRows(Math.max(maxRows, 0));
+                for (int i = 0; i < bindValues.size(); i++) {
+                    preparedStatement.setObject(i + 1, bindValues.get(i));
+                }
             }
+            setFetchSize(preparedStatement != null);
 
             // First make sure to register with the execution instance.
             locus.execution.registerStatement(locus, statement);
@@ -177,9 +221,13 @@ public class SqlStatement {
                     locus,
                     sql,
                     getPurpose(),
-                    getCellRequestCount()));
+                    getCellRequestCount(),
+                    getQueueNanos()));
 
-            this.resultSet = statement.executeQuery(sql);
+            this.resultSet =
+                preparedStatement == null
+                    ? statement.executeQuery(sql)
+                    : preparedStatement.executeQuery();
 
             // skip to first row specified in request
             this.state = State.ACTIVE;
@@ -268,12 +316,37 @@ public class SqlStatement {
             querySemaphore.leave();
         }
 
+        // The statement may be pooled, and used by another execution once
+        // we have closed it, so make sure that our execution cannot cancel it.
+        if (statement != null) {
+            locus.execution.unregisterStatement(locus, statement);
+        }
+
+        // If we turned off auto-commit in order to use a cursor, turn it back
+        // on, which ends the transaction, before the connection goes back to
+        // the pool.
+        SQLException ex = null;
+        if (restoreAutoCommit) {
+            restoreAutoCommit = false;
+            try {
+                jdbcConnection.setAutoCommit(true);
+            } catch (SQLException e) {
+                ex = e;
+            }
+        }
+
         // According to the JDBC spec, closing a statement automatically closes
         // its result sets, and closing a connection automatically closes its
         // statements. But let's be conservative and close everything
-        // explicitly.
-        SQLException ex = Util.close(resultSet, null, jdbcConnection);
+        // explicitly. (Closing a pooled prepared statement returns it to the
+        // pool.)
+        final SQLException ex2 =
+            Util.close(resultSet, statement, jdbcConnection);
+        if (ex == null) {
+            ex = ex2;
+        }
         resultSet = null;
+        statement = null;
         jdbcConnection = null;
 
         if (ex != null) {
@@ -630,6 +703,62 @@ public class SqlStatement {
             new MyDelegatingInvocationHandler(this));
     }
 
+    /**
+     * Sets the number of rows that the driver fetches in each round trip.
+     *
+     * <p>The fetch size comes from the property
+     * {@code mondrian.rolap.sql.fetchSize.PURPOSE}, where PURPOSE is the
+     * purpose of this statement (for example CELL_SEGMENT), if set, otherwise
+     * from the property {@code mondrian.rolap.sql.fetchSize}. If the value is
+     * 0, the driver's default applies. If the value is negative, the dialect
+     * chooses, see {@link Dialect#getFetchSize()}, or if this statement has
+     * no dialect, the driver's default applies. The fetch size applies only
+     * to forward-only result sets.</p>
+     *
+     * @param pooled Whether the statement may have been used before, and
+     *   therefore has a fetch size that must be reset
+     */
+    private void setFetchSize(boolean pooled) throws SQLException {
+        if (resultSetType >= 0
+            && resultSetType != ResultSet.TYPE_FORWARD_ONLY)
+        {
+            if (pooled) {
+                statement.setFetchSize(0);
+            }
+            return;
+        }
+        final MondrianProperties props = MondrianProperties.instance();
+        int fetchSize = props.FetchSize.get();
+        // Purpose-specific path, e.g.
+        // "mondrian.rolap.sql.fetchSize.CELL_SEGMENT"
+        final String value =
+            props.getProperty(
+                props.FetchSize.getPath() + "." + getPurpose().name());
+        if (value != null && value.length() > 0) {
+            try {
+                fetchSize = Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                LOG.warn(
+                    "Invalid fetch size '" + value + "' for purpose "
+                    + getPurpose());
+            }
+        }
+        if (fetchSize < 0) {
+            fetchSize = dialect == null ? 0 : dialect.getFetchSize();
+        }
+        if (fetchSize != 0 || pooled) {
+            statement.setFetchSize(fetchSize);
+        }
+        if (fetchSize > 0
+            && dialect != null
+            && dialect.requiresTransactionForFetchSize()
+            && jdbcConnection.getAutoCommit())
+        {
+            jdbcConnection.setAutoCommit(false);
+            restoreAutoCommit = true;
+        }
+    }
+
     private SqlStatementEvent.Purpose getPurpose() {
         if (locus instanceof StatementLocus) {
             return ((StatementLocus) locus).purpose;
@@ -646,6 +775,14 @@ public class SqlStatement {
         }
     }
 
+    private long getQueueNanos() {
+        if (locus instanceof StatementLocus) {
+            return ((StatementLocus) locus).queueNanos;
+        } else {
+            return 0;
+        }
+    }
+
     /**
      * The approximate JDBC type of a column.
      *
@@ -734,6 +871,7 @@ public class SqlStatement {
     public static class StatementLocus extends Locus {
         private final SqlStatementEvent.Purpose purpose;
         private final int cellRequestCount;
+        private final long queueNanos;
 
         public StatementLocus(
             Execution execution,
@@ -741,6 +879,30 @@ public class SqlStatement {
             String message,
             SqlStatementEvent.Purpose purpose,
             int cellRequestCount)
+        {
+            this(
+                execution, component, message, purpose, cellRequestCount, 0);
+        }
+
+        /**
+         * Creates a StatementLocus for a statement that waited before it
+         * could be executed.
+         *
+         * @param execution Execution
+         * @param component Component
+         * @param message Message
+         * @param purpose Why Mondrian is executing this statement
+         * @param cellRequestCount Number of missed cells that led to this
+         *     request
+         * @param queueNanos Time the statement spent waiting for a thread
+         */
+        public StatementLocus(
+            Execution execution,
+            String component,
+            String message,
+            SqlStatementEvent.Purpose purpose,
+            int cellRequestCount,
+            long queueNanos)
         {
             super(
                 execution,
@@ -748,6 +910,7 @@ public class SqlStatement {
                 message);
             this.purpose = purpose;
             this.cellRequestCount = cellRequestCount;
+            this.queueNanos = queueNanos;
         }
     }
 }
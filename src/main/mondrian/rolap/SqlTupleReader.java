@@ -24,6 +24,8 @@ import mondrian.rolap.aggmatcher.AggStar;
 import mondrian.rolap.sql.*;
 import mondrian.server.Locus;
 import mondrian.server.monitor.SqlStatementEvent;
+import mondrian.spi.Dialect;
+import mondrian.spi.DialectManager;
 import mondrian.util.Pair;
 
 import org.apache.log4j.Logger;
@@ -369,6 +371,21 @@ public class SqlTupleReader implements TupleReader {
         return enumTargetCount;
     }
 
+    /**
+     * Returns the dialect of the statements that read tuples. Uses the
+     * dialect that the constraint's evaluator already holds, if there is one.
+     *
+     * @param dataSource Data source
+     * @return Dialect
+     */
+    protected Dialect getDialect(DataSource dataSource) {
+        final Evaluator evaluator = constraint.getEvaluator();
+        if (evaluator instanceof RolapEvaluator) {
+            return ((RolapEvaluator) evaluator).getDialect();
+        }
+        return DialectManager.createDialect(dataSource, null);
+    }
+
     protected void prepareTuples(
         DataSource dataSource,
         TupleList partialResult,
@@ -394,7 +411,7 @@ public class SqlTupleReader implements TupleReader {
                 List<SqlStatement.Type> types = pair.right;
                 assert sql != null && !sql.equals("");
                 stmt = RolapUtil.executeQuery(
-                    dataSource, sql, types, maxRows, 0,
+                    dataSource, getDialect(dataSource), sql, types, maxRows, 0,
                     new SqlStatement.StatementLocus(
                         Locus.peek().execution,
                         "SqlTupleReader.readTuples " + partialTargets,
@@ -12,6 +12,7 @@ package mondrian.rolap.agg;
 
 import mondrian.olap.Exp;
 import mondrian.olap.MondrianException;
+import mondrian.olap.MondrianProperties;
 import mondrian.olap.Util;
 import mondrian.rolap.*;
 import mondrian.rolap.sql.SqlQuery;
@@ -76,10 +77,17 @@ public abstract class AbstractQuerySpec implements QuerySpec {
                 ? "*"
                 : measure.generateExprString(sqlQuery);
         String exprOuter = measure.getAggregator().getExpression(exprInner);
-        sqlQuery.addSelect(
-            exprOuter,
-            measure.getInternalType(),
-            getMeasureAlias(i));
+        final String alias =
+            sqlQuery.addSelect(
+                exprOuter,
+                measure.getInternalType(),
+                getMeasureAlias(i));
+
+        // A sketch aggregator needs each distinct value of its operand, and
+        // builds the sketch as it reads the rows.
+        if (measure.getAggregator().isSketch() && isAggregate()) {
+            sqlQuery.addGroupBy(exprInner, alias);
+        }
     }
 
     protected abstract boolean isAggregate();
@@ -187,6 +195,8 @@ public abstract class AbstractQuerySpec implements QuerySpec {
 
     public Pair<String, List<SqlStatement.Type>> generateSqlQuery() {
         SqlQuery sqlQuery = newSqlQuery();
+        sqlQuery.setBindParameters(
+            MondrianProperties.instance().SqlBindParameters.get());
 
         int k = getDistinctMeasureCount();
         final Dialect dialect = sqlQuery.getDialect();
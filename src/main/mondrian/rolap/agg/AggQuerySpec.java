@@ -12,6 +12,7 @@
 */
 package mondrian.rolap.agg;
 
+import mondrian.olap.MondrianProperties;
 import mondrian.rolap.RolapStar;
 import mondrian.rolap.SqlStatement.Type;
 import mondrian.rolap.StarColumnPredicate;
@@ -110,6 +111,8 @@ class AggQuerySpec {
 
     public Pair<String, List<Type>> generateSqlQuery() {
         SqlQuery sqlQuery = newSqlQuery();
+        sqlQuery.setBindParameters(
+            MondrianProperties.instance().SqlBindParameters.get());
         generateSql(sqlQuery);
         return sqlQuery.toSqlAndTypes();
     }
@@ -84,7 +84,9 @@ public class Aggregation {
         this.constrainedColumnsBitKey =
             aggregationKey.getConstrainedColumnsBitKey();
         this.maxConstraints =
-            MondrianProperties.instance().MaxConstraints.get();
+            star.getSqlQueryDialect().supportsLargeInList()
+                ? Integer.MAX_VALUE
+                : MondrianProperties.instance().MaxConstraints.get();
         this.creationTimestamp = new Date();
     }
 
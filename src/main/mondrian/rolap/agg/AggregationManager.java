@@ -21,6 +21,8 @@ import mondrian.rolap.*;
 import mondrian.rolap.SqlStatement.Type;
 import mondrian.rolap.aggmatcher.AggStar;
 import mondrian.server.Locus;
+import mondrian.spi.SegmentBody;
+import mondrian.spi.SegmentHeader;
 import mondrian.util.Pair;
 
 import org.apache.log4j.Logger;
@@ -130,21 +132,66 @@ public class AggregationManager extends RolapAggregationManager {
     {
         return new CacheControlImpl(connection) {
             protected void flushNonUnion(final CellRegion region) {
-                final SegmentCacheManager.FlushResult result =
-                    cacheMgr.execute(
+                final List<SegmentCacheManager.FlushResult> results =
+                    cacheMgr.executeAll(
                         new SegmentCacheManager.FlushCommand(
                             Locus.peek(),
                             cacheMgr,
                             region,
                             this));
-                final List<Future<Boolean>> futures =
-                    new ArrayList<Future<Boolean>>();
-                for (Callable<Boolean> task : result.tasks) {
-                    futures.add(cacheMgr.cacheExecutor.submit(task));
+                runTasks(results, "Flush cache");
+            }
+
+            protected void refreshNonUnion(
+                CellRegion region,
+                String factCondition,
+                long commitTime)
+            {
+                final Locus locus = Locus.peek();
+                final List<SegmentCacheManager.RefreshResult> results =
+                    cacheMgr.executeAll(
+                        new SegmentCacheManager.RefreshCommand(
+                            locus,
+                            cacheMgr,
+                            region,
+                            commitTime,
+                            this));
+                runTasks(results, "Refresh cache");
+                final Map<SegmentHeader, Pair<RolapStar.Measure, SegmentBody>>
+                    segmentMap =
+                    new HashMap<SegmentHeader,
+                        Pair<RolapStar.Measure, SegmentBody>>();
+                for (SegmentCacheManager.RefreshResult result : results) {
+                    segmentMap.putAll(result.segmentMap);
                 }
-                for (Future<Boolean> future : futures) {
-                    Util.discard(Util.safeGet(future, "Flush cache"));
+
+                // Load the new rows, outside the cache manager's actors,
+                // because it may take some time. If it fails, the segments
+                // are out of date, so flush them.
+                final Map<SegmentHeader, SegmentBody> bodyMap;
+                if (segmentMap.isEmpty()) {
+                    bodyMap = Collections.emptyMap();
+                } else {
+                    try {
+                        bodyMap =
+                            new SegmentLoader(cacheMgr).loadIncrements(
+                                segmentMap, factCondition);
+                    } catch (RuntimeException e) {
+                        flushNonUnion(region);
+                        throw e;
+                    }
                 }
+
+                runTasks(
+                    cacheMgr.executeAll(
+                        new SegmentCacheManager.ApplyRefreshCommand(
+                            locus,
+                            cacheMgr,
+                            region,
+                            commitTime,
+                            bodyMap,
+                            this)),
+                    "Refresh cache");
             }
 
             public void flush(final CellRegion region) {
@@ -173,6 +220,29 @@ public class AggregationManager extends RolapAggregationManager {
         };
     }
 
+    /**
+     * Executes the tasks of some flush results, which update the external
+     * cache(s), and waits for them to complete.
+     *
+     * @param results Results of flush or refresh commands
+     * @param desc Description of operation, for error messages
+     */
+    private void runTasks(
+        List<? extends SegmentCacheManager.FlushResult> results,
+        String desc)
+    {
+        final List<Future<Boolean>> futures =
+            new ArrayList<Future<Boolean>>();
+        for (SegmentCacheManager.FlushResult result : results) {
+            for (Callable<Boolean> task : result.tasks) {
+                futures.add(cacheMgr.cacheExecutor.submit(task));
+            }
+        }
+        for (Future<Boolean> future : futures) {
+            Util.discard(Util.safeGet(future, desc));
+        }
+    }
+
     public Object getCellFromCache(CellRequest request) {
         return getCellFromCache(request, null);
     }
@@ -237,8 +307,18 @@ public class AggregationManager extends RolapAggregationManager {
             // Do not use Aggregate tables if compound predicates are present.
             hasCompoundPredicates = true;
         }
+        // Do not use aggregate tables for sketch measures (such as
+        // approx-distinct-count). Their values are built from the distinct
+        // values of the operand, and aggregate tables do not hold those.
+        boolean hasSketchMeasures = false;
+        for (Segment segment : groupingSetsList.getDefaultSegments()) {
+            if (segment.measure.getAggregator().isSketch()) {
+                hasSketchMeasures = true;
+            }
+        }
         if (MondrianProperties.instance().UseAggregates.get()
-             && !hasCompoundPredicates)
+             && !hasCompoundPredicates
+             && !hasSketchMeasures)
         {
             final boolean[] rollup = {false};
             AggStar aggStar = findAgg(star, levelBitKey, measureBitKey, rollup);
@@ -172,7 +172,7 @@ public class AndPredicate extends ListPredicate {
             } else {
                 buf.append(", ");
             }
-            sqlQuery.getDialect().quote(
+            sqlQuery.quote(
                 buf, predicate.getValue(),
                 predicate.getConstrainedColumn().getDatatype());
         }
@@ -317,9 +317,19 @@ public class ListColumnPredicate extends AbstractColumnPredicate {
         final RolapStar.Column column = getConstrainedColumn();
         final String expr = column.generateExprString(sqlQuery);
         final int marker = buf.length(); // to allow backtrack later
-        buf.append(expr);
         ValueColumnPredicate firstNotNull = null;
-        buf.append(" in (");
+
+        // If the list is large, and the dialect has a special form for large
+        // lists, collect the values and let the dialect generate the
+        // predicate.
+        final List<String[]> valueList =
+            sqlQuery.isLargeInList(predicates.size())
+                ? new ArrayList<String[]>(predicates.size())
+                : null;
+        if (valueList == null) {
+            buf.append(expr);
+            buf.append(" in (");
+        }
         for (StarColumnPredicate predicate1 : predicates) {
             final ValueColumnPredicate predicate2 =
                 (ValueColumnPredicate) predicate1;
@@ -327,15 +337,28 @@ public class ListColumnPredicate extends AbstractColumnPredicate {
             if (key == RolapUtil.sqlNullValue) {
                 continue;
             }
-            if (notNullCount > 0) {
-                buf.append(", ");
-            } else {
+            if (notNullCount == 0) {
                 firstNotNull = predicate2;
             }
+            if (valueList != null) {
+                sqlQuery.quote(buf, key, column.getDatatype());
+                valueList.add(new String[] {buf.substring(marker)});
+                buf.setLength(marker);
+            } else {
+                if (notNullCount > 0) {
+                    buf.append(", ");
+                }
+                sqlQuery.quote(buf, key, column.getDatatype());
+            }
             ++notNullCount;
-            sqlQuery.getDialect().quote(buf, key, column.getDatatype());
         }
-        buf.append(')');
+        if (valueList != null) {
+            buf.append(
+                sqlQuery.getDialect().generateLargeInList(
+                    Collections.singletonList(expr), valueList));
+        } else {
+            buf.append(')');
+        }
 
         // If all of the predicates were non-null, return what we've got, for
         // example, "x in (1, 2, 3)".
@@ -362,7 +385,7 @@ public class ListColumnPredicate extends AbstractColumnPredicate {
             buf.append('(');
             buf.append(expr);
             buf.append(" = ");
-            sqlQuery.getDialect().quote(
+            sqlQuery.quote(
                 buf,
                 firstNotNull.getValue(),
                 column.getDatatype());
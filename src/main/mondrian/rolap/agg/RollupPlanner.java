@@ -0,0 +1,295 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap.agg;
+
+import mondrian.olap.MondrianProperties;
+import mondrian.rolap.BitKey;
+import mondrian.rolap.RolapStar;
+import mondrian.rolap.aggmatcher.AggStar;
+import mondrian.spi.SegmentColumn;
+import mondrian.spi.SegmentHeader;
+
+import java.util.*;
+
+/**
+ * Decides whether to satisfy a cell request by rolling up segments that are
+ * already in the cache, or by executing SQL.
+ *
+ * <p>The cost of a rollup is proportional to the number of cells in the
+ * segments that are scanned, plus the number of cells in the target
+ * segment. The cost of SQL is a fixed cost per statement, plus a cost per
+ * row of the aggregate table that would be read, plus a cost per cell
+ * returned. Costs are in units of "cells rolled up".</p>
+ *
+ * <p>SQL is only preferred if there is an aggregate table that can answer
+ * the request. A query against the fact table reads at least one row for
+ * every non-empty cell of the segments that would be rolled up, so is
+ * assumed to be never cheaper than the rollup.</p>
+ *
+ * <p>The row count of the aggregate table comes from
+ * {@link AggStar#getSize()}, which is computed, using the dialect's
+ * {@link mondrian.spi.StatisticsProvider}s, when the aggregate table is
+ * registered; so planning does not execute SQL.</p>
+ */
+public class RollupPlanner {
+    /**
+     * Cost of executing a SQL statement, regardless of the rows it reads:
+     * round trip, parsing, planning.
+     */
+    static final double SQL_STATEMENT_COST = 100000d;
+
+    /**
+     * Cost of reading one row of an aggregate table, relative to rolling up
+     * one cell. A database scans a row faster than Mondrian rolls up a
+     * cell.
+     */
+    static final double SQL_ROW_COST = 0.1d;
+
+    /**
+     * Cost of fetching one cell from a SQL result set.
+     */
+    static final double SQL_CELL_COST = 1d;
+
+    /**
+     * Cost of reading one cell of a segment during rollup.
+     */
+    static final double ROLLUP_CELL_COST = 1d;
+
+    /**
+     * Cost of writing one cell of the target segment of a rollup.
+     */
+    static final double ROLLUP_TARGET_CELL_COST = 1d;
+
+    private RollupPlanner() {
+    }
+
+    /**
+     * Returns the number of cells in a segment, as implied by its header:
+     * the product of the number of values of each column.
+     *
+     * <p>This is an upper bound: a sparse segment has fewer cells.</p>
+     *
+     * @param header Segment header
+     * @return Number of cells
+     */
+    public static double cellCount(SegmentHeader header) {
+        double cellCount = 1d;
+        for (SegmentColumn column : header.getConstrainedColumns()) {
+            cellCount *= valueCount(column);
+        }
+        return cellCount;
+    }
+
+    /**
+     * Returns the number of cells in the segment that results from rolling
+     * up a segment to a given set of columns.
+     *
+     * @param header Segment header
+     * @param keepColumns Expressions of the columns to keep
+     * @return Number of cells in rolled up segment
+     */
+    public static double targetCellCount(
+        SegmentHeader header,
+        Set<String> keepColumns)
+    {
+        double cellCount = 1d;
+        for (SegmentColumn column : header.getConstrainedColumns()) {
+            if (keepColumns.contains(column.columnExpression)) {
+                cellCount *= valueCount(column);
+            }
+        }
+        return cellCount;
+    }
+
+    private static int valueCount(SegmentColumn column) {
+        final int valueCount =
+            column.values == null
+                ? column.valueCount
+                : column.values.size();
+        return Math.max(valueCount, 1);
+    }
+
+    /**
+     * Returns the cost of rolling up a list of segments.
+     *
+     * @param headers Segments that are combined to form the target
+     * @param keepColumns Expressions of the columns of the target
+     * @return Cost
+     */
+    public static double rollupCost(
+        List<SegmentHeader> headers,
+        Set<String> keepColumns)
+    {
+        double cost = 0d;
+        for (SegmentHeader header : headers) {
+            cost += cellCount(header) * ROLLUP_CELL_COST
+                + targetCellCount(header, keepColumns)
+                * ROLLUP_TARGET_CELL_COST;
+        }
+        return cost;
+    }
+
+    /**
+     * Returns the cost of a SQL statement.
+     *
+     * @param rowCount Number of rows in the table that is read
+     * @param cellCount Number of cells returned
+     * @return Cost
+     */
+    public static double sqlCost(double rowCount, double cellCount) {
+        return SQL_STATEMENT_COST
+            + rowCount * SQL_ROW_COST
+            + cellCount * SQL_CELL_COST;
+    }
+
+    /**
+     * Chooses between rolling up and SQL.
+     *
+     * @param star Star
+     * @param levelBitKey Columns of the cell request
+     * @param measureBitKey Measure of the cell request
+     * @param hasCompoundPredicates Whether the request has compound
+     *     predicates (which prevent the use of aggregate tables)
+     * @param keepColumns Expressions of the columns of the cell request
+     * @param candidates Candidate lists of segments, each sufficient to roll
+     *     up to the cell request
+     * @return Plan
+     */
+    public static Plan plan(
+        RolapStar star,
+        BitKey levelBitKey,
+        BitKey measureBitKey,
+        boolean hasCompoundPredicates,
+        Set<String> keepColumns,
+        List<List<SegmentHeader>> candidates)
+    {
+        assert !candidates.isEmpty();
+
+        // Sort the candidates, cheapest first.
+        final List<Candidate> costedList = new ArrayList<Candidate>();
+        for (List<SegmentHeader> candidate : candidates) {
+            costedList.add(
+                new Candidate(candidate, rollupCost(candidate, keepColumns)));
+        }
+        Collections.sort(costedList);
+        final List<List<SegmentHeader>> sortedCandidates =
+            new ArrayList<List<SegmentHeader>>();
+        for (Candidate candidate : costedList) {
+            sortedCandidates.add(candidate.headers);
+        }
+        final Candidate best = costedList.get(0);
+
+        // If the rollup is cheaper than the fixed cost of a SQL statement,
+        // there is no need to look for an aggregate table.
+        if (best.cost <= SQL_STATEMENT_COST
+            || hasCompoundPredicates
+            || !MondrianProperties.instance().UseAggregates.get())
+        {
+            return new Plan(sortedCandidates, best.cost, -1d, null);
+        }
+        final boolean[] rollup = {false};
+        final AggStar aggStar =
+            AggregationManager.findAgg(
+                star, levelBitKey, measureBitKey, rollup);
+        if (aggStar == null) {
+            return new Plan(sortedCandidates, best.cost, -1d, null);
+        }
+        double targetCellCount = 0d;
+        for (SegmentHeader header : best.headers) {
+            targetCellCount += targetCellCount(header, keepColumns);
+        }
+        final double sqlCost =
+            sqlCost(
+                aggStar.getFactTable().getNumberOfRows(),
+                targetCellCount);
+        return new Plan(
+            sqlCost < best.cost
+                ? Collections.<List<SegmentHeader>>emptyList()
+                : sortedCandidates,
+            best.cost,
+            sqlCost,
+            aggStar.getFactTable().getName());
+    }
+
+    /**
+     * List of segment headers and the cost of rolling them up.
+     */
+    private static class Candidate implements Comparable<Candidate> {
+        final List<SegmentHeader> headers;
+        final double cost;
+
+        Candidate(List<SegmentHeader> headers, double cost) {
+            this.headers = headers;
+            this.cost = cost;
+        }
+
+        public int compareTo(Candidate o) {
+            return Double.compare(cost, o.cost);
+        }
+    }
+
+    /**
+     * Result of planning a rollup.
+     */
+    public static class Plan {
+        /**
+         * Candidate lists of segments in order of increasing cost; empty if
+         * SQL is cheaper.
+         */
+        public final List<List<SegmentHeader>> candidates;
+
+        /**
+         * Cost of rolling up the cheapest candidate.
+         */
+        public final double rollupCost;
+
+        /**
+         * Cost of SQL against the aggregate table, or -1 if SQL was not
+         * considered.
+         */
+        public final double sqlCost;
+
+        /**
+         * Name of the aggregate table that SQL would read, or null.
+         */
+        public final String aggTableName;
+
+        Plan(
+            List<List<SegmentHeader>> candidates,
+            double rollupCost,
+            double sqlCost,
+            String aggTableName)
+        {
+            this.candidates = candidates;
+            this.rollupCost = rollupCost;
+            this.sqlCost = sqlCost;
+            this.aggTableName = aggTableName;
+        }
+
+        /**
+         * Returns whether the request should be satisfied by rolling up.
+         *
+         * @return Whether to roll up
+         */
+        public boolean isRollup() {
+            return !candidates.isEmpty();
+        }
+
+        public String toString() {
+            return "RollupPlan(rollup=" + isRollup()
+                + ", rollupCost=" + rollupCost
+                + ", sqlCost=" + sqlCost
+                + ", aggTable=" + aggTableName
+                + ")";
+        }
+    }
+}
+
+// End RollupPlanner.java
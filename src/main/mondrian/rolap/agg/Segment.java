@@ -12,6 +12,7 @@
 */
 package mondrian.rolap.agg;
 
+import mondrian.olap.MondrianProperties;
 import mondrian.olap.Util;
 import mondrian.rolap.*;
 import mondrian.spi.SegmentHeader;
@@ -275,7 +276,10 @@ public class Segment {
         SqlStatement.Type type,
         int size)
     {
-        if (sparse) {
+        if (measure.getAggregator().isSketch()) {
+            return new SketchSegmentDataset(
+                MondrianProperties.instance().ApproxDistinctCountError.get());
+        } else if (sparse) {
             return new SparseSegmentDataset();
         } else {
             switch (type) {
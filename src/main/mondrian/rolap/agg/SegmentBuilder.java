@@ -31,6 +31,16 @@ import java.util.Map.Entry;
  * @author LBoudreau
  */
 public class SegmentBuilder {
+    private static final int OP_SUM = 0;
+    private static final int OP_MIN = 1;
+    private static final int OP_MAX = 2;
+
+    /**
+     * Largest target segment, in cells, that {@link #rollupPrimitive} will
+     * accumulate in arrays.
+     */
+    private static final int MAX_PRIMITIVE_ROLLUP_CELL_COUNT = 1 << 24;
+
     /**
      * Converts a segment plus a {@link SegmentBody} into a
      * {@link mondrian.rolap.agg.SegmentWithData}.
@@ -177,15 +187,6 @@ public class SegmentBuilder {
         Aggregator rollupAggregator,
         Datatype datatype)
     {
-        class AxisInfo {
-            SegmentColumn column;
-            SortedSet<Comparable> requestedValues;
-            SortedSet<Comparable> valueSet;
-            Comparable[] values;
-            boolean hasNull;
-            int src;
-            boolean lostPredicate;
-        }
         final SegmentHeader firstHeader = map.keySet().iterator().next();
         final AxisInfo[] axes =
             new AxisInfo[keepColumns.size()];
@@ -254,18 +255,33 @@ public class SegmentBuilder {
                 axis.valueSet.toArray(new Comparable[axis.valueSet.size()]);
         }
 
+        // Build the axis list.
+        final List<Pair<SortedSet<Comparable>, Boolean>> axisList =
+            new ArrayList<Pair<SortedSet<Comparable>, Boolean>>();
+        for (AxisInfo axis : axes) {
+            axisList.add(
+                new Pair<SortedSet<Comparable>, Boolean>(
+                    axis.valueSet, axis.hasNull));
+        }
+
+        // If the aggregator and the source bodies allow, roll up using
+        // primitive arrays.
+        final SegmentBody primitiveBody =
+            rollupPrimitive(map, axes, axisList, rollupAggregator, datatype);
+        if (primitiveBody != null) {
+            return Pair.of(
+                rollupHeader(firstHeader, axes, axisList, targetBitkey),
+                primitiveBody);
+        }
+
         // Populate cells.
         //
         // (This is a rough implementation, very inefficient. It makes all
         // segment types pretend to be sparse, for purposes of reading. It
         // maps all axis ordinals to a value, then back to an axis ordinal,
         // even if this translation were not necessary, say if the source and
-        // target axes had the same set of values. And it always creates a
-        // sparse segment.
-        //
-        // We should do really efficient rollup if the source is an array: we
-        // should box values (e.g double to Double and back), and we should read
-        // a stripe of values from the and add them up into a single cell.
+        // target axes had the same set of values. It is only used for
+        // segments that rollupPrimitive cannot handle.)
         final Map<CellKey, List<Object>> cellValues =
             new HashMap<CellKey, List<Object>>();
         for (Map.Entry<SegmentHeader, SegmentBody> entry : map.entrySet()) {
@@ -325,15 +341,9 @@ public class SegmentBuilder {
             }
         }
 
-        // Build the axis list.
-        final List<Pair<SortedSet<Comparable>, Boolean>> axisList =
-            new ArrayList<Pair<SortedSet<Comparable>, Boolean>>();
         final BitSet nullIndicators = new BitSet(axes.length);
         int nbValues = 1;
         for (int i = 0; i < axes.length; i++) {
-            axisList.add(
-                new Pair<SortedSet<Comparable>, Boolean>(
-                    axes[i].valueSet, axes[i].hasNull));
             nullIndicators.set(i, axes[i].hasNull);
             nbValues *= axes[i].hasNull
                 ? axes[i].values.length + 1
@@ -352,11 +362,13 @@ public class SegmentBuilder {
                 new DenseObjectSegmentBody(
                     new Object[0],
                     axisList);
-        } else if (SegmentLoader.useSparse(
+        } else if (isSketch(rollupAggregator)
+            || SegmentLoader.useSparse(
                 cellValues.size(),
                 cellValues.size() - nullIndicators.cardinality()))
         {
-            // The rule says we must use a sparse dataset.
+            // The rule says we must use a sparse dataset. (Cells of sketch
+            // aggregators hold objects, so are always sparse.)
             // First, aggregate the values of each key.
             final Map<CellKey, Object> data =
                 new HashMap<CellKey, Object>();
@@ -439,7 +451,73 @@ public class SegmentBuilder {
             }
         }
 
-        // Create header.
+        return Pair.of(
+            rollupHeader(firstHeader, axes, axisList, targetBitkey),
+            body);
+    }
+
+    /**
+     * Merges the body of a segment with the body of a segment that has the
+     * same columns but holds the cells of other fact rows; for example, rows
+     * that have been appended to the fact table since the segment was loaded.
+     *
+     * <p>Each axis of the result is the union of the axes of the inputs.
+     * Cells that occur in both inputs are combined using the rollup
+     * aggregator of the measure, so the measure's aggregator must be able to
+     * combine partial results, like sum, count, min, max and sketch
+     * aggregators can.</p>
+     *
+     * @param header Segment header
+     * @param body Segment body
+     * @param deltaHeader Header of segment of other rows
+     * @param deltaBody Body of segment of other rows
+     * @param measure Measure
+     * @return Merged body
+     */
+    public static SegmentBody merge(
+        SegmentHeader header,
+        SegmentBody body,
+        SegmentHeader deltaHeader,
+        SegmentBody deltaBody,
+        RolapStar.Measure measure)
+    {
+        if (deltaBody.getValueMap().isEmpty()) {
+            return body;
+        }
+        // The headers are equal, so use an identity map to keep both.
+        final Map<SegmentHeader, SegmentBody> map =
+            new IdentityHashMap<SegmentHeader, SegmentBody>();
+        map.put(header, body);
+        map.put(deltaHeader, deltaBody);
+        final Set<String> keepColumns = new HashSet<String>();
+        for (SegmentColumn column : header.getConstrainedColumns()) {
+            keepColumns.add(column.columnExpression);
+        }
+        return rollup(
+            map,
+            keepColumns,
+            header.getConstrainedColumnsBitKey(),
+            measure.getAggregator().getRollup(),
+            measure.getDatatype()).right;
+    }
+
+    /**
+     * Returns whether an aggregator's cells hold sketches.
+     */
+    private static boolean isSketch(Aggregator aggregator) {
+        return aggregator instanceof RolapAggregator
+            && ((RolapAggregator) aggregator).isSketch();
+    }
+
+    /**
+     * Creates the header of a segment created by rolling up.
+     */
+    private static SegmentHeader rollupHeader(
+        SegmentHeader firstHeader,
+        AxisInfo[] axes,
+        List<Pair<SortedSet<Comparable>, Boolean>> axisList,
+        BitKey targetBitkey)
+    {
         final List<SegmentColumn> constrainedColumns =
             new ArrayList<SegmentColumn>();
         for (int i = 0; i < axes.length; i++) {
@@ -452,19 +530,328 @@ public class SegmentBuilder {
                         ? axisList.get(i).left
                         : axisInfo.column.values));
         }
-        final SegmentHeader header =
-            new SegmentHeader(
-                firstHeader.schemaName,
-                firstHeader.schemaChecksum,
-                firstHeader.cubeName,
-                firstHeader.measureName,
-                constrainedColumns,
-                firstHeader.compoundPredicates,
-                firstHeader.rolapStarFactTableName,
-                targetBitkey,
-                Collections.<SegmentColumn>emptyList());
-
-        return Pair.of(header, body);
+        return new SegmentHeader(
+            firstHeader.schemaName,
+            firstHeader.schemaChecksum,
+            firstHeader.cubeName,
+            firstHeader.measureName,
+            constrainedColumns,
+            firstHeader.compoundPredicates,
+            firstHeader.rolapStarFactTableName,
+            targetBitkey,
+            Collections.<SegmentColumn>emptyList());
+    }
+
+    /**
+     * Rolls up segments using tight loops over primitive arrays, for the
+     * common case that the rollup aggregator is sum, min or max, the
+     * values are numeric, and every source body is dense (int or double)
+     * or sparse.
+     *
+     * <p>For each axis of each source segment, computes an array that maps
+     * each ordinal to the offset it contributes to the target cell (or -1
+     * if the target segment does not contain that value). The offset of
+     * the target cell is then the sum of one entry from each array, and
+     * the value is combined into an accumulator array without boxing.</p>
+     *
+     * <p>Returns null if the segments are not eligible, in which case the
+     * caller must use the generic algorithm. Other aggregators (for
+     * instance distinct-count, which cannot be rolled up at all, or custom
+     * aggregators) use the generic algorithm.</p>
+     *
+     * @param map Source segment headers and bodies
+     * @param axes Axes of target segment
+     * @param axisList Value sets and null flags of target axes
+     * @param rollupAggregator Aggregator
+     * @param datatype Datatype of values
+     * @return Body of rolled up segment, or null
+     */
+    private static SegmentBody rollupPrimitive(
+        Map<SegmentHeader, SegmentBody> map,
+        AxisInfo[] axes,
+        List<Pair<SortedSet<Comparable>, Boolean>> axisList,
+        Aggregator rollupAggregator,
+        Datatype datatype)
+    {
+        final int op;
+        if (rollupAggregator == RolapAggregator.Sum) {
+            op = OP_SUM;
+        } else if (rollupAggregator == RolapAggregator.Min) {
+            op = OP_MIN;
+        } else if (rollupAggregator == RolapAggregator.Max) {
+            op = OP_MAX;
+        } else {
+            return null;
+        }
+        if (datatype != Datatype.Integer && datatype != Datatype.Numeric) {
+            return null;
+        }
+        for (SegmentBody body : map.values()) {
+            if (!(body instanceof DenseDoubleSegmentBody
+                  || body instanceof DenseIntSegmentBody
+                  || body instanceof SparseSegmentBody))
+            {
+                return null;
+            }
+        }
+
+        // Layout of the target segment, as in DenseSegmentDataset: the null
+        // value, if present, is the last ordinal of its axis.
+        final int[] targetMultipliers = new int[axes.length];
+        long targetCount = 1;
+        for (int i = axes.length - 1; i >= 0; --i) {
+            targetMultipliers[i] = (int) targetCount;
+            targetCount *= axes[i].values.length + (axes[i].hasNull ? 1 : 0);
+            if (targetCount > MAX_PRIMITIVE_ROLLUP_CELL_COUNT) {
+                return null;
+            }
+        }
+        final boolean isDouble = datatype == Datatype.Numeric;
+        final double[] doubles =
+            isDouble ? new double[(int) targetCount] : null;
+        final int[] ints = isDouble ? null : new int[(int) targetCount];
+        final BitSet present = new BitSet((int) targetCount);
+
+        for (SegmentBody body : map.values()) {
+            final int[][] offsets =
+                computeRollupOffsets(body, axes, targetMultipliers);
+            if (body instanceof SparseSegmentBody) {
+                final SparseSegmentBody sparseBody = (SparseSegmentBody) body;
+                keyLoop:
+                for (int i = 0; i < sparseBody.keys.length; i++) {
+                    final Object o = sparseBody.data[i];
+                    if (o == null) {
+                        continue;
+                    }
+                    final int[] ordinals = sparseBody.keys[i].getOrdinals();
+                    int t = 0;
+                    for (int j = 0; j < ordinals.length; j++) {
+                        final int offset = offsets[j][ordinals[j]];
+                        if (offset < 0) {
+                            continue keyLoop;
+                        }
+                        t += offset;
+                    }
+                    if (isDouble) {
+                        accumulate(
+                            doubles, present, t, ((Number) o).doubleValue(),
+                            op);
+                    } else {
+                        accumulate(
+                            ints, present, t, ((Number) o).intValue(), op);
+                    }
+                }
+                continue;
+            }
+
+            // Dense body. Iterate over all axes but the last using an
+            // odometer, and over the last axis in a tight inner loop.
+            final BitSet nullIndicators = body.getIndicators();
+            final Object valueArray = body.getValueArray();
+            final int arity = offsets.length;
+            final int[] lastOffsets =
+                arity == 0 ? new int[] {0} : offsets[arity - 1];
+            final int lastLength = lastOffsets.length;
+            final int sourceCount =
+                valueArray instanceof double[]
+                    ? ((double[]) valueArray).length
+                    : ((int[]) valueArray).length;
+            long expectedCount = lastLength;
+            for (int j = 0; j < arity - 1; j++) {
+                expectedCount *= offsets[j].length;
+            }
+            if (expectedCount != sourceCount) {
+                // Body does not have the expected layout.
+                return null;
+            }
+            final int[] ordinals = new int[Math.max(arity - 1, 0)];
+            int rowStart = 0;
+            rowLoop:
+            while (rowStart < sourceCount) {
+                int base = 0;
+                boolean valid = true;
+                for (int j = 0; j < ordinals.length; j++) {
+                    final int offset = offsets[j][ordinals[j]];
+                    if (offset < 0) {
+                        valid = false;
+                        break;
+                    }
+                    base += offset;
+                }
+                if (valid) {
+                    if (valueArray instanceof double[]) {
+                        final double[] values = (double[]) valueArray;
+                        for (int k = 0; k < lastLength; k++) {
+                            final int offset = lastOffsets[k];
+                            if (offset < 0) {
+                                continue;
+                            }
+                            final int i = rowStart + k;
+                            final double v = values[i];
+                            if (v == 0d && nullIndicators.get(i)) {
+                                continue;
+                            }
+                            if (isDouble) {
+                                accumulate(
+                                    doubles, present, base + offset, v, op);
+                            } else {
+                                accumulate(
+                                    ints, present, base + offset, (int) v, op);
+                            }
+                        }
+                    } else {
+                        final int[] values = (int[]) valueArray;
+                        for (int k = 0; k < lastLength; k++) {
+                            final int offset = lastOffsets[k];
+                            if (offset < 0) {
+                                continue;
+                            }
+                            final int i = rowStart + k;
+                            final int v = values[i];
+                            if (v == 0 && nullIndicators.get(i)) {
+                                continue;
+                            }
+                            if (isDouble) {
+                                accumulate(
+                                    doubles, present, base + offset, v, op);
+                            } else {
+                                accumulate(
+                                    ints, present, base + offset, v, op);
+                            }
+                        }
+                    }
+                }
+                rowStart += lastLength;
+
+                // Advance the odometer.
+                for (int j = ordinals.length - 1; j >= 0; --j) {
+                    if (++ordinals[j] < offsets[j].length) {
+                        continue rowLoop;
+                    }
+                    ordinals[j] = 0;
+                }
+                break;
+            }
+        }
+
+        final int cellCount = present.cardinality();
+        if (cellCount == 0) {
+            return new DenseObjectSegmentBody(new Object[0], axisList);
+        }
+        if (SegmentLoader.useSparse(targetCount, cellCount)) {
+            final Map<CellKey, Object> data =
+                new HashMap<CellKey, Object>(cellCount * 3 / 2);
+            final int[] pos = new int[axes.length];
+            for (int t = present.nextSetBit(0);
+                 t >= 0;
+                 t = present.nextSetBit(t + 1))
+            {
+                int remainder = t;
+                for (int i = 0; i < axes.length; i++) {
+                    pos[i] = remainder / targetMultipliers[i];
+                    remainder -= pos[i] * targetMultipliers[i];
+                }
+                data.put(
+                    CellKey.Generator.newCellKey(pos),
+                    isDouble ? (Object) doubles[t] : (Object) ints[t]);
+            }
+            return new SparseSegmentBody(data, axisList);
+        }
+        final BitSet nullIndicators = new BitSet((int) targetCount);
+        nullIndicators.set(0, (int) targetCount);
+        nullIndicators.andNot(present);
+        return isDouble
+            ? new DenseDoubleSegmentBody(nullIndicators, doubles, axisList)
+            : new DenseIntSegmentBody(nullIndicators, ints, axisList);
+    }
+
+    /**
+     * Computes, for each axis of a source segment body, an array that maps
+     * each ordinal on that axis to its contribution to the offset of the
+     * target cell: 0 for an axis that is rolled up, -1 for a value that is
+     * not in the target segment.
+     */
+    private static int[][] computeRollupOffsets(
+        SegmentBody body,
+        AxisInfo[] axes,
+        int[] targetMultipliers)
+    {
+        final SortedSet<Comparable>[] axisValueSets = body.getAxisValueSets();
+        final boolean[] nullAxisFlags = body.getNullAxisFlags();
+        final int[][] offsets = new int[axisValueSets.length][];
+        for (int j = 0; j < axisValueSets.length; j++) {
+            offsets[j] =
+                new int[axisValueSets[j].size() + (nullAxisFlags[j] ? 1 : 0)];
+        }
+        for (int z = 0; z < axes.length; z++) {
+            final AxisInfo axis = axes[z];
+            final int[] axisOffsets = offsets[axis.src];
+            int ordinal = 0;
+            for (Comparable value : axisValueSets[axis.src]) {
+                final int target =
+                    value == null
+                        ? (axis.hasNull ? axis.values.length : -1)
+                        : Util.binarySearch(
+                            axis.values, 0, axis.values.length, value);
+                axisOffsets[ordinal++] =
+                    target < 0 ? -1 : target * targetMultipliers[z];
+            }
+            if (nullAxisFlags[axis.src]) {
+                axisOffsets[ordinal] =
+                    axis.hasNull
+                        ? axis.values.length * targetMultipliers[z]
+                        : -1;
+            }
+        }
+        return offsets;
+    }
+
+    private static void accumulate(
+        double[] values, BitSet present, int t, double v, int op)
+    {
+        if (!present.get(t)) {
+            present.set(t);
+            values[t] = v;
+            return;
+        }
+        switch (op) {
+        case OP_SUM:
+            values[t] += v;
+            break;
+        case OP_MIN:
+            if (v < values[t]) {
+                values[t] = v;
+            }
+            break;
+        default:
+            if (v > values[t]) {
+                values[t] = v;
+            }
+        }
+    }
+
+    private static void accumulate(
+        int[] values, BitSet present, int t, int v, int op)
+    {
+        if (!present.get(t)) {
+            present.set(t);
+            values[t] = v;
+            return;
+        }
+        switch (op) {
+        case OP_SUM:
+            values[t] += v;
+            break;
+        case OP_MIN:
+            if (v < values[t]) {
+                values[t] = v;
+            }
+            break;
+        default:
+            if (v > values[t]) {
+                values[t] = v;
+            }
+        }
     }
 
     private static int[] computeAxisMultipliers(
@@ -479,6 +866,19 @@ public class SegmentBuilder {
         return axisMultipliers;
     }
 
+    /**
+     * Axis of the segment created by a rollup.
+     */
+    private static class AxisInfo {
+        SegmentColumn column;
+        SortedSet<Comparable> requestedValues;
+        SortedSet<Comparable> valueSet;
+        Comparable[] values;
+        boolean hasNull;
+        int src;
+        boolean lostPredicate;
+    }
+
     private static class ExcludedRegionList
         extends AbstractList<Segment.ExcludedRegion>
         implements Segment.ExcludedRegion
@@ -646,7 +1046,7 @@ public class SegmentBuilder {
             Collections.<SegmentColumn>emptyList());
     }
 
-    private static RolapStar.Column[] getConstrainedColumns(
+    static RolapStar.Column[] getConstrainedColumns(
         RolapStar star,
         BitKey bitKey)
     {
@@ -23,6 +23,7 @@ import mondrian.util.Pair;
 
 import org.apache.log4j.Logger;
 
+import java.io.File;
 import java.io.PrintWriter;
 import java.util.*;
 import java.util.Map.Entry;
@@ -210,8 +211,17 @@ import java.util.concurrent.*;
  */
 public class SegmentCacheManager {
     private final Handler handler = new Handler();
-    private final Actor ACTOR;
-    public final Thread thread;
+
+    /**
+     * Actors that maintain the segment index. Each star is assigned to one
+     * actor; see {@link #getActorOrdinal(RolapStar)}.
+     */
+    private final List<Actor> actors = new ArrayList<Actor>();
+
+    /**
+     * Threads on which the {@link #actors} run, in the same order.
+     */
+    private final List<Thread> threads = new ArrayList<Thread>();
 
     /**
      * Executor with which to send requests to external caches.
@@ -254,6 +264,19 @@ public class SegmentCacheManager {
                 }
             });
 
+    /**
+     * Schedules SQL requests onto {@link #sqlExecutor}, limiting the number
+     * that run concurrently for each MDX execution and data source.
+     */
+    public final SegmentLoadScheduler sqlScheduler =
+        new SegmentLoadScheduler(
+            sqlExecutor,
+            MondrianProperties.instance()
+                .SegmentLoadMaxSqlThreadsPerExecution.get(),
+            MondrianProperties.instance()
+                .SegmentLoadMaxSqlThreadsPerDataSource.get(),
+            MondrianProperties.instance().SegmentLoadMaxWait.get());
+
     // NOTE: This list is only mutable for testing purposes. Would rather it
     // were immutable.
     public final List<SegmentCacheWorker> segmentCacheWorkers =
@@ -266,13 +289,30 @@ public class SegmentCacheManager {
         Logger.getLogger(AggregationManager.class);
     private final MondrianServer server;
 
+    /**
+     * Cache that persists segments on local disk, or null if
+     * {@link MondrianProperties#DiskSegmentCacheDirectory} is not set.
+     */
+    private final DiskSegmentCache diskCache;
+
     public SegmentCacheManager(MondrianServer server) {
         this.server = server;
-        ACTOR = new Actor();
-        thread = new Thread(
-            ACTOR, "mondrian.rolap.agg.SegmentCacheManager$ACTOR");
-        thread.setDaemon(true);
-        thread.start();
+        final int actorCount =
+            Math.max(
+                1,
+                MondrianProperties.instance().SegmentCacheManagerNumberActors
+                    .get());
+        for (int i = 0; i < actorCount; i++) {
+            final Actor actor = new Actor();
+            final Thread thread = new Thread(
+                actor,
+                "mondrian.rolap.agg.SegmentCacheManager$ACTOR"
+                + (actorCount == 1 ? "" : "#" + i));
+            thread.setDaemon(true);
+            thread.start();
+            actors.add(actor);
+            threads.add(thread);
+        }
 
         // Create the index registry.
         this.indexRegistry = new SegmentCacheIndexRegistry();
@@ -281,9 +321,47 @@ public class SegmentCacheManager {
         if (!MondrianProperties.instance().DisableLocalSegmentCache.get()
             && !MondrianProperties.instance().DisableCaching.get())
         {
-            final MemorySegmentCache cache = new MemorySegmentCache();
+            if (MondrianProperties.instance().OffHeapSegmentCacheSize.get()
+                > 0)
+            {
+                final OffHeapSegmentCache cache = new OffHeapSegmentCache();
+                segmentCacheWorkers.add(
+                    new SegmentCacheWorker(cache, threads));
+                // The cache evicts segments when it is full. It needs a
+                // listener so that evicted segments are removed from the
+                // index, unless another cache still holds them.
+                cache.addListener(
+                    new EvictionListener(
+                        segmentCacheWorkers,
+                        new AsyncCacheListener(this, server)));
+            } else {
+                final MemorySegmentCache cache = new MemorySegmentCache();
+                segmentCacheWorkers.add(
+                    new SegmentCacheWorker(cache, threads));
+            }
+        }
+
+        // Add a cache that persists segments on disk, if configured.
+        final String diskCacheDirectory =
+            MondrianProperties.instance().DiskSegmentCacheDirectory.get();
+        if (diskCacheDirectory != null
+            && diskCacheDirectory.length() > 0
+            && !MondrianProperties.instance().DisableCaching.get())
+        {
+            diskCache =
+                new DiskSegmentCache(
+                    new File(diskCacheDirectory),
+                    (long) MondrianProperties.instance().DiskSegmentCacheSize
+                        .get()
+                    * 1024L * 1024L);
             segmentCacheWorkers.add(
-                new SegmentCacheWorker(cache, thread));
+                new SegmentCacheWorker(diskCache, threads));
+            diskCache.addListener(
+                new EvictionListener(
+                    segmentCacheWorkers,
+                    new AsyncCacheListener(this, server)));
+        } else {
+            diskCache = null;
         }
 
         // Add an external cache, if configured.
@@ -291,7 +369,7 @@ public class SegmentCacheManager {
         for (SegmentCache cache : externalCache) {
             // Create a worker for this external cache
             segmentCacheWorkers.add(
-                new SegmentCacheWorker(cache, thread));
+                new SegmentCacheWorker(cache, threads));
             // Hook up a listener so it can update
             // the segment index.
             cache.addListener(
@@ -301,8 +379,94 @@ public class SegmentCacheManager {
         compositeCache = new CompositeSegmentCache(segmentCacheWorkers);
     }
 
+    /**
+     * Executes a command that does not access the index of any particular
+     * star.
+     *
+     * <p>Commands that access the index of a star must be executed using
+     * {@link #execute(RolapStar, Command)}, and commands that access the
+     * indexes of several stars using {@link #executeAll(Command)}.</p>
+     *
+     * @param command Command
+     * @return Result of command
+     */
     public <T> T execute(Command<T> command) {
-        return ACTOR.execute(handler, command);
+        return actors.get(0).execute(handler, command);
+    }
+
+    /**
+     * Executes a command on the actor that owns the index of a given star.
+     *
+     * @param star Star whose index the command accesses
+     * @param command Command
+     * @return Result of command
+     */
+    public <T> T execute(RolapStar star, Command<T> command) {
+        return actors.get(getActorOrdinal(star)).execute(handler, command);
+    }
+
+    /**
+     * Executes a command on each actor in turn, and returns the results.
+     *
+     * <p>The command is called once on each actor's thread; it should use
+     * {@link #isLocal(RolapStar)} to decide which stars to operate on.</p>
+     *
+     * @param command Command
+     * @return Result of command on each actor
+     */
+    public <T> List<T> executeAll(Command<T> command) {
+        final List<T> results = new ArrayList<T>();
+        for (Actor actor : actors) {
+            results.add(actor.execute(handler, command));
+        }
+        return results;
+    }
+
+    /**
+     * Returns the number of actors that maintain the segment index.
+     */
+    public int getActorCount() {
+        return actors.size();
+    }
+
+    /**
+     * Returns the ordinal of the actor that owns the index of a given star.
+     *
+     * @param star Star
+     * @return Actor ordinal, between 0 and {@link #getActorCount()} - 1
+     */
+    public int getActorOrdinal(RolapStar star) {
+        return getActorOrdinal(
+            star.getSchema().getChecksum(),
+            star.getFactTable().getTableName());
+    }
+
+    private int getActorOrdinal(SegmentHeader header) {
+        return getActorOrdinal(
+            header.schemaChecksum,
+            header.rolapStarFactTableName);
+    }
+
+    private int getActorOrdinal(
+        ByteString schemaChecksum,
+        String factTableName)
+    {
+        if (actors.size() == 1) {
+            return 0;
+        }
+        final int hash = Util.hash(schemaChecksum.hashCode(), factTableName);
+        return (hash & Integer.MAX_VALUE) % actors.size();
+    }
+
+    /**
+     * Returns whether the current thread is the thread of the actor that owns
+     * the index of a given star.
+     *
+     * @param star Star
+     * @return Whether the star's index may be accessed from this thread
+     */
+    public boolean isLocal(RolapStar star) {
+        return threads.get(getActorOrdinal(star)) == Thread.currentThread();
     }
 
     public SegmentCacheIndexRegistry getIndexRegistry() {
@@ -326,7 +490,7 @@ public class SegmentCacheManager {
         SegmentBody body)
     {
         final Locus locus = Locus.peek();
-        ACTOR.event(
+        actors.get(getActorOrdinal(star)).event(
             handler,
             new SegmentLoadSucceededEvent(
                 System.currentTimeMillis(),
@@ -356,7 +520,7 @@ public class SegmentCacheManager {
         Throwable throwable)
     {
         final Locus locus = Locus.peek();
-        ACTOR.event(
+        actors.get(getActorOrdinal(star)).event(
             handler,
             new SegmentLoadFailedEvent(
                 System.currentTimeMillis(),
@@ -385,7 +549,7 @@ public class SegmentCacheManager {
         SegmentHeader header)
     {
         final Locus locus = Locus.peek();
-        ACTOR.event(
+        actors.get(getActorOrdinal(star)).event(
             handler,
             new SegmentRemoveEvent(
                 System.currentTimeMillis(),
@@ -411,7 +575,7 @@ public class SegmentCacheManager {
             // Ignore cache requests.
             return;
         }
-        ACTOR.event(
+        actors.get(getActorOrdinal(header)).event(
             handler,
             new ExternalSegmentCreatedEvent(
                 System.currentTimeMillis(),
@@ -436,7 +600,7 @@ public class SegmentCacheManager {
             // Ignore cache requests.
             return;
         }
-        ACTOR.event(
+        actors.get(getActorOrdinal(header)).event(
             handler,
             new ExternalSegmentDeletedEvent(
                 System.currentTimeMillis(),
@@ -449,21 +613,87 @@ public class SegmentCacheManager {
                 header));
     }
 
+    /**
+     * Adds to the index of a star the segments that were persisted on disk by
+     * a previous run of this server.
+     *
+     * <p>Segments of other schemas, and of other versions of this schema,
+     * are left alone. Several catalogs may have a schema of the same name,
+     * so the disk cache does not delete segments on behalf of a schema;
+     * it evicts the least recently used segments when it is full.</p>
+     *
+     * <p>Called when an index is created. Reading the headers may take some
+     * time, so it is done by a worker; each segment found is added to the
+     * index via an event, as if it had been created by an external cache.</p>
+     *
+     * @param star Star
+     */
+    private void loadPersistentHeaders(RolapStar star) {
+        if (diskCache == null) {
+            return;
+        }
+        final ByteString schemaChecksum = star.getSchema().getChecksum();
+        final String factTableName = star.getFactTable().getTableName();
+        final Runnable runnable =
+            new Runnable() {
+                public void run() {
+                    try {
+                        for (SegmentHeader header
+                            : diskCache.getSegmentHeaders())
+                        {
+                            if (header.schemaChecksum.equals(schemaChecksum)
+                                && header.rolapStarFactTableName.equals(
+                                    factTableName))
+                            {
+                                externalSegmentCreated(header, server);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        LOGGER.warn(
+                            "Failed to load persisted segments for star "
+                            + factTableName,
+                            e);
+                    }
+                }
+            };
+        try {
+            cacheExecutor.submit(runnable);
+        } catch (RuntimeException e) {
+            // The executor rejects tasks if its queue is full.
+            LOGGER.warn(
+                "Failed to load persisted segments for star "
+                + factTableName,
+                e);
+        }
+    }
+
     public void printCacheState(
         CellRegion region,
         PrintWriter pw,
         Locus locus)
     {
-        ACTOR.execute(
-            handler,
-            new PrintCacheStateCommand(region, pw, locus));
+        executeAll(new PrintCacheStateCommand(region, pw, locus));
+    }
+
+    /**
+     * Returns the number of messages (commands and events) waiting to be
+     * processed by this manager's actors.
+     *
+     * @return Number of waiting messages
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Actor actor : actors) {
+            depth += actor.eventQueue.size();
+        }
+        return depth;
     }
 
     /**
      * Shuts down this cache manager and all active threads and indexes.
      */
     public void shutdown() {
-        execute(new ShutdownCommand());
+        executeAll(new ShutdownCommand());
         cacheExecutor.shutdown();
         sqlExecutor.shutdown();
     }
@@ -505,6 +735,7 @@ public class SegmentCacheManager {
     public SegmentWithData peek(final CellRequest request) {
         final SegmentCacheManager.PeekResponse response =
             execute(
+                request.getMeasure().getStar(),
                 new PeekCommand(request, Locus.peek()));
         for (SegmentHeader header : response.headerMap.keySet()) {
             final SegmentBody body = compositeCache.get(header);
@@ -658,6 +889,9 @@ public class SegmentCacheManager {
 
     /**
      * Command to flush a particular region from cache.
+     *
+     * <p>Executed on every actor, via {@link #executeAll}. Each actor flushes
+     * the segments of the stars that it owns.</p>
      */
     public static final class FlushCommand implements Command<FlushResult> {
         private final CellRegion region;
@@ -691,7 +925,12 @@ public class SegmentCacheManager {
             final SegmentColumn[] flushRegion =
                 CacheControlImpl.findAxisValues(region);
             final List<RolapStar> starList =
-                CacheControlImpl.getStarList(region);
+                new ArrayList<RolapStar>();
+            for (RolapStar star : CacheControlImpl.getStarList(region)) {
+                if (cacheMgr.isLocal(star)) {
+                    starList.add(star);
+                }
+            }
 
             for (Member member : measures) {
                 if (!(member instanceof RolapStoredMeasure)) {
@@ -700,6 +939,10 @@ public class SegmentCacheManager {
                 final RolapStoredMeasure storedMeasure =
                     (RolapStoredMeasure) member;
                 final RolapStar star = storedMeasure.getCube().getStar();
+                if (!cacheMgr.isLocal(star)) {
+                    // Another actor owns this star's index.
+                    continue;
+                }
                 final SegmentCacheIndex index =
                     cacheMgr.indexRegistry.getIndex(star);
                 headers.addAll(
@@ -818,6 +1061,253 @@ public class SegmentCacheManager {
         }
     }
 
+    /**
+     * Command to find the segments that need to be brought up to date with
+     * rows that have been appended to a fact table. First phase of
+     * {@link mondrian.olap.CacheControl#refresh}.
+     *
+     * <p>Executed on every actor, via {@link #executeAll}. Each actor
+     * examines the segments of the stars that it owns. A segment can be
+     * patched if its measure's aggregator can combine partial results, it
+     * has no compound predicates, and it finished loading from SQL before
+     * the new rows were committed. Any other segment that intersects the
+     * region is flushed.</p>
+     */
+    public static final class RefreshCommand
+        implements Command<RefreshResult>
+    {
+        private final Locus locus;
+        private final SegmentCacheManager cacheMgr;
+        private final CellRegion region;
+        private final long commitTime;
+        private final CacheControlImpl cacheControlImpl;
+
+        public RefreshCommand(
+            Locus locus,
+            SegmentCacheManager mgr,
+            CellRegion region,
+            long commitTime,
+            CacheControlImpl cacheControlImpl)
+        {
+            this.locus = locus;
+            this.cacheMgr = mgr;
+            this.region = region;
+            this.commitTime = commitTime;
+            this.cacheControlImpl = cacheControlImpl;
+        }
+
+        public Locus getLocus() {
+            return locus;
+        }
+
+        public RefreshResult call() throws Exception {
+            final Map<SegmentHeader, Pair<RolapStar.Measure, SegmentBody>>
+                segmentMap =
+                new HashMap<SegmentHeader,
+                    Pair<RolapStar.Measure, SegmentBody>>();
+            final List<Callable<Boolean>> tasks =
+                new ArrayList<Callable<Boolean>>();
+            for (Map.Entry<SegmentHeader, RolapStar.Measure> entry
+                : findHeaders(cacheMgr, region).entrySet())
+            {
+                final SegmentHeader header = entry.getKey();
+                final RolapStar.Measure measure = entry.getValue();
+                final SegmentCacheIndex index =
+                    cacheMgr.indexRegistry.getIndex(measure.getStar());
+                final SegmentBody body = loadedBody(index, header);
+                if (body != null
+                    && canMerge(measure.getAggregator())
+                    && header.compoundPredicates.isEmpty())
+                {
+                    segmentMap.put(header, Pair.of(measure, body));
+                } else {
+                    cacheControlImpl.trace(
+                        "discard segment - it cannot be refreshed:\n"
+                        + header.getDescription());
+                    index.remove(header);
+                    tasks.add(cacheMgr.removeTask(header));
+                }
+            }
+            return new RefreshResult(tasks, segmentMap);
+        }
+
+        /**
+         * Returns the body of a segment, if the segment finished loading
+         * from SQL before the new rows were committed; otherwise null.
+         */
+        private SegmentBody loadedBody(
+            SegmentCacheIndex index,
+            SegmentHeader header)
+        {
+            final long loadTime = index.getLoadTime(header);
+            if (loadTime == 0L || loadTime >= commitTime) {
+                return null;
+            }
+            final Future<SegmentBody> future = index.getFuture(header);
+            if (future == null || !future.isDone()) {
+                return null;
+            }
+            return Util.safeGet(future, "SegmentCacheManager.refresh");
+        }
+
+        /**
+         * Returns whether an aggregator can combine the value of a cell with
+         * the value of the same cell over a set of new rows.
+         */
+        private static boolean canMerge(RolapAggregator aggregator) {
+            return aggregator == RolapAggregator.Sum
+                || aggregator == RolapAggregator.Count
+                || aggregator == RolapAggregator.Min
+                || aggregator == RolapAggregator.Max
+                || aggregator.isSketch();
+        }
+    }
+
+    /**
+     * Command to replace the bodies of segments with bodies that include
+     * rows that have been appended to a fact table. Second phase of
+     * {@link mondrian.olap.CacheControl#refresh}.
+     *
+     * <p>Executed on every actor, via {@link #executeAll}. While the new
+     * rows were being loaded, segments may have been created by rolling up
+     * segments that had not yet been patched; this command flushes them,
+     * and any other segment in the region that might not include the new
+     * rows. Segments that started loading from SQL after the first phase are
+     * kept; they already include the new rows.</p>
+     */
+    public static final class ApplyRefreshCommand
+        implements Command<FlushResult>
+    {
+        private final Locus locus;
+        private final SegmentCacheManager cacheMgr;
+        private final CellRegion region;
+        private final long commitTime;
+        private final Map<SegmentHeader, SegmentBody> bodyMap;
+        private final CacheControlImpl cacheControlImpl;
+
+        public ApplyRefreshCommand(
+            Locus locus,
+            SegmentCacheManager mgr,
+            CellRegion region,
+            long commitTime,
+            Map<SegmentHeader, SegmentBody> bodyMap,
+            CacheControlImpl cacheControlImpl)
+        {
+            this.locus = locus;
+            this.cacheMgr = mgr;
+            this.region = region;
+            this.commitTime = commitTime;
+            this.bodyMap = bodyMap;
+            this.cacheControlImpl = cacheControlImpl;
+        }
+
+        public Locus getLocus() {
+            return locus;
+        }
+
+        public FlushResult call() throws Exception {
+            final List<Callable<Boolean>> tasks =
+                new ArrayList<Callable<Boolean>>();
+            for (Map.Entry<SegmentHeader, RolapStar.Measure> entry
+                : findHeaders(cacheMgr, region).entrySet())
+            {
+                final SegmentHeader header = entry.getKey();
+                final SegmentCacheIndex index =
+                    cacheMgr.indexRegistry.getIndex(
+                        entry.getValue().getStar());
+                final Future<SegmentBody> future = index.getFuture(header);
+                if (future != null && !future.isDone()) {
+                    // Started loading after the first phase.
+                    continue;
+                }
+                final long loadTime = index.getLoadTime(header);
+                if (loadTime >= commitTime) {
+                    // Loaded from SQL after the rows were committed.
+                    continue;
+                }
+                final SegmentBody body = bodyMap.get(header);
+                if (body == null) {
+                    cacheControlImpl.trace(
+                        "discard segment - it cannot be refreshed:\n"
+                        + header.getDescription());
+                    index.remove(header);
+                    tasks.add(cacheMgr.removeTask(header));
+                    continue;
+                }
+                cacheControlImpl.trace(
+                    "refresh segment:\n" + header.getDescription());
+                index.update(header, body);
+                for (final SegmentCacheWorker worker
+                    : cacheMgr.segmentCacheWorkers)
+                {
+                    tasks.add(
+                        new Callable<Boolean>() {
+                            public Boolean call() throws Exception {
+                                final boolean existed = worker.remove(header);
+                                worker.put(header, body);
+                                return existed;
+                            }
+                        });
+                }
+            }
+            return new FlushResult(tasks);
+        }
+    }
+
+    /**
+     * Returns the headers of segments in a region, and their measures,
+     * for stars owned by the current actor.
+     */
+    private static Map<SegmentHeader, RolapStar.Measure> findHeaders(
+        SegmentCacheManager cacheMgr,
+        CellRegion region)
+    {
+        final Map<SegmentHeader, RolapStar.Measure> headerMap =
+            new LinkedHashMap<SegmentHeader, RolapStar.Measure>();
+        final SegmentColumn[] axisValues =
+            CacheControlImpl.findAxisValues(region);
+        for (Member member : CacheControlImpl.findMeasures(region)) {
+            if (!(member instanceof RolapStoredMeasure)) {
+                continue;
+            }
+            final RolapStoredMeasure storedMeasure =
+                (RolapStoredMeasure) member;
+            final RolapStar.Measure measure =
+                (RolapStar.Measure) storedMeasure.getStarMeasure();
+            final RolapStar star = measure.getStar();
+            if (!cacheMgr.isLocal(star)) {
+                // Another actor owns this star's index.
+                continue;
+            }
+            final RolapSchema schema =
+                (RolapSchema) member.getDimension().getSchema();
+            final List<SegmentHeader> headers =
+                cacheMgr.indexRegistry.getIndex(star).intersectRegion(
+                    schema.getName(),
+                    schema.getChecksum(),
+                    storedMeasure.getCube().getName(),
+                    storedMeasure.getName(),
+                    star.getFactTable().getAlias(),
+                    axisValues);
+            for (SegmentHeader header : headers) {
+                headerMap.put(header, measure);
+            }
+        }
+        return headerMap;
+    }
+
+    /**
+     * Returns a task that removes a segment from the external cache(s).
+     * Removing may take some time, so the caller should use an executor.
+     */
+    private Callable<Boolean> removeTask(final SegmentHeader header) {
+        return new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                return compositeCache.remove(header);
+            }
+        };
+    }
+
     private class PrintCacheStateCommand
         implements SegmentCacheManager.Command<Void>
     {
@@ -847,8 +1337,10 @@ public class SegmentCacheManager {
                     }
                 });
             for (RolapStar star : starList) {
-                indexRegistry.getIndex(star)
-                    .printCacheState(pw);
+                if (isLocal(star)) {
+                    indexRegistry.getIndex(star)
+                        .printCacheState(pw);
+                }
             }
             return null;
         }
@@ -871,6 +1363,25 @@ public class SegmentCacheManager {
         }
     }
 
+    /**
+     * Result of a {@link RefreshCommand}. Contains a list of tasks that must
+     * be executed by the caller to flush segments that cannot be refreshed
+     * from the external cache(s), and the segments that can be refreshed.
+     */
+    public static class RefreshResult extends FlushResult {
+        public final Map<SegmentHeader, Pair<RolapStar.Measure, SegmentBody>>
+            segmentMap;
+
+        public RefreshResult(
+            List<Callable<Boolean>> tasks,
+            Map<SegmentHeader, Pair<RolapStar.Measure, SegmentBody>>
+                segmentMap)
+        {
+            super(tasks);
+            this.segmentMap = segmentMap;
+        }
+    }
+
     /**
      * Special exception, thrown only by {@link ShutdownCommand}, telling
      * the actor to shut down.
@@ -1342,6 +1853,51 @@ public class SegmentCacheManager {
         }
     }
 
+    /**
+     * Listener for a cache that evicts segments to stay within its budget,
+     * such as {@link OffHeapSegmentCache} or {@link DiskSegmentCache}.
+     *
+     * <p>An eviction removes a segment from that cache only. If another
+     * cache, say the disk cache behind an off-heap cache, still holds the
+     * segment, the
+     * event is not passed on; the header stays in the index, and the next
+     * request for the segment reads it from the other cache.</p>
+     */
+    static class EvictionListener
+        implements SegmentCache.SegmentCacheListener
+    {
+        private final List<SegmentCacheWorker> workers;
+        private final SegmentCache.SegmentCacheListener listener;
+
+        /**
+         * Creates an EvictionListener.
+         *
+         * @param workers Workers of all caches, including the evicting one
+         * @param listener Listener to pass events on to
+         */
+        EvictionListener(
+            List<SegmentCacheWorker> workers,
+            SegmentCache.SegmentCacheListener listener)
+        {
+            this.workers = workers;
+            this.listener = listener;
+        }
+
+        public void handle(SegmentCacheEvent e) {
+            if (!e.isLocal()
+                && e.getEventType()
+                == SegmentCacheEvent.EventType.ENTRY_DELETED)
+            {
+                for (SegmentCacheWorker worker : workers) {
+                    if (worker.contains(e.getSource())) {
+                        return;
+                    }
+                }
+            }
+            listener.handle(e);
+        }
+    }
+
     /**
      * Makes a collection of {@link SegmentCacheWorker} objects (each of which
      * is backed by a {@link SegmentCache} appear to be a SegmentCache.
@@ -1564,17 +2120,33 @@ public class SegmentCacheManager {
     /**
      * Registry of all the indexes that were created for this
      * cache manager, per {@link RolapStar}.
+     *
+     * <p>The indexes are partitioned by actor. Each partition must only be
+     * accessed from the thread of its actor.</p>
      */
     public class SegmentCacheIndexRegistry {
-        private final Map<RolapStar, SegmentCacheIndex> indexes =
-            new WeakHashMap<RolapStar, SegmentCacheIndex>();
+        private final List<Map<RolapStar, SegmentCacheIndex>> indexesList =
+            new ArrayList<Map<RolapStar, SegmentCacheIndex>>();
+
+        SegmentCacheIndexRegistry() {
+            for (int i = 0; i < actors.size(); i++) {
+                indexesList.add(
+                    new WeakHashMap<RolapStar, SegmentCacheIndex>());
+            }
+        }
+
         /**
          * Returns the {@link SegmentCacheIndex} for a given
          * {@link RolapStar}.
          */
         public SegmentCacheIndex getIndex(RolapStar star) {
+            final int ordinal = getActorOrdinal(star);
+            final Map<RolapStar, SegmentCacheIndex> indexes =
+                indexesList.get(ordinal);
             if (!indexes.containsKey(star)) {
-                indexes.put(star, new SegmentCacheIndexImpl(thread));
+                indexes.put(
+                    star, new SegmentCacheIndexImpl(threads.get(ordinal)));
+                loadPersistentHeaders(star);
             }
             return indexes.get(star);
         }
@@ -1587,6 +2159,8 @@ public class SegmentCacheManager {
         {
             // First we check the indexes that already exist.
             // This is fast.
+            final Map<RolapStar, SegmentCacheIndex> indexes =
+                indexesList.get(getActorOrdinal(header));
             for (Entry<RolapStar, SegmentCacheIndex> entry
                 : indexes.entrySet())
             {
@@ -1610,6 +2184,9 @@ public class SegmentCacheManager {
                 // We have a schema match.
                 RolapStar star =
                     schema.getStar(header.rolapStarFactTableName);
+                if (star == null) {
+                    return null;
+                }
                 return getIndex(star);
             }
             return null;
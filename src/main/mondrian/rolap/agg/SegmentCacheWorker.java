@@ -11,6 +11,7 @@ package mondrian.rolap.agg;
 
 import mondrian.olap.MondrianProperties;
 import mondrian.resource.MondrianResource;
+import mondrian.rolap.cache.*;
 import mondrian.spi.*;
 import mondrian.util.ServiceDiscovery;
 
@@ -30,7 +31,7 @@ public final class SegmentCacheWorker {
         Logger.getLogger(SegmentCacheWorker.class);
 
     final SegmentCache cache;
-    private final Thread cacheMgrThread;
+    private final List<Thread> cacheMgrThreads;
     private final boolean supportsRichIndex;
 
     /**
@@ -43,8 +44,27 @@ public final class SegmentCacheWorker {
      *                       Pass null if methods can be called from any thread.
      */
     public SegmentCacheWorker(SegmentCache cache, Thread cacheMgrThread) {
+        this(
+            cache,
+            cacheMgrThread == null
+                ? Collections.<Thread>emptyList()
+                : Collections.singletonList(cacheMgrThread));
+    }
+
+    /**
+     * Creates a worker for a cache manager that has several actors.
+     *
+     * @param cache Cache managed by this worker
+     * @param cacheMgrThreads Threads that the cache manager actors are running
+     *                        on, and which therefore should not be used for
+     *                        potentially long-running calls to this cache
+     */
+    public SegmentCacheWorker(
+        SegmentCache cache,
+        List<Thread> cacheMgrThreads)
+    {
         this.cache = cache;
-        this.cacheMgrThread = cacheMgrThread;
+        this.cacheMgrThreads = cacheMgrThreads;
 
         // no need to call checkThread(): supportsRichIndex is a fast call
         this.supportsRichIndex = cache.supportsRichIndex();
@@ -212,6 +232,36 @@ public final class SegmentCacheWorker {
         }
     }
 
+    /**
+     * Returns whether the cache contains a segment.
+     *
+     * <p>The segment cache SPI has no such method. The built-in caches
+     * answer in constant time; for other caches, this method scans the
+     * list of headers.</p>
+     *
+     * @param header Header of segment
+     * @return Whether the cache contains a segment with the given header;
+     *   false if the cache could not be scanned
+     */
+    public boolean contains(SegmentHeader header) {
+        checkThread();
+        try {
+            if (cache instanceof MemorySegmentCache) {
+                return ((MemorySegmentCache) cache).contains(header);
+            }
+            if (cache instanceof DiskSegmentCache) {
+                return ((DiskSegmentCache) cache).contains(header);
+            }
+            if (cache instanceof OffHeapSegmentCache) {
+                return ((OffHeapSegmentCache) cache).contains(header);
+            }
+            return cache.getSegmentHeaders().contains(header);
+        } catch (Throwable t) {
+            LOGGER.error("Failed to get a list of segment headers.", t);
+            return false;
+        }
+    }
+
     public boolean supportsRichIndex() {
         return supportsRichIndex;
     }
@@ -222,9 +272,9 @@ public final class SegmentCacheWorker {
     }
 
     private void checkThread() {
-        assert cacheMgrThread != Thread.currentThread()
+        assert !cacheMgrThreads.contains(Thread.currentThread())
             : "this method is potentially slow; you should not call it from "
-            + "the cache manager thread, " + cacheMgrThread;
+            + "the cache manager thread, " + Thread.currentThread();
     }
 }
 
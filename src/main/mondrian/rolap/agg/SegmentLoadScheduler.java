@@ -0,0 +1,295 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap.agg;
+
+import mondrian.server.Execution;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Schedules the SQL statements that load segments, so that the statements
+ * of one MDX execution run in parallel, but no execution or data source
+ * takes more than its share of the SQL threads.
+ *
+ * <p>A statement is dispatched to the executor only if fewer than
+ * {@code maxPerExecution} statements of the same {@link Execution}, and
+ * fewer than {@code maxPerDataSource} statements against the same data
+ * source, are running. Otherwise it waits. When a statement completes, the
+ * waiting statements are considered in order of increasing cost (ties
+ * broken by order of submission), so that short statements are not stuck
+ * behind long ones.</p>
+ *
+ * <p>So that a stream of cheap statements cannot hold back an expensive
+ * statement indefinitely, statements that have waited longer than
+ * {@code maxWaitMillis} are considered first, in order of submission.</p>
+ *
+ * <p>A limit of zero or less means no limit; the number of statements
+ * running is then bounded only by the executor, and waiting statements
+ * are considered in order of cost alone.</p>
+ *
+ * <p>Methods are thread-safe.</p>
+ */
+public class SegmentLoadScheduler {
+    private final ExecutorService executor;
+    private final int maxPerExecution;
+    private final int maxPerDataSource;
+    private final long maxWaitNanos;
+
+    /**
+     * Number of running tasks per execution. Tasks whose execution is null
+     * are counted against this object.
+     */
+    private final Map<Object, Integer> executionCounts =
+        new HashMap<Object, Integer>();
+    private final Map<Object, Integer> dataSourceCounts =
+        new HashMap<Object, Integer>();
+    /**
+     * Waiting tasks, cheapest first.
+     */
+    private final SortedSet<Task<?>> pending = new TreeSet<Task<?>>();
+
+    /**
+     * Waiting tasks, in order of submission.
+     */
+    private final Set<Task<?>> pendingBySubmission =
+        new LinkedHashSet<Task<?>>();
+    private long sequence;
+
+    private static final Object NULL_EXECUTION = new Object();
+
+    /**
+     * Creates a SegmentLoadScheduler.
+     *
+     * @param executor Executor that runs statements
+     * @param maxPerExecution Maximum number of statements running
+     *     concurrently for one MDX execution, or 0 for no limit
+     * @param maxPerDataSource Maximum number of statements running
+     *     concurrently against one data source, or 0 for no limit
+     * @param maxWaitMillis Number of milliseconds after which a waiting
+     *     statement takes precedence over cheaper statements, or 0 for no
+     *     limit
+     */
+    public SegmentLoadScheduler(
+        ExecutorService executor,
+        int maxPerExecution,
+        int maxPerDataSource,
+        int maxWaitMillis)
+    {
+        this.executor = executor;
+        this.maxPerExecution = maxPerExecution;
+        this.maxPerDataSource = maxPerDataSource;
+        this.maxWaitNanos =
+            maxWaitMillis <= 0
+                ? Long.MAX_VALUE
+                : TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+    }
+
+    /**
+     * Submits a statement for execution.
+     *
+     * @param execution MDX execution that needs the statement, or null
+     * @param dataSource Data source the statement runs against
+     * @param cost Estimated cost of the statement; cheaper statements are
+     *     dispatched first
+     * @param callable Work to do
+     * @return Future of the result
+     */
+    public <V> Future<V> submit(
+        Execution execution,
+        Object dataSource,
+        long cost,
+        Callable<V> callable)
+    {
+        final Task<V> task;
+        synchronized (this) {
+            task =
+                new Task<V>(
+                    execution == null ? NULL_EXECUTION : execution,
+                    dataSource,
+                    cost,
+                    sequence++,
+                    System.nanoTime(),
+                    callable);
+            pending.add(task);
+            pendingBySubmission.add(task);
+        }
+        dispatch();
+        return task;
+    }
+
+    /**
+     * Returns the number of statements waiting to be dispatched.
+     *
+     * @return Number of waiting statements
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Dispatches to the executor every waiting task whose execution and
+     * data source are below their limits. Tasks that have waited too long
+     * go first, then the others in order of cost.
+     */
+    private void dispatch() {
+        final List<Task<?>> ready = new ArrayList<Task<?>>();
+        synchronized (this) {
+            final long now = System.nanoTime();
+            for (Iterator<Task<?>> iterator = pendingBySubmission.iterator();
+                 iterator.hasNext();)
+            {
+                final Task<?> task = iterator.next();
+                if (now - task.submitNanos < maxWaitNanos) {
+                    // This task, and all after it, have not waited long.
+                    break;
+                }
+                if (tryStart(task, ready)) {
+                    iterator.remove();
+                    pending.remove(task);
+                }
+            }
+            for (Iterator<Task<?>> iterator = pending.iterator();
+                 iterator.hasNext();)
+            {
+                final Task<?> task = iterator.next();
+                if (tryStart(task, ready)) {
+                    iterator.remove();
+                    pendingBySubmission.remove(task);
+                }
+            }
+        }
+        for (Task<?> task : ready) {
+            try {
+                executor.execute(task);
+            } catch (RuntimeException e) {
+                task.fail(e);
+            }
+        }
+    }
+
+    /**
+     * Takes slots for a task and adds it to the list of tasks to dispatch,
+     * if its execution and data source are below their limits. A cancelled
+     * task is discarded. Must be called while holding the lock.
+     *
+     * @param task Waiting task
+     * @param ready List of tasks to dispatch
+     * @return Whether the task is no longer waiting
+     */
+    private boolean tryStart(Task<?> task, List<Task<?>> ready) {
+        if (task.isCancelled()) {
+            return true;
+        }
+        if (isFull(executionCounts, task.execution, maxPerExecution)
+            || isFull(dataSourceCounts, task.dataSource, maxPerDataSource))
+        {
+            return false;
+        }
+        increment(executionCounts, task.execution, 1);
+        increment(dataSourceCounts, task.dataSource, 1);
+        ready.add(task);
+        return true;
+    }
+
+    private synchronized void release(Task<?> task) {
+        increment(executionCounts, task.execution, -1);
+        increment(dataSourceCounts, task.dataSource, -1);
+    }
+
+    private static boolean isFull(
+        Map<Object, Integer> counts,
+        Object key,
+        int limit)
+    {
+        if (limit <= 0) {
+            return false;
+        }
+        final Integer count = counts.get(key);
+        return count != null && count >= limit;
+    }
+
+    private static void increment(
+        Map<Object, Integer> counts,
+        Object key,
+        int delta)
+    {
+        final Integer count = counts.get(key);
+        final int newCount = (count == null ? 0 : count) + delta;
+        if (newCount == 0) {
+            counts.remove(key);
+        } else {
+            counts.put(key, newCount);
+        }
+    }
+
+    /**
+     * Statement waiting or running. Releases its slots, and dispatches
+     * waiting statements, when it completes.
+     */
+    private class Task<V>
+        extends FutureTask<V>
+        implements Comparable<Task<?>>
+    {
+        private final Object execution;
+        private final Object dataSource;
+        private final long cost;
+        private final long ordinal;
+        private final long submitNanos;
+
+        Task(
+            Object execution,
+            Object dataSource,
+            long cost,
+            long ordinal,
+            long submitNanos,
+            Callable<V> callable)
+        {
+            super(callable);
+            this.execution = execution;
+            this.dataSource = dataSource;
+            this.cost = cost;
+            this.ordinal = ordinal;
+            this.submitNanos = submitNanos;
+        }
+
+        public int compareTo(Task<?> o) {
+            if (cost != o.cost) {
+                return cost < o.cost ? -1 : 1;
+            }
+            return ordinal < o.ordinal ? -1 : ordinal == o.ordinal ? 0 : 1;
+        }
+
+        @Override
+        public void run() {
+            try {
+                super.run();
+            } finally {
+                release(this);
+                dispatch();
+            }
+        }
+
+        /**
+         * Called if the executor refuses the task. Releases its slots, and
+         * dispatches the tasks that were waiting for them.
+         */
+        void fail(Throwable e) {
+            try {
+                setException(e);
+            } finally {
+                release(this);
+                dispatch();
+            }
+        }
+    }
+}
+
+// End SegmentLoadScheduler.java
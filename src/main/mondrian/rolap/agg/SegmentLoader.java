@@ -116,10 +116,18 @@ public class SegmentLoader {
             }
         }
         try {
+            // Statements that answer fewer cell requests are likely to be
+            // cheaper, so the scheduler runs them first.
+            final Locus locus = Locus.peek();
+            final RolapStar star =
+                groupingSets.get(0).getSegments().get(0).star;
             segmentFutures.add(
-                cacheMgr.sqlExecutor.submit(
+                cacheMgr.sqlScheduler.submit(
+                    locus.execution,
+                    star.getDataSource(),
+                    cellRequestCount,
                     new SegmentLoadCommand(
-                        Locus.peek(),
+                        locus,
                         this,
                         cellRequestCount,
                         groupingSets,
@@ -137,6 +145,7 @@ public class SegmentLoader {
         private final int cellRequestCount;
         private final List<GroupingSet> groupingSets;
         private final List<StarPredicate> compoundPredicateList;
+        private final long createNanos = System.nanoTime();
 
         public SegmentLoadCommand(
             Locus locus,
@@ -153,22 +162,165 @@ public class SegmentLoader {
         }
 
         public Map<Segment, SegmentWithData> call() throws Exception {
+            final long queueNanos = System.nanoTime() - createNanos;
             Locus.push(locus);
             try {
                 return segmentLoader.loadImpl(
                     cellRequestCount,
+                    queueNanos,
                     groupingSets,
-                    compoundPredicateList);
+                    compoundPredicateList,
+                    true);
             } finally {
                 Locus.pop(locus);
             }
         }
     }
 
+    /**
+     * Loads the rows of the fact table that satisfy a condition, at the
+     * granularity of each of a collection of cached segments, and merges
+     * them into the segments' bodies.
+     *
+     * <p>Used to bring cached segments up to date with rows that have been
+     * appended to the fact table; see
+     * {@link mondrian.olap.CacheControl#refresh}. The aggregator of each
+     * segment's measure must be able to combine partial results, and
+     * the segments must not have compound predicates.</p>
+     *
+     * <p>Segments with the same columns and column values are loaded using
+     * the same SQL statement. The merged segments are not put into the
+     * cache; that is the caller's responsibility.</p>
+     *
+     * @param segmentMap Map from segment header to its measure and current
+     *   body
+     * @param condition SQL condition that selects the new rows of the fact
+     *   table
+     * @return Map from segment header to merged body
+     */
+    Map<SegmentHeader, SegmentBody> loadIncrements(
+        Map<SegmentHeader, Pair<RolapStar.Measure, SegmentBody>> segmentMap,
+        String condition)
+    {
+        // Group the segments by star and by columns. As in
+        // FastBatchingCellReader, sketch measures are loaded separately for
+        // each operand.
+        final Map<List<Object>, List<SegmentHeader>> groups =
+            new LinkedHashMap<List<Object>, List<SegmentHeader>>();
+        for (Map.Entry<SegmentHeader, Pair<RolapStar.Measure, SegmentBody>>
+            entry : segmentMap.entrySet())
+        {
+            final SegmentHeader header = entry.getKey();
+            final RolapStar.Measure measure = entry.getValue().left;
+            final List<Object> key =
+                Arrays.<Object>asList(
+                    measure.getStar(),
+                    header.getConstrainedColumnsBitKey(),
+                    header.getConstrainedColumns(),
+                    measure.getAggregator().isSketch()
+                        ? measure.getExpression().getGenericExpression()
+                        : null);
+            List<SegmentHeader> headerList = groups.get(key);
+            if (headerList == null) {
+                headerList = new ArrayList<SegmentHeader>();
+                groups.put(key, headerList);
+            }
+            headerList.add(header);
+        }
+
+        final Map<SegmentHeader, SegmentBody> bodyMap =
+            new HashMap<SegmentHeader, SegmentBody>();
+        for (List<SegmentHeader> headerList : groups.values()) {
+            final SegmentHeader header0 = headerList.get(0);
+            final RolapStar.Measure measure0 = segmentMap.get(header0).left;
+            final RolapStar star = measure0.getStar();
+            final BitKey bitKey = header0.getConstrainedColumnsBitKey();
+            final Segment segment0 =
+                SegmentBuilder.toSegment(
+                    header0,
+                    star,
+                    bitKey,
+                    SegmentBuilder.getConstrainedColumns(star, bitKey),
+                    measure0,
+                    Collections.<StarPredicate>emptyList());
+
+            // One segment per measure, sharing the predicates of the first,
+            // sorted by measure; see Aggregation.createSegments.
+            final BitKey measureBitKey = bitKey.emptyCopy();
+            final SortedMap<Integer, Segment> segments =
+                new TreeMap<Integer, Segment>();
+            for (SegmentHeader header : headerList) {
+                final RolapStar.Measure measure = segmentMap.get(header).left;
+                final int bit = measure.getBitPosition();
+                if (segments.containsKey(bit)) {
+                    continue;
+                }
+                measureBitKey.set(bit);
+                segments.put(
+                    bit,
+                    measure == measure0
+                        ? segment0
+                        : new Segment(
+                            star,
+                            bitKey,
+                            segment0.getColumns(),
+                            measure,
+                            segment0.predicates,
+                            Collections.<Segment.ExcludedRegion>emptyList(),
+                            Collections.<StarPredicate>emptyList()));
+            }
+            final GroupingSet groupingSet =
+                new GroupingSet(
+                    new ArrayList<Segment>(segments.values()),
+                    bitKey,
+                    measureBitKey,
+                    segment0.predicates,
+                    segment0.getColumns());
+            final Map<Segment, SegmentWithData> deltaMap =
+                loadImpl(
+                    0,
+                    0,
+                    new ArrayList<GroupingSet>(
+                        Collections.singletonList(groupingSet)),
+                    Collections.<StarPredicate>singletonList(
+                        new SqlStarPredicate(star, condition)),
+                    false);
+
+            for (SegmentHeader header : headerList) {
+                final Pair<RolapStar.Measure, SegmentBody> pair =
+                    segmentMap.get(header);
+                final Segment segment =
+                    segments.get(pair.left.getBitPosition());
+                bodyMap.put(
+                    header,
+                    SegmentBuilder.merge(
+                        header,
+                        pair.right,
+                        segment.getHeader(),
+                        createSegmentBody(deltaMap.get(segment)),
+                        pair.left));
+            }
+        }
+        return bodyMap;
+    }
+
+    /**
+     * Loads the segments of some grouping sets from SQL.
+     *
+     * @param cellRequestCount Number of missed cells that led to this request
+     * @param queueNanos Time spent waiting to execute, in nanoseconds
+     * @param groupingSets Grouping sets whose segments to load
+     * @param compoundPredicateList Compound predicates
+     * @param cache Whether to put the segments into the cache, and notify
+     *   the cache manager whether each segment succeeded or failed to load
+     * @return Map from each segment to the segment with its data
+     */
     private Map<Segment, SegmentWithData> loadImpl(
         int cellRequestCount,
+        long queueNanos,
         List<GroupingSet> groupingSets,
-        List<StarPredicate> compoundPredicateList)
+        List<StarPredicate> compoundPredicateList,
+        boolean cache)
     {
         // Simple assertion. Is this Execution instance still valid,
         // or should we get outa here.
@@ -189,6 +341,7 @@ public class SegmentLoader {
                 getDistinctValueWorkspace(arity);
             stmt = createExecuteSql(
                 cellRequestCount,
+                queueNanos,
                 groupingSetsList,
                 compoundPredicateList);
 
@@ -221,7 +374,8 @@ public class SegmentLoader {
             setDataToSegments(
                 groupingSetsList,
                 groupingDataSetsMap,
-                segmentMap);
+                segmentMap,
+                cache);
 
             return segmentMap;
         } catch (RuntimeException e) {
@@ -240,8 +394,10 @@ public class SegmentLoader {
             if (stmt != null) {
                 stmt.close();
             }
-            setFailOnStillLoadingSegments(
-                segmentMap, groupingSetsList, throwable);
+            if (cache) {
+                setFailOnStillLoadingSegments(
+                    segmentMap, groupingSetsList, throwable);
+            }
         }
     }
 
@@ -314,6 +470,28 @@ public class SegmentLoader {
 
         final List<SqlStatement.Type> types = rows.getTypes();
         final boolean useGroupingSet = groupingSetsList.useGroupingSets();
+
+        // For each dictionary-encoded key column, compute the axis offset of
+        // each distinct value once, rather than once per row.
+        final int[][] codeOffsets = new int[arity][];
+        final boolean[][] codeNulls = new boolean[arity][];
+        for (int j = 0; j < arity; j++) {
+            if (!rows.isDictionaryEncoded(j)) {
+                continue;
+            }
+            final List<Object> dictionary = rows.getDictionary(j);
+            codeOffsets[j] = new int[dictionary.size()];
+            codeNulls[j] = new boolean[dictionary.size()];
+            for (int code = 0; code < dictionary.size(); code++) {
+                Object o = dictionary.get(code);
+                if (o == null || o == RolapUtil.sqlNullValue) {
+                    o = RolapUtil.sqlNullValue;
+                    codeNulls[j][code] = true;
+                }
+                codeOffsets[j][code] = axes[j].getOffset((Comparable) o);
+            }
+        }
+
         for (rows.first(); rows.next();) {
             final BitKey groupingBitKey;
             final GroupingSetsList.Cohort cohort;
@@ -328,6 +506,18 @@ public class SegmentLoader {
             }
             final int[] pos = cohort.pos;
             for (int j = 0, k = 0; j < arity; j++) {
+                if (codeOffsets[j] != null) {
+                    final int code = rows.getCode(j);
+                    if (useGroupingSet
+                        && codeNulls[j][code]
+                        && groupingBitKey.get(
+                            groupingSetsList.findGroupingFunctionIndex(j)))
+                    {
+                        continue;
+                    }
+                    pos[k++] = codeOffsets[j][code];
+                    continue;
+                }
                 final SqlStatement.Type type = types.get(j);
                 switch (type) {
                 // TODO: different treatment for INT, LONG, DOUBLE
@@ -410,7 +600,8 @@ public class SegmentLoader {
     private void setDataToSegments(
         GroupingSetsList groupingSetsList,
         Map<BitKey, GroupingSetsList.Cohort> datasetsMap,
-        Map<Segment, SegmentWithData> segmentSlotMap)
+        Map<Segment, SegmentWithData> segmentSlotMap,
+        boolean cache)
     {
         List<GroupingSet> groupingSets = groupingSetsList.getGroupingSets();
         for (int i = 0; i < groupingSets.size(); i++) {
@@ -429,24 +620,12 @@ public class SegmentLoader {
                         cohort.axes);
 
                 segmentSlotMap.put(segment, segmentWithData);
+                if (!cache) {
+                    continue;
+                }
 
                 final SegmentHeader header = segmentWithData.getHeader();
-                final SegmentBody body =
-                    segmentWithData.getData().createSegmentBody(
-                        new AbstractList<
-                                Pair<SortedSet<Comparable>, Boolean>>()
-                        {
-                            public Pair<SortedSet<Comparable>, Boolean> get(
-                                int index)
-                            {
-                                return segmentWithData.axes[index]
-                                    .getValuesAndIndicator();
-                            }
-
-                            public int size() {
-                                return segmentWithData.axes.length;
-                            }
-                        });
+                final SegmentBody body = createSegmentBody(segmentWithData);
 
                 // Send a message to the agg manager. It will place the segment
                 // in the index.
@@ -455,6 +634,22 @@ public class SegmentLoader {
         }
     }
 
+    private static SegmentBody createSegmentBody(
+        final SegmentWithData segmentWithData)
+    {
+        return segmentWithData.getData().createSegmentBody(
+            new AbstractList<Pair<SortedSet<Comparable>, Boolean>>() {
+                public Pair<SortedSet<Comparable>, Boolean> get(int index) {
+                    return segmentWithData.axes[index]
+                        .getValuesAndIndicator();
+                }
+
+                public int size() {
+                    return segmentWithData.axes.length;
+                }
+            });
+    }
+
     private Map<BitKey, GroupingSetsList.Cohort> createDataSetsForGroupingSets(
         GroupingSetsList groupingSetsList,
         boolean sparse,
@@ -550,6 +745,7 @@ public class SegmentLoader {
      */
     SqlStatement createExecuteSql(
         int cellRequestCount,
+        long queueNanos,
         GroupingSetsList groupingSetsList,
         List<StarPredicate> compoundPredicateList)
     {
@@ -559,6 +755,7 @@ public class SegmentLoader {
                 groupingSetsList, compoundPredicateList);
         return RolapUtil.executeQuery(
             star.getDataSource(),
+            star.getSqlQueryDialect(),
             pair.left,
             pair.right,
             0,
@@ -568,7 +765,8 @@ public class SegmentLoader {
                 "Segment.load",
                 "Error while loading segment",
                 SqlStatementEvent.Purpose.CELL_SEGMENT,
-                cellRequestCount),
+                cellRequestCount,
+                queueNanos),
             -1,
             -1);
     }
@@ -599,7 +797,9 @@ public class SegmentLoader {
         } else {
             processedTypes = types;
         }
-        final RowList processedRows = new RowList(processedTypes, 100);
+        // Key columns are dictionary-encoded: each row holds an int code, and
+        // each distinct value is held only once.
+        final RowList processedRows = new RowList(processedTypes, 100, arity);
 
         while (rawRows.next()) {
             checkResultLimit(++stmt.rowCount);
@@ -625,11 +825,6 @@ public class SegmentLoader {
                         {
                             axisContainsNull[axisIndex] = true;
                         }
-                    } else {
-                        // We assume that all values are Comparable. Boolean
-                        // wasn't Comparable until JDK 1.5, but we can live with
-                        // that bug because JDK 1.4 is no longer important.
-                        axisValueSets[axisIndex].add((Comparable) o);
                     }
                     processedRows.setObject(columnIndex, o);
                     break;
@@ -646,7 +841,6 @@ public class SegmentLoader {
                         }
                         processedRows.setNull(columnIndex, true);
                     } else {
-                        axisValueSets[axisIndex].add(intValue);
                         processedRows.setInt(columnIndex, intValue);
                     }
                     break;
@@ -664,7 +858,6 @@ public class SegmentLoader {
                         }
                         processedRows.setNull(columnIndex, true);
                     } else {
-                        axisValueSets[axisIndex].add(longValue);
                         processedRows.setLong(columnIndex, longValue);
                     }
                     break;
@@ -681,7 +874,6 @@ public class SegmentLoader {
                             axisContainsNull[axisIndex] = true;
                         }
                     }
-                    axisValueSets[axisIndex].add(doubleValue);
                     processedRows.setDouble(columnIndex, doubleValue);
                     break;
                 default:
@@ -689,11 +881,13 @@ public class SegmentLoader {
                 }
             }
 
-            // pre-compute which measures are numeric
+            // pre-compute which measures are numeric. (The operand of a
+            // sketch measure is kept as is, whatever the measure's type.)
             final boolean[] numeric = new boolean[measureCount];
             int k = 0;
             for (Segment segment : segments) {
-                numeric[k++] = segment.measure.getDatatype().isNumeric();
+                numeric[k++] = segment.measure.getDatatype().isNumeric()
+                    && !segment.measure.getAggregator().isSketch();
             }
 
             // get the measure
@@ -756,6 +950,20 @@ public class SegmentLoader {
                         rawRows, columnIndex));
             }
         }
+
+        // Build the set of distinct values of each axis from the
+        // dictionary of its column. This is much cheaper than adding each
+        // row's value to a sorted set.
+        for (int axisIndex = 0; axisIndex < arity; axisIndex++) {
+            for (Object o : processedRows.getDictionary(axisIndex)) {
+                if (o != null && o != RolapUtil.sqlNullValue) {
+                    // We assume that all values are Comparable. Boolean
+                    // wasn't Comparable until JDK 1.5, but we can live with
+                    // that bug because JDK 1.4 is no longer important.
+                    axisValueSets[axisIndex].add((Comparable) o);
+                }
+            }
+        }
         return processedRows;
     }
 
@@ -920,10 +1128,29 @@ public class SegmentLoader {
          * @param capacity Initial capacity
          */
         RowList(List<SqlStatement.Type> types, int capacity) {
+            this(types, capacity, 0);
+        }
+
+        /**
+         * Creates a RowList whose leading columns are dictionary-encoded.
+         *
+         * <p>Each row of a dictionary-encoded column holds an int code, and
+         * each distinct value is held only once, in the column's dictionary.
+         * This suits key columns, which have many rows but few distinct
+         * values.</p>
+         *
+         * @param types Column types
+         * @param capacity Initial capacity
+         * @param keyCount Number of leading columns to dictionary-encode
+         */
+        RowList(List<SqlStatement.Type> types, int capacity, int keyCount) {
             this.columns = new Column[types.size()];
             this.capacity = capacity;
             for (int i = 0; i < columns.length; i++) {
-                columns[i] = Column.forType(i, types.get(i), capacity);
+                columns[i] =
+                    i < keyCount
+                        ? new DictionaryColumn(i, types.get(i), capacity)
+                        : Column.forType(i, types.get(i), capacity);
             }
         }
 
@@ -1042,6 +1269,40 @@ public class SegmentLoader {
             columns[columnIndex].setNull(currentRow, b);
         }
 
+        /**
+         * Returns whether a column is dictionary-encoded.
+         *
+         * @param columnIndex Column index
+         * @return Whether column is dictionary-encoded
+         */
+        public boolean isDictionaryEncoded(int columnIndex) {
+            return columns[columnIndex] instanceof DictionaryColumn;
+        }
+
+        /**
+         * Returns the code of the value in the given dictionary-encoded
+         * column of the current row.
+         *
+         * @param columnIndex Column index
+         * @return Code of value; an index into the column's dictionary
+         */
+        public int getCode(int columnIndex) {
+            return ((DictionaryColumn) columns[columnIndex]).getCode(
+                currentRow);
+        }
+
+        /**
+         * Returns the distinct values of a dictionary-encoded column, indexed
+         * by code. Null values are represented as null.
+         *
+         * @param columnIndex Column index
+         * @return List of distinct values
+         */
+        public List<Object> getDictionary(int columnIndex) {
+            return Collections.unmodifiableList(
+                ((DictionaryColumn) columns[columnIndex]).values);
+        }
+
         static abstract class Column {
             final int ordinal;
             final SqlStatement.Type type;
@@ -1299,6 +1560,199 @@ public class SegmentLoader {
             }
         }
 
+        /**
+         * Column that holds, for each row, a code into a dictionary of
+         * distinct values.
+         *
+         * <p>Values of native types (int, long, double) are looked up in an
+         * open-addressing hash table keyed by primitive long, so they are
+         * boxed only when they are first seen.</p>
+         */
+        static class DictionaryColumn extends Column {
+            private int[] codes;
+            private final List<Object> values = new ArrayList<Object>();
+            private final Map<Object, Integer> objectCodes =
+                new HashMap<Object, Integer>();
+            private long[] slotKeys = new long[16];
+            private int[] slotCodes = newSlotCodes(16);
+            private int slotCount;
+            private int nullCode = -1;
+
+            DictionaryColumn(int ordinal, SqlStatement.Type type, int size) {
+                super(ordinal, type);
+                codes = new int[size];
+            }
+
+            private static int[] newSlotCodes(int size) {
+                final int[] slotCodes = new int[size];
+                Arrays.fill(slotCodes, -1);
+                return slotCodes;
+            }
+
+            protected int getCapacity() {
+                return codes.length;
+            }
+
+            public void resize(int newSize) {
+                codes = Util.copyOf(codes, newSize);
+            }
+
+            int getCode(int row) {
+                return codes[row];
+            }
+
+            public boolean isNull(int row) {
+                return codes[row] == nullCode;
+            }
+
+            public Object getObject(int row) {
+                return values.get(codes[row]);
+            }
+
+            public int getInt(int row) {
+                final Object value = values.get(codes[row]);
+                return value == null ? 0 : ((Number) value).intValue();
+            }
+
+            public double getDouble(int row) {
+                final Object value = values.get(codes[row]);
+                return value == null ? 0d : ((Number) value).doubleValue();
+            }
+
+            public void setObject(int row, Object value) {
+                if (value == null) {
+                    setNull(row, true);
+                    return;
+                }
+                Integer code = objectCodes.get(value);
+                if (code == null) {
+                    code = values.size();
+                    values.add(value);
+                    objectCodes.put(value, code);
+                }
+                codes[row] = code;
+            }
+
+            public void setNull(int row, boolean b) {
+                assert b;
+                if (nullCode < 0) {
+                    nullCode = values.size();
+                    values.add(null);
+                }
+                codes[row] = nullCode;
+            }
+
+            public void setInt(int row, int value) {
+                codes[row] = nativeCode(value);
+            }
+
+            public void setLong(int row, long value) {
+                codes[row] = nativeCode(value);
+            }
+
+            public void setDouble(int row, double value) {
+                codes[row] = nativeCode(Double.doubleToLongBits(value));
+            }
+
+            public void populateFrom(int row, ResultSet resultSet)
+                throws SQLException
+            {
+                switch (type) {
+                case INT:
+                    final int i = resultSet.getInt(ordinal + 1);
+                    if (i == 0 && resultSet.wasNull()) {
+                        setNull(row, true);
+                    } else {
+                        setInt(row, i);
+                    }
+                    break;
+                case LONG:
+                    final long l = resultSet.getLong(ordinal + 1);
+                    if (l == 0 && resultSet.wasNull()) {
+                        setNull(row, true);
+                    } else {
+                        setLong(row, l);
+                    }
+                    break;
+                case DOUBLE:
+                    final double d = resultSet.getDouble(ordinal + 1);
+                    if (d == 0d && resultSet.wasNull()) {
+                        setNull(row, true);
+                    } else {
+                        setDouble(row, d);
+                    }
+                    break;
+                default:
+                    setObject(row, resultSet.getObject(ordinal + 1));
+                }
+            }
+
+            /**
+             * Returns the code of a value of the column's native type,
+             * represented as a long, creating a code if the value has not
+             * been seen before.
+             */
+            private int nativeCode(long key) {
+                int mask = slotKeys.length - 1;
+                int slot = hash(key) & mask;
+                for (;;) {
+                    final int code = slotCodes[slot];
+                    if (code < 0) {
+                        break;
+                    }
+                    if (slotKeys[slot] == key) {
+                        return code;
+                    }
+                    slot = (slot + 1) & mask;
+                }
+                final int code = values.size();
+                values.add(box(key));
+                slotKeys[slot] = key;
+                slotCodes[slot] = code;
+                if (++slotCount * 2 > slotKeys.length) {
+                    rehash();
+                }
+                return code;
+            }
+
+            private Object box(long key) {
+                switch (type) {
+                case INT:
+                    return (int) key;
+                case LONG:
+                    return key;
+                case DOUBLE:
+                    return Double.longBitsToDouble(key);
+                default:
+                    throw Util.unexpected(type);
+                }
+            }
+
+            private void rehash() {
+                final long[] oldKeys = slotKeys;
+                final int[] oldCodes = slotCodes;
+                slotKeys = new long[oldKeys.length * 2];
+                slotCodes = newSlotCodes(oldKeys.length * 2);
+                final int mask = slotKeys.length - 1;
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldCodes[i] < 0) {
+                        continue;
+                    }
+                    int slot = hash(oldKeys[i]) & mask;
+                    while (slotCodes[slot] >= 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    slotKeys[slot] = oldKeys[i];
+                    slotCodes[slot] = oldCodes[i];
+                }
+            }
+
+            private static int hash(long key) {
+                final long h = key * 0x9E3779B97F4A7C15L;
+                return (int) (h ^ (h >>> 32));
+            }
+        }
+
         public interface Handler {
         }
     }
@@ -11,6 +11,7 @@ package mondrian.rolap.agg;
 
 import mondrian.olap.Util;
 import mondrian.rolap.*;
+import mondrian.util.HyperLogLog;
 
 import java.util.*;
 
@@ -140,7 +141,8 @@ public class SegmentWithData extends Segment {
      * <li><code>null</code> if the value is not supposed to be in this segment
      * (because one or more of the keys do not pass the axis criteria);</li>
      *
-     * <li>the data value otherwise</li>
+     * <li>the data value otherwise (the estimate, if the cell holds a
+     * {@link HyperLogLog} sketch)</li>
      *
      * </ul></p>
      *
@@ -179,6 +181,8 @@ public class SegmentWithData extends Segment {
             Object o = data.getObject(cellKey);
             if (o == null) {
                 o = Util.nullValue;
+            } else if (o instanceof HyperLogLog) {
+                o = (int) ((HyperLogLog) o).estimate();
             }
             return o;
         }
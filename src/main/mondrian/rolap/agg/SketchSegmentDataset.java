@@ -0,0 +1,69 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap.agg;
+
+import mondrian.olap.Util;
+import mondrian.rolap.CellKey;
+import mondrian.util.HyperLogLog;
+
+import java.util.Map;
+
+/**
+ * Segment dataset whose cells are {@link HyperLogLog} sketches, for measures
+ * whose aggregator is a sketch aggregator such as
+ * {@link mondrian.rolap.RolapAggregator#ApproxDistinctCount}.
+ *
+ * <p>The SQL query returns a row for each distinct value of the measure's
+ * operand in each cell; as the rows are loaded, each value is added to the
+ * sketch of its cell.</p>
+ *
+ * <p>Like {@link SparseSegmentDataset}, cells are held in a map, and the
+ * segment body is a {@link SparseSegmentBody}, whose values are the
+ * sketches. Sketches are serializable, so they can be stored in an external
+ * cache and rolled up later.</p>
+ */
+class SketchSegmentDataset extends SparseSegmentDataset {
+    private final int precision;
+
+    /**
+     * Creates an empty SketchSegmentDataset.
+     *
+     * @param relativeError Desired relative standard error of the estimates
+     */
+    SketchSegmentDataset(double relativeError) {
+        super();
+        this.precision = HyperLogLog.precisionForError(relativeError);
+    }
+
+    public void populateFrom(
+        int[] pos, SegmentLoader.RowList rowList, int column)
+    {
+        final CellKey key = CellKey.Generator.newCellKey(pos);
+        HyperLogLog sketch = (HyperLogLog) getObject(key);
+        if (sketch == null) {
+            sketch = new HyperLogLog(precision);
+            put(key, sketch);
+        }
+        final Object o = rowList.getObject(column);
+        if (o != Util.nullValue) {
+            sketch.add(o);
+        }
+    }
+
+    public double getBytes() {
+        double bytes = 0d;
+        for (Map.Entry<CellKey, Object> entry : this) {
+            bytes += 12 + ((HyperLogLog) entry.getValue()).getBytes();
+        }
+        return bytes;
+    }
+}
+
+// End SketchSegmentDataset.java
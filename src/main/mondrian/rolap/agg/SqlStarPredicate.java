@@ -0,0 +1,94 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap.agg;
+
+import mondrian.rolap.*;
+import mondrian.rolap.sql.SqlQuery;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Predicate whose condition is a fragment of SQL, such as
+ * <code>"sales_fact_1997"."load_time" &gt; '2012-06-01 12:00:00'</code>.
+ *
+ * <p>The condition does not constrain any of the star's columns, so it can
+ * only be evaluated by the database, not in memory. It is used to load
+ * the cells of the rows that have been appended to a fact table; see
+ * {@link mondrian.olap.CacheControl#refresh}.</p>
+ */
+public class SqlStarPredicate implements StarPredicate {
+    private final BitKey bitKey;
+    private final String sql;
+
+    /**
+     * Creates a SqlStarPredicate.
+     *
+     * @param star Star
+     * @param sql SQL condition; may reference the fact table by its alias
+     */
+    public SqlStarPredicate(RolapStar star, String sql) {
+        assert sql != null;
+        this.bitKey = BitKey.Factory.makeBitKey(star.getColumnCount());
+        this.sql = sql;
+    }
+
+    public int hashCode() {
+        return sql.hashCode();
+    }
+
+    public boolean equals(Object obj) {
+        return obj instanceof SqlStarPredicate
+            && sql.equals(((SqlStarPredicate) obj).sql);
+    }
+
+    public String toString() {
+        return sql;
+    }
+
+    public List<RolapStar.Column> getConstrainedColumnList() {
+        return Collections.emptyList();
+    }
+
+    public BitKey getConstrainedColumnBitKey() {
+        return bitKey;
+    }
+
+    public void describe(StringBuilder buf) {
+        buf.append(sql);
+    }
+
+    public boolean evaluate(List<Object> valueList) {
+        throw new UnsupportedOperationException(
+            "cannot evaluate SQL predicate in memory: " + sql);
+    }
+
+    public boolean equalConstraint(StarPredicate that) {
+        return equals(that);
+    }
+
+    public StarPredicate minus(StarPredicate predicate) {
+        throw new UnsupportedOperationException();
+    }
+
+    public StarPredicate or(StarPredicate predicate) {
+        throw new UnsupportedOperationException();
+    }
+
+    public StarPredicate and(StarPredicate predicate) {
+        throw new UnsupportedOperationException();
+    }
+
+    public void toSql(SqlQuery sqlQuery, StringBuilder buf) {
+        buf.append('(').append(sql).append(')');
+    }
+}
+
+// End SqlStarPredicate.java
@@ -14,12 +14,16 @@ import mondrian.olap.*;
 import mondrian.recorder.*;
 import mondrian.resource.MondrianResource;
 import mondrian.rolap.*;
+import mondrian.util.ByteString;
 
 import org.apache.log4j.Logger;
 
 import org.eigenbase.util.property.Property;
 import org.eigenbase.util.property.Trigger;
 
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.SQLException;
 import java.util.*;
 import javax.sql.DataSource;
@@ -140,6 +144,13 @@ public class AggTableManager {
         if (MondrianProperties.instance().ReadAggregates.get()) {
             try {
                 clearJdbcSchema();
+                // The aggregates are being re-loaded explicitly, so read the
+                // metadata from JDBC, not from the snapshot.
+                final File snapshotFile =
+                    getMetadataSnapshotFile(getJdbcSchema());
+                if (snapshotFile != null) {
+                    snapshotFile.delete();
+                }
                 loadRolapStarAggregates();
                 printResults();
             } catch (SQLException ex) {
@@ -156,6 +167,78 @@ public class AggTableManager {
         return JdbcSchema.makeDB(dataSource);
     }
 
+    /**
+     * Returns the file in which to save the JDBC metadata of the database,
+     * or null if {@link MondrianProperties#AggregateMetadataSnapshotDir} is
+     * not set.
+     *
+     * <p>The file name is a hash of the JDBC URL and user of the data
+     * source, the catalog and schema, and the checksum of the schema, so
+     * that a snapshot is only re-used by the same schema on the same
+     * database.
+     */
+    private File getMetadataSnapshotFile(JdbcSchema db) throws SQLException {
+        final String dir =
+            MondrianProperties.instance().AggregateMetadataSnapshotDir.get();
+        if (dir == null || dir.equals("")) {
+            return null;
+        }
+        final StringBuilder buf = new StringBuilder();
+        final Connection conn = db.getDataSource().getConnection();
+        try {
+            final DatabaseMetaData dmd = conn.getMetaData();
+            buf.append(dmd.getURL())
+                .append(Util.nl)
+                .append(dmd.getUserName());
+        } finally {
+            conn.close();
+        }
+        buf.append(Util.nl)
+            .append(db.getCatalogName())
+            .append(Util.nl)
+            .append(db.getSchemaName())
+            .append(Util.nl)
+            .append(schema.getChecksum());
+        return new File(
+            dir,
+            "jdbc-" + new ByteString(Util.digestMd5(buf.toString())) + ".dat");
+    }
+
+    /**
+     * Returns the tables whose columns will be needed in order to recognize
+     * aggregate tables: the fact table of each star, and each table whose
+     * name matches an explicit or default aggregate table rule.
+     */
+    private Collection<JdbcSchema.Table> getCandidateTables(
+        JdbcSchema db,
+        DefaultRules rules)
+    {
+        final Set<JdbcSchema.Table> candidates =
+            new LinkedHashSet<JdbcSchema.Table>();
+        for (RolapStar star : getStars()) {
+            final String factTableName = star.getFactTable().getAlias();
+            final JdbcSchema.Table dbFactTable = db.getTable(factTableName);
+            if (dbFactTable == null) {
+                continue;
+            }
+            candidates.add(dbFactTable);
+            final List<ExplicitRules.Group> aggGroups = getAggGroups(star);
+            for (JdbcSchema.Table dbTable : db.getTables()) {
+                final String name = dbTable.getName();
+                if (ExplicitRules.excludeTable(name, aggGroups)) {
+                    continue;
+                }
+                if (ExplicitRules.getIncludeByTableDef(name, aggGroups)
+                    != null
+                    || rules.matchesTableName(factTableName, name))
+                {
+                    candidates.add(dbTable);
+                }
+            }
+        }
+        return candidates;
+    }
+
     /**
      * Clear the possibly already loaded snapshot of what is in the database.
      */
@@ -197,9 +280,26 @@ public class AggTableManager {
                 // don't accidentally use another star's metadata
                 db.flushUsages();
 
-                // loads tables, not their columns
+                // loads tables, not their columns; from the metadata
+                // snapshot, if there is one
+                final File snapshotFile = getMetadataSnapshotFile(db);
+                final boolean fromSnapshot =
+                    snapshotFile != null && db.readSnapshot(snapshotFile);
                 db.load();
 
+                // loads the columns of the tables we will need, in parallel
+                // batches, skipping those already in the snapshot
+                final int loadedCount =
+                    db.loadColumns(
+                        getCandidateTables(db, rules),
+                        MondrianProperties.instance()
+                            .AggregateMetadataThreads.get());
+                if (snapshotFile != null
+                    && (!fromSnapshot || loadedCount > 0))
+                {
+                    db.writeSnapshot(snapshotFile);
+                }
+
                 loop:
                 for (RolapStar star : getStars()) {
                     // This removes any AggStars from any previous invocation of
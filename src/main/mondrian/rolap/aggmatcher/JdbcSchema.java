@@ -12,6 +12,7 @@ package mondrian.rolap.aggmatcher;
 
 import mondrian.olap.MondrianDef;
 import mondrian.olap.MondrianProperties;
+import mondrian.olap.Util;
 import mondrian.resource.MondrianResource;
 import mondrian.rolap.RolapAggregator;
 import mondrian.rolap.RolapLevel;
@@ -22,11 +23,11 @@ import org.apache.log4j.Logger;
 
 import org.olap4j.impl.Olap4jUtil;
 
-import java.io.PrintWriter;
-import java.io.StringWriter;
+import java.io.*;
 import java.lang.ref.SoftReference;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.*;
 import javax.sql.DataSource;
 
 /**
@@ -1009,48 +1010,7 @@ public class JdbcSchema {
             if (! allColumnsLoaded) {
                 Connection conn = getDataSource().getConnection();
                 try {
-                    DatabaseMetaData dmd = conn.getMetaData();
-
-                    String schema = JdbcSchema.this.getSchemaName();
-                    String catalog = JdbcSchema.this.getCatalogName();
-                    String tableName = getName();
-                    String columnNamePattern = "%";
-
-                    ResultSet rs = null;
-                    try {
-                        Map<String, Column> map = getColumnMap();
-                        rs = dmd.getColumns(
-                            catalog,
-                            schema,
-                            tableName,
-                            columnNamePattern);
-                        while (rs.next()) {
-                            String name = rs.getString(4);
-                            int type = rs.getInt(5);
-                            String typeName = rs.getString(6);
-                            int columnSize = rs.getInt(7);
-                            int decimalDigits = rs.getInt(9);
-                            int numPrecRadix = rs.getInt(10);
-                            int charOctetLength = rs.getInt(16);
-                            String isNullable = rs.getString(18);
-
-                            Column column = new Column(name);
-                            column.setType(type);
-                            column.setTypeName(typeName);
-                            column.setColumnSize(columnSize);
-                            column.setDecimalDigits(decimalDigits);
-                            column.setNumPrecRadix(numPrecRadix);
-                            column.setCharOctetLength(charOctetLength);
-                            column.setIsNullable(!"NO".equals(isNullable));
-
-                            map.put(name, column);
-                            totalColumnSize += column.getColumnSize();
-                        }
-                    } finally {
-                        if (rs != null) {
-                            rs.close();
-                        }
-                    }
+                    loadColumns(conn.getMetaData());
                 } finally {
                     try {
                         conn.close();
@@ -1058,9 +1018,64 @@ public class JdbcSchema {
                         //ignore
                     }
                 }
+            }
+        }
 
-                allColumnsLoaded = true;
+        /**
+         * Loads the columns of this table using a given connection's
+         * metadata.
+         *
+         * @param dmd Database metadata
+         * @throws SQLException
+         */
+        private void loadColumns(DatabaseMetaData dmd) throws SQLException {
+            if (allColumnsLoaded) {
+                return;
             }
+            String schema = JdbcSchema.this.getSchemaName();
+            String catalog = JdbcSchema.this.getCatalogName();
+            String tableName = getName();
+            String columnNamePattern = "%";
+
+            ResultSet rs = null;
+            try {
+                rs = dmd.getColumns(
+                    catalog,
+                    schema,
+                    tableName,
+                    columnNamePattern);
+                while (rs.next()) {
+                    String name = rs.getString(4);
+                    int type = rs.getInt(5);
+                    String typeName = rs.getString(6);
+                    int columnSize = rs.getInt(7);
+                    int decimalDigits = rs.getInt(9);
+                    int numPrecRadix = rs.getInt(10);
+                    int charOctetLength = rs.getInt(16);
+                    String isNullable = rs.getString(18);
+
+                    Column column = new Column(name);
+                    column.setType(type);
+                    column.setTypeName(typeName);
+                    column.setColumnSize(columnSize);
+                    column.setDecimalDigits(decimalDigits);
+                    column.setNumPrecRadix(numPrecRadix);
+                    column.setCharOctetLength(charOctetLength);
+                    column.setIsNullable(!"NO".equals(isNullable));
+                    addColumn(column);
+                }
+            } finally {
+                if (rs != null) {
+                    rs.close();
+                }
+            }
+
+            allColumnsLoaded = true;
+        }
+
+        private void addColumn(Column column) {
+            getColumnMap().put(column.getName(), column);
+            totalColumnSize += column.getColumnSize();
         }
 
         private Map<String, Column> getColumnMap() {
@@ -1071,6 +1086,12 @@ public class JdbcSchema {
         }
     }
 
+    /**
+     * Version of the format written by {@link #writeSnapshot(File)}. Increase
+     * it if the format changes, so that old snapshots are ignored.
+     */
+    private static final int SNAPSHOT_VERSION = 1;
+
     private DataSource dataSource;
     private String schema;
     private String catalog;
@@ -1286,6 +1307,242 @@ public class JdbcSchema {
         return tables;
     }
 
+    /**
+     * Loads the columns of several tables. Tables whose columns are already
+     * loaded are skipped.
+     *
+     * <p>The tables are divided into at most <code>threadCount</code>
+     * batches. Each batch is loaded using a single JDBC connection; if there
+     * is more than one batch, the batches are loaded in parallel.
+     *
+     * @param tables Tables
+     * @param threadCount Maximum number of threads
+     * @return Number of tables whose columns were loaded
+     * @throws SQLException
+     */
+    public int loadColumns(
+        Collection<Table> tables,
+        int threadCount)
+        throws SQLException
+    {
+        final List<Table> unloadedTables = new ArrayList<Table>();
+        for (Table table : tables) {
+            if (!table.allColumnsLoaded) {
+                unloadedTables.add(table);
+            }
+        }
+        if (unloadedTables.isEmpty()) {
+            return 0;
+        }
+        final int batchCount =
+            Math.max(1, Math.min(threadCount, unloadedTables.size()));
+        if (batchCount == 1) {
+            loadColumnsBatch(unloadedTables);
+            return unloadedTables.size();
+        }
+        final List<List<Table>> batches = new ArrayList<List<Table>>();
+        for (int i = 0; i < batchCount; i++) {
+            batches.add(new ArrayList<Table>());
+        }
+        for (int i = 0; i < unloadedTables.size(); i++) {
+            batches.get(i % batchCount).add(unloadedTables.get(i));
+        }
+        final ExecutorService executor =
+            Util.getExecutorService(
+                batchCount, 0, 1,
+                "mondrian.rolap.aggmatcher.JdbcSchema$metadataExecutor",
+                null);
+        try {
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (final List<Table> batch : batches) {
+                futures.add(
+                    executor.submit(
+                        new Callable<Void>() {
+                            public Void call() throws SQLException {
+                                loadColumnsBatch(batch);
+                                return null;
+                            }
+                        }));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    throw Util.newError(
+                        e, "Interrupted while loading JDBC metadata");
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof SQLException) {
+                        throw (SQLException) e.getCause();
+                    }
+                    throw Util.newError(
+                        e.getCause(), "Error while loading JDBC metadata");
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return unloadedTables.size();
+    }
+
+    /**
+     * Loads the columns of a list of tables using one connection.
+     */
+    private void loadColumnsBatch(List<Table> tables) throws SQLException {
+        final Connection conn = getDataSource().getConnection();
+        try {
+            final DatabaseMetaData dmd = conn.getMetaData();
+            for (Table table : tables) {
+                table.loadColumns(dmd);
+            }
+        } finally {
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                //ignore
+            }
+        }
+    }
+
+    /**
+     * Loads tables, and the columns of some tables, from a snapshot written
+     * by {@link #writeSnapshot(File)}, in place of querying the JDBC
+     * metadata.
+     *
+     * <p>Does nothing if the tables have already been loaded, or if the file
+     * does not exist or cannot be read.
+     *
+     * @param file Snapshot file
+     * @return Whether tables were loaded from the snapshot
+     */
+    public synchronized boolean readSnapshot(File file) {
+        if (allTablesLoaded || !file.exists()) {
+            return false;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != SNAPSHOT_VERSION) {
+                return false;
+            }
+            final SortedMap<String, Table> snapshotTables =
+                new TreeMap<String, Table>();
+            final int tableCount = in.readInt();
+            for (int i = 0; i < tableCount; i++) {
+                final Table table = new Table(in.readUTF(), readString(in));
+                final int columnCount = in.readInt();
+                if (columnCount >= 0) {
+                    for (int j = 0; j < columnCount; j++) {
+                        final Table.Column column =
+                            table.new Column(in.readUTF());
+                        column.setType(in.readInt());
+                        column.setTypeName(readString(in));
+                        column.setColumnSize(in.readInt());
+                        column.setDecimalDigits(in.readInt());
+                        column.setNumPrecRadix(in.readInt());
+                        column.setCharOctetLength(in.readInt());
+                        column.setIsNullable(in.readBoolean());
+                        table.addColumn(column);
+                    }
+                    table.allColumnsLoaded = true;
+                }
+                snapshotTables.put(table.getName(), table);
+            }
+            tables.putAll(snapshotTables);
+            allTablesLoaded = true;
+            return true;
+        } catch (IOException e) {
+            LOGGER.warn("Cannot read JDBC metadata snapshot " + file, e);
+            return false;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the tables, and the columns of those tables whose columns have
+     * been loaded, to a snapshot file. Logs a warning if the file cannot be
+     * written.
+     *
+     * @param file Snapshot file
+     */
+    public synchronized void writeSnapshot(File file) {
+        File tempFile = null;
+        DataOutputStream out = null;
+        try {
+            final File dir = file.getAbsoluteFile().getParentFile();
+            dir.mkdirs();
+            // Write to a temporary file and rename it, so that a concurrent
+            // reader never sees a partial file.
+            tempFile = File.createTempFile("jdbc", ".tmp", dir);
+            out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(tables.size());
+            for (Table table : tables.values()) {
+                out.writeUTF(table.getName());
+                writeString(out, table.getTableType());
+                if (!table.allColumnsLoaded) {
+                    out.writeInt(-1);
+                    continue;
+                }
+                final Collection<Table.Column> columns = table.getColumns();
+                out.writeInt(columns.size());
+                for (Table.Column column : columns) {
+                    out.writeUTF(column.getName());
+                    out.writeInt(column.getType());
+                    writeString(out, column.getTypeName());
+                    out.writeInt(column.getColumnSize());
+                    out.writeInt(column.getDecimalDigits());
+                    out.writeInt(column.getNumPrecRadix());
+                    out.writeInt(column.getCharOctetLength());
+                    out.writeBoolean(column.isNullable());
+                }
+            }
+            out.close();
+            out = null;
+            file.delete();
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Cannot rename " + tempFile);
+            }
+            tempFile = null;
+        } catch (IOException e) {
+            LOGGER.warn("Cannot write JDBC metadata snapshot " + file, e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+            if (tempFile != null) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeString(
+        DataOutput out,
+        String s)
+        throws IOException
+    {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+
     public static synchronized void clearAllDBs() {
         factory = null;
         makeFactory();
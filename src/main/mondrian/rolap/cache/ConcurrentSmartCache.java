@@ -0,0 +1,383 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap.cache;
+
+import mondrian.util.Pair;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Implementation of {@link SmartCache} that allows concurrent access and
+ * limits its size.
+ *
+ * <p>Entries are divided among a fixed number of segments by the hash code
+ * of their key, and each segment has its own lock, so threads accessing
+ * different keys rarely wait for each other.</p>
+ *
+ * <p>Each entry has a weight, by default 1; see {@link #weigh}. If the
+ * cache has a maximum weight, and adding an entry to a segment makes the
+ * segment weigh more than its share, the segment evicts its least recently
+ * used entries. Values are held via soft references, as in
+ * {@link SoftSmartCache}, so the garbage collector can also reclaim them
+ * when memory is short.</p>
+ *
+ * <p>The cache counts hits, misses and evictions; see
+ * {@link #getStatistics()}.</p>
+ */
+public class ConcurrentSmartCache<K, V> implements SmartCache<K, V> {
+    private static final int SEGMENT_COUNT = 16;
+
+    private final List<Segment> segments;
+
+    /**
+     * Maximum weight of each segment, or 0 if the cache is unbounded.
+     */
+    private final int segmentMaxWeight;
+
+    private final ReferenceQueue<V> queue = new ReferenceQueue<V>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Creates a ConcurrentSmartCache.
+     *
+     * @param maxWeight Maximum total weight of entries, or 0 if the cache
+     *   is unbounded
+     */
+    public ConcurrentSmartCache(int maxWeight) {
+        this(maxWeight, SEGMENT_COUNT);
+    }
+
+    /**
+     * Creates a ConcurrentSmartCache with a given number of segments. Tests
+     * use a single segment, so that eviction order is predictable.
+     *
+     * @param maxWeight Maximum total weight of entries, or 0 if the cache
+     *   is unbounded
+     * @param segmentCount Number of segments; must be a power of 2
+     */
+    ConcurrentSmartCache(int maxWeight, int segmentCount) {
+        assert Integer.bitCount(segmentCount) == 1;
+        this.segmentMaxWeight =
+            maxWeight <= 0
+                ? 0
+                : Math.max(1, (maxWeight + segmentCount - 1) / segmentCount);
+        this.segments = new ArrayList<Segment>(segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            segments.add(new Segment());
+        }
+    }
+
+    /**
+     * Returns the weight of a value. The default implementation returns 1.
+     *
+     * @param value Value
+     * @return Weight, not negative
+     */
+    protected int weigh(V value) {
+        return 1;
+    }
+
+    private Segment segmentFor(Object key) {
+        int h = key == null ? 0 : key.hashCode();
+        // Spread the bits, so that keys whose hash codes differ only in the
+        // high bits go to different segments.
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return segments.get(h & (segments.size() - 1));
+    }
+
+    /**
+     * Removes entries whose values have been garbage-collected.
+     */
+    @SuppressWarnings({"unchecked"})
+    private void expunge() {
+        CacheReference ref;
+        while ((ref = (CacheReference) queue.poll()) != null) {
+            final Segment segment = segmentFor(ref.key);
+            segment.lock();
+            try {
+                if (segment.map.get(ref.key) == ref) {
+                    segment.map.remove(ref.key);
+                    segment.weight -= ref.weight;
+                }
+            } finally {
+                segment.unlock();
+            }
+        }
+    }
+
+    public V put(K key, V value) {
+        expunge();
+        if (value == null) {
+            return remove(key);
+        }
+        final CacheReference ref =
+            new CacheReference(key, value, weigh(value));
+        final Segment segment = segmentFor(key);
+        segment.lock();
+        try {
+            final CacheReference previous = segment.map.put(key, ref);
+            segment.weight += ref.weight;
+            if (previous != null) {
+                segment.weight -= previous.weight;
+            }
+            if (segmentMaxWeight > 0) {
+                segment.evict();
+            }
+            return previous == null ? null : previous.get();
+        } finally {
+            segment.unlock();
+        }
+    }
+
+    public V get(K key) {
+        final Segment segment = segmentFor(key);
+        segment.lock();
+        try {
+            final CacheReference ref = segment.map.get(key);
+            if (ref != null) {
+                final V value = ref.get();
+                if (value != null) {
+                    hitCount.incrementAndGet();
+                    return value;
+                }
+                segment.map.remove(key);
+                segment.weight -= ref.weight;
+            }
+        } finally {
+            segment.unlock();
+        }
+        missCount.incrementAndGet();
+        return null;
+    }
+
+    public V remove(K key) {
+        final Segment segment = segmentFor(key);
+        segment.lock();
+        try {
+            final CacheReference ref = segment.map.remove(key);
+            if (ref == null) {
+                return null;
+            }
+            segment.weight -= ref.weight;
+            return ref.get();
+        } finally {
+            segment.unlock();
+        }
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.lock();
+            try {
+                segment.map.clear();
+                segment.weight = 0;
+            } finally {
+                segment.unlock();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            segment.lock();
+            try {
+                size += segment.map.size();
+            } finally {
+                segment.unlock();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Locks every segment while the task is running.</p>
+     */
+    public void execute(SmartCacheTask<K, V> task) {
+        for (Segment segment : segments) {
+            segment.lock();
+        }
+        try {
+            task.execute(new EntryIterator());
+        } finally {
+            for (Segment segment : segments) {
+                segment.unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns statistics about the use of this cache.
+     *
+     * @return Statistics
+     */
+    public Statistics getStatistics() {
+        int weight = 0;
+        for (Segment segment : segments) {
+            segment.lock();
+            try {
+                weight += segment.weight;
+            } finally {
+                segment.unlock();
+            }
+        }
+        return new Statistics(
+            hitCount.get(), missCount.get(), evictionCount.get(), weight);
+    }
+
+    /**
+     * Reference to a value, which remembers the key and weight of the
+     * entry, so that the entry can be removed when the value has been
+     * garbage-collected.
+     */
+    private class CacheReference extends SoftReference<V> {
+        final K key;
+        final int weight;
+
+        CacheReference(K key, V value, int weight) {
+            super(value, queue);
+            this.key = key;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Segment of the cache. Entries are in order of last access, least
+     * recent first.
+     */
+    private class Segment extends ReentrantLock {
+        final LinkedHashMap<K, CacheReference> map =
+            new LinkedHashMap<K, CacheReference>(16, 0.75f, true);
+        int weight;
+
+        /**
+         * Removes least recently used entries until the segment is within
+         * its share of the maximum weight. Always keeps the most recent
+         * entry. Caller must hold the lock.
+         */
+        void evict() {
+            final Iterator<CacheReference> iterator = map.values().iterator();
+            while (weight > segmentMaxWeight && map.size() > 1) {
+                final CacheReference ref = iterator.next();
+                iterator.remove();
+                weight -= ref.weight;
+                evictionCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Iterator over the live entries of all segments. Caller must hold the
+     * lock of every segment.
+     */
+    private class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        private final Iterator<Segment> segmentIterator = segments.iterator();
+        private Segment segment;
+        private Iterator<Map.Entry<K, CacheReference>> iterator;
+        private CacheReference current;
+        private Map.Entry<K, V> next;
+
+        public boolean hasNext() {
+            while (next == null) {
+                if (iterator != null && iterator.hasNext()) {
+                    final CacheReference ref = iterator.next().getValue();
+                    final V value = ref.get();
+                    if (value != null) {
+                        current = ref;
+                        next = new Pair<K, V>(ref.key, value);
+                    }
+                } else if (segmentIterator.hasNext()) {
+                    segment = segmentIterator.next();
+                    iterator = segment.map.entrySet().iterator();
+                } else {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public Map.Entry<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Map.Entry<K, V> entry = next;
+            next = null;
+            return entry;
+        }
+
+        public void remove() {
+            // Valid only immediately after next(); at that point, the
+            // underlying iterator is positioned on the entry returned.
+            iterator.remove();
+            segment.weight -= current.weight;
+        }
+    }
+
+    /**
+     * Statistics about the use of a cache.
+     */
+    public static class Statistics {
+        public final long hitCount;
+        public final long missCount;
+        public final long evictionCount;
+        public final long weight;
+
+        /**
+         * Creates a Statistics.
+         *
+         * @param hitCount Number of lookups that found a value
+         * @param missCount Number of lookups that did not find a value
+         * @param evictionCount Number of entries evicted to keep the cache
+         *   within its maximum weight
+         * @param weight Total weight of the entries in the cache
+         */
+        public Statistics(
+            long hitCount,
+            long missCount,
+            long evictionCount,
+            long weight)
+        {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.weight = weight;
+        }
+
+        /**
+         * Returns the sum of this and another set of statistics.
+         */
+        public Statistics plus(Statistics other) {
+            return new Statistics(
+                hitCount + other.hitCount,
+                missCount + other.missCount,
+                evictionCount + other.evictionCount,
+                weight + other.weight);
+        }
+
+        public String toString() {
+            return "hits=" + hitCount
+                + ", misses=" + missCount
+                + ", evictions=" + evictionCount
+                + ", weight=" + weight;
+        }
+    }
+}
+
+// End ConcurrentSmartCache.java
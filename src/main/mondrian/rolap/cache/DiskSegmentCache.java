@@ -0,0 +1,495 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap.cache;
+
+import mondrian.olap.MondrianProperties;
+import mondrian.olap.Util;
+import mondrian.spi.*;
+
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Implementation of {@link mondrian.spi.SegmentCache} that persists segments
+ * in files in a local directory, so that they survive a restart of the
+ * server.
+ *
+ * <p>Each segment is stored in its own file. The file consists of a short
+ * preamble (a magic number, a format version and the length of the header),
+ * the serialized {@link SegmentHeader}, and the serialized
+ * {@link SegmentBody}. When the cache is created, it reads the header of
+ * each file in the directory, but not the body; bodies are read, via a
+ * memory-mapped buffer, only when {@link #get} is called. Files that cannot
+ * be read are deleted.</p>
+ *
+ * <p>A file is written to a temporary file of its own and then renamed, so
+ * that a crash during {@link #put} does not leave a partial segment behind,
+ * and concurrent writers of the same segment do not write to the same
+ * file.</p>
+ *
+ * <p>The total length of the files is bounded by a byte budget. When a new
+ * segment would exceed the budget, the files of the least recently used
+ * segments are deleted, and listeners receive an
+ * {@link SegmentCacheListener.SegmentCacheEvent.EventType#ENTRY_DELETED}
+ * event for each of them. When the cache is created, files are ranked by
+ * their modification time. This cache does not know which schemas are in
+ * use, or by which catalog; segments of schemas that are no longer loaded
+ * are never read, and are therefore the first to be evicted.</p>
+ *
+ * <p>Mondrian uses this class as an additional cache if
+ * {@link MondrianProperties#DiskSegmentCacheDirectory} is set.</p>
+ */
+public class DiskSegmentCache implements SegmentCache {
+    private static final Logger LOGGER =
+        Logger.getLogger(DiskSegmentCache.class);
+
+    private static final int MAGIC = 0x4D534547; // "MSEG"
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".seg";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Length of the preamble (magic number, version, header length) that
+     * precedes the serialized header in each file.
+     */
+    private static final int PREAMBLE_LENGTH = 12;
+
+    private final File directory;
+    private final long maxBytes;
+
+    /**
+     * Files holding segments, keyed by header. Modified only while holding
+     * {@code this}.
+     */
+    private final Map<SegmentHeader, File> map =
+        new ConcurrentHashMap<SegmentHeader, File>();
+
+    /**
+     * Length of the file of each segment, in access order, least recently
+     * used first. Guarded by {@code this}.
+     */
+    private final LinkedHashMap<SegmentHeader, Long> lengths =
+        new LinkedHashMap<SegmentHeader, Long>(16, 0.75f, true);
+
+    /**
+     * Total length of the files in {@link #lengths}. Guarded by
+     * {@code this}.
+     */
+    private long byteCount;
+
+    private final List<SegmentCacheListener> listeners =
+        new CopyOnWriteArrayList<SegmentCacheListener>();
+
+    /**
+     * Creates a DiskSegmentCache in the directory given by the
+     * {@link MondrianProperties#DiskSegmentCacheDirectory} property, whose
+     * budget is determined by the
+     * {@link MondrianProperties#DiskSegmentCacheSize} property.
+     *
+     * <p>This constructor allows the class to be used as an external cache
+     * via the {@link MondrianProperties#SegmentCache} property.</p>
+     */
+    public DiskSegmentCache() {
+        this(
+            new File(
+                MondrianProperties.instance().DiskSegmentCacheDirectory
+                    .get()),
+            (long) MondrianProperties.instance().DiskSegmentCacheSize.get()
+            * 1024L * 1024L);
+    }
+
+    /**
+     * Creates a DiskSegmentCache in a given directory, and indexes the
+     * segments already present in it. If the files already present exceed
+     * the budget, the oldest are deleted.
+     *
+     * @param directory Directory in which to store segments; created if it
+     *                  does not exist
+     * @param maxBytes Maximum total length of segment files, or 0 if there
+     *                 is no limit
+     */
+    public DiskSegmentCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw Util.newError(
+                "Cannot create segment cache directory " + directory);
+        }
+        scan();
+    }
+
+    /**
+     * Reads the header of every segment file in the directory, and deletes
+     * the oldest files if they exceed the budget.
+     */
+    private synchronized void scan() {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        // Oldest first, so that they are the first to be evicted.
+        Arrays.sort(
+            files,
+            new Comparator<File>() {
+                public int compare(File o1, File o2) {
+                    final long t1 = o1.lastModified();
+                    final long t2 = o2.lastModified();
+                    return t1 < t2 ? -1 : t1 == t2 ? 0 : 1;
+                }
+            });
+        for (File file : files) {
+            final String name = file.getName();
+            if (name.endsWith(TEMP_SUFFIX)) {
+                // Left over from an interrupted write.
+                delete(file);
+                continue;
+            }
+            if (!name.endsWith(SUFFIX)) {
+                continue;
+            }
+            final SegmentHeader header = readHeader(file);
+            if (header == null) {
+                delete(file);
+                continue;
+            }
+            map.put(header, file);
+            record(header, file.length());
+        }
+        final int evictedCount = evict(null).size();
+        LOGGER.debug(
+            "Found " + map.size() + " segments in " + directory
+            + (evictedCount > 0
+                ? "; evicted " + evictedCount + " to fit budget"
+                : ""));
+    }
+
+    public SegmentBody get(SegmentHeader header) {
+        final File file = map.get(header);
+        if (file == null) {
+            return null;
+        }
+        synchronized (this) {
+            // Mark the segment as recently used.
+            lengths.get(header);
+        }
+        try {
+            return readBody(file);
+        } catch (FileNotFoundException e) {
+            // Segment was removed by another thread.
+            return null;
+        } catch (Exception e) {
+            LOGGER.warn("Error while reading segment file " + file, e);
+            return null;
+        }
+    }
+
+    public boolean contains(SegmentHeader header) {
+        return map.containsKey(header);
+    }
+
+    public List<SegmentHeader> getSegmentHeaders() {
+        return new ArrayList<SegmentHeader>(map.keySet());
+    }
+
+    public boolean put(SegmentHeader header, SegmentBody body) {
+        assert header != null;
+        assert body != null;
+        final File file = new File(directory, fileName(header));
+        File tempFile = null;
+        try {
+            tempFile =
+                File.createTempFile(
+                    file.getName() + "-", TEMP_SUFFIX, directory);
+            final byte[] headerBytes = serialize(header);
+            final DataOutputStream out =
+                new DataOutputStream(
+                    new BufferedOutputStream(
+                        new FileOutputStream(tempFile)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(headerBytes.length);
+                out.write(headerBytes);
+                final ObjectOutputStream oos = new ObjectOutputStream(out);
+                oos.writeObject(body);
+                oos.flush();
+            } finally {
+                out.close();
+            }
+            if (maxBytes > 0 && tempFile.length() > maxBytes) {
+                // Would not fit even if the cache were empty.
+                delete(tempFile);
+                return false;
+            }
+            if (!tempFile.renameTo(file)) {
+                // On some platforms, rename does not overwrite.
+                delete(file);
+                if (!tempFile.renameTo(file)) {
+                    throw new IOException(
+                        "Cannot rename " + tempFile + " to " + file);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Error while writing segment file " + file, e);
+            if (tempFile != null) {
+                delete(tempFile);
+            }
+            return false;
+        }
+        final List<SegmentHeader> evicted;
+        synchronized (this) {
+            map.put(header, file);
+            record(header, file.length());
+            evicted = evict(header);
+        }
+
+        // Fire events outside of the lock.
+        fireSegmentCacheEvent(
+            new Event(
+                header,
+                true,
+                SegmentCacheListener.SegmentCacheEvent.EventType
+                    .ENTRY_CREATED));
+        for (SegmentHeader evictedHeader : evicted) {
+            // An eviction is not caused by mondrian, so the event is not
+            // local; mondrian needs to remove the header from its index.
+            fireSegmentCacheEvent(
+                new Event(
+                    evictedHeader,
+                    false,
+                    SegmentCacheListener.SegmentCacheEvent.EventType
+                        .ENTRY_DELETED));
+        }
+        return true;
+    }
+
+    public boolean remove(SegmentHeader header) {
+        final File file;
+        synchronized (this) {
+            file = map.remove(header);
+            final Long length = lengths.remove(header);
+            if (length != null) {
+                byteCount -= length;
+            }
+        }
+        if (file == null) {
+            return false;
+        }
+        delete(file);
+        fireSegmentCacheEvent(
+            new Event(
+                header,
+                true,
+                SegmentCacheListener.SegmentCacheEvent.EventType
+                    .ENTRY_DELETED));
+        return true;
+    }
+
+    /**
+     * Records the length of a segment's file. Must be called while holding
+     * {@code this}.
+     *
+     * @param header Segment header
+     * @param length Length of file
+     */
+    private void record(SegmentHeader header, long length) {
+        final Long previous = lengths.put(header, length);
+        if (previous != null) {
+            byteCount -= previous;
+        }
+        byteCount += length;
+    }
+
+    /**
+     * Deletes the files of the least recently used segments until the total
+     * length is within budget. Must be called while holding {@code this}.
+     *
+     * @param keep Segment not to evict, or null
+     * @return Headers of evicted segments
+     */
+    private List<SegmentHeader> evict(SegmentHeader keep) {
+        final List<SegmentHeader> evicted = new ArrayList<SegmentHeader>();
+        if (maxBytes <= 0) {
+            return evicted;
+        }
+        final Iterator<Map.Entry<SegmentHeader, Long>> iterator =
+            lengths.entrySet().iterator();
+        while (byteCount > maxBytes && iterator.hasNext()) {
+            final Map.Entry<SegmentHeader, Long> entry = iterator.next();
+            if (entry.getKey().equals(keep)) {
+                continue;
+            }
+            byteCount -= entry.getValue();
+            iterator.remove();
+            final File file = map.remove(entry.getKey());
+            if (file != null) {
+                delete(file);
+            }
+            evicted.add(entry.getKey());
+        }
+        return evicted;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Does not delete the files. Segments remain available to the next
+     * cache created in the same directory.</p>
+     */
+    public void tearDown() {
+        synchronized (this) {
+            map.clear();
+            lengths.clear();
+            byteCount = 0;
+        }
+        listeners.clear();
+    }
+
+    public void addListener(SegmentCacheListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(SegmentCacheListener listener) {
+        listeners.remove(listener);
+    }
+
+    public boolean supportsRichIndex() {
+        return true;
+    }
+
+    public void fireSegmentCacheEvent(
+        SegmentCache.SegmentCacheListener.SegmentCacheEvent evt)
+    {
+        for (SegmentCacheListener listener : listeners) {
+            listener.handle(evt);
+        }
+    }
+
+    /**
+     * Returns the name of the file in which to store a segment.
+     *
+     * <p>The unique ID of a header does not take into account its excluded
+     * regions, so the name includes their hash code.</p>
+     */
+    private static String fileName(SegmentHeader header) {
+        final StringBuilder buf =
+            new StringBuilder(header.getUniqueID().toString());
+        final List<SegmentColumn> excludedRegions =
+            header.getExcludedRegions();
+        if (!excludedRegions.isEmpty()) {
+            buf.append('-')
+                .append(Integer.toHexString(excludedRegions.hashCode()));
+        }
+        return buf.append(SUFFIX).toString();
+    }
+
+    /**
+     * Reads the header of a segment file. Returns null if the file is not a
+     * valid segment file.
+     */
+    private static SegmentHeader readHeader(File file) {
+        try {
+            final DataInputStream in =
+                new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    return null;
+                }
+                final byte[] headerBytes = new byte[in.readInt()];
+                in.readFully(headerBytes);
+                final ObjectInputStream ois =
+                    new ObjectInputStream(
+                        new ByteArrayInputStream(headerBytes));
+                return (SegmentHeader) ois.readObject();
+            } finally {
+                in.close();
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Invalid segment file " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads the body of a segment file, via a memory-mapped buffer.
+     */
+    private static SegmentBody readBody(File file)
+        throws IOException, ClassNotFoundException
+    {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            final MappedByteBuffer buffer =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Invalid segment file " + file);
+            }
+            final int headerLength = buffer.getInt();
+            buffer.position(PREAMBLE_LENGTH + headerLength);
+            final ObjectInputStream ois =
+                new ObjectInputStream(new ByteBufferInputStream(buffer));
+            return (SegmentBody) ois.readObject();
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static byte[] serialize(Object o) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ObjectOutputStream oos = new ObjectOutputStream(out);
+        oos.writeObject(o);
+        oos.close();
+        return out.toByteArray();
+    }
+
+    private static void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            LOGGER.warn("Cannot delete segment file " + file);
+        }
+    }
+
+    /**
+     * Event fired by this cache.
+     */
+    private static class Event
+        implements SegmentCache.SegmentCacheListener.SegmentCacheEvent
+    {
+        private final SegmentHeader header;
+        private final boolean local;
+        private final EventType eventType;
+
+        Event(SegmentHeader header, boolean local, EventType eventType) {
+            this.header = header;
+            this.local = local;
+            this.eventType = eventType;
+        }
+
+        public boolean isLocal() {
+            return local;
+        }
+
+        public SegmentHeader getSource() {
+            return header;
+        }
+
+        public EventType getEventType() {
+            return eventType;
+        }
+    }
+}
+
+// End DiskSegmentCache.java
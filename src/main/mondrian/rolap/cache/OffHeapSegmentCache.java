@@ -0,0 +1,274 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap.cache;
+
+import mondrian.olap.MondrianProperties;
+import mondrian.olap.Util;
+import mondrian.spi.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Implementation of {@link mondrian.spi.SegmentCache} that stores segments
+ * in memory outside of the Java heap.
+ *
+ * <p>Each segment body is serialized into a direct {@link ByteBuffer}, so
+ * the data of cached segments does not contribute to the cost of garbage
+ * collection. (Only headers, and a small object per buffer, remain on the
+ * heap.) Bodies are deserialized each time they are read.</p>
+ *
+ * <p>The total size of the serialized bodies is bounded by a byte budget.
+ * When a new segment would exceed the budget, the least recently used
+ * segments are evicted, and listeners receive an
+ * {@link SegmentCacheListener.SegmentCacheEvent.EventType#ENTRY_DELETED}
+ * event for each of them. Unlike {@link MemorySegmentCache}, segments are
+ * never removed by the garbage collector.</p>
+ *
+ * <p>Mondrian uses this class as its local cache if
+ * {@link MondrianProperties#OffHeapSegmentCacheSize} is greater than
+ * zero.</p>
+ */
+public class OffHeapSegmentCache implements SegmentCache {
+    private final long maxBytes;
+
+    /**
+     * Buffers holding serialized segment bodies, in access order, least
+     * recently used first. Guarded by {@code this}.
+     */
+    private final LinkedHashMap<SegmentHeader, ByteBuffer> map =
+        new LinkedHashMap<SegmentHeader, ByteBuffer>(16, 0.75f, true);
+
+    /**
+     * Total size of the buffers in {@link #map}. Guarded by {@code this}.
+     */
+    private long byteCount;
+
+    private final List<SegmentCacheListener> listeners =
+        new CopyOnWriteArrayList<SegmentCacheListener>();
+
+    /**
+     * Creates an OffHeapSegmentCache whose budget is determined by the
+     * {@link MondrianProperties#OffHeapSegmentCacheSize} property.
+     *
+     * <p>This constructor allows the class to be used as an external cache
+     * via the {@link MondrianProperties#SegmentCache} property.</p>
+     */
+    public OffHeapSegmentCache() {
+        this(
+            (long) MondrianProperties.instance().OffHeapSegmentCacheSize.get()
+            * 1024L * 1024L);
+    }
+
+    /**
+     * Creates an OffHeapSegmentCache with a given budget.
+     *
+     * @param maxBytes Maximum number of bytes of serialized segment bodies
+     */
+    public OffHeapSegmentCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException(
+                "budget must be positive: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    public SegmentBody get(SegmentHeader header) {
+        final ByteBuffer buffer;
+        synchronized (this) {
+            buffer = map.get(header);
+        }
+        if (buffer == null) {
+            return null;
+        }
+        return deserialize(buffer);
+    }
+
+    public boolean contains(SegmentHeader header) {
+        synchronized (this) {
+            return map.containsKey(header);
+        }
+    }
+
+    public synchronized List<SegmentHeader> getSegmentHeaders() {
+        return new ArrayList<SegmentHeader>(map.keySet());
+    }
+
+    public boolean put(final SegmentHeader header, SegmentBody body) {
+        assert header != null;
+        assert body != null;
+        final byte[] bytes = serialize(body);
+        if (bytes.length > maxBytes) {
+            // Would not fit even if the cache were empty.
+            return false;
+        }
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+
+        final List<SegmentHeader> evicted = new ArrayList<SegmentHeader>();
+        synchronized (this) {
+            final ByteBuffer previous = map.put(header, buffer);
+            if (previous != null) {
+                byteCount -= previous.capacity();
+            }
+            byteCount += buffer.capacity();
+            final Iterator<Map.Entry<SegmentHeader, ByteBuffer>> iterator =
+                map.entrySet().iterator();
+            while (byteCount > maxBytes && iterator.hasNext()) {
+                final Map.Entry<SegmentHeader, ByteBuffer> entry =
+                    iterator.next();
+                if (entry.getKey().equals(header)) {
+                    continue;
+                }
+                byteCount -= entry.getValue().capacity();
+                evicted.add(entry.getKey());
+                iterator.remove();
+            }
+        }
+
+        // Fire events outside of the lock.
+        fireSegmentCacheEvent(
+            new Event(
+                header,
+                true,
+                SegmentCacheListener.SegmentCacheEvent.EventType
+                    .ENTRY_CREATED));
+        for (SegmentHeader evictedHeader : evicted) {
+            // An eviction is not caused by mondrian, so the event is not
+            // local; mondrian needs to remove the header from its index.
+            fireSegmentCacheEvent(
+                new Event(
+                    evictedHeader,
+                    false,
+                    SegmentCacheListener.SegmentCacheEvent.EventType
+                        .ENTRY_DELETED));
+        }
+        return true;
+    }
+
+    public boolean remove(final SegmentHeader header) {
+        final ByteBuffer buffer;
+        synchronized (this) {
+            buffer = map.remove(header);
+            if (buffer != null) {
+                byteCount -= buffer.capacity();
+            }
+        }
+        if (buffer == null) {
+            return false;
+        }
+        fireSegmentCacheEvent(
+            new Event(
+                header,
+                true,
+                SegmentCacheListener.SegmentCacheEvent.EventType
+                    .ENTRY_DELETED));
+        return true;
+    }
+
+    public void tearDown() {
+        synchronized (this) {
+            map.clear();
+            byteCount = 0;
+        }
+        listeners.clear();
+    }
+
+    public void addListener(SegmentCacheListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(SegmentCacheListener listener) {
+        listeners.remove(listener);
+    }
+
+    public boolean supportsRichIndex() {
+        return true;
+    }
+
+    /**
+     * Returns the total number of bytes used by serialized segment bodies.
+     *
+     * @return Number of bytes in use
+     */
+    public synchronized long getByteCount() {
+        return byteCount;
+    }
+
+    public void fireSegmentCacheEvent(
+        SegmentCache.SegmentCacheListener.SegmentCacheEvent evt)
+    {
+        for (SegmentCacheListener listener : listeners) {
+            listener.handle(evt);
+        }
+    }
+
+    private static byte[] serialize(SegmentBody body) {
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final ObjectOutputStream oos = new ObjectOutputStream(out);
+            oos.writeObject(body);
+            oos.close();
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw Util.newError(e, "while serializing segment body");
+        }
+    }
+
+    private static SegmentBody deserialize(ByteBuffer buffer) {
+        // Each reader works on its own view of the buffer, so that reads
+        // can proceed concurrently.
+        final ByteBuffer view = buffer.duplicate();
+        view.rewind();
+        try {
+            final ObjectInputStream ois =
+                new ObjectInputStream(new ByteBufferInputStream(view));
+            return (SegmentBody) ois.readObject();
+        } catch (IOException e) {
+            throw Util.newError(e, "while deserializing segment body");
+        } catch (ClassNotFoundException e) {
+            throw Util.newError(e, "while deserializing segment body");
+        }
+    }
+
+    /**
+     * Event fired by this cache.
+     */
+    private static class Event
+        implements SegmentCache.SegmentCacheListener.SegmentCacheEvent
+    {
+        private final SegmentHeader header;
+        private final boolean local;
+        private final EventType eventType;
+
+        Event(SegmentHeader header, boolean local, EventType eventType) {
+            this.header = header;
+            this.local = local;
+            this.eventType = eventType;
+        }
+
+        public boolean isLocal() {
+            return local;
+        }
+
+        public SegmentHeader getSource() {
+            return header;
+        }
+
+        public EventType getEventType() {
+            return eventType;
+        }
+    }
+}
+
+// End OffHeapSegmentCache.java
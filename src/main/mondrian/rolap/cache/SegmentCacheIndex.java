@@ -175,6 +175,32 @@ public interface SegmentCacheIndex {
      */
     Future<SegmentBody> getFuture(SegmentHeader header);
 
+    /**
+     * Returns the time at which a segment finished loading from SQL, in
+     * milliseconds since the epoch, as given by
+     * {@link System#currentTimeMillis()}.
+     *
+     * <p>Returns 0 if the segment is not in the index, is still loading, or
+     * did not come from a SQL load via {@link #loadSucceeded}; for example,
+     * if it was rolled up from other segments or came from an external
+     * cache.</p>
+     *
+     * @param header Segment header
+     * @return Time at which segment was loaded, or 0 if not known
+     */
+    long getLoadTime(SegmentHeader header);
+
+    /**
+     * Replaces the body of a segment that has finished loading.
+     *
+     * <p>Subsequent calls to {@link #getFuture} return a future holding the
+     * new body. The segment's load time is unchanged.</p>
+     *
+     * @param header Segment header
+     * @param body New segment body
+     */
+    void update(SegmentHeader header, SegmentBody body);
+
     /**
      * Returns a converter that can convert the given header to internal
      * format.
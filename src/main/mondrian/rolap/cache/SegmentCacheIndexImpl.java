@@ -191,6 +191,7 @@ public class SegmentCacheIndexImpl implements SegmentCacheIndex {
         if (!headerInfo.slot.isDone()) {
             headerInfo.slot.put(body);
         }
+        headerInfo.loadTime = System.currentTimeMillis();
         if (headerInfo.removeAfterLoad) {
             remove(header);
         }
@@ -409,6 +410,28 @@ public class SegmentCacheIndexImpl implements SegmentCacheIndex {
         return headerMap.get(header).slot;
     }
 
+    public long getLoadTime(SegmentHeader header) {
+        checkThread();
+
+        final HeaderInfo headerInfo = headerMap.get(header);
+        return headerInfo == null ? 0L : headerInfo.loadTime;
+    }
+
+    public void update(SegmentHeader header, SegmentBody body) {
+        checkThread();
+
+        final HeaderInfo headerInfo = headerMap.get(header);
+        assert headerInfo != null
+            : "segment header " + header.getUniqueID() + " is missing";
+        assert headerInfo.slot == null || headerInfo.slot.isDone()
+            : "segment header " + header.getUniqueID() + " is loading";
+        // Queries that have already read the old body keep it; queries that
+        // call getFuture from now on see the new body.
+        final SlotFuture<SegmentBody> slot = new SlotFuture<SegmentBody>();
+        slot.put(body);
+        headerInfo.slot = slot;
+    }
+
     public SegmentBuilder.SegmentConverter getConverter(
         String schemaName,
         ByteString schemaChecksum,
@@ -885,6 +908,12 @@ public class SegmentCacheIndexImpl implements SegmentCacheIndex {
     private static class HeaderInfo {
         private SlotFuture<SegmentBody> slot;
         private boolean removeAfterLoad;
+
+        /**
+         * Time at which the segment was loaded from SQL, in milliseconds, or
+         * 0 if not known.
+         */
+        private long loadTime;
     }
 }
 
@@ -554,8 +554,11 @@ public class CrossJoinArgFactory {
         // be natively evaluated.
 
         // First check that the member list will not result in a predicate
-        // longer than the underlying DB could support.
-        if (argSize > MondrianProperties.instance().MaxConstraints.get()) {
+        // longer than the underlying DB could support. (Dialects that have a
+        // special form for large lists can support any length.)
+        if (argSize > MondrianProperties.instance().MaxConstraints.get()
+            && !evaluator.getDialect().supportsLargeInList())
+        {
             argSizeNotSupported = true;
         }
 
@@ -60,8 +60,11 @@ public class MemberListCrossJoinArg implements CrossJoinArg {
         // be natively evaluated.
 
         // First check that the member list will not result in a predicate
-        // longer than the underlying DB could support.
-        if (argSize > MondrianProperties.instance().MaxConstraints.get()) {
+        // longer than the underlying DB could support. (Dialects that have a
+        // special form for large lists can support any length.)
+        if (argSize > MondrianProperties.instance().MaxConstraints.get()
+            && !evaluator.getDialect().supportsLargeInList())
+        {
             argSizeNotSupported = true;
         }
 
@@ -121,6 +121,27 @@ public class SqlQuery {
 
     private static final String INDENT = "    ";
 
+    /**
+     * Character that starts a bind parameter in generated SQL. It is
+     * followed by a type code, the value, and {@link #BIND_END}.
+     */
+    private static final char BIND_START = '\u0001';
+
+    /** Character that ends a bind parameter in generated SQL. */
+    private static final char BIND_END = '\u0002';
+
+    /**
+     * Maximum number of values to bind in a query. Beyond this, values are
+     * generated as literals. (SQL Server allows at most 2,100 parameters.)
+     */
+    private static final int MAX_BIND_COUNT = 1000;
+
+    /** Whether to generate literal values as bind parameters. */
+    private boolean bindParameters;
+
+    /** Number of values bound so far. */
+    private int bindCount;
+
     /**
      * Base constructor used by all other constructors to create an empty
      * instance.
@@ -172,13 +193,168 @@ public class SqlQuery {
      */
     public SqlQuery cloneEmpty()
     {
-        return new SqlQuery(dialect);
+        final SqlQuery sqlQuery = new SqlQuery(dialect);
+        sqlQuery.bindParameters = bindParameters;
+        return sqlQuery;
     }
 
     public void setDistinct(final boolean distinct) {
         this.distinct = distinct;
     }
 
+    /**
+     * Chooses whether literal values in this query are generated as bind
+     * parameters; see {@link #quote}.
+     *
+     * <p>Only set this if the SQL is to be executed by a
+     * {@link SqlStatement}, which replaces each parameter with a "?" marker
+     * and binds its value.</p>
+     *
+     * @param bindParameters Whether to generate bind parameters
+     */
+    public void setBindParameters(boolean bindParameters) {
+        this.bindParameters = bindParameters;
+    }
+
+    /**
+     * Appends a literal value to a buffer.
+     *
+     * <p>If this query generates bind parameters, and the value can be bound,
+     * appends a parameter; otherwise appends a literal, by calling
+     * {@link Dialect#quote}. Queries that differ only in their literal values
+     * then have the same SQL, so the database can reuse its plan.</p>
+     *
+     * @param buf Buffer
+     * @param value Value
+     * @param datatype Datatype of value
+     */
+    public void quote(
+        StringBuilder buf,
+        Object value,
+        Dialect.Datatype datatype)
+    {
+        final char code =
+            bindParameters && bindCount < MAX_BIND_COUNT && value != null
+                ? bindCode(value.toString(), datatype)
+                : 0;
+        if (code == 0) {
+            dialect.quote(buf, value, datatype);
+            return;
+        }
+        ++bindCount;
+        buf.append(BIND_START)
+            .append(code)
+            .append(value)
+            .append(BIND_END);
+    }
+
+    /**
+     * Returns the code with which to bind a value of a given type, or 0 if
+     * it should be generated as a literal. Values that cannot be converted
+     * to their type are generated as literals, so that the dialect reports
+     * the error as before.
+     */
+    private static char bindCode(String s, Dialect.Datatype datatype) {
+        if (s.indexOf(BIND_START) >= 0 || s.indexOf(BIND_END) >= 0) {
+            return 0;
+        }
+        try {
+            switch (datatype) {
+            case String:
+                return 'S';
+            case Integer:
+                try {
+                    Long.parseLong(s);
+                    return 'I';
+                } catch (NumberFormatException e) {
+                    // not a long, say "1.5"; bind as a decimal
+                }
+                // fall through
+            case Numeric:
+                Util.discard(new java.math.BigDecimal(s));
+                return 'N';
+            case Date:
+                Util.discard(java.sql.Date.valueOf(s));
+                return 'D';
+            case Time:
+                Util.discard(java.sql.Time.valueOf(s));
+                return 'T';
+            case Timestamp:
+                Util.discard(java.sql.Timestamp.valueOf(s));
+                return 'P';
+            default:
+                return 0;
+            }
+        } catch (IllegalArgumentException e) {
+            // includes NumberFormatException
+            return 0;
+        }
+    }
+
+    /**
+     * Replaces the bind parameters in a SQL string generated by a query with
+     * "?" markers, and returns the values to bind to them.
+     *
+     * @param sql SQL string, possibly containing bind parameters
+     * @return SQL string with "?" markers, and the list of values to bind;
+     *   the list is empty if the string contains no bind parameters
+     */
+    public static Pair<String, List<Object>> extractBindValues(String sql) {
+        int start = sql.indexOf(BIND_START);
+        if (start < 0) {
+            return Pair.of(sql, Collections.<Object>emptyList());
+        }
+        final StringBuilder buf = new StringBuilder(sql.length());
+        final List<Object> values = new ArrayList<Object>();
+        int end = -1;
+        while (start >= 0) {
+            buf.append(sql, end + 1, start);
+            end = sql.indexOf(BIND_END, start);
+            final String s = sql.substring(start + 2, end);
+            switch (sql.charAt(start + 1)) {
+            case 'S':
+                values.add(s);
+                break;
+            case 'I':
+                values.add(Long.valueOf(s));
+                break;
+            case 'N':
+                values.add(new java.math.BigDecimal(s));
+                break;
+            case 'D':
+                values.add(java.sql.Date.valueOf(s));
+                break;
+            case 'T':
+                values.add(java.sql.Time.valueOf(s));
+                break;
+            case 'P':
+                values.add(java.sql.Timestamp.valueOf(s));
+                break;
+            default:
+                throw new AssertionError(
+                    "unknown bind type " + sql.charAt(start + 1));
+            }
+            buf.append('?');
+            start = sql.indexOf(BIND_START, end);
+        }
+        buf.append(sql, end + 1, sql.length());
+        return Pair.of(buf.toString(), values);
+    }
+
+    /**
+     * Returns whether to generate a predicate on a given number of values
+     * using {@link Dialect#generateLargeInList}, rather than as a regular
+     * IN list.
+     *
+     * @param valueCount Number of values
+     * @return Whether to generate a large IN list
+     */
+    public boolean isLargeInList(int valueCount) {
+        return valueCount
+            > MondrianProperties.instance().LargeInListThreshold.get()
+            && dialect.supportsLargeInList();
+    }
+
     /**
      * Chooses whether table optimization hints may be used
      * (assuming the dialect supports it).
@@ -702,7 +878,10 @@ public class SqlQuery {
     public static SqlQuery newQuery(DataSource dataSource, String err) {
         final Dialect dialect =
             DialectManager.createDialect(dataSource, null);
-        return new SqlQuery(dialect);
+        final SqlQuery sqlQuery = new SqlQuery(dialect);
+        sqlQuery.setBindParameters(
+            MondrianProperties.instance().SqlBindParameters.get());
+        return sqlQuery;
     }
 
     public void addGroupingSet(List<String> groupingColumnsExpr) {
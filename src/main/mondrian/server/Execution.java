@@ -368,6 +368,25 @@ public class Execution {
         }
     }
 
+    /**
+     * Called by SqlStatement when it closes a statement. Thereafter, this
+     * execution will not cancel the statement; this matters if the statement
+     * is pooled and may be used by another execution.
+     *
+     * @param locus Locus
+     * @param statement The statement, which has been closed
+     */
+    public void unregisterStatement(
+        Locus locus,
+        java.sql.Statement statement)
+    {
+        synchronized (sqlStateLock) {
+            if (statements.get(locus) == statement) {
+                statements.remove(locus);
+            }
+        }
+    }
+
     private void fireExecutionEndEvent() {
         final RolapConnection connection =
             statement.getMondrianConnection();
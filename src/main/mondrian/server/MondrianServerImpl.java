@@ -10,6 +10,7 @@
 package mondrian.server;
 
 import mondrian.olap.MondrianException;
+import mondrian.olap.MondrianProperties;
 import mondrian.olap.MondrianServer;
 import mondrian.olap4j.CatalogFinder;
 import mondrian.resource.MondrianResource;
@@ -30,6 +31,7 @@ import org.olap4j.OlapConnection;
 import java.sql.SQLException;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.ObjectName;
 
 /**
  * Implementation of {@link mondrian.olap.MondrianServer}.
@@ -89,6 +91,12 @@ class MondrianServerImpl
 
     private final AggregationManager aggMgr;
 
+    /**
+     * Name of the MBean that exposes this server's statistics via JMX, or
+     * null if not registered. See {@link MondrianProperties#MonitorJmx}.
+     */
+    private final ObjectName mbeanName;
+
     private boolean shutdown = false;
 
     private static final Logger LOGGER =
@@ -182,6 +190,11 @@ class MondrianServerImpl
 
         this.aggMgr = new AggregationManager(this);
 
+        this.mbeanName =
+            MondrianProperties.instance().MonitorJmx.get()
+                ? MonitorMBeanImpl.register(id, monitor, aggMgr.cacheMgr)
+                : null;
+
         this.shepherd = new RolapResultShepherd();
     }
 
@@ -303,6 +316,7 @@ class MondrianServerImpl
             throw new MondrianException("Server already shutdown.");
         }
         this.shutdown  = true;
+        MonitorMBeanImpl.unregister(mbeanName);
         aggMgr.shutdown();
         monitor.shutdown();
         repository.shutdown();
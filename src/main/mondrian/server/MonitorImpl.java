@@ -10,6 +10,8 @@
 package mondrian.server;
 
 import mondrian.olap.Util;
+import mondrian.rolap.RolapConnection;
+import mondrian.rolap.RolapConnectionProperties;
 import mondrian.rolap.RolapUtil;
 import mondrian.server.monitor.*;
 import mondrian.util.Pair;
@@ -17,8 +19,7 @@ import mondrian.util.Pair;
 import org.apache.log4j.Logger;
 
 import java.util.*;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.*;
 
 /**
  * Process that reads from the monitor stream and updates counters.
@@ -134,6 +135,47 @@ class MonitorImpl
         return ACTOR.execute(handler, command);
     }
 
+    /**
+     * Returns the histogram of the durations of MDX executions, in
+     * milliseconds.
+     */
+    Histogram getMdxExecutionHistogram() {
+        return handler.mdxExecutionHistogram;
+    }
+
+    /**
+     * Returns the histogram of the times to execute SQL statements, in
+     * microseconds.
+     */
+    Histogram getSqlExecutionHistogram() {
+        return handler.sqlExecutionHistogram;
+    }
+
+    /**
+     * Returns histograms of the times to execute SQL statements, in
+     * microseconds, for each data source. The map is thread-safe; new data
+     * sources may appear while you are reading it.
+     */
+    Map<String, Histogram> getSqlExecutionHistograms() {
+        return handler.sqlExecutionHistogramMap;
+    }
+
+    /**
+     * Returns the histogram of the number of cell requests in each batch
+     * sent to SQL.
+     */
+    Histogram getCellRequestBatchHistogram() {
+        return handler.cellRequestBatchHistogram;
+    }
+
+    /**
+     * Returns the number of events waiting to be processed by the actor.
+     * The actor is shared by all servers.
+     */
+    static int getQueueDepth() {
+        return ACTOR.eventQueue.size();
+    }
+
     // Command and response classes
 
     /**
@@ -211,6 +253,7 @@ class MonitorImpl
                 aggSql.endCount,
                 aggSql.rowFetchCount,
                 aggSql.executeNanos,
+                aggSql.queueNanos,
                 aggSql.cellRequestCount,
                 aggExec.cellCacheHitCount,
                 aggExec.cellCacheRequestCount,
@@ -229,7 +272,9 @@ class MonitorImpl
                 aggExec.cellCacheSegmentCreateViaRollupCount,
                 aggExec.cellCacheSegmentCreateViaSqlCount,
                 aggExec.cellCacheSegmentCellCount,
-                aggExec.cellCacheSegmentCoordinateSum);
+                aggExec.cellCacheSegmentCoordinateSum,
+                aggExec.cellCacheRollupPlanCount,
+                aggExec.cellCacheRollupRejectCount);
         }
     }
 
@@ -295,6 +340,7 @@ class MonitorImpl
                 aggSql.endCount,
                 aggSql.rowFetchCount,
                 aggSql.executeNanos,
+                aggSql.queueNanos,
                 aggSql.cellRequestCount);
         }
     }
@@ -316,6 +362,7 @@ class MonitorImpl
         private final long executionId;
         private final MutableSqlStatementInfo aggSql =
             new MutableSqlStatementInfo(null, -1);
+        private long startTimestamp;
         private int startCount;
         private int phaseCount;
         private int endCount;
@@ -334,6 +381,8 @@ class MonitorImpl
         private int cellCacheSegmentDeleteCount;
         private int cellCacheSegmentCoordinateSum;
         private int cellCacheSegmentCellCount;
+        private int cellCacheRollupPlanCount;
+        private int cellCacheRollupRejectCount;
 
         public MutableExecutionInfo(
             MutableStatementInfo stmt,
@@ -356,6 +405,7 @@ class MonitorImpl
                 aggSql.endCount,
                 aggSql.rowFetchCount,
                 aggSql.executeNanos,
+                aggSql.queueNanos,
                 aggSql.cellRequestCount);
         }
     }
@@ -368,11 +418,13 @@ class MonitorImpl
     private static class MutableSqlStatementInfo {
         private final MutableStatementInfo stmt; // parent context
         private final long sqlStatementId;
+        private String dataSourceName;
         private int startCount;
         private int executeCount;
         private int endCount;
         private int cellRequestCount;
         private long executeNanos;
+        private long queueNanos;
         private long rowFetchCount;
 
         public MutableSqlStatementInfo(
@@ -413,6 +465,19 @@ class MonitorImpl
         private final Map<Long, MutableExecutionInfo> retiredExecutionMap =
             new HashMap<Long, MutableExecutionInfo>();
 
+        // Histograms are written by the actor, but may be read by any
+        // thread; see the accessor methods of MonitorImpl.
+
+        private final Histogram mdxExecutionHistogram = new Histogram();
+
+        private final Histogram sqlExecutionHistogram = new Histogram();
+
+        private final ConcurrentMap<String, Histogram>
+            sqlExecutionHistogramMap =
+                new ConcurrentHashMap<String, Histogram>();
+
+        private final Histogram cellRequestBatchHistogram = new Histogram();
+
         /**
          * Method for debugging that does nothing, but is a place to put a break
          * point to find out places where an event or its parent should be
@@ -515,6 +580,7 @@ class MonitorImpl
             }
             final MutableExecutionInfo exec =
                 new MutableExecutionInfo(stmt, event.executionId);
+            exec.startTimestamp = event.timestamp;
             executionMap.put(event.executionId, exec);
 
             foo(exec, event);
@@ -563,6 +629,8 @@ class MonitorImpl
                 return missing(event);
             }
             retiredExecutionMap.put(exec.executionId, exec);
+            mdxExecutionHistogram.record(
+                event.timestamp - exec.startTimestamp);
             foo(exec, event);
             foo(exec.stmt.aggExec, event);
             foo(exec.stmt.conn.aggExec, event);
@@ -665,6 +733,33 @@ class MonitorImpl
             }
         }
 
+        public Object visit(CellCacheRollupPlanEvent event) {
+            MutableExecutionInfo exec =
+                executionMap.get(event.executionId);
+            if (exec == null) {
+                exec = retiredExecutionMap.get(event.executionId);
+                if (exec == null) {
+                    return missing(event);
+                }
+            }
+
+            foo(exec, event);
+            foo(exec.stmt.aggExec, event);
+            foo(exec.stmt.conn.aggExec, event);
+            foo(server.aggExec, event);
+            return null;
+        }
+
+        private void foo(
+            MutableExecutionInfo exec,
+            CellCacheRollupPlanEvent event)
+        {
+            ++exec.cellCacheRollupPlanCount;
+            if (event.source == CellCacheEvent.Source.SQL) {
+                ++exec.cellCacheRollupRejectCount;
+            }
+        }
+
         public Object visit(SqlStatementStartEvent event) {
             final MutableStatementInfo stmt =
                 statementMap.get(
@@ -674,7 +769,11 @@ class MonitorImpl
             }
             final MutableSqlStatementInfo sql =
                 new MutableSqlStatementInfo(stmt, event.sqlStatementId);
+            sql.dataSourceName = dataSourceName(event.locus);
             sqlStatementMap.put(event.sqlStatementId, sql);
+            if (event.cellRequestCount > 0) {
+                cellRequestBatchHistogram.record(event.cellRequestCount);
+            }
             foo(sql, event);
             foo(sql.stmt.aggSql, event);
             foo(server.aggSql, event);
@@ -687,6 +786,7 @@ class MonitorImpl
         {
             ++sql.startCount;
             sql.cellRequestCount += event.cellRequestCount;
+            sql.queueNanos += event.queueNanos;
         }
 
         public Object visit(SqlStatementExecuteEvent event) {
@@ -695,12 +795,54 @@ class MonitorImpl
             if (sql == null) {
                 return missing(event);
             }
+            final long executeMicros = event.executeNanos / 1000;
+            sqlExecutionHistogram.record(executeMicros);
+            Histogram histogram =
+                sqlExecutionHistogramMap.get(sql.dataSourceName);
+            if (histogram == null) {
+                histogram = new Histogram();
+                sqlExecutionHistogramMap.put(sql.dataSourceName, histogram);
+            }
+            histogram.record(executeMicros);
             foo(sql, event);
             foo(sql.stmt.aggSql, event);
             foo(server.aggSql, event);
             return null;
         }
 
+        /**
+         * Returns the name of the data source that a SQL statement is
+         * executed against: the "DataSource" connect string property, or
+         * the "Jdbc" property without its parameters, which may contain a
+         * password.
+         *
+         * @param locus Locus of SQL statement
+         * @return Name of data source
+         */
+        private String dataSourceName(Locus locus) {
+            final Statement statement = locus.execution.getMondrianStatement();
+            if (statement != null) {
+                final RolapConnection connection =
+                    statement.getMondrianConnection();
+                if (connection != null) {
+                    final Util.PropertyList connectInfo =
+                        connection.getConnectInfo();
+                    final String dataSource =
+                        connectInfo.get(
+                            RolapConnectionProperties.DataSource.name());
+                    if (dataSource != null) {
+                        return dataSource;
+                    }
+                    final String jdbc =
+                        connectInfo.get(RolapConnectionProperties.Jdbc.name());
+                    if (jdbc != null) {
+                        return jdbc.replaceAll("[?;].*$", "");
+                    }
+                }
+            }
+            return "unknown";
+        }
+
         private void foo(
             MutableSqlStatementInfo sql,
             SqlStatementExecuteEvent event)
@@ -0,0 +1,221 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.server;
+
+import mondrian.rolap.agg.SegmentCacheManager;
+import mondrian.server.monitor.*;
+
+import org.apache.log4j.Logger;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import javax.management.*;
+
+/**
+ * Implementation of {@link MonitorMBean} that reads the statistics of a
+ * {@link MonitorImpl} and a {@link SegmentCacheManager}.
+ */
+class MonitorMBeanImpl implements MonitorMBean {
+    private static final Logger LOGGER =
+        Logger.getLogger(MonitorMBeanImpl.class);
+
+    private final MonitorImpl monitor;
+    private final SegmentCacheManager cacheMgr;
+
+    /**
+     * Creates a MonitorMBeanImpl.
+     *
+     * @param monitor Monitor
+     * @param cacheMgr Segment cache manager
+     */
+    MonitorMBeanImpl(MonitorImpl monitor, SegmentCacheManager cacheMgr) {
+        this.monitor = monitor;
+        this.cacheMgr = cacheMgr;
+    }
+
+    /**
+     * Registers an MBean for a server in the platform MBean server.
+     *
+     * <p>Failure to register is logged, but is not an error.</p>
+     *
+     * @param serverId Id of server
+     * @param monitor Monitor
+     * @param cacheMgr Segment cache manager
+     * @return Name of MBean, or null if it could not be registered
+     */
+    static ObjectName register(
+        int serverId,
+        MonitorImpl monitor,
+        SegmentCacheManager cacheMgr)
+    {
+        try {
+            final ObjectName name =
+                new ObjectName("mondrian:type=Monitor,server=" + serverId);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                new StandardMBean(
+                    new MonitorMBeanImpl(monitor, cacheMgr),
+                    MonitorMBean.class),
+                name);
+            return name;
+        } catch (JMException e) {
+            LOGGER.warn("Could not register monitor MBean", e);
+            return null;
+        }
+    }
+
+    /**
+     * Unregisters an MBean from the platform MBean server.
+     *
+     * @param name Name of MBean, or null
+     */
+    static void unregister(ObjectName name) {
+        if (name == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            LOGGER.warn("Could not unregister monitor MBean " + name, e);
+        }
+    }
+
+    public int getConnectionStartCount() {
+        return monitor.getServer().connectionStartCount;
+    }
+
+    public int getConnectionCurrentCount() {
+        final ServerInfo server = monitor.getServer();
+        return server.connectionStartCount - server.connectionEndCount;
+    }
+
+    public int getStatementCurrentCount() {
+        final ServerInfo server = monitor.getServer();
+        return server.statementStartCount - server.statementEndCount;
+    }
+
+    public long getMdxExecutionCount() {
+        return monitor.getMdxExecutionHistogram().getCount();
+    }
+
+    public double getMdxExecutionMeanMillis() {
+        return monitor.getMdxExecutionHistogram().getMean();
+    }
+
+    public long getMdxExecution50thPercentileMillis() {
+        return monitor.getMdxExecutionHistogram().getValueAtPercentile(50);
+    }
+
+    public long getMdxExecution90thPercentileMillis() {
+        return monitor.getMdxExecutionHistogram().getValueAtPercentile(90);
+    }
+
+    public long getMdxExecution99thPercentileMillis() {
+        return monitor.getMdxExecutionHistogram().getValueAtPercentile(99);
+    }
+
+    public long getMdxExecutionMaxMillis() {
+        return monitor.getMdxExecutionHistogram().getMax();
+    }
+
+    public long getSqlExecutionCount() {
+        return monitor.getSqlExecutionHistogram().getCount();
+    }
+
+    public long getSqlExecution99thPercentileMicros() {
+        return monitor.getSqlExecutionHistogram().getValueAtPercentile(99);
+    }
+
+    public String[] getSqlExecutionByDataSource() {
+        final List<String> list = new ArrayList<String>();
+        for (Map.Entry<String, Histogram> entry
+            : new TreeMap<String, Histogram>(
+                monitor.getSqlExecutionHistograms()).entrySet())
+        {
+            list.add(entry.getKey() + ": " + entry.getValue());
+        }
+        return list.toArray(new String[list.size()]);
+    }
+
+    public long getSqlExecutionPercentileMicros(
+        String dataSource,
+        double percentile)
+    {
+        final Histogram histogram =
+            monitor.getSqlExecutionHistograms().get(dataSource);
+        return histogram == null
+            ? -1
+            : histogram.getValueAtPercentile(percentile);
+    }
+
+    public int getCellCacheRequestCount() {
+        return monitor.getServer().cellCacheRequestCount;
+    }
+
+    public int getCellCacheHitCount() {
+        return monitor.getServer().cellCacheHitCount;
+    }
+
+    public int getCellCacheMissCount() {
+        return monitor.getServer().cellCacheMissCount;
+    }
+
+    public int getCellCachePendingCount() {
+        return monitor.getServer().cellCachePendingCount;
+    }
+
+    public int getSegmentCount() {
+        return monitor.getServer().segmentCount;
+    }
+
+    public int getSegmentCreateViaRollupCount() {
+        return monitor.getServer().segmentCreateViaRollupCount;
+    }
+
+    public int getSegmentCreateViaSqlCount() {
+        return monitor.getServer().segmentCreateViaSqlCount;
+    }
+
+    public int getSegmentCreateViaExternalCount() {
+        return monitor.getServer().segmentCreateViaExternalCount;
+    }
+
+    public long getCellRequestBatchCount() {
+        return monitor.getCellRequestBatchHistogram().getCount();
+    }
+
+    public double getCellRequestBatchMeanSize() {
+        return monitor.getCellRequestBatchHistogram().getMean();
+    }
+
+    public long getCellRequestBatchMaxSize() {
+        return monitor.getCellRequestBatchHistogram().getMax();
+    }
+
+    public int getSegmentCacheManagerQueueDepth() {
+        return cacheMgr.getQueueDepth();
+    }
+
+    public int getMonitorQueueDepth() {
+        return MonitorImpl.getQueueDepth();
+    }
+
+    public void resetHistograms() {
+        monitor.getMdxExecutionHistogram().reset();
+        monitor.getSqlExecutionHistogram().reset();
+        for (Histogram histogram
+            : monitor.getSqlExecutionHistograms().values())
+        {
+            histogram.reset();
+        }
+        monitor.getCellRequestBatchHistogram().reset();
+    }
+}
+
+// End MonitorMBeanImpl.java
@@ -0,0 +1,82 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.server.monitor;
+
+/**
+ * Decision whether to satisfy a cell request by rolling up segments in the
+ * cell cache, or by executing SQL.
+ *
+ * <p>The {@link #source} is {@link Source#ROLLUP} if Mondrian chose to
+ * roll up, {@link Source#SQL} otherwise.</p>
+ */
+public class CellCacheRollupPlanEvent extends CellCacheEvent {
+
+    /**
+     * Estimated cost of the cheapest rollup.
+     */
+    public final double rollupCost;
+
+    /**
+     * Estimated cost of SQL, or -1 if SQL was not considered.
+     */
+    public final double sqlCost;
+
+    /**
+     * Aggregate table that SQL would read, or null.
+     */
+    public final String aggTableName;
+
+    /**
+     * Creates a CellCacheRollupPlanEvent.
+     *
+     * @param timestamp Timestamp
+     * @param serverId ID of the server from which the event originates.
+     * @param connectionId ID of the connection from which the event
+     * originates.
+     * @param statementId ID of the statement from which the event originates.
+     * @param executionId ID of the execution from which the event originates.
+     * @param rollupCost Estimated cost of the cheapest rollup
+     * @param sqlCost Estimated cost of SQL, or -1
+     * @param aggTableName Aggregate table that SQL would read, or null
+     * @param source Chosen source of the segment, ROLLUP or SQL
+     */
+    public CellCacheRollupPlanEvent(
+        long timestamp,
+        int serverId,
+        int connectionId,
+        long statementId,
+        long executionId,
+        double rollupCost,
+        double sqlCost,
+        String aggTableName,
+        Source source)
+    {
+        super(
+            timestamp, serverId, connectionId,
+            statementId, executionId, source);
+        assert source == Source.ROLLUP || source == Source.SQL;
+        this.rollupCost = rollupCost;
+        this.sqlCost = sqlCost;
+        this.aggTableName = aggTableName;
+    }
+
+    public String toString() {
+        return "CellCacheRollupPlanEvent(" + source
+            + ", rollupCost=" + rollupCost
+            + ", sqlCost=" + sqlCost
+            + ", aggTable=" + aggTableName + ")";
+    }
+
+    public <T> T accept(Visitor<T> visitor) {
+        return visitor.visit(this);
+    }
+}
+
+// End CellCacheRollupPlanEvent.java
@@ -24,6 +24,7 @@ public class ExecutionInfo extends Info {
     public final int sqlStatementEndCount;
     public final long sqlStatementRowFetchCount;
     public final long sqlStatementExecuteNanos;
+    public final long sqlStatementQueueNanos;
     public final int cellRequestCount;
 
     public ExecutionInfo(
@@ -38,6 +39,7 @@ public class ExecutionInfo extends Info {
         int sqlStatementEndCount,
         long sqlStatementRowFetchCount,
         long sqlStatementExecuteNanos,
+        long sqlStatementQueueNanos,
         int cellRequestCount)
     {
         this.executionId = executionId;
@@ -51,6 +53,7 @@ public class ExecutionInfo extends Info {
         this.sqlStatementEndCount = sqlStatementEndCount;
         this.sqlStatementRowFetchCount = sqlStatementRowFetchCount;
         this.sqlStatementExecuteNanos = sqlStatementExecuteNanos;
+        this.sqlStatementQueueNanos = sqlStatementQueueNanos;
         this.cellRequestCount = cellRequestCount;
         assert cellCacheRequestCount
                == cellCacheHitCount
@@ -0,0 +1,180 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.server.monitor;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of non-negative values, such as latencies, that can estimate
+ * percentiles.
+ *
+ * <p>Values are counted in buckets whose width grows with the value, in the
+ * manner of an HDR histogram. Values less than 64 each have their own
+ * bucket; above that, each power of two is divided into 32 buckets. So a
+ * percentile is accurate to within about 3% of its value, and the histogram
+ * uses a fixed amount of memory however large the values.</p>
+ *
+ * <p>The histogram is thread-safe, and does not lock. One thread may record
+ * values while another reads percentiles; the percentiles may not reflect
+ * values recorded at the same moment.</p>
+ */
+public class Histogram {
+    /**
+     * Number of bits of precision. Values less than 2<sup>BITS</sup> are
+     * exact.
+     */
+    private static final int BITS = 6;
+    private static final int SUB_COUNT = 1 << BITS;
+    private static final int HALF_COUNT = SUB_COUNT >> 1;
+    private static final int BUCKET_COUNT =
+        SUB_COUNT + (Long.SIZE - 1 - BITS) * HALF_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Creates an empty Histogram.
+     */
+    public Histogram() {
+    }
+
+    /**
+     * Records a value. Negative values are recorded as 0.
+     *
+     * @param value Value
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        for (;;) {
+            final long current = max.get();
+            if (value <= current || max.compareAndSet(current, value)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of values recorded.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns the largest value recorded, or 0 if none.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the mean of the values recorded, or 0 if none.
+     */
+    public double getMean() {
+        final long n = count.get();
+        return n == 0 ? 0d : (double) sum.get() / (double) n;
+    }
+
+    /**
+     * Returns an estimate of the value at a given percentile; that is, a
+     * value such that the given percentage of recorded values are less than
+     * or equal to it.
+     *
+     * @param percentile Percentile, between 0 and 100
+     * @return Value at percentile, or 0 if no values have been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        // Sum the buckets, rather than using "count", in case values are
+        // being recorded while we read.
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        final long target =
+            Math.max(
+                1,
+                (long) Math.ceil(
+                    Math.min(100d, Math.max(0d, percentile)) / 100d * total));
+        long cumulative = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            cumulative += counts.get(i);
+            if (cumulative >= target) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Removes all recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    public String toString() {
+        return "count=" + getCount()
+            + ", mean=" + Math.round(getMean())
+            + ", p50=" + getValueAtPercentile(50)
+            + ", p90=" + getValueAtPercentile(90)
+            + ", p99=" + getValueAtPercentile(99)
+            + ", max=" + getMax();
+    }
+
+    /**
+     * Returns the bucket that holds a value.
+     *
+     * @param value Value, not negative
+     * @return Bucket ordinal
+     */
+    static int bucket(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        final int highBit = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        final int shift = highBit - BITS + 1;
+        final int mantissa = (int) (value >>> shift);
+        return SUB_COUNT + (shift - 1) * HALF_COUNT + mantissa - HALF_COUNT;
+    }
+
+    /**
+     * Returns the largest value that belongs in a bucket.
+     *
+     * @param bucket Bucket ordinal
+     * @return Largest value in bucket
+     */
+    static long upperBound(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        final int k = bucket - SUB_COUNT;
+        final int shift = k / HALF_COUNT + 1;
+        final long mantissa = k % HALF_COUNT + HALF_COUNT;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
+
+// End Histogram.java
@@ -0,0 +1,138 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.server.monitor;
+
+/**
+ * Management interface to the statistics of a Mondrian server, for use
+ * via JMX.
+ *
+ * <p>If {@link mondrian.olap.MondrianProperties#MonitorJmx} is true, each
+ * server registers an MBean with this interface, named
+ * "mondrian:type=Monitor,server=<i>id</i>", in the platform MBean server,
+ * and unregisters it when the server shuts down.</p>
+ *
+ * <p>Latencies are estimated by a {@link Histogram}, accurate to within
+ * about 3%. Durations of MDX executions are in milliseconds; durations of
+ * SQL statements are in microseconds.</p>
+ */
+public interface MonitorMBean {
+    /** Returns the number of connections opened. */
+    int getConnectionStartCount();
+
+    /** Returns the number of connections currently open. */
+    int getConnectionCurrentCount();
+
+    /** Returns the number of MDX statements currently open. */
+    int getStatementCurrentCount();
+
+    /** Returns the number of MDX executions that have completed. */
+    long getMdxExecutionCount();
+
+    /** Returns the mean duration of an MDX execution, in milliseconds. */
+    double getMdxExecutionMeanMillis();
+
+    /** Returns the median duration of an MDX execution, in milliseconds. */
+    long getMdxExecution50thPercentileMillis();
+
+    /**
+     * Returns the 90th percentile duration of an MDX execution, in
+     * milliseconds.
+     */
+    long getMdxExecution90thPercentileMillis();
+
+    /**
+     * Returns the 99th percentile duration of an MDX execution, in
+     * milliseconds.
+     */
+    long getMdxExecution99thPercentileMillis();
+
+    /** Returns the longest duration of an MDX execution, in milliseconds. */
+    long getMdxExecutionMaxMillis();
+
+    /** Returns the number of SQL statements executed. */
+    long getSqlExecutionCount();
+
+    /**
+     * Returns the 99th percentile time to execute a SQL statement, in
+     * microseconds, over all data sources.
+     */
+    long getSqlExecution99thPercentileMicros();
+
+    /**
+     * Returns a summary of SQL execution times for each data source, one
+     * line per data source.
+     */
+    String[] getSqlExecutionByDataSource();
+
+    /**
+     * Returns the time to execute a SQL statement against a given data
+     * source at a given percentile, in microseconds.
+     *
+     * @param dataSource Data source name, as returned in
+     *   {@link #getSqlExecutionByDataSource()}
+     * @param percentile Percentile, between 0 and 100
+     * @return Time at percentile, or -1 if no statements have been executed
+     *   against the data source
+     */
+    long getSqlExecutionPercentileMicros(String dataSource, double percentile);
+
+    /** Returns the number of requests for cells to the cell cache. */
+    int getCellCacheRequestCount();
+
+    /** Returns the number of cell requests satisfied by the cell cache. */
+    int getCellCacheHitCount();
+
+    /** Returns the number of cell requests not in the cell cache. */
+    int getCellCacheMissCount();
+
+    /**
+     * Returns the number of cell requests for which a segment was being
+     * loaded.
+     */
+    int getCellCachePendingCount();
+
+    /** Returns the number of segments currently in the cell cache. */
+    int getSegmentCount();
+
+    /** Returns the number of segments created by rolling up others. */
+    int getSegmentCreateViaRollupCount();
+
+    /** Returns the number of segments created by executing SQL. */
+    int getSegmentCreateViaSqlCount();
+
+    /** Returns the number of segments loaded from an external cache. */
+    int getSegmentCreateViaExternalCount();
+
+    /** Returns the number of batches of cell requests sent to SQL. */
+    long getCellRequestBatchCount();
+
+    /** Returns the mean number of cell requests per batch. */
+    double getCellRequestBatchMeanSize();
+
+    /** Returns the largest number of cell requests in a batch. */
+    long getCellRequestBatchMaxSize();
+
+    /**
+     * Returns the number of messages waiting for the actors of the segment
+     * cache manager.
+     */
+    int getSegmentCacheManagerQueueDepth();
+
+    /**
+     * Returns the number of events waiting for the monitor's actor. The
+     * actor is shared by all servers in the JVM.
+     */
+    int getMonitorQueueDepth();
+
+    /** Discards the values recorded in latency and batch histograms. */
+    void resetHistograms();
+}
+
+// End MonitorMBean.java
@@ -31,6 +31,12 @@ public class ServerInfo extends Info {
      */
     public final long sqlStatementExecuteNanos;
 
+    /**
+     * Cumulative time SQL statements spent waiting for a thread before they
+     * started executing.
+     */
+    public final long sqlStatementQueueNanos;
+
     /**
      * Total, over all SQL statements that are fetching cells into cache, of
      * the number of requested cells that will be satisfied by those SQL
@@ -102,6 +108,19 @@ public class ServerInfo extends Info {
      */
     public final int cellCoordinateCount;
 
+    /**
+     * The number of times that Mondrian has weighed rolling up segments in
+     * the cell cache against executing SQL.
+     */
+    public final int rollupPlanCount;
+
+    /**
+     * The number of times that Mondrian has chosen to execute SQL, against
+     * an aggregate table, because it was estimated to be cheaper than
+     * rolling up segments in the cell cache.
+     */
+    public final int rollupRejectCount;
+
     public ServerInfo(
         int connectionStartCount,
         int connectionEndCount,
@@ -112,6 +131,7 @@ public class ServerInfo extends Info {
         int sqlStatementEndCount,
         long sqlStatementRowFetchCount,
         long sqlStatementExecuteNanos,
+        long sqlStatementQueueNanos,
         int sqlStatementCellRequestCount,
         int cellCacheHitCount,
         int cellCacheRequestCount,
@@ -129,7 +149,9 @@ public class ServerInfo extends Info {
         int segmentCreateViaRollupCount,
         int segmentCreateViaSqlCount,
         int cellCount,
-        int cellCoordinateCount)
+        int cellCoordinateCount,
+        int rollupPlanCount,
+        int rollupRejectCount)
     {
         this.connectionStartCount = connectionStartCount;
         this.connectionEndCount = connectionEndCount;
@@ -140,6 +162,7 @@ public class ServerInfo extends Info {
         this.sqlStatementEndCount = sqlStatementEndCount;
         this.sqlStatementRowFetchCount = sqlStatementRowFetchCount;
         this.sqlStatementExecuteNanos = sqlStatementExecuteNanos;
+        this.sqlStatementQueueNanos = sqlStatementQueueNanos;
         this.sqlStatementCellRequestCount = sqlStatementCellRequestCount;
         this.cellCacheRequestCount = cellCacheRequestCount;
         this.cellCacheHitCount = cellCacheHitCount;
@@ -158,6 +181,8 @@ public class ServerInfo extends Info {
         this.segmentCreateViaSqlCount = segmentCreateViaSqlCount;
         this.cellCount = cellCount;
         this.cellCoordinateCount = cellCoordinateCount;
+        this.rollupPlanCount = rollupPlanCount;
+        this.rollupRejectCount = rollupRejectCount;
     }
 
     public int cellCacheMissCount() {
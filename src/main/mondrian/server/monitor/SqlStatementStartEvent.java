@@ -17,6 +17,11 @@ import mondrian.server.Locus;
 public class SqlStatementStartEvent extends SqlStatementEvent {
     public final int cellRequestCount;
 
+    /**
+     * Time the statement spent waiting for a thread before it started.
+     */
+    public final long queueNanos;
+
     /**
      * Creates a SqlStatementStartEvent.
      *
@@ -26,6 +31,7 @@ public class SqlStatementStartEvent extends SqlStatementEvent {
      * @param sql SQL
      * @param purpose Why Mondrian is executing this statement
      * @param cellRequestCount Number of missed cells that led to this request
+     * @param queueNanos Time spent waiting for a thread
      */
     public SqlStatementStartEvent(
         long timestamp,
@@ -33,10 +39,12 @@ public class SqlStatementStartEvent extends SqlStatementEvent {
         Locus locus,
         String sql,
         Purpose purpose,
-        int cellRequestCount)
+        int cellRequestCount,
+        long queueNanos)
     {
         super(timestamp, sqlStatementId, locus, sql, purpose);
         this.cellRequestCount = cellRequestCount;
+        this.queueNanos = queueNanos;
     }
 
     public String toString() {
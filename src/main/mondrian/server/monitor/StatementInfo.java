@@ -26,6 +26,7 @@ public class StatementInfo extends Info {
     public final int sqlStatementEndCount;
     public final long sqlStatementRowFetchCount;
     public final long sqlStatementExecuteNanos;
+    public final long sqlStatementQueueNanos;
     public final int cellRequestCount;
 
     public StatementInfo(
@@ -42,6 +43,7 @@ public class StatementInfo extends Info {
         int sqlStatementEndCount,
         long sqlStatementRowFetchCount,
         long sqlStatementExecuteNanos,
+        long sqlStatementQueueNanos,
         int cellRequestCount)
     {
         this.statementId = statementId;
@@ -57,6 +59,7 @@ public class StatementInfo extends Info {
         this.sqlStatementEndCount = sqlStatementEndCount;
         this.sqlStatementRowFetchCount = sqlStatementRowFetchCount;
         this.sqlStatementExecuteNanos = sqlStatementExecuteNanos;
+        this.sqlStatementQueueNanos = sqlStatementQueueNanos;
         this.cellRequestCount = cellRequestCount;
     }
 
@@ -453,6 +453,44 @@ public interface Dialect {
      */
     boolean supportsUnlimitedValueList();
 
+    /**
+     * Returns whether this Dialect can generate, via
+     * {@link #generateLargeInList}, a predicate that tests an expression
+     * against a list of values of any length.
+     *
+     * <p>If true, Mondrian pushes constraints of more than
+     * {@code mondrian.rolap.maxConstraints} values down to SQL, rather than
+     * evaluating them in memory.</p>
+     *
+     * @return whether this Dialect can generate large IN lists
+     */
+    boolean supportsLargeInList();
+
+    /**
+     * Generates a predicate that tests whether an expression, or a row of
+     * expressions, is equal to one of a large list of values.
+     *
+     * <p>Mondrian calls this method, rather than generating
+     * "<code>expr IN (value, ...)</code>", if
+     * {@link #supportsLargeInList()} returns true and there are more values
+     * than the property {@code mondrian.rolap.sql.largeInListThreshold}. A
+     * long IN list makes for long SQL text, some databases limit its length,
+     * and some plan it poorly.</p>
+     *
+     * <p>PostgreSQL example:
+     * <p><code>
+     * generateLargeInList(
+     *   ["year", "quarter"], [["1997", "'Q1'"], ["1997", "'Q2'"]]) -&gt;
+     *   (year, quarter) in (values (1997, 'Q1'), (1997, 'Q2'))
+     * </code></p>
+     *
+     * @param exprs Expressions; usually one, more than one to compare a row
+     * @param valueList List of rows of values; each row has one value per
+     *   expression, already quoted as a SQL literal (or bind parameter)
+     * @return Predicate
+     */
+    String generateLargeInList(List<String> exprs, List<String[]> valueList);
+
     /**
      * Returns true if this Dialect can include expressions in the GROUP BY
      * clause only by adding an expression to the SELECT clause and using
@@ -774,6 +812,43 @@ public interface Dialect {
      */
     List<StatisticsProvider> getStatisticsProviders();
 
+    /**
+     * Returns the number of rows that the JDBC driver should fetch from the
+     * database in each round trip, when reading the result of a query.
+     *
+     * <p>Mondrian reads large result sets, such as cell segments and
+     * members, one row at a time, and does not need the driver to hold the
+     * whole result set in memory. The fetch size trades memory for round
+     * trips.</p>
+     *
+     * <p>Returns 0 to use the driver's default. The value may have a special
+     * meaning for the driver: MySQL's driver reads the whole result set into
+     * memory unless the fetch size is {@link Integer#MIN_VALUE}, in which
+     * case it streams the rows.</p>
+     *
+     * <p>Mondrian uses this value only if the property
+     * {@code mondrian.rolap.sql.fetchSize} is negative; by default, it uses
+     * the driver's default.</p>
+     *
+     * @return Fetch size, or 0 to use the driver's default
+     */
+    int getFetchSize();
+
+    /**
+     * Returns whether the JDBC driver honors the fetch size only within a
+     * transaction.
+     *
+     * <p>If true, and the fetch size is positive, Mondrian turns off
+     * auto-commit on the connection while it reads a result set, and turns
+     * it back on afterwards. PostgreSQL's driver, for example, reads the
+     * whole result set into memory if the connection is in auto-commit
+     * mode.</p>
+     *
+     * @return whether the driver requires a transaction to apply the fetch
+     *   size
+     */
+    boolean requiresTransactionForFetchSize();
+
     /**
      * Enumeration of common database types.
      *
@@ -826,6 +826,72 @@ public class JdbcDialectImpl implements Dialect {
         return false;
     }
 
+    public boolean supportsLargeInList() {
+        return false;
+    }
+
+    public String generateLargeInList(
+        List<String> exprs,
+        List<String[]> valueList)
+    {
+        return generateLargeInListGeneric(exprs, valueList, -1);
+    }
+
+    /**
+     * Generic algorithm to generate a predicate on a large list of values,
+     * as a disjunction of IN lists.
+     *
+     * @param exprs Expressions
+     * @param valueList List of rows of quoted values
+     * @param maxListSize Maximum number of values in each IN list, or -1
+     *   if unlimited
+     * @return Predicate, for example "(x in (1, 2) or x in (3))"
+     */
+    protected String generateLargeInListGeneric(
+        List<String> exprs,
+        List<String[]> valueList,
+        int maxListSize)
+    {
+        final StringBuilder buf = new StringBuilder("(");
+        int i = 0;
+        for (String[] values : valueList) {
+            if (i == 0 || maxListSize > 0 && i % maxListSize == 0) {
+                if (i > 0) {
+                    buf.append(") or ");
+                }
+                appendRow(buf, exprs.toArray(new String[exprs.size()]));
+                buf.append(" in (");
+            } else {
+                buf.append(", ");
+            }
+            appendRow(buf, values);
+            ++i;
+        }
+        return buf.append("))").toString();
+    }
+
+    /**
+     * Appends a row of expressions or values; a single expression is not
+     * enclosed in parentheses.
+     *
+     * @param buf Buffer
+     * @param values Expressions or values
+     */
+    protected static void appendRow(StringBuilder buf, String[] values) {
+        if (values.length == 1) {
+            buf.append(values[0]);
+            return;
+        }
+        buf.append('(');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                buf.append(", ");
+            }
+            buf.append(values[i]);
+        }
+        buf.append(')');
+    }
+
     public boolean requiresGroupByAlias() {
         return false;
     }
@@ -889,6 +955,14 @@ public class JdbcDialectImpl implements Dialect {
         return statisticsProviders;
     }
 
+    public int getFetchSize() {
+        return 0;
+    }
+
+    public boolean requiresTransactionForFetchSize() {
+        return false;
+    }
+
     protected List<StatisticsProvider> computeStatisticsProviders() {
         List<String> names = getStatisticsProviderNames();
         if (names == null) {
@@ -259,6 +259,14 @@ public class MySqlDialect extends JdbcDialectImpl {
         return true;
     }
 
+    @Override
+    public int getFetchSize() {
+        // Stream rows, rather than reading the whole result set into memory.
+        // (Unless the connection has "useCursorFetch=true", the driver
+        // ignores other values.)
+        return Integer.MIN_VALUE;
+    }
+
     private enum Scope {
         SESSION,
         GLOBAL
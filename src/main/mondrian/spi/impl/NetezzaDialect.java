@@ -63,5 +63,22 @@ public class NetezzaDialect extends PostgreSqlDialect {
     public String generateRegularExpression(String source, String javaRegex) {
         throw new UnsupportedOperationException();
     }
+
+    @Override
+    public int getFetchSize() {
+        // Netezza has its own driver, to which PostgreSQL's settings do not
+        // apply.
+        return 0;
+    }
+
+    @Override
+    public boolean requiresTransactionForFetchSize() {
+        return false;
+    }
+
+    @Override
+    public boolean supportsLargeInList() {
+        return false;
+    }
 }
 // End NetezzaDialect.java
\ No newline at end of file
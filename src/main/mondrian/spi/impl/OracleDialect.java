@@ -77,6 +77,27 @@ public class OracleDialect extends JdbcDialectImpl {
         return true;
     }
 
+    @Override
+    public int getFetchSize() {
+        // The driver's default, 10 rows, makes many round trips.
+        return 1000;
+    }
+
+    @Override
+    public boolean supportsLargeInList() {
+        return true;
+    }
+
+    @Override
+    public String generateLargeInList(
+        List<String> exprs,
+        List<String[]> valueList)
+    {
+        // Oracle allows at most 1000 values in an IN list (ORA-01795), so
+        // generate "(x in (v1, ..., v1000) or x in (v1001, ...))".
+        return generateLargeInListGeneric(exprs, valueList, 1000);
+    }
+
     @Override
     public String generateRegularExpression(
         String source,
@@ -14,6 +14,7 @@ import mondrian.olap.Util;
 import org.apache.log4j.Logger;
 
 import java.sql.*;
+import java.util.List;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -202,6 +203,46 @@ public class PostgreSqlDialect extends JdbcDialectImpl {
         return true;
     }
 
+    @Override
+    public int getFetchSize() {
+        return 1000;
+    }
+
+    @Override
+    public boolean supportsLargeInList() {
+        return true;
+    }
+
+    @Override
+    public String generateLargeInList(
+        List<String> exprs,
+        List<String[]> valueList)
+    {
+        // PostgreSQL plans "x in (values (1), (2), ...)" as a join to an
+        // inline table, which is much faster than searching a long IN list.
+        final StringBuilder buf = new StringBuilder();
+        appendRow(buf, exprs.toArray(new String[exprs.size()]));
+        buf.append(" in (values ");
+        int i = 0;
+        for (String[] values : valueList) {
+            if (i++ > 0) {
+                buf.append(", ");
+            }
+            if (values.length == 1) {
+                buf.append('(').append(values[0]).append(')');
+            } else {
+                appendRow(buf, values);
+            }
+        }
+        return buf.append(')').toString();
+    }
+
+    @Override
+    public boolean requiresTransactionForFetchSize() {
+        // The driver uses a cursor only if auto-commit is off.
+        return true;
+    }
+
     public String generateRegularExpression(String source, String javaRegex) {
         try {
             Pattern.compile(javaRegex);
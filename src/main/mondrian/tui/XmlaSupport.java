@@ -813,6 +813,61 @@ public class XmlaSupport {
         return getServlet(cbClassName, dataSourceText, servletCache);
     }
 
+    /**
+     * Creates an XMLA servlet with given init parameters, in addition to the
+     * character encoding and the data sources. The servlet is not cached; the
+     * caller must destroy it.
+     *
+     * @param connectString Connect string
+     * @param catalogNameUrls Map from catalog names to catalog URLs
+     * @param initParams Servlet init parameters
+     * @return Servlet
+     * @throws ServletException on error
+     */
+    public static Servlet makeServlet(
+        String connectString,
+        Map<String, String> catalogNameUrls,
+        Map<String, String> initParams)
+        throws ServletException
+    {
+        return makeServlet(
+            new MondrianXmlaServlet(), connectString, catalogNameUrls,
+            initParams);
+    }
+
+    /**
+     * Initializes a given XMLA servlet with given init parameters, in
+     * addition to the character encoding and the data sources. The servlet
+     * is not cached; the caller must destroy it.
+     *
+     * @param servlet Servlet
+     * @param connectString Connect string
+     * @param catalogNameUrls Map from catalog names to catalog URLs
+     * @param initParams Servlet init parameters
+     * @return The servlet, initialized
+     * @throws ServletException on error
+     */
+    public static Servlet makeServlet(
+        Servlet servlet,
+        String connectString,
+        Map<String, String> catalogNameUrls,
+        Map<String, String> initParams)
+        throws ServletException
+    {
+        MockServletContext servletContext = new MockServletContext();
+        MockServletConfig servletConfig = new MockServletConfig(servletContext);
+        servletConfig.addInitParameter(
+            XmlaServlet.PARAM_CHAR_ENCODING, "UTF-8");
+        servletConfig.addInitParameter(
+            XmlaServlet.PARAM_DATASOURCES_CONFIG,
+            "inline:" + getDataSourcesText(connectString, catalogNameUrls));
+        for (Map.Entry<String, String> entry : initParams.entrySet()) {
+            servletConfig.addInitParameter(entry.getKey(), entry.getValue());
+        }
+        servlet.init(servletConfig);
+        return servlet;
+    }
+
     private static Servlet getServlet(
         String cbClassName,
         String dataSourceText,
@@ -19,6 +19,9 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.text.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <code>Format</code> formats numbers, strings and dates according to the
@@ -71,14 +74,35 @@ public class Format {
     public static final int CacheLimit = 1000;
 
     /**
-     * Maps (formatString, locale) pairs to {@link Format} objects.
+     * Maps locales to maps from format strings to {@link Format} objects.
+     * Formats for the null locale are in {@link #nullLocaleCache}.
      *
-     * <p>If the number of entries in the cache exceeds 1000,
+     * <p>Both levels are concurrent, so {@link #get(String, Locale)} neither
+     * locks nor builds a key when the format is already in the cache. The
+     * total number of entries, {@link #cacheSize}, is limited by
+     * {@link #CacheLimit}.</p>
      */
-    private static final Map<String, Format> cache =
-        new LinkedHashMap<String, Format>() {
-            public boolean removeEldestEntry(Map.Entry<String, Format> entry) {
-                return size() > CacheLimit;
+    private static final ConcurrentMap<Locale, ConcurrentMap<String, Format>>
+        cache = new ConcurrentHashMap<Locale, ConcurrentMap<String, Format>>();
+
+    /**
+     * Maps format strings to {@link Format} objects for the null locale.
+     */
+    private static final ConcurrentMap<String, Format> nullLocaleCache =
+        new ConcurrentHashMap<String, Format>();
+
+    /**
+     * Number of entries in {@link #cache} and {@link #nullLocaleCache}.
+     */
+    private static final AtomicInteger cacheSize = new AtomicInteger();
+
+    /**
+     * Work areas for formatting numbers, one per thread.
+     */
+    private static final ThreadLocal<NumericScratch> numericScratch =
+        new ThreadLocal<NumericScratch>() {
+            protected NumericScratch initialValue() {
+                return new NumericScratch();
             }
         };
 
@@ -116,9 +140,13 @@ public class Format {
      * Cache of parsed format strings and their thousand separator
      * tokens length. Used so we don't have to tokenize a format string
      * over and over again.
+     *
+     * <p>Each value is the lengths of the groups of digits, starting from the
+     * group nearest the decimal point; the last length is re-applied until
+     * the digits run out. The arrays are shared, and never modified.</p>
      */
-    private static final Map<String, ArrayStack<Integer>>
-        thousandSeparatorTokenMap = new HashMap<String, ArrayStack<Integer>>();
+    private static final ConcurrentMap<String, int[]>
+        thousandSeparatorTokenMap = new ConcurrentHashMap<String, int[]>();
 
     /**
      * Locale for US English, also the default for English and for all
@@ -684,7 +712,7 @@ public class Format {
         final boolean useDecimal;
         final boolean useThouSep;
 
-        final ArrayStack<Integer> cachedThousandSeparatorPositions;
+        final int[] thousandSeparatorPositions;
 
         NumericFormat(
             String token,
@@ -733,10 +761,8 @@ public class Format {
             // an actual format string.
             formatString = MacroToken.expand(locale, formatString);
 
-            if (thousandSeparatorTokenMap.containsKey(formatString)) {
-                cachedThousandSeparatorPositions =
-                    thousandSeparatorTokenMap.get(formatString);
-            } else {
+            int[] positions = thousandSeparatorTokenMap.get(formatString);
+            if (positions == null) {
                 // To provide backwards compatibility, we apply the old
                 // formatting rules if there are less than 2 thousand
                 // separators in the format string.
@@ -754,7 +780,7 @@ public class Format {
                     countOccurrences(
                         formatStringBuffer,
                         getFormatToken(FORMAT_THOUSEP).charAt(0));
-                cachedThousandSeparatorPositions = new ArrayStack<Integer>();
+                final List<Integer> tokenLengths = new ArrayList<Integer>();
                 if (nbThousandSeparators > 1) {
                     // Extract the whole part of the format string
                     final int decimalPos =
@@ -778,32 +804,30 @@ public class Format {
                         // ie: #,###,###
                         st.nextToken();
 
-                        // Now we build a list of the token lengths in
-                        // reverse order. The last one in the reversed
-                        // list will be re-applied if the number is
-                        // longer than the format string.
                         while (st.hasMoreTokens()) {
-                            cachedThousandSeparatorPositions.push(
-                                st.nextToken().length());
+                            tokenLengths.add(st.nextToken().length());
                         }
                 } else if (nbThousandSeparators == 1) {
                     // Use old style formatting.
-                    cachedThousandSeparatorPositions.add(3);
+                    tokenLengths.add(3);
+                }
+
+                // Build the array of token lengths in reverse order. The
+                // last one in the reversed array will be re-applied if the
+                // number is longer than the format string.
+                positions = new int[tokenLengths.size()];
+                for (int k = 0; k < positions.length; k++) {
+                    positions[k] = tokenLengths.get(positions.length - 1 - k);
                 }
-                thousandSeparatorTokenMap.put(
-                    formatString, cachedThousandSeparatorPositions);
+                thousandSeparatorTokenMap.put(formatString, positions);
             }
+            thousandSeparatorPositions = positions;
         }
 
         FormatType getFormatType() {
             return FormatType.NUMERIC;
         }
 
-        private ArrayStack<Integer> getThousandSeparatorPositions() {
-            // Defensive copy
-            return new ArrayStack<Integer>(cachedThousandSeparatorPositions);
-        }
-
         private int countOccurrences(final String s, final char c) {
             final char[] chars = s.toCharArray();
             int count = 0;
@@ -817,14 +841,15 @@ public class Format {
 
         void format(double n, StringBuilder buf)
         {
-            MondrianFloatingDecimal fd = new MondrianFloatingDecimal(n);
+            final NumericScratch scratch = numericScratch.get();
+            final MondrianFloatingDecimal fd = scratch.fd.set(n);
             shift(fd, decimalShift);
             final int formatDigitsRightOfPoint =
                 zeroesRightOfPoint + digitsRightOfPoint;
             if (n == 0.0 || (n < 0 && !shows(fd, formatDigitsRightOfPoint))) {
                 // Underflow of negative number. Make it zero, so there is no
                 // '-' sign.
-                fd = new MondrianFloatingDecimal(0);
+                fd.set(0);
             }
             formatFd0(
                 fd,
@@ -838,14 +863,16 @@ public class Format {
                 zeroesRightOfExp,
                 useThouSep ? locale.thousandSeparator : '\0',
                 useDecimal,
-                getThousandSeparatorPositions());
+                thousandSeparatorPositions,
+                scratch);
         }
 
         boolean isApplicableTo(double n) {
             if (n >= 0) {
                 return true;
             }
-            MondrianFloatingDecimal fd = new MondrianFloatingDecimal(n);
+            final MondrianFloatingDecimal fd =
+                numericScratch.get().fd.set(n);
             shift(fd, decimalShift);
             final int formatDigitsRightOfPoint =
                 zeroesRightOfPoint + digitsRightOfPoint;
@@ -871,8 +898,8 @@ public class Format {
 
         void format(long n, StringBuilder buf)
         {
-            MondrianFloatingDecimal fd =
-                new MondrianFloatingDecimal(n);
+            final NumericScratch scratch = numericScratch.get();
+            final MondrianFloatingDecimal fd = scratch.fd.set(n);
             shift(fd, decimalShift);
             formatFd0(
                 fd,
@@ -886,7 +913,8 @@ public class Format {
                 zeroesRightOfExp,
                 useThouSep ? locale.thousandSeparator : '\0',
                 useDecimal,
-                getThousandSeparatorPositions());
+                thousandSeparatorPositions,
+                scratch);
         }
     }
 
@@ -2066,7 +2094,11 @@ public class Format {
      * one from the cache if one already exists.
      *
      * <p>If the number of entries in the cache exceeds {@link #CacheLimit},
-     * replaces the eldest entry in the cache.
+     * removes an arbitrary entry from the cache.
+     *
+     * <p>This method is thread-safe, and does not lock if the format is
+     * already in the cache. If two threads ask for the same new format at the
+     * same time, both may parse it, but they will return the same object.
      *
      * @param formatString the format string; see
      *   <a href="http://www.apostate.com/programming/vb-format.html">this
@@ -2075,20 +2107,66 @@ public class Format {
      * @return format for given format string in given locale
      */
     public static Format get(String formatString, Locale locale) {
-        String key = formatString + "@@@" + locale;
-        Format format = cache.get(key);
-        if (format == null) {
-            synchronized (cache) {
-                format = cache.get(key);
-                if (format == null) {
-                    format = new Format(formatString, locale);
-                    cache.put(key, format);
+        ConcurrentMap<String, Format> map;
+        if (locale == null) {
+            map = nullLocaleCache;
+        } else {
+            map = cache.get(locale);
+            if (map == null) {
+                map = new ConcurrentHashMap<String, Format>();
+                final ConcurrentMap<String, Format> previous =
+                    cache.putIfAbsent(locale, map);
+                if (previous != null) {
+                    map = previous;
                 }
             }
         }
+        Format format = map.get(formatString);
+        if (format == null) {
+            format = new Format(formatString, locale);
+            final Format previous = map.putIfAbsent(formatString, format);
+            if (previous != null) {
+                return previous;
+            }
+            if (cacheSize.incrementAndGet() > CacheLimit) {
+                evict(formatString);
+            }
+        }
         return format;
     }
 
+    /**
+     * Removes an entry from the format cache, other than one with a given
+     * format string.
+     *
+     * @param keepFormatString Format string of the entry just added
+     */
+    private static void evict(String keepFormatString) {
+        if (evict(nullLocaleCache, keepFormatString)) {
+            return;
+        }
+        for (ConcurrentMap<String, Format> map : cache.values()) {
+            if (evict(map, keepFormatString)) {
+                return;
+            }
+        }
+    }
+
+    private static boolean evict(
+        ConcurrentMap<String, Format> map,
+        String keepFormatString)
+    {
+        for (String formatString : map.keySet()) {
+            if (!formatString.equals(keepFormatString)
+                && map.remove(formatString) != null)
+            {
+                cacheSize.decrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Create a {@link FormatLocale} object characterized by the given
      * properties.
@@ -2802,7 +2880,41 @@ public class Format {
         return buf.toString();
     }
 
-    private StringBuilder format(Object o, StringBuilder buf) {
+    /**
+     * Formats an array of numbers.
+     *
+     * <p>Equivalent to calling {@link #format(Object)} on each value, but
+     * does not box the values, and re-uses one buffer. Use it to format a
+     * column of cells that have the same format string. The array cannot
+     * represent null values; format those using {@code format(null)}.</p>
+     *
+     * @param values Values
+     * @return Array of formatted values, the same length as
+     *   <code>values</code>
+     */
+    public String[] format(double[] values) {
+        final String[] results = new String[values.length];
+        final StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            buf.setLength(0);
+            format.format(values[i], buf);
+            results[i] = buf.toString();
+        }
+        return results;
+    }
+
+    /**
+     * Formats an object, appending the result to a buffer.
+     *
+     * <p>Use this method rather than {@link #format(Object)} if you are
+     * building a larger string, such as a response document, to avoid
+     * creating an intermediate string for each value.</p>
+     *
+     * @param o Value to format; may be null
+     * @param buf Buffer
+     * @return The buffer
+     */
+    public StringBuilder format(Object o, StringBuilder buf) {
         if (o == null) {
             format.formatNull(buf);
         } else {
@@ -2872,7 +2984,8 @@ public class Format {
         int minExpDigits, // minimum digits in exponent
         char thousandChar, // ',' or '.', or 0
         boolean useDecimal,
-        ArrayStack<Integer> thousandSeparatorPositions)
+        int[] thousandSeparatorPositions,
+        NumericScratch scratch)
     {
         // char result[] = new char[nDigits + 10]; // crashes for 1.000.000,00
         // the result length does *not* depend from nDigits
@@ -2882,7 +2995,7 @@ public class Format {
         //         +decExponent/3 (for the thousand separators)
         int resultLen =
             10 + Math.abs(fd.decExponent) * 4 / 3 + maxDigitsRightOfDecimal;
-        char result[] = new char[resultLen];
+        char result[] = scratch.result(resultLen);
         int i = formatFd1(
             fd,
             result,
@@ -2896,7 +3009,8 @@ public class Format {
             minExpDigits,
             thousandChar,
             useDecimal,
-            thousandSeparatorPositions);
+            thousandSeparatorPositions,
+            scratch);
         buf.append(result, 0, i);
     }
 
@@ -2914,7 +3028,8 @@ public class Format {
         int minExpDigits, // minimum digits in exponent
         char thousandChar, // ',' or '.' or 0
         boolean useDecimal,
-        ArrayStack<Integer> thousandSeparatorPositions)
+        int[] thousandSeparatorPositions,
+        NumericScratch scratch)
     {
         if (expChar != 0) {
             // Print the digits left of the 'E'.
@@ -2932,7 +3047,8 @@ public class Format {
                 maxDigitsRightOfDecimal,
                 '\0',
                 useDecimal,
-                thousandSeparatorPositions);
+                thousandSeparatorPositions,
+                scratch);
             fd.decExponent = oldExp;
             fd.isNegative = oldIsNegative;
 
@@ -2950,7 +3066,8 @@ public class Format {
                 maxDigitsRightOfDecimal,
                 thousandChar,
                 useDecimal,
-                thousandSeparatorPositions);
+                thousandSeparatorPositions,
+                scratch);
         }
     }
 
@@ -2964,7 +3081,8 @@ public class Format {
         int maxDigitsRightOfDecimal,
         char thousandChar, // ',' or '.' or 0
         boolean useDecimal,
-        ArrayStack<Integer> thousandSeparatorPositions)
+        int[] thousandSeparatorPositions,
+        NumericScratch scratch)
     {
         if (fd.isNegative) {
             result[i++] = '-';
@@ -2988,7 +3106,8 @@ public class Format {
             fractionDigits = Math.max(
                 fd.nDigits - fd.decExponent, minDigitsRightOfDecimal),
             totalDigits = wholeDigits + fractionDigits;
-        char[] digits2 = new char[totalDigits];
+        // Leave room to prepend a '1' when rounding, below.
+        final char[] digits2 = scratch.digits(totalDigits + 1);
         for (int j = 0; j < totalDigits; j++) {
             digits2[j] = '0';
         }
@@ -3012,15 +3131,13 @@ public class Format {
             while (true) {
                 m--;
                 if (m < 0) {
-                    // The entire number was 9s.  Re-allocate, so we can
+                    // The entire number was 9s.  Shift right, so we can
                     // prepend a '1'.
+                    System.arraycopy(digits2, 0, digits2, 1, totalDigits);
+                    digits2[0] = '1';
                     wholeDigits++;
                     totalDigits++;
                     lastDigit++;
-                    char[] old = digits2;
-                    digits2 = new char[totalDigits];
-                    digits2[0] = '1';
-                    System.arraycopy(old, 0, digits2, 1, old.length);
                     break;
                 } else if (m == lastDigit) {
                     char d = digits2[m];
@@ -3065,36 +3182,37 @@ public class Format {
         }
 
         if (thousandChar != '\0'
-            && thousandSeparatorPositions.size() > 0)
+            && thousandSeparatorPositions.length > 0)
         {
             // Now print the number. That will happen backwards, so we
-            // store it temporarily and then invert.
-            ArrayStack<Character> formattedWholeDigits =
-                new ArrayStack<Character>();
+            // print into the result array and then invert.
+            final int start = i;
             // We need to keep track of how many digits we printed in the
-            // current token.
+            // current token, and which token we are in.
             int nbInserted = 0;
+            int token = 0;
             for (int j = wholeDigits - 1; j >= firstDigitToPrint; j--) {
                 // Check if we need to insert another thousand separator
-                if (nbInserted % thousandSeparatorPositions.peek() == 0
+                if (nbInserted % thousandSeparatorPositions[token] == 0
                     && nbInserted > 0)
                 {
-                    formattedWholeDigits.push(thousandChar);
+                    result[i++] = thousandChar;
                     nbInserted = 0;
                     // The last format token is kept because we re-apply it
                     // until the end of the digits.
-                    if (thousandSeparatorPositions.size() > 1) {
-                        thousandSeparatorPositions.pop();
+                    if (token < thousandSeparatorPositions.length - 1) {
+                        ++token;
                     }
                 }
                 // Insert the next digit.
-                formattedWholeDigits.push(digits2[j]);
+                result[i++] = digits2[j];
                 nbInserted++;
             }
-            // We're done. Invert the print out and add it to
-            // the result array.
-            while (formattedWholeDigits.size() > 0) {
-                result[i++] = formattedWholeDigits.pop();
+            // We're done. Invert the print out.
+            for (int lo = start, hi = i - 1; lo < hi; lo++, hi--) {
+                final char c = result[lo];
+                result[lo] = result[hi];
+                result[hi] = c;
             }
         } else {
             // There are no thousand separators. Just put the
@@ -3135,6 +3253,39 @@ public class Format {
         }
     }
 
+    /**
+     * Work area for formatting a number. There is one per thread; see
+     * {@link Format#numericScratch}. Re-using it avoids creating a
+     * floating decimal and two char arrays for each value formatted.
+     */
+    static class NumericScratch {
+        final MondrianFloatingDecimal fd = new MondrianFloatingDecimal(0);
+        private char[] result = new char[32];
+        private char[] digits = new char[32];
+
+        /**
+         * Returns a result buffer with at least a given length. Its
+         * contents are undefined.
+         */
+        char[] result(int length) {
+            if (result.length < length) {
+                result = new char[Math.max(length, result.length * 2)];
+            }
+            return result;
+        }
+
+        /**
+         * Returns a digits buffer with at least a given length. Its
+         * contents are undefined.
+         */
+        char[] digits(int length) {
+            if (digits.length < length) {
+                digits = new char[Math.max(length, digits.length * 2)];
+            }
+            return digits;
+        }
+    }
+
     /** Specification for MondrianFloatingDecimal. */
     private static class MondrianFloatingDecimalSpec {
         boolean     isExceptional;
@@ -0,0 +1,381 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.util;
+
+import java.io.Serializable;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sketch that estimates the number of distinct values in a collection,
+ * using the HyperLogLog algorithm.
+ *
+ * <p>The values are hashed to 64 bits. The first <i>p</i> bits of the hash
+ * (the precision) choose one of 2<sup><i>p</i></sup> registers, and the
+ * register remembers the longest run of leading zeros seen in the remaining
+ * bits. The relative standard error of the estimate is about
+ * 1.04 / sqrt(2<sup><i>p</i></sup>); see {@link #precisionForError}.</p>
+ *
+ * <p>Sketches are mergeable: the sketch of the union of two collections is
+ * the register-wise maximum of their sketches. Sketches of different
+ * precision can be merged; the result has the lower precision.</p>
+ *
+ * <p>While few registers are set, the sketch holds them in a sorted array,
+ * so that a sketch of a small collection is small; it switches to an array
+ * of all registers when that would use less memory.</p>
+ *
+ * <p>A value hashes the same in every JVM, so sketches can be serialized to
+ * an external cache. Integral numbers hash the same whatever their type,
+ * for example <code>Integer</code> 5 and <code>Long</code> 5.</p>
+ *
+ * <p>This class is not thread-safe.</p>
+ */
+public class HyperLogLog implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** Smallest allowed precision. */
+    public static final int MIN_PRECISION = 4;
+
+    /** Largest allowed precision. */
+    public static final int MAX_PRECISION = 18;
+
+    private final int precision;
+
+    /**
+     * Registers, one byte each, or null if the sketch is sparse.
+     */
+    private byte[] registers;
+
+    /**
+     * Sorted list of set registers, each encoded as
+     * <code>(index &lt;&lt; 8) | value</code>, while the sketch is sparse.
+     */
+    private int[] sparse;
+    private int sparseCount;
+
+    /**
+     * Creates an empty sketch.
+     *
+     * @param precision Number of bits of the hash that choose a register;
+     *   between {@link #MIN_PRECISION} and {@link #MAX_PRECISION}
+     */
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException(
+                "precision out of range: " + precision);
+        }
+        this.precision = precision;
+        this.sparse = new int[4];
+    }
+
+    /**
+     * Returns the smallest precision whose relative standard error is at
+     * most a given value.
+     *
+     * @param relativeError Desired relative standard error, for example
+     *   0.02 for 2%
+     * @return Precision, between {@link #MIN_PRECISION} and
+     *   {@link #MAX_PRECISION}
+     */
+    public static int precisionForError(double relativeError) {
+        for (int p = MIN_PRECISION; p < MAX_PRECISION; p++) {
+            if (1.04d / Math.sqrt(1 << p) <= relativeError) {
+                return p;
+            }
+        }
+        return MAX_PRECISION;
+    }
+
+    /**
+     * Returns the precision of this sketch.
+     */
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Adds a value to the collection. Null values are ignored.
+     *
+     * @param value Value
+     */
+    public void add(Object value) {
+        if (value != null) {
+            addHash(hash(value));
+        }
+    }
+
+    /**
+     * Adds a value, given its 64-bit hash, to the collection.
+     *
+     * @param hash Hash of value
+     */
+    public void addHash(long hash) {
+        final int index = (int) (hash >>> (64 - precision));
+        final long rest = hash << precision;
+        final int rank =
+            rest == 0
+                ? 64 - precision + 1
+                : Long.numberOfLeadingZeros(rest) + 1;
+        set(index, rank);
+    }
+
+    /**
+     * Merges another sketch into this one. The other sketch must not have a
+     * lower precision than this; see {@link #union}.
+     *
+     * @param other Other sketch
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision < precision) {
+            throw new IllegalArgumentException(
+                "cannot merge sketch of precision " + other.precision
+                + " into sketch of precision " + precision);
+        }
+        final int shift = other.precision - precision;
+        if (other.registers != null) {
+            for (int i = 0; i < other.registers.length; i++) {
+                if (other.registers[i] != 0) {
+                    setFolded(i, other.registers[i], shift);
+                }
+            }
+        } else {
+            for (int i = 0; i < other.sparseCount; i++) {
+                final int e = other.sparse[i];
+                setFolded(e >>> 8, e & 0xFF, shift);
+            }
+        }
+    }
+
+    /**
+     * Returns a sketch of the union of several collections. Does not modify
+     * the arguments. The result has the lowest precision of the arguments.
+     *
+     * @param sketches Sketches; each must be a {@code HyperLogLog}
+     * @return Sketch of union, or null if the list is empty
+     */
+    public static HyperLogLog union(List<?> sketches) {
+        int precision = MAX_PRECISION + 1;
+        for (Object sketch : sketches) {
+            precision =
+                Math.min(precision, ((HyperLogLog) sketch).precision);
+        }
+        if (precision > MAX_PRECISION) {
+            return null;
+        }
+        final HyperLogLog union = new HyperLogLog(precision);
+        for (Object sketch : sketches) {
+            union.merge((HyperLogLog) sketch);
+        }
+        return union;
+    }
+
+    /**
+     * Returns the estimated number of distinct values in the collection.
+     *
+     * @return Estimated number of distinct values
+     */
+    public long estimate() {
+        final int m = 1 << precision;
+        if (registers == null) {
+            // Few registers are set, so the linear counting estimator is
+            // accurate.
+            return Math.round(linearCount(m, m - sparseCount));
+        }
+        double sum = 0d;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1d / (1L << register);
+            if (register == 0) {
+                ++zeros;
+            }
+        }
+        final double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5d * m && zeros > 0) {
+            return Math.round(linearCount(m, zeros));
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Returns the approximate number of bytes used by this sketch.
+     */
+    public int getBytes() {
+        return registers != null ? registers.length : sparse.length * 4;
+    }
+
+    public String toString() {
+        return "HyperLogLog(precision=" + precision
+            + ", estimate=" + estimate() + ")";
+    }
+
+    private static double linearCount(int m, int zeros) {
+        return m * Math.log((double) m / (double) zeros);
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+        case 16:
+            return 0.673d;
+        case 32:
+            return 0.697d;
+        case 64:
+            return 0.709d;
+        default:
+            return 0.7213d / (1d + 1.079d / m);
+        }
+    }
+
+    /**
+     * Sets a register of a sketch whose precision is <code>shift</code> bits
+     * more than this, folding it into the corresponding register of this
+     * sketch.
+     */
+    private void setFolded(int index, int rank, int shift) {
+        if (shift == 0) {
+            set(index, rank);
+            return;
+        }
+        // The low "shift" bits of the index become the leading bits of the
+        // remainder of the hash.
+        final int low = index & ((1 << shift) - 1);
+        final int foldedRank =
+            low == 0
+                ? shift + rank
+                : Integer.numberOfLeadingZeros(low) - (32 - shift) + 1;
+        set(index >>> shift, foldedRank);
+    }
+
+    private void set(int index, int rank) {
+        if (registers != null) {
+            if (registers[index] < rank) {
+                registers[index] = (byte) rank;
+            }
+            return;
+        }
+        // Binary search for the register in the sparse list.
+        int lo = 0;
+        int hi = sparseCount - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            final int midIndex = sparse[mid] >>> 8;
+            if (midIndex < index) {
+                lo = mid + 1;
+            } else if (midIndex > index) {
+                hi = mid - 1;
+            } else {
+                if ((sparse[mid] & 0xFF) < rank) {
+                    sparse[mid] = (index << 8) | rank;
+                }
+                return;
+            }
+        }
+        if (sparseCount == sparse.length) {
+            if (sparseCount * 4 * 2 > 1 << precision) {
+                toDense();
+                registers[index] = (byte) rank;
+                return;
+            }
+            final int[] newSparse = new int[sparseCount * 2];
+            System.arraycopy(sparse, 0, newSparse, 0, sparseCount);
+            sparse = newSparse;
+        }
+        System.arraycopy(sparse, lo, sparse, lo + 1, sparseCount - lo);
+        sparse[lo] = (index << 8) | rank;
+        ++sparseCount;
+    }
+
+    private void toDense() {
+        registers = new byte[1 << precision];
+        for (int i = 0; i < sparseCount; i++) {
+            registers[sparse[i] >>> 8] = (byte) (sparse[i] & 0xFF);
+        }
+        sparse = null;
+        sparseCount = 0;
+    }
+
+    /**
+     * Returns a 64-bit hash of a value.
+     *
+     * @param value Value, not null
+     * @return Hash
+     */
+    static long hash(Object value) {
+        if (value instanceof Integer
+            || value instanceof Long
+            || value instanceof Short
+            || value instanceof Byte)
+        {
+            return mix(((Number) value).longValue());
+        }
+        if (value instanceof BigInteger
+            && ((BigInteger) value).bitLength() < 64)
+        {
+            return mix(((BigInteger) value).longValue());
+        }
+        if (value instanceof Number) {
+            final double d = ((Number) value).doubleValue();
+            if (d == Math.rint(d)
+                && d >= Long.MIN_VALUE
+                && d <= Long.MAX_VALUE)
+            {
+                return mix((long) d);
+            }
+            return mix(Double.doubleToLongBits(d));
+        }
+        // FNV-1a over the characters of the string.
+        final String s = value.toString();
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    /**
+     * Scrambles the bits of a long, so that similar inputs have very
+     * different outputs. (The finalizer of MurmurHash3.)
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public boolean equals(Object obj) {
+        if (!(obj instanceof HyperLogLog)) {
+            return false;
+        }
+        final HyperLogLog that = (HyperLogLog) obj;
+        return precision == that.precision
+            && Arrays.equals(dense(), that.dense());
+    }
+
+    public int hashCode() {
+        return Arrays.hashCode(dense());
+    }
+
+    private byte[] dense() {
+        if (registers != null) {
+            return registers;
+        }
+        final byte[] bytes = new byte[1 << precision];
+        for (int i = 0; i < sparseCount; i++) {
+            bytes[sparse[i] >>> 8] = (byte) (sparse[i] & 0xFF);
+        }
+        return bytes;
+    }
+}
+
+// End HyperLogLog.java
@@ -9,6 +9,8 @@
  */
 package mondrian.util;
 
+import java.util.Arrays;
+
 /**
  * Representation of a number as a list of digits.
  *
@@ -26,12 +28,27 @@ class MondrianFloatingDecimal {
     private static final int MAX_SIGNIFICANT_DIGITS = 19;
 
     public MondrianFloatingDecimal(double d) {
+        set(d);
+    }
+
+    /**
+     * Sets this floating decimal to a given value. Formatting code calls
+     * this to re-use one object per thread, rather than creating a new
+     * object for each value.
+     *
+     * @param d Value
+     * @return This floating decimal
+     */
+    MondrianFloatingDecimal set(double d) {
         if (d < 0) {
             isNegative = true;
             d = -d;
         } else {
             isNegative = false;
         }
+        // Clear digits left over from the previous value. Digits beyond
+        // the count (for example, trailing zeros) are significant, below.
+        Arrays.fill(digitList.digits, (byte) 0);
         digitList.set(d, MAX_SIGNIFICANT_DIGITS, true);
         nDigits = 0;
         for (int i = 0; i < digitList.digits.length; i++) {
@@ -39,9 +56,10 @@ class MondrianFloatingDecimal {
                 nDigits++;
             }
         }
-        digits = toCharArray(digitList.digits);
+        digits = toCharArray(digitList.digits, digits);
         isExceptional = Double.isInfinite(d);
         decExponent = digitList.decimalAt;
+        return this;
     }
 
     public String toString() {
@@ -119,14 +137,21 @@ class MondrianFloatingDecimal {
                 result[i++] = '0';
             }
         }
+        // DigitList does not store trailing zeros; for example, 10 has one
+        // digit and decimalAt 2.
         for (int j = 0; j < expDigitList.decimalAt; j++) {
-            result[i++] = ((char) expDigitList.digits[j]);
+            result[i++] =
+                j < expDigitList.count
+                    ? (char) expDigitList.digits[j]
+                    : '0';
         }
         return i;
     }
 
-    private char[] toCharArray(byte[] bytes) {
-        char[] chars = new char[bytes.length];
+    private static char[] toCharArray(byte[] bytes, char[] chars) {
+        if (chars == null || chars.length != bytes.length) {
+            chars = new char[bytes.length];
+        }
         for (int i = 0; i < bytes.length; i++) {
             chars[i] = (char) bytes[i];
         }
@@ -231,7 +231,18 @@ public enum PropertyDefinition {
         XmlaConstants.Access.Read,
         "false",
         XmlaConstants.Method.DISCOVER_AND_EXECUTE,
-        "");
+        ""),
+
+    // mondrian-specific property for compact multidimensional results
+    CompactCellSet(
+        RowsetDefinition.Type.Boolean,
+        null,
+        XmlaConstants.Access.ReadWrite,
+        "false",
+        XmlaConstants.Method.EXECUTE,
+        "Whether to return a multidimensional result in Mondrian's compact "
+        + "format, in which each axis has a dictionary of members and cell "
+        + "values are written in typed blocks. The default is false.");
 
     final RowsetDefinition.Type type;
     final Set<? extends Enum> enumSet;
@@ -87,6 +87,10 @@ public interface XmlaConstants {
     public static final String CONTEXT_XMLA_SESSION_STATE_END =
         "SessionStateEnd";
 
+    // context key set if the response body was streamed to the client
+    public static final String CONTEXT_XMLA_RESPONSE_STREAMED =
+        "ResponseStreamed";
+
     /*************************************************************************
     *
     * The following are XMLA exception fault codes used as faultcode entries
@@ -1710,12 +1710,15 @@ public class XmlaHandler {
                     getResponseMimeType(request);
                 final MDDataSet dataSet;
                 if (format == Format.Multidimensional) {
+                    final boolean json =
+                        responseMimeType
+                        == Enumeration.ResponseMimeType.JSON;
                     dataSet =
                         new MDDataSet_Multidimensional(
                             cellSet,
                             content != Content.DataIncludeDefaultSlicer,
-                            responseMimeType
-                            == Enumeration.ResponseMimeType.JSON);
+                            json,
+                            !json && isCompact(request));
                 } else {
                     dataSet =
                         new MDDataSet_Tabular(cellSet);
@@ -1780,6 +1783,12 @@ public class XmlaHandler {
             Content.DEFAULT);
     }
 
+    private static boolean isCompact(XmlaRequest request) {
+        return Boolean.valueOf(
+            request.getProperties().get(
+                PropertyDefinition.CompactCellSet.name()));
+    }
+
     private static Enumeration.ResponseMimeType getResponseMimeType(
         XmlaRequest request)
     {
@@ -1879,6 +1888,23 @@ public class XmlaHandler {
         private List<Hierarchy> slicerAxisHierarchies;
         private final boolean omitDefaultSlicerInfo;
         private final boolean json;
+        private final boolean compact;
+
+        /**
+         * Maximum number of cells in a block of cell data in compact format.
+         */
+        private static final int COMPACT_BLOCK_SIZE = 1024;
+
+        /**
+         * Value types that are written as a list separated by spaces in
+         * compact format.
+         */
+        private static final Set<String> NUMERIC_TYPES =
+            new HashSet<String>(
+                Arrays.asList(
+                    XSD_BYTE, XSD_SHORT, XSD_INT, XSD_LONG, XSD_INTEGER,
+                    XSD_DOUBLE, XSD_DECIMAL));
+
         private XmlaUtil.ElementNameEncoder encoder =
             XmlaUtil.ElementNameEncoder.INSTANCE;
         private XmlaExtra extra;
@@ -1886,12 +1912,14 @@ public class XmlaHandler {
         protected MDDataSet_Multidimensional(
             CellSet cellSet,
             boolean omitDefaultSlicerInfo,
-            boolean json)
+            boolean json,
+            boolean compact)
             throws SQLException
         {
             super(cellSet);
             this.omitDefaultSlicerInfo = omitDefaultSlicerInfo;
             this.json = json;
+            this.compact = compact;
             this.extra = getExtra(cellSet.getStatement().getConnection());
         }
 
@@ -1904,7 +1932,11 @@ public class XmlaHandler {
         }
 
         public void metadata(SaxWriter writer) {
-            writer.verbatim(MD_DATA_SET_XML_SCHEMA);
+            // The schema describes the standard format; a client that asks
+            // for the compact format knows its structure.
+            if (!compact) {
+                writer.verbatim(MD_DATA_SET_XML_SCHEMA);
+            }
         }
 
         private void olapInfo(SaxWriter writer) throws OlapException {
@@ -2088,7 +2120,11 @@ public class XmlaHandler {
             for (int i = 0; i < axes.size(); i++) {
                 final CellSetAxis axis = axes.get(i);
                 final List<Property> props = getProps(axis.getAxisMetaData());
-                axis(writer, axis, props, "Axis" + i);
+                if (compact) {
+                    compactAxis(writer, axis, props, "Axis" + i);
+                } else {
+                    axis(writer, axis, props, "Axis" + i);
+                }
             }
 
             ////////////////////////////////////////////
@@ -2221,6 +2257,115 @@ public class XmlaHandler {
             writer.endElement(); // Axis
         }
 
+        /**
+         * Writes an axis in compact format.
+         *
+         * <p>Each distinct member on the axis is written once, in the
+         * {@code Members} dictionary, in order of first occurrence. Each
+         * tuple is written as the ordinals of its members in the dictionary,
+         * separated by spaces. Display info depends on the neighboring
+         * tuples, so it is not in the dictionary; it is in the
+         * {@code DisplayInfo} attribute of the tuple, one value per member.
+         * For example:</p>
+         *
+         * <blockquote><pre>
+         * &lt;Axis name="Axis1"&gt;
+         *   &lt;Members&gt;
+         *     &lt;Member Hierarchy="Gender"&gt;...&lt;/Member&gt;
+         *     &lt;Member Hierarchy="Store"&gt;...&lt;/Member&gt;
+         *     &lt;Member Hierarchy="Store"&gt;...&lt;/Member&gt;
+         *   &lt;/Members&gt;
+         *   &lt;Tuples&gt;
+         *     &lt;T DisplayInfo="2 131072"&gt;0 1&lt;/T&gt;
+         *     &lt;T DisplayInfo="2 0"&gt;0 2&lt;/T&gt;
+         *   &lt;/Tuples&gt;
+         * &lt;/Axis&gt;
+         * </pre></blockquote>
+         */
+        private void compactAxis(
+            SaxWriter writer,
+            CellSetAxis axis,
+            List<Property> props,
+            String axisName) throws OlapException
+        {
+            final List<Property> memberProps = new ArrayList<Property>();
+            boolean displayInfo = false;
+            for (Property prop : props) {
+                if (prop == StandardMemberProperty.DISPLAY_INFO
+                    || longProps.get(prop.getName())
+                    == StandardMemberProperty.DISPLAY_INFO)
+                {
+                    displayInfo = true;
+                } else {
+                    memberProps.add(prop);
+                }
+            }
+
+            final List<Position> positions = axis.getPositions();
+            final Map<String, Integer> ordinals =
+                new HashMap<String, Integer>();
+            final List<Member> members = new ArrayList<Member>();
+            for (Position position : positions) {
+                for (Member member : position.getMembers()) {
+                    final String uniqueName = member.getUniqueName();
+                    if (!ordinals.containsKey(uniqueName)) {
+                        ordinals.put(uniqueName, members.size());
+                        members.add(member);
+                    }
+                }
+            }
+
+            writer.startElement(
+                "Axis",
+                "name", axisName);
+            writer.startSequence("Members", "Member");
+            for (Member member : members) {
+                writeMember(writer, member, null, null, 0, memberProps);
+            }
+            writer.endSequence(); // Members
+
+            writer.startSequence("Tuples", "T");
+            final StringBuilder buf = new StringBuilder();
+            final StringBuilder displayInfoBuf = new StringBuilder();
+            for (int i = 0, n = positions.size(); i < n; i++) {
+                final Position prevPosition =
+                    i == 0 ? null : positions.get(i - 1);
+                final Position nextPosition =
+                    i + 1 == n ? null : positions.get(i + 1);
+                buf.setLength(0);
+                displayInfoBuf.setLength(0);
+                int k = 0;
+                for (Member member : positions.get(i).getMembers()) {
+                    if (k > 0) {
+                        buf.append(' ');
+                        displayInfoBuf.append(' ');
+                    }
+                    buf.append(ordinals.get(member.getUniqueName()));
+                    if (displayInfo) {
+                        Integer childrenCard =
+                            (Integer) member.getPropertyValue(
+                                StandardMemberProperty.CHILDREN_CARDINALITY);
+                        displayInfoBuf.append(
+                            calculateDisplayInfo(
+                                prevPosition, nextPosition,
+                                member, k, childrenCard));
+                    }
+                    ++k;
+                }
+                if (displayInfo) {
+                    writer.startElement(
+                        "T",
+                        "DisplayInfo", displayInfoBuf.toString());
+                } else {
+                    writer.startElement("T");
+                }
+                writer.characters(buf.toString());
+                writer.endElement(); // T
+            }
+            writer.endSequence(); // Tuples
+            writer.endElement(); // Axis
+        }
+
         private void writeMember(
             SaxWriter writer,
             Member member,
@@ -2342,6 +2487,10 @@ public class XmlaHandler {
         }
 
         private void cellData(SaxWriter writer) {
+            if (compact) {
+                compactCellData(writer);
+                return;
+            }
             writer.startSequence("CellData", "Cell");
             final int axisCount = cellSet.getAxes().size();
             List<Integer> pos = new ArrayList<Integer>();
@@ -2409,20 +2558,10 @@ public class XmlaHandler {
                         (String) cell.getPropertyValue(
                             StandardCellProperty.DATATYPE);
                     final ValueInfo vi = new ValueInfo(dataType, value);
-                    final String valueType = vi.valueType;
-                    final String valueString;
-                    if (vi.isDecimal) {
-                        valueString =
-                            XmlaUtil.normalizeNumericString(
-                                vi.value.toString());
-                    } else {
-                        valueString = vi.value.toString();
-                    }
-
                     writer.startElement(
                         cellProps.get(i).getName(),
-                        "xsi:type", valueType);
-                    writer.characters(valueString);
+                        "xsi:type", vi.valueType);
+                    writer.characters(valueString(vi));
                     writer.endElement();
                 } else {
                     writer.textElement(cellProps.get(i).getName(), value);
@@ -2430,6 +2569,220 @@ public class XmlaHandler {
             }
             writer.endElement(); // Cell
         }
+
+        private static String valueString(ValueInfo vi) {
+            if (vi.isDecimal) {
+                return XmlaUtil.normalizeNumericString(vi.value.toString());
+            } else {
+                return vi.value.toString();
+            }
+        }
+
+        /**
+         * Writes cell data in compact format.
+         *
+         * <p>Cells are written in blocks of up to
+         * {@link #COMPACT_BLOCK_SIZE} consecutive ordinals; a block whose
+         * cells are all null is omitted. Within a block, {@code Ordinals}
+         * holds the offsets of the non-null cells (it is omitted if no cell
+         * is null), and each cell property is a column with one entry per
+         * non-null cell:</p>
+         *
+         * <ul>
+         * <li>If all values in the block have the same numeric type,
+         *     {@code Value} is a single element of that type, the values
+         *     separated by spaces; otherwise it has a {@code V} element per
+         *     value.</li>
+         * <li>{@code FmtValue} has an {@code F} element per value.</li>
+         * <li>{@code FormatString}, usually the same for many cells, has an
+         *     {@code R} element per run of equal format strings.</li>
+         * </ul>
+         *
+         * <p>For example:</p>
+         *
+         * <blockquote><pre>
+         * &lt;CellData CellCount="3"&gt;
+         *   &lt;Block Start="0" Count="3"&gt;
+         *     &lt;Ordinals&gt;0 2&lt;/Ordinals&gt;
+         *     &lt;Value xsi:type="xsd:double"&gt;1.5 7.25&lt;/Value&gt;
+         *     &lt;FmtValue&gt;
+         *       &lt;F&gt;1.50&lt;/F&gt;
+         *       &lt;F&gt;7.25&lt;/F&gt;
+         *     &lt;/FmtValue&gt;
+         *     &lt;FormatString&gt;
+         *       &lt;R Count="2"&gt;#,##0.00&lt;/R&gt;
+         *     &lt;/FormatString&gt;
+         *   &lt;/Block&gt;
+         * &lt;/CellData&gt;
+         * </pre></blockquote>
+         */
+        private void compactCellData(SaxWriter writer) {
+            int cellCount = 1;
+            for (CellSetAxis axis : cellSet.getAxes()) {
+                cellCount *= axis.getPositionCount();
+            }
+            writer.startElement(
+                "CellData",
+                "CellCount", cellCount);
+            final List<Cell> cells = new ArrayList<Cell>();
+            final StringBuilder buf = new StringBuilder();
+            for (int start = 0; start < cellCount;
+                 start += COMPACT_BLOCK_SIZE)
+            {
+                final int count =
+                    Math.min(COMPACT_BLOCK_SIZE, cellCount - start);
+                cells.clear();
+                buf.setLength(0);
+                for (int i = 0; i < count; i++) {
+                    final Cell cell = cellSet.getCell(start + i);
+                    if (!cell.isNull()) {
+                        if (!cells.isEmpty()) {
+                            buf.append(' ');
+                        }
+                        buf.append(i);
+                        cells.add(cell);
+                    }
+                }
+                if (cells.isEmpty()) {
+                    continue;
+                }
+                writer.startElement(
+                    "Block",
+                    "Start", start,
+                    "Count", count);
+                if (cells.size() < count) {
+                    writer.textElement("Ordinals", buf.toString());
+                }
+                if (extra.shouldReturnCellProperty(
+                        cellSet, StandardCellProperty.VALUE, true))
+                {
+                    compactValues(writer, cells, buf);
+                }
+                if (extra.shouldReturnCellProperty(
+                        cellSet, StandardCellProperty.FORMATTED_VALUE, true))
+                {
+                    writer.startSequence("FmtValue", "F");
+                    for (Cell cell : cells) {
+                        final Object value =
+                            cell.getPropertyValue(
+                                StandardCellProperty.FORMATTED_VALUE);
+                        if (value == null) {
+                            writer.element("F");
+                        } else {
+                            writer.textElement("F", value);
+                        }
+                    }
+                    writer.endSequence(); // FmtValue
+                }
+                if (extra.shouldReturnCellProperty(
+                        cellSet, StandardCellProperty.FORMAT_STRING, true))
+                {
+                    compactFormatStrings(writer, cells);
+                }
+                writer.endElement(); // Block
+            }
+            writer.endElement(); // CellData
+        }
+
+        private void compactValues(
+            SaxWriter writer,
+            List<Cell> cells,
+            StringBuilder buf)
+        {
+            final List<ValueInfo> valueInfos =
+                new ArrayList<ValueInfo>(cells.size());
+            String valueType = null;
+            boolean uniform = true;
+            for (Cell cell : cells) {
+                final Object value =
+                    cell.getPropertyValue(StandardCellProperty.VALUE);
+                if (value == null) {
+                    valueInfos.add(null);
+                    uniform = false;
+                    continue;
+                }
+                final String dataType =
+                    (String) cell.getPropertyValue(
+                        StandardCellProperty.DATATYPE);
+                final ValueInfo vi = new ValueInfo(dataType, value);
+                valueInfos.add(vi);
+                if (valueType == null) {
+                    valueType = vi.valueType;
+                    uniform &= NUMERIC_TYPES.contains(valueType);
+                } else if (!valueType.equals(vi.valueType)) {
+                    uniform = false;
+                }
+            }
+            if (uniform) {
+                buf.setLength(0);
+                for (ValueInfo vi : valueInfos) {
+                    if (buf.length() > 0) {
+                        buf.append(' ');
+                    }
+                    buf.append(valueString(vi));
+                }
+                writer.startElement(
+                    "Value",
+                    "xsi:type", valueType);
+                writer.characters(buf.toString());
+                writer.endElement(); // Value
+            } else {
+                writer.startSequence("Value", "V");
+                for (ValueInfo vi : valueInfos) {
+                    if (vi == null) {
+                        writer.element("V");
+                    } else {
+                        writer.startElement(
+                            "V",
+                            "xsi:type", vi.valueType);
+                        writer.characters(valueString(vi));
+                        writer.endElement(); // V
+                    }
+                }
+                writer.endSequence(); // Value
+            }
+        }
+
+        private void compactFormatStrings(
+            SaxWriter writer,
+            List<Cell> cells)
+        {
+            writer.startSequence("FormatString", "R");
+            Object run = null;
+            int runLength = 0;
+            for (Cell cell : cells) {
+                final Object value =
+                    cell.getPropertyValue(StandardCellProperty.FORMAT_STRING);
+                if (runLength > 0 && !Util.equals(value, run)) {
+                    formatStringRun(writer, run, runLength);
+                    runLength = 0;
+                }
+                run = value;
+                ++runLength;
+            }
+            if (runLength > 0) {
+                formatStringRun(writer, run, runLength);
+            }
+            writer.endSequence(); // FormatString
+        }
+
+        private static void formatStringRun(
+            SaxWriter writer,
+            Object value,
+            int count)
+        {
+            if (value == null) {
+                writer.element(
+                    "R",
+                    "Count", count);
+            } else {
+                writer.startElement(
+                    "R",
+                    "Count", count);
+                writer.characters(value.toString());
+                writer.endElement(); // R
+            }
+        }
     }
 
     static abstract class ColumnHandler {
@@ -244,7 +244,7 @@ public abstract class XmlaServlet
                 }
                 context.put(CONTEXT_MIME_TYPE, mimeType);
 
-                unmarshallSoapMessage(request, requestSoapParts);
+                unmarshallSoapMessage(request, requestSoapParts, context);
             } catch (XmlaException xex) {
                 LOGGER.error("Unable to unmarshall SOAP message", xex);
                 handleFault(response, responseSoapParts, phase, xex);
@@ -321,9 +321,7 @@ public abstract class XmlaServlet
                     context);
             } catch (XmlaException xex) {
                 LOGGER.error("Errors when handling XML/A message", xex);
-                handleFault(response, responseSoapParts, phase, xex);
-                phase = Phase.SEND_ERROR;
-                marshallSoapMessage(response, responseSoapParts, mimeType);
+                sendFault(response, responseSoapParts, phase, xex, mimeType);
                 return;
             }
 
@@ -344,13 +342,11 @@ public abstract class XmlaServlet
                 }
             } catch (XmlaException xex) {
                 LOGGER.error("Errors when invoking callbacks postaction", xex);
-                handleFault(response, responseSoapParts, phase, xex);
-                phase = Phase.SEND_ERROR;
-                marshallSoapMessage(response, responseSoapParts, mimeType);
+                sendFault(response, responseSoapParts, phase, xex, mimeType);
                 return;
             } catch (Exception ex) {
                 LOGGER.error("Errors when invoking callbacks postaction", ex);
-                handleFault(
+                sendFault(
                     response,
                     responseSoapParts,
                     phase,
@@ -358,30 +354,59 @@ public abstract class XmlaServlet
                         SERVER_FAULT_FC,
                         CPOSTA_CODE,
                         CPOSTA_FAULT_FS,
-                        ex));
-                phase = Phase.SEND_ERROR;
-                marshallSoapMessage(response, responseSoapParts, mimeType);
+                        ex),
+                    mimeType);
                 return;
             }
 
             phase = Phase.SEND_RESPONSE;
 
+            // If the body has been streamed, the whole response has already
+            // been sent.
+            if (context.get(CONTEXT_XMLA_RESPONSE_STREAMED) != null) {
+                return;
+            }
+
             try {
                 response.setStatus(HttpServletResponse.SC_OK);
-                marshallSoapMessage(response, responseSoapParts, mimeType);
+                marshallSoapMessage(
+                    response, responseSoapParts, mimeType, context);
             } catch (XmlaException xex) {
                 LOGGER.error("Errors when handling XML/A message", xex);
-                handleFault(response, responseSoapParts, phase, xex);
-                phase = Phase.SEND_ERROR;
-                marshallSoapMessage(response, responseSoapParts, mimeType);
+                sendFault(response, responseSoapParts, phase, xex, mimeType);
             }
         } catch (Throwable t) {
             LOGGER.error("Unknown Error when handling XML/A message", t);
-            handleFault(response, responseSoapParts, phase, t);
-            marshallSoapMessage(response, responseSoapParts, mimeType);
+            sendFault(response, responseSoapParts, phase, t, mimeType);
         }
     }
 
+    /**
+     * Sends a SOAP fault to the client.
+     *
+     * <p>If part of the response has already been sent to the client (which
+     * happens if the response is streamed) it is too late to send a fault.
+     * The error has been logged, and the client will see a truncated
+     * response.</p>
+     */
+    private void sendFault(
+        HttpServletResponse response,
+        byte[][] responseSoapParts,
+        Phase phase,
+        Throwable t,
+        Enumeration.ResponseMimeType mimeType)
+        throws XmlaException
+    {
+        if (response.isCommitted()) {
+            LOGGER.error(
+                "Response already committed; cannot send fault in phase "
+                + phase);
+            return;
+        }
+        handleFault(response, responseSoapParts, phase, t);
+        marshallSoapMessage(response, responseSoapParts, mimeType);
+    }
+
     /**
      * Implement to provide application specified SOAP unmarshalling algorithm.
      */
@@ -390,6 +415,22 @@ public abstract class XmlaServlet
         Element[] requestSoapParts)
         throws XmlaException;
 
+    /**
+     * Unmarshalls a SOAP message, and may store information about the
+     * request in the context for later phases.
+     *
+     * <p>The default implementation calls
+     * {@link #unmarshallSoapMessage(HttpServletRequest, Element[])}.</p>
+     */
+    protected void unmarshallSoapMessage(
+        HttpServletRequest request,
+        Element[] requestSoapParts,
+        Map<String, Object> context)
+        throws XmlaException
+    {
+        unmarshallSoapMessage(request, requestSoapParts);
+    }
+
     /**
      * Implement to handle application specified SOAP header.
      */
@@ -419,6 +460,24 @@ public abstract class XmlaServlet
         Enumeration.ResponseMimeType responseMimeType)
         throws XmlaException;
 
+    /**
+     * Marshalls a successful response, and may use information that earlier
+     * phases stored in the context.
+     *
+     * <p>The default implementation calls
+     * {@link #marshallSoapMessage(HttpServletResponse, byte[][],
+     * mondrian.xmla.Enumeration.ResponseMimeType)}.</p>
+     */
+    protected void marshallSoapMessage(
+        HttpServletResponse response,
+        byte[][] responseSoapParts,
+        Enumeration.ResponseMimeType responseMimeType,
+        Map<String, Object> context)
+        throws XmlaException
+    {
+        marshallSoapMessage(response, responseSoapParts, responseMimeType);
+    }
+
     /**
      * Implement to application specified handler of SOAP fualt.
      */
@@ -244,6 +244,20 @@ public class DefaultSaxWriter implements SaxWriter {
         }
     }
 
+    /**
+     * Ends all elements that have been started and not ended, innermost
+     * first. Used to close the elements of a response that fails after it
+     * has been partly sent.
+     */
+    public void endAllElements() {
+        while (stack.size() > 0) {
+            final String tagName = stack.pop();
+            if (tagName != null) {
+                _endElement(null, null, tagName);
+            }
+        }
+    }
+
     public void verbatim(String text) {
         _checkTag();
         writer.print(text);
@@ -21,7 +21,8 @@ import java.util.*;
 import static org.olap4j.metadata.XmlaConstants.Method;
 
 /**
- * Default implementation of {@link mondrian.xmla.XmlaRequest} by DOM API.
+ * Default implementation of {@link mondrian.xmla.XmlaRequest}, created from
+ * a DOM element or from a request parsed by {@link XmlaRequestParser}.
  *
  * @author Gang Chen
  */
@@ -65,6 +66,32 @@ public class DefaultXmlaRequest
         this.sessionId = sessionId;
     }
 
+    /**
+     * Creates a DefaultXmlaRequest from a request that has been parsed
+     * without building a DOM tree.
+     *
+     * @param parsedRequest Request parsed by {@link XmlaRequestParser}
+     * @param roleName Role name
+     * @param username User name
+     * @param password Password
+     * @param sessionId Session id
+     * @throws XmlaException if the request is invalid
+     */
+    public DefaultXmlaRequest(
+        final XmlaRequestParser.Request parsedRequest,
+        final String roleName,
+        final String username,
+        final String password,
+        final String sessionId)
+        throws XmlaException
+    {
+        init(parsedRequest);
+        this.roleName = roleName;
+        this.username = username;
+        this.password = password;
+        this.sessionId = sessionId;
+    }
+
     public String getSessionId() {
         return sessionId;
     }
@@ -163,6 +190,88 @@ public class DefaultXmlaRequest
         }
     }
 
+    private void init(XmlaRequestParser.Request parsedRequest)
+        throws XmlaException
+    {
+        if (parsedRequest.methodCount != 1) {
+            throw new XmlaException(
+                CLIENT_FAULT_FC,
+                HSB_BAD_SOAP_BODY_CODE,
+                HSB_BAD_SOAP_BODY_FAULT_FS,
+                Util.newError(
+                    MSG_INVALID_XMLA + ": Body has "
+                    + parsedRequest.methodCount + " requests"));
+        }
+        if ("Discover".equals(parsedRequest.methodName)) {
+            method = Method.DISCOVER;
+            checkCount(
+                parsedRequest.requestTypes.size(), "RequestType",
+                HSB_BAD_REQUEST_TYPE_CODE, HSB_BAD_REQUEST_TYPE_FAULT_FS);
+            requestType = parsedRequest.requestTypes.get(0);
+            initProperties(parsedRequest);
+            checkCount(
+                parsedRequest.restrictionsCount, "Restrictions",
+                HSB_BAD_RESTRICTIONS_CODE, HSB_BAD_RESTRICTIONS_FAULT_FS);
+            if (parsedRequest.restrictionListCount > 1) {
+                checkCount(
+                    parsedRequest.restrictionListCount, "RestrictionList",
+                    HSB_BAD_RESTRICTION_LIST_CODE,
+                    HSB_BAD_RESTRICTION_LIST_FAULT_FS);
+            }
+            initRestrictions(
+                new HashMap<String, List<String>>(
+                    parsedRequest.restrictions));
+        } else {
+            method = Method.EXECUTE;
+            checkCount(
+                parsedRequest.commandCount, "Command",
+                HSB_BAD_COMMAND_CODE, HSB_BAD_COMMAND_FAULT_FS);
+            checkCount(
+                parsedRequest.statements.size(), "Statement",
+                HSB_BAD_STATEMENT_CODE, HSB_BAD_STATEMENT_FAULT_FS);
+            initProperties(parsedRequest);
+            initStatement(parsedRequest.statements.get(0));
+        }
+    }
+
+    private void initProperties(XmlaRequestParser.Request parsedRequest)
+        throws XmlaException
+    {
+        checkCount(
+            parsedRequest.propertiesCount, "Properties",
+            HSB_BAD_PROPERTIES_CODE, HSB_BAD_PROPERTIES_FAULT_FS);
+        if (parsedRequest.propertyListCount > 1) {
+            checkCount(
+                parsedRequest.propertyListCount, "PropertyList",
+                HSB_BAD_PROPERTIES_LIST_CODE,
+                HSB_BAD_PROPERTIES_LIST_FAULT_FS);
+        }
+        this.properties =
+            Collections.unmodifiableMap(
+                new HashMap<String, String>(parsedRequest.properties));
+    }
+
+    /**
+     * Throws if the number of elements of a given kind is not one.
+     */
+    private static void checkCount(
+        int count,
+        String elementName,
+        String code,
+        String faultString)
+        throws XmlaException
+    {
+        if (count != 1) {
+            throw new XmlaException(
+                CLIENT_FAULT_FC,
+                code,
+                faultString,
+                Util.newError(
+                    MSG_INVALID_XMLA + ": Wrong number of " + elementName
+                    + " elements: " + count));
+        }
+    }
+
     private void initDiscover(Element discoverRoot) throws XmlaException {
         Element[] childElems =
             XmlaUtil.filterChildElements(
@@ -310,7 +419,10 @@ public class DefaultXmlaRequest
                 HSB_BAD_RESTRICTION_LIST_FAULT_FS,
                 Util.newError(buf.toString()));
         }
+        initRestrictions(restrictions);
+    }
 
+    private void initRestrictions(Map<String, List<String>> restrictions) {
         // If there is a Catalog property,
         // we have to consider it a constraint as well.
         String key =
@@ -402,7 +514,11 @@ public class DefaultXmlaRequest
                 HSB_BAD_STATEMENT_FAULT_FS,
                 Util.newError(buf.toString()));
         }
-        statement = XmlaUtil.textInElement(childElems[0]).replaceAll("\\r", "");
+        initStatement(XmlaUtil.textInElement(childElems[0]));
+    }
+
+    private void initStatement(String text) {
+        statement = text.replaceAll("\\r", "");
         drillthrough = statement.toUpperCase().indexOf("DRILLTHROUGH") != -1;
     }
 }
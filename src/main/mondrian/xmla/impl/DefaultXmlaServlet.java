@@ -21,7 +21,10 @@ import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.channels.*;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.zip.*;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -44,10 +47,77 @@ public abstract class DefaultXmlaServlet extends XmlaServlet {
     private static final String REQUIRE_AUTHENTICATED_SESSIONS =
         "requireAuthenticatedSessions";
 
+    /**
+     * Servlet config parameter that determines whether the xmla servlet
+     * streams the response body to the client as it is generated, rather
+     * than building the whole response in memory.
+     *
+     * <p>If the response is streamed, callbacks' {@link
+     * XmlaRequestCallback#postAction postAction} methods see a null response
+     * body, and cannot modify the response. If an error occurs after the
+     * first part of the response has been sent, it is too late to replace
+     * the response with a SOAP fault; the servlet ends the elements that are
+     * open and appends a SOAP fault to the body, so that the response is
+     * still well-formed. (A JSON response is truncated.)</p>
+     */
+    static final String STREAM_RESPONSE = "streamResponse";
+
+    /**
+     * Servlet config parameter that determines whether the xmla servlet
+     * parses requests using SAX, extracting the XML/A request without
+     * building a DOM tree of the SOAP body.
+     *
+     * <p>If so, the body element seen by callbacks contains only an empty
+     * Discover or Execute element; the header element is complete.</p>
+     */
+    private static final String PARSE_REQUEST_WITH_SAX =
+        "parseRequestWithSax";
+
+    /**
+     * Servlet config parameter that determines whether the xmla servlet
+     * compresses successful responses, using gzip or deflate content
+     * encoding, if the client's "Accept-Encoding" header allows it. Faults
+     * are not compressed.
+     */
+    static final String COMPRESS_RESPONSE = "compressResponse";
+
+    /**
+     * Context key under which {@link #unmarshallSoapMessage} stores the
+     * content encoding of the response, if it is to be compressed.
+     */
+    private static final String CONTEXT_CONTENT_ENCODING =
+        "mondrian.xmla.contentEncoding";
+
+    /**
+     * Context key under which {@link #unmarshallSoapMessage} stores the
+     * request parsed by {@link XmlaRequestParser}.
+     */
+    private static final String CONTEXT_PARSED_REQUEST =
+        "mondrian.xmla.parsedRequest";
+
+    /**
+     * Number of bytes of a streamed response that are held in memory before
+     * the response is committed. If an error occurs before then, the client
+     * receives a SOAP fault.
+     */
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    private static final String SOAP_BODY_START =
+        "</" + SOAP_PREFIX + ":Header>\n<" + SOAP_PREFIX + ":Body>\n";
+
+    private static final String SOAP_ENVELOPE_END =
+        "\n</" + SOAP_PREFIX + ":Body>\n</" + SOAP_PREFIX + ":Envelope>\n";
+
     private DocumentBuilderFactory domFactory = null;
 
     private boolean requireAuthenticatedSessions = false;
 
+    private boolean streamResponse = false;
+
+    private boolean compressResponse = false;
+
+    private XmlaRequestParser requestParser = null;
+
     /**
      * Session properties, keyed by session ID. Currently just username and
      * password.
@@ -61,6 +131,13 @@ public abstract class DefaultXmlaServlet extends XmlaServlet {
         this.requireAuthenticatedSessions =
             Boolean.parseBoolean(
                 servletConfig.getInitParameter(REQUIRE_AUTHENTICATED_SESSIONS));
+        this.streamResponse =
+            getBooleanInitParameter(servletConfig, STREAM_RESPONSE);
+        this.compressResponse =
+            getBooleanInitParameter(servletConfig, COMPRESS_RESPONSE);
+        if (getBooleanInitParameter(servletConfig, PARSE_REQUEST_WITH_SAX)) {
+            this.requestParser = new XmlaRequestParser();
+        }
     }
 
     protected static DocumentBuilderFactory getDocumentBuilderFactory() {
@@ -71,6 +148,61 @@ public abstract class DefaultXmlaServlet extends XmlaServlet {
         return factory;
     }
 
+    protected void unmarshallSoapMessage(
+        HttpServletRequest request,
+        Element[] requestSoapParts,
+        Map<String, Object> context)
+        throws XmlaException
+    {
+        if (compressResponse) {
+            final String contentEncoding =
+                chooseContentEncoding(request.getHeader("Accept-Encoding"));
+            if (contentEncoding != null) {
+                context.put(CONTEXT_CONTENT_ENCODING, contentEncoding);
+            }
+        }
+        if (requestParser == null) {
+            unmarshallSoapMessage(request, requestSoapParts);
+            return;
+        }
+        try {
+            final XmlaRequestParser.Request parsedRequest;
+            try {
+                parsedRequest = requestParser.parse(request.getInputStream());
+            } catch (IOException ex) {
+                // This is either Client or Server
+                throw new XmlaException(
+                    SERVER_FAULT_FC,
+                    USM_DOM_PARSE_IO_CODE,
+                    USM_DOM_PARSE_IO_FAULT_FS,
+                    ex);
+            } catch (SAXException ex) {
+                // Assume client passed bad xml
+                throw new XmlaException(
+                    CLIENT_FAULT_FC,
+                    USM_DOM_PARSE_CODE,
+                    USM_DOM_PARSE_FAULT_FS,
+                    ex);
+            }
+            if (LOGGER.isDebugEnabled()
+                && parsedRequest.getHeader() != null)
+            {
+                logXmlaRequest(parsedRequest.getHeader());
+            }
+            requestSoapParts[0] = parsedRequest.getHeader();
+            requestSoapParts[1] = parsedRequest.getBody();
+            context.put(CONTEXT_PARSED_REQUEST, parsedRequest);
+        } catch (XmlaException xex) {
+            throw xex;
+        } catch (Exception ex) {
+            throw new XmlaException(
+                SERVER_FAULT_FC,
+                USM_UNKNOWN_CODE,
+                USM_UNKNOWN_FAULT_FS,
+                ex);
+        }
+    }
+
     protected void unmarshallSoapMessage(
         HttpServletRequest request,
         Element[] requestSoapParts)
@@ -470,17 +602,20 @@ public abstract class DefaultXmlaServlet extends XmlaServlet {
 
             Element xmlaReqElem = (dreqs.length == 0 ? ereqs[0] : dreqs[0]);
 
-            ByteArrayOutputStream osBuf = new ByteArrayOutputStream();
-
             // use context variable 'role_name' as this request's XML/A role
             String roleName = (String) context.get(CONTEXT_ROLE_NAME);
 
             String username = (String) context.get(CONTEXT_XMLA_USERNAME);
             String password = (String) context.get(CONTEXT_XMLA_PASSWORD);
             String sessionId = (String) context.get(CONTEXT_XMLA_SESSION_ID);
+            final XmlaRequestParser.Request parsedRequest =
+                (XmlaRequestParser.Request) context.get(CONTEXT_PARSED_REQUEST);
             XmlaRequest xmlaReq =
-                new DefaultXmlaRequest(
-                    xmlaReqElem, roleName, username, password, sessionId);
+                parsedRequest != null
+                    ? new DefaultXmlaRequest(
+                        parsedRequest, roleName, username, password, sessionId)
+                    : new DefaultXmlaRequest(
+                        xmlaReqElem, roleName, username, password, sessionId);
 
             // "ResponseMimeType" may be in the context if the "Accept" HTTP
             // header was specified. But override if the SOAP request has the
@@ -498,22 +633,98 @@ public abstract class DefaultXmlaServlet extends XmlaServlet {
                 }
             }
 
+            final ByteArrayOutputStream osBuf;
+            final StreamingOutputStream streamingOs;
+            if (streamResponse) {
+                // Envelope as marshallSoapMessage would write it.
+                final Enumeration.ResponseMimeType envelopeMimeType =
+                    (Enumeration.ResponseMimeType)
+                        context.get(CONTEXT_MIME_TYPE);
+                final String contentEncoding =
+                    (String) context.get(CONTEXT_CONTENT_ENCODING);
+                osBuf = null;
+                setContentType(response, envelopeMimeType);
+                if (contentEncoding != null) {
+                    response.setHeader("Content-Encoding", contentEncoding);
+                }
+                response.setStatus(HttpServletResponse.SC_OK);
+                switch (envelopeMimeType) {
+                case JSON:
+                    streamingOs =
+                        new StreamingOutputStream(
+                            response, contentEncoding,
+                            new byte[0], new byte[0]);
+                    break;
+                case SOAP:
+                default:
+                    final ByteArrayOutputStream head =
+                        new ByteArrayOutputStream();
+                    head.write(envelopeStart(encoding).getBytes(encoding));
+                    if (responseSoapParts[0] != null) {
+                        head.write(responseSoapParts[0]);
+                    }
+                    head.write(SOAP_BODY_START.getBytes(encoding));
+                    streamingOs =
+                        new StreamingOutputStream(
+                            response,
+                            contentEncoding,
+                            head.toByteArray(),
+                            SOAP_ENVELOPE_END.getBytes(encoding));
+                    break;
+                }
+            } else {
+                osBuf = new ByteArrayOutputStream();
+                streamingOs = null;
+            }
+
             XmlaResponse xmlaRes =
-                new DefaultXmlaResponse(osBuf, encoding, responseMimeType);
+                new DefaultXmlaResponse(
+                    streamResponse ? streamingOs : osBuf,
+                    encoding,
+                    responseMimeType);
 
             try {
                 getXmlaHandler().process(xmlaReq, xmlaRes);
-            } catch (XmlaException ex) {
-                throw ex;
             } catch (Exception ex) {
-                throw new XmlaException(
-                    SERVER_FAULT_FC,
-                    HSB_PROCESS_CODE,
-                    HSB_PROCESS_FAULT_FS,
-                    ex);
+                final XmlaException xex =
+                    ex instanceof XmlaException
+                        ? (XmlaException) ex
+                        : new XmlaException(
+                            SERVER_FAULT_FC,
+                            HSB_PROCESS_CODE,
+                            HSB_PROCESS_FAULT_FS,
+                            ex);
+                if (streamingOs != null
+                    && xmlaRes.getWriter() instanceof DefaultSaxWriter)
+                {
+                    final DefaultSaxWriter writer =
+                        (DefaultSaxWriter) xmlaRes.getWriter();
+                    writer.flush();
+                    if (streamingOs.isCommitted()) {
+                        // Part of the response has been sent, so it is too
+                        // late to send a fault instead. End the open
+                        // elements, and append the fault to the body.
+                        LOGGER.error(
+                            "Error after XML/A response was partly sent", xex);
+                        writer.endAllElements();
+                        writer.flush();
+                        streamingOs.write(
+                            faultBytes(Phase.PROCESS_BODY, xex, encoding));
+                        streamingOs.finish();
+                        context.put(
+                            CONTEXT_XMLA_RESPONSE_STREAMED, Boolean.TRUE);
+                        return;
+                    }
+                }
+                throw xex;
             }
 
-            responseSoapParts[1] = osBuf.toByteArray();
+            if (streamingOs != null) {
+                streamingOs.finish();
+                context.put(CONTEXT_XMLA_RESPONSE_STREAMED, Boolean.TRUE);
+            } else {
+                responseSoapParts[1] = osBuf.toByteArray();
+            }
         } catch (XmlaException xex) {
             throw xex;
         } catch (Exception ex) {
@@ -530,6 +741,40 @@ public abstract class DefaultXmlaServlet extends XmlaServlet {
         byte[][] responseSoapParts,
         Enumeration.ResponseMimeType responseMimeType)
         throws XmlaException
+    {
+        writeSoapMessage(response, responseSoapParts, responseMimeType, null);
+    }
+
+    protected void marshallSoapMessage(
+        HttpServletResponse response,
+        byte[][] responseSoapParts,
+        Enumeration.ResponseMimeType responseMimeType,
+        Map<String, Object> context)
+        throws XmlaException
+    {
+        writeSoapMessage(
+            response,
+            responseSoapParts,
+            responseMimeType,
+            (String) context.get(CONTEXT_CONTENT_ENCODING));
+    }
+
+    /**
+     * Writes a SOAP message to the response.
+     *
+     * @param response HTTP response
+     * @param responseSoapParts SOAP header and body
+     * @param responseMimeType Mime type of response
+     * @param contentEncoding Content encoding ("gzip" or "deflate"), or null
+     *     to write the message uncompressed
+     * @throws XmlaException on error
+     */
+    private void writeSoapMessage(
+        HttpServletResponse response,
+        byte[][] responseSoapParts,
+        Enumeration.ResponseMimeType responseMimeType,
+        String contentEncoding)
+        throws XmlaException
     {
         try {
             // If CharacterEncoding was set in web.xml, use this value
@@ -542,17 +787,9 @@ public abstract class DefaultXmlaServlet extends XmlaServlet {
              * Since we just reset response, encoding and content-type were
              * reset too
              */
-            if (charEncoding != null) {
-                response.setCharacterEncoding(charEncoding);
-            }
-            switch (responseMimeType) {
-            case JSON:
-                response.setContentType("application/json");
-                break;
-            case SOAP:
-            default:
-                response.setContentType("text/xml");
-                break;
+            setContentType(response, responseMimeType);
+            if (contentEncoding != null) {
+                response.setHeader("Content-Encoding", contentEncoding);
             }
 
             /*
@@ -562,7 +799,8 @@ public abstract class DefaultXmlaServlet extends XmlaServlet {
              *
              * @see javax.servlet.ServletResponse
              */
-            OutputStream outputStream = response.getOutputStream();
+            OutputStream outputStream =
+                encode(response.getOutputStream(), contentEncoding);
 
 
             byte[] soapHeader = responseSoapParts[0];
@@ -580,26 +818,12 @@ public abstract class DefaultXmlaServlet extends XmlaServlet {
 
                 case SOAP:
                 default:
-                    String s0 =
-                        "<?xml version=\"1.0\" encoding=\"" + encoding
-                        + "\"?>\n<" + SOAP_PREFIX + ":Envelope xmlns:"
-                        + SOAP_PREFIX + "=\"" + NS_SOAP_ENV_1_1 + "\" "
-                        + SOAP_PREFIX + ":encodingStyle=\""
-                        + NS_SOAP_ENC_1_1 + "\" >" + "\n<" + SOAP_PREFIX
-                        + ":Header>\n";
-                    String s2 =
-                        "</" + SOAP_PREFIX + ":Header>\n<" + SOAP_PREFIX
-                        + ":Body>\n";
-                    String s4 =
-                        "\n</" + SOAP_PREFIX + ":Body>\n</" + SOAP_PREFIX
-                        + ":Envelope>\n";
-
                     byteChunks = new Object[] {
-                        s0.getBytes(encoding),
+                        envelopeStart(encoding).getBytes(encoding),
                         soapHeader,
-                        s2.getBytes(encoding),
+                        SOAP_BODY_START.getBytes(encoding),
                         soapBody,
-                        s4.getBytes(encoding),
+                        SOAP_ENVELOPE_END.getBytes(encoding),
                     };
                     break;
                 }
@@ -655,6 +879,9 @@ public abstract class DefaultXmlaServlet extends XmlaServlet {
                     } while (readSize == bufferSize);
                     rch.close();
                 }
+                if (outputStream instanceof DeflaterOutputStream) {
+                    ((DeflaterOutputStream) outputStream).finish();
+                }
                 outputStream.flush();
             } catch (IOException ioe) {
                 LOGGER.error(
@@ -672,6 +899,110 @@ public abstract class DefaultXmlaServlet extends XmlaServlet {
         }
     }
 
+    /**
+     * Sets the content type and character encoding of the response.
+     *
+     * <p>Must be called before the response is committed.</p>
+     */
+    private void setContentType(
+        HttpServletResponse response,
+        Enumeration.ResponseMimeType responseMimeType)
+    {
+        if (charEncoding != null) {
+            response.setCharacterEncoding(charEncoding);
+        }
+        switch (responseMimeType) {
+        case JSON:
+            response.setContentType("application/json");
+            break;
+        case SOAP:
+        default:
+            response.setContentType("text/xml");
+            break;
+        }
+    }
+
+    /**
+     * Chooses the content encoding of a compressed response, given the
+     * value of the request's "Accept-Encoding" header. Prefers "gzip" to
+     * "deflate"; returns null if the client accepts neither, or if the
+     * header is not present. As in HTTP, "*" accepts any encoding that the
+     * header does not list explicitly.
+     *
+     * @param acceptEncoding Value of "Accept-Encoding" header, or null
+     * @return "gzip", "deflate" or null
+     */
+    static String chooseContentEncoding(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        final Set<String> codings = new HashSet<String>();
+        final Set<String> refusedCodings = new HashSet<String>();
+        for (String coding : acceptEncoding.split(",")) {
+            final String[] parts = coding.split(";");
+            boolean accepted = true;
+            for (int i = 1; i < parts.length; i++) {
+                final String param = parts[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        accepted =
+                            Double.parseDouble(param.substring(2).trim()) > 0;
+                    } catch (NumberFormatException e) {
+                        accepted = false;
+                    }
+                }
+            }
+            final String name = parts[0].trim().toLowerCase();
+            if (accepted) {
+                codings.add(name);
+            } else {
+                refusedCodings.add(name);
+            }
+        }
+        for (String coding : new String[] {"gzip", "deflate"}) {
+            if (codings.contains(coding)
+                || codings.contains("*") && !refusedCodings.contains(coding))
+            {
+                return coding;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Wraps an output stream so that it compresses using a given content
+     * encoding. If the encoding is null, returns the stream unchanged.
+     */
+    private static OutputStream encode(
+        OutputStream out,
+        String contentEncoding)
+        throws IOException
+    {
+        if (contentEncoding == null) {
+            return out;
+        } else if (contentEncoding.equals("gzip")) {
+            return new GZIPOutputStream(out, STREAM_BUFFER_SIZE);
+        } else if (contentEncoding.equals("deflate")) {
+            return new DeflaterOutputStream(
+                out, new Deflater(), STREAM_BUFFER_SIZE);
+        } else {
+            throw new IllegalArgumentException(contentEncoding);
+        }
+    }
+
+    /**
+     * Returns the start of a SOAP envelope, up to and including the start
+     * of the header element.
+     */
+    private static String envelopeStart(String encoding) {
+        return "<?xml version=\"1.0\" encoding=\"" + encoding
+            + "\"?>\n<" + SOAP_PREFIX + ":Envelope xmlns:"
+            + SOAP_PREFIX + "=\"" + NS_SOAP_ENV_1_1 + "\" "
+            + SOAP_PREFIX + ":encodingStyle=\""
+            + NS_SOAP_ENC_1_1 + "\" >" + "\n<" + SOAP_PREFIX
+            + ":Header>\n";
+    }
+
     /**
      * This produces a SOAP 1.1 version Fault element - not a 1.2 version.
      *
@@ -703,6 +1034,23 @@ public abstract class DefaultXmlaServlet extends XmlaServlet {
             break;
         }
 
+        responseSoapParts[1] =
+            faultBytes(phase, t, response.getCharacterEncoding());
+    }
+
+    /**
+     * Writes a SOAP Fault element.
+     *
+     * @param phase Phase in which the error occurred
+     * @param t Error
+     * @param encoding Character encoding
+     * @return Fault element, encoded as bytes
+     */
+    private static byte[] faultBytes(
+        Phase phase,
+        Throwable t,
+        String encoding)
+    {
         String code;
         String faultCode;
         String faultString;
@@ -724,8 +1072,6 @@ public abstract class DefaultXmlaServlet extends XmlaServlet {
             detail = XmlaException.formatDetail(t.getMessage());
         }
 
-        String encoding = response.getCharacterEncoding();
-
         ByteArrayOutputStream osBuf = new ByteArrayOutputStream();
         try {
             SaxWriter writer = new DefaultSaxWriter(osBuf, encoding);
@@ -785,8 +1131,7 @@ public abstract class DefaultXmlaServlet extends XmlaServlet {
             LOGGER.error(
                 "Unexcepted runimt exception when handing SOAP fault :(");
         }
-
-        responseSoapParts[1] = osBuf.toByteArray();
+        return osBuf.toByteArray();
     }
 
     private SessionInfo getSessionInfo(String sessionId) {
@@ -854,5 +1199,108 @@ public abstract class DefaultXmlaServlet extends XmlaServlet {
             this.password = password;
         }
     }
+
+    /**
+     * Output stream that sends a response body to the client as it is
+     * written.
+     *
+     * <p>The first {@link #STREAM_BUFFER_SIZE} bytes are held in memory; if
+     * processing fails before then, the response has not been committed, and
+     * the servlet can still send a SOAP fault. After that, the head of the
+     * envelope and the buffered bytes are written to the servlet's output
+     * stream, and subsequent bytes are written through. Because the content
+     * length is not known, the container uses chunked transfer encoding.</p>
+     */
+    private static class StreamingOutputStream extends OutputStream {
+        private final HttpServletResponse response;
+        private final String contentEncoding;
+        private final byte[] head;
+        private final byte[] tail;
+        private byte[] buf = new byte[STREAM_BUFFER_SIZE];
+        private int count;
+        private OutputStream out;
+
+        /**
+         * Creates a StreamingOutputStream.
+         *
+         * @param response HTTP response
+         * @param contentEncoding Content encoding with which to compress the
+         *     response, or null
+         * @param head Bytes to write before the body (start of envelope)
+         * @param tail Bytes to write after the body (end of envelope)
+         */
+        StreamingOutputStream(
+            HttpServletResponse response,
+            String contentEncoding,
+            byte[] head,
+            byte[] tail)
+        {
+            this.response = response;
+            this.contentEncoding = contentEncoding;
+            this.head = head;
+            this.tail = tail;
+        }
+
+        public void write(int b) throws IOException {
+            if (out == null && count < buf.length) {
+                buf[count++] = (byte) b;
+                return;
+            }
+            commit();
+            out.write(b);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (out == null && count + len <= buf.length) {
+                System.arraycopy(b, off, buf, count, len);
+                count += len;
+                return;
+            }
+            commit();
+            out.write(b, off, len);
+        }
+
+        public void flush() throws IOException {
+            // Until the response is committed, hold on to the bytes.
+            if (out != null) {
+                out.flush();
+            }
+        }
+
+        /**
+         * Writes the head and the buffered bytes to the servlet's output
+         * stream, if they have not been written already.
+         */
+        private void commit() throws IOException {
+            if (out != null) {
+                return;
+            }
+            out = encode(response.getOutputStream(), contentEncoding);
+            out.write(head);
+            out.write(buf, 0, count);
+            buf = null;
+            count = 0;
+        }
+
+        /**
+         * Returns whether any of the response has been written to the
+         * servlet's output stream.
+         */
+        boolean isCommitted() {
+            return out != null;
+        }
+
+        /**
+         * Writes the tail of the response, and flushes.
+         */
+        void finish() throws IOException {
+            commit();
+            out.write(tail);
+            if (out instanceof DeflaterOutputStream) {
+                ((DeflaterOutputStream) out).finish();
+            }
+            out.flush();
+        }
+    }
 }
 // End DefaultXmlaServlet.java
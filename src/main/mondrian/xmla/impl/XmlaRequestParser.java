@@ -0,0 +1,341 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.xmla.impl;
+
+import mondrian.xmla.XmlaConstants;
+
+import org.w3c.dom.*;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import javax.xml.parsers.*;
+
+/**
+ * Parses an XML/A SOAP request using SAX, without building a DOM tree for
+ * the body of the request.
+ *
+ * <p>As it reads the body, the parser extracts the method, request type,
+ * properties, restrictions and statement; {@link DefaultXmlaRequest} is
+ * created from them directly. Only the SOAP header, which is small, and
+ * which session handling and callbacks expect to be a DOM element, is
+ * built as a tree.</p>
+ *
+ * <p>The parser checks the structure of the envelope (an Envelope element
+ * in the SOAP namespace, at most one Header, exactly one Body) and throws
+ * {@link SAXException} if it is invalid. The contents of the request are
+ * checked when the {@link DefaultXmlaRequest} is created.</p>
+ *
+ * <p>An XmlaRequestParser may be used from several threads at once.</p>
+ */
+public class XmlaRequestParser implements XmlaConstants {
+    private final SAXParserFactory saxFactory;
+    private final DocumentBuilderFactory domFactory;
+
+    /**
+     * Creates an XmlaRequestParser.
+     */
+    public XmlaRequestParser() {
+        saxFactory = SAXParserFactory.newInstance();
+        saxFactory.setNamespaceAware(true);
+        domFactory = DocumentBuilderFactory.newInstance();
+        domFactory.setNamespaceAware(true);
+    }
+
+    /**
+     * Parses a SOAP request.
+     *
+     * @param inputStream Stream containing a SOAP envelope
+     * @return Parsed request
+     * @throws IOException on I/O error
+     * @throws SAXException if the request is not valid XML, or is not a
+     *     valid SOAP envelope
+     * @throws ParserConfigurationException if a parser cannot be created
+     */
+    public Request parse(InputStream inputStream)
+        throws IOException, SAXException, ParserConfigurationException
+    {
+        final Handler handler =
+            new Handler(domFactory.newDocumentBuilder().newDocument());
+        saxFactory.newSAXParser().parse(inputStream, handler);
+        if (handler.request.body == null) {
+            throw new SAXException(
+                "Invalid SOAP message: "
+                + "Does not have one Body element");
+        }
+        return handler.request;
+    }
+
+    /**
+     * Contents of an XML/A request, as extracted by the parser.
+     *
+     * <p>The counts of elements allow {@link DefaultXmlaRequest} to reject
+     * invalid requests with the same errors as if it had read a DOM
+     * tree.</p>
+     */
+    public static class Request {
+        Element header;
+        Element body;
+        String methodName;
+        int methodCount;
+        final List<String> requestTypes = new ArrayList<String>();
+        int propertiesCount;
+        int propertyListCount;
+        final Map<String, String> properties = new HashMap<String, String>();
+        int restrictionsCount;
+        int restrictionListCount;
+        final Map<String, List<String>> restrictions =
+            new HashMap<String, List<String>>();
+        int commandCount;
+        final List<String> statements = new ArrayList<String>();
+
+        /**
+         * Returns the SOAP Header element, or null if the envelope has no
+         * header.
+         */
+        public Element getHeader() {
+            return header;
+        }
+
+        /**
+         * Returns the SOAP Body element. It has an empty child element for
+         * each XML/A method (Discover or Execute) in the request, so that
+         * callers can check which method was called; the contents of the
+         * methods are not present.
+         */
+        public Element getBody() {
+            return body;
+        }
+    }
+
+    /**
+     * SAX handler that populates a {@link Request}.
+     */
+    private static class Handler extends DefaultHandler {
+        private final Document document;
+        private final Request request = new Request();
+
+        /**
+         * Local names of the elements enclosing the current point, outermost
+         * first. Only maintained within the body.
+         */
+        private final List<String> path = new ArrayList<String>();
+        private int depth;
+
+        /** Stack of header elements being built, or empty. */
+        private final List<Element> headerStack = new ArrayList<Element>();
+
+        /** Whether we are inside the Body element. */
+        private boolean inBody;
+
+        /** Whether we are inside the (first) XML/A method element. */
+        private boolean inMethod;
+
+        /** Text of the element being captured, or null. */
+        private StringBuilder text;
+        private int textDepth;
+
+        Handler(Document document) {
+            this.document = document;
+        }
+
+        public void startElement(
+            String uri, String localName, String qName, Attributes attributes)
+            throws SAXException
+        {
+            ++depth;
+            if (depth == 1) {
+                if (!"Envelope".equals(localName)) {
+                    throw new SAXException(
+                        "Invalid SOAP message: Top element not Envelope");
+                }
+                if (!NS_SOAP_ENV_1_1.equals(uri)) {
+                    throw new SAXException(
+                        "Invalid SOAP message: "
+                        + "Envelope element not in SOAP namespace");
+                }
+                return;
+            }
+            if (!headerStack.isEmpty()) {
+                final Element element = createElement(uri, qName, attributes);
+                headerStack.get(headerStack.size() - 1).appendChild(element);
+                headerStack.add(element);
+                return;
+            }
+            if (depth == 2) {
+                if (NS_SOAP_ENV_1_1.equals(uri)) {
+                    if ("Header".equals(localName)) {
+                        if (request.header != null) {
+                            throw new SAXException(
+                                "Invalid SOAP message: "
+                                + "More than one Header elements");
+                        }
+                        request.header =
+                            createElement(uri, qName, attributes);
+                        headerStack.add(request.header);
+                    } else if ("Body".equals(localName)) {
+                        if (request.body != null) {
+                            throw new SAXException(
+                                "Invalid SOAP message: "
+                                + "Does not have one Body element");
+                        }
+                        request.body = createElement(uri, qName, attributes);
+                        inBody = true;
+                    }
+                }
+                return;
+            }
+            if (!inBody) {
+                return;
+            }
+            path.add(NS_XMLA.equals(uri) ? localName : null);
+            if (depth == 3) {
+                if ("Discover".equals(localName)
+                    || "Execute".equals(localName))
+                {
+                    if (NS_XMLA.equals(uri)) {
+                        request.body.appendChild(
+                            document.createElementNS(uri, qName));
+                        inMethod = ++request.methodCount == 1;
+                        if (inMethod) {
+                            request.methodName = localName;
+                        }
+                    }
+                }
+                return;
+            }
+            if (!inMethod || !NS_XMLA.equals(uri)) {
+                return;
+            }
+            final String parent = path.get(depth - 4);
+            switch (depth) {
+            case 4:
+                if ("RequestType".equals(localName)) {
+                    capture();
+                } else if ("Properties".equals(localName)) {
+                    ++request.propertiesCount;
+                } else if ("Restrictions".equals(localName)) {
+                    ++request.restrictionsCount;
+                } else if ("Command".equals(localName)) {
+                    ++request.commandCount;
+                }
+                break;
+            case 5:
+                if ("Properties".equals(parent)
+                    && "PropertyList".equals(localName))
+                {
+                    ++request.propertyListCount;
+                } else if ("Restrictions".equals(parent)
+                    && "RestrictionList".equals(localName))
+                {
+                    ++request.restrictionListCount;
+                } else if ("Command".equals(parent)
+                    && "Statement".equals(localName))
+                {
+                    capture();
+                }
+                break;
+            case 6:
+                if ("PropertyList".equals(parent)
+                    || "RestrictionList".equals(parent))
+                {
+                    capture();
+                }
+                break;
+            }
+        }
+
+        public void endElement(String uri, String localName, String qName) {
+            if (!headerStack.isEmpty()) {
+                headerStack.remove(headerStack.size() - 1);
+            } else if (inBody) {
+                if (depth == 2) {
+                    inBody = false;
+                } else {
+                    if (text != null && depth == textDepth) {
+                        endCapture(localName);
+                    }
+                    path.remove(path.size() - 1);
+                    if (depth == 3) {
+                        inMethod = false;
+                    }
+                }
+            }
+            --depth;
+        }
+
+        public void characters(char[] ch, int start, int length) {
+            if (!headerStack.isEmpty()) {
+                final Element element = headerStack.get(headerStack.size() - 1);
+                final Node last = element.getLastChild();
+                if (last instanceof Text) {
+                    ((Text) last).appendData(new String(ch, start, length));
+                } else {
+                    element.appendChild(
+                        document.createTextNode(
+                            new String(ch, start, length)));
+                }
+            } else if (text != null && depth == textDepth) {
+                text.append(ch, start, length);
+            }
+        }
+
+        private void capture() {
+            text = new StringBuilder();
+            textDepth = depth;
+        }
+
+        private void endCapture(String localName) {
+            final String value = text.toString();
+            text = null;
+            switch (depth) {
+            case 4:
+                request.requestTypes.add(value);
+                break;
+            case 5:
+                request.statements.add(value);
+                break;
+            case 6:
+                if ("PropertyList".equals(path.get(depth - 4))) {
+                    request.properties.put(localName, value);
+                } else {
+                    List<String> values = request.restrictions.get(localName);
+                    if (values == null) {
+                        values = new ArrayList<String>();
+                        request.restrictions.put(localName, values);
+                    }
+                    values.add(value);
+                }
+                break;
+            }
+        }
+
+        private Element createElement(
+            String uri, String qName, Attributes attributes)
+        {
+            final Element element =
+                document.createElementNS(
+                    uri.length() == 0 ? null : uri, qName);
+            for (int i = 0; i < attributes.getLength(); i++) {
+                final String attributeUri = attributes.getURI(i);
+                element.setAttributeNS(
+                    attributeUri.length() == 0 ? null : attributeUri,
+                    attributes.getQName(i),
+                    attributes.getValue(i));
+            }
+            return element;
+        }
+    }
+}
+
+// End XmlaRequestParser.java
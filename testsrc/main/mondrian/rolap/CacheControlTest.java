@@ -1277,6 +1277,62 @@ public class CacheControlTest extends FoodMartTestCase {
         assertCacheStateEquals(tag, expected, actual);
     }
 
+    /**
+     * Tests {@link CacheControl#refresh}, which patches cached segments with
+     * rows that have been appended to the fact table.
+     *
+     * <p>We cannot append rows to the FoodMart fact table, so we pretend
+     * that the rows of store 7 have been appended a second time. Cells of
+     * an additive measure are patched, so they count those rows twice; cells
+     * of a distinct-count measure are flushed and re-read, so they do
+     * not.</p>
+     */
+    public void testRefresh() {
+        if (MondrianProperties.instance().DisableCaching.get()
+            || MondrianProperties.instance().SegmentCache.get() != null)
+        {
+            return;
+        }
+        final TestContext testContext = getTestContext();
+        flushCache(testContext);
+        final String query =
+            "select {[Measures].[Unit Sales],\n"
+            + "    [Measures].[Customer Count]} on columns,\n"
+            + " {[Store].[USA].[CA].[Los Angeles].[Store 7],\n"
+            + "  [Store].[USA].[WA].[Seattle].[Store 15]} on rows\n"
+            + "from [Sales]";
+        final Result before = testContext.executeQuery(query);
+
+        final CacheControl cacheControl = testContext.getCacheControl();
+        final Cube salesCube =
+            testContext.getConnection().getSchema().lookupCube("Sales", true);
+        try {
+            cacheControl.refresh(
+                cacheControl.createMeasuresRegion(salesCube),
+                testContext.getDialect().quoteIdentifier(
+                    "sales_fact_1997", "store_id") + " = 7",
+                System.currentTimeMillis() + 1);
+
+            final Result after = testContext.executeQuery(query);
+            assertEquals(
+                2 * getDouble(before, 0, 0), getDouble(after, 0, 0), 0.1);
+            assertEquals(
+                getDouble(before, 1, 0), getDouble(after, 1, 0), 0.1);
+            assertEquals(
+                getDouble(before, 0, 1), getDouble(after, 0, 1), 0.1);
+            assertEquals(
+                getDouble(before, 1, 1), getDouble(after, 1, 1), 0.1);
+        } finally {
+            // Restore the true values.
+            flushCache(testContext);
+        }
+    }
+
+    private static double getDouble(Result result, int column, int row) {
+        return ((Number) result.getCell(new int[] {column, row}).getValue())
+            .doubleValue();
+    }
+
     // todo: Test flushing a segment which is unconstrained
 
     // todo: Test flushing a segment where 2 or more axes are reduced. E.g.
@@ -0,0 +1,269 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap;
+
+import mondrian.rolap.RolapResult.*;
+
+import junit.framework.TestCase;
+
+import java.util.*;
+
+/**
+ * Unit test for the implementations of
+ * {@link mondrian.rolap.RolapResult.CellInfoContainer}.
+ */
+public class CellInfoContainerTest extends TestCase {
+    public CellInfoContainerTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Tests that the key makers used before the axes are known give
+     * distinct keys to positions at the largest supported axis sizes.
+     */
+    public void testKeyMakerBoundaries() {
+        final int max2 = (int) CellInfoPool.MAX_AXIS_SIZE_2;
+        final int max3 = (int) CellInfoPool.MAX_AXIS_SIZE_3;
+        final int max4 = (int) CellInfoPool.MAX_AXIS_SIZE_4;
+        assertDistinctKeys(
+            CellInfoPool.createCellKeyMaker(1),
+            new int[] {0},
+            new int[] {1},
+            new int[] {Integer.MAX_VALUE});
+        assertDistinctKeys(
+            CellInfoPool.createCellKeyMaker(2),
+            new int[] {0, 0},
+            new int[] {max2 - 1, 0},
+            new int[] {0, 1},
+            new int[] {max2 - 1, 1},
+            new int[] {0, max2 - 1},
+            new int[] {max2 - 1, max2 - 1});
+        assertDistinctKeys(
+            CellInfoPool.createCellKeyMaker(3),
+            new int[] {0, 0, 0},
+            new int[] {max3 - 1, 0, 0},
+            new int[] {0, 1, 0},
+            new int[] {max3 - 1, max3 - 1, 0},
+            new int[] {0, 0, 1},
+            new int[] {max3 - 1, max3 - 1, max3 - 1});
+        assertDistinctKeys(
+            CellInfoPool.createCellKeyMaker(4),
+            new int[] {0, 0, 0, 0},
+            new int[] {max4 - 1, 0, 0, 0},
+            new int[] {0, 1, 0, 0},
+            new int[] {max4 - 1, max4 - 1, 0, 0},
+            new int[] {0, 0, 1, 0},
+            new int[] {max4 - 1, max4 - 1, max4 - 1, 0},
+            new int[] {0, 0, 0, 1},
+            new int[] {max4 - 1, max4 - 1, max4 - 1, max4 - 1});
+    }
+
+    /**
+     * Tests that the key maker for axes of known size maps each position to
+     * its offset in the product of the axes.
+     */
+    public void testRadix() {
+        final int[] sizes = {3, 1, 5, 7};
+        final CellInfoPool.CellKeyMaker radix = new CellInfoPool.Radix(sizes);
+        final Set<Long> keys = new HashSet<Long>();
+        final int[] pos = new int[sizes.length];
+        for (pos[3] = 0; pos[3] < sizes[3]; pos[3]++) {
+            for (pos[2] = 0; pos[2] < sizes[2]; pos[2]++) {
+                for (pos[0] = 0; pos[0] < sizes[0]; pos[0]++) {
+                    final long key = radix.generate(pos);
+                    assertTrue(key >= 0 && key < 105);
+                    assertTrue(keys.add(key));
+                }
+            }
+        }
+        assertEquals(105, keys.size());
+
+        // Product of sizes is just less than Long.MAX_VALUE.
+        final int[] bigSizes = {Integer.MAX_VALUE, Integer.MAX_VALUE, 2};
+        assertDistinctKeys(
+            new CellInfoPool.Radix(bigSizes),
+            new int[] {0, 0, 0},
+            new int[] {Integer.MAX_VALUE - 1, 0, 0},
+            new int[] {0, 1, 0},
+            new int[] {Integer.MAX_VALUE - 1, Integer.MAX_VALUE - 1, 0},
+            new int[] {0, 0, 1},
+            new int[] {
+                Integer.MAX_VALUE - 1, Integer.MAX_VALUE - 1, 1
+            });
+    }
+
+    /**
+     * Tests that a pool grows as cells are added, keeps its cells when it
+     * is resized, and replaces a cell that is stored twice.
+     */
+    public void testPoolGrowth() {
+        final CellInfoPool pool =
+            new CellInfoPool(CellInfoPool.createCellKeyMaker(2));
+        final int n = 10000;
+        for (int i = 0; i < n; i++) {
+            pool.store(new int[] {i % 100, i / 100}, i, "fs" + i, null);
+        }
+        assertEquals(n, pool.size());
+        for (int i = 0; i < n; i++) {
+            assertCell(pool, new int[] {i % 100, i / 100}, i);
+        }
+        assertNull(pool.lookup(new int[] {100, 0}).value);
+        assertNull(pool.lookup(new int[] {0, 100}).value);
+
+        // Replacing a cell does not change the size.
+        pool.store(new int[] {5, 5}, "x", null, null);
+        assertEquals(n, pool.size());
+        assertEquals("x", pool.lookup(new int[] {5, 5}).value);
+        assertNull(pool.lookup(new int[] {5, 5}).formatString);
+
+        // Shrink to fit a few cells, then grow again.
+        pool.clear();
+        assertEquals(0, pool.size());
+        assertNull(pool.lookup(new int[] {0, 0}).value);
+        for (int i = 0; i < 10; i++) {
+            pool.store(new int[] {i, i}, i, "fs" + i, null);
+        }
+        pool.trimToSize();
+        assertEquals(10, pool.size());
+        for (int i = 0; i < 10; i++) {
+            assertCell(pool, new int[] {i, i}, i);
+        }
+        assertNull(pool.lookup(new int[] {1, 0}).value);
+        for (int i = 10; i < 1000; i++) {
+            pool.store(new int[] {i, i}, i, "fs" + i, null);
+        }
+        assertEquals(1000, pool.size());
+        for (int i = 0; i < 1000; i++) {
+            assertCell(pool, new int[] {i, i}, i);
+        }
+    }
+
+    /**
+     * Tests an array container, and that the cells of pools (as created for
+     * the tasks that evaluate stripes in parallel) can be added to it.
+     */
+    public void testArray() {
+        final int[] sizes = {10, 20};
+        final CellInfoContainer array =
+            RolapResult.createCellInfoContainer(sizes, false, true);
+        assertTrue(array instanceof CellInfoArray);
+        final CellInfoContainer pool1 =
+            RolapResult.createCellInfoContainer(sizes, false, false);
+        final CellInfoContainer pool2 =
+            RolapResult.createCellInfoContainer(sizes, false, false);
+        assertTrue(pool1 instanceof CellInfoPool);
+        for (int j = 0; j < 20; j++) {
+            for (int i = 0; i < 10; i++) {
+                (j < 10 ? pool1 : pool2).store(
+                    new int[] {i, j}, j * 10 + i, "fs" + (j * 10 + i), null);
+            }
+        }
+        array.store(new int[] {0, 0}, "old", null, null);
+        array.store(new int[] {9, 19}, "old", null, null);
+        assertEquals(2, array.size());
+        assertEquals("old", array.lookup(new int[] {9, 19}).value);
+        assertNull(array.lookup(new int[] {8, 19}).value);
+
+        array.addAll(pool1);
+        assertEquals(101, array.size());
+        assertCell(array, new int[] {0, 0}, 0);
+        assertEquals("old", array.lookup(new int[] {9, 19}).value);
+        array.addAll(pool2);
+        assertEquals(200, array.size());
+        for (int j = 0; j < 20; j++) {
+            for (int i = 0; i < 10; i++) {
+                assertCell(array, new int[] {i, j}, j * 10 + i);
+            }
+        }
+
+        array.clear();
+        assertEquals(0, array.size());
+        assertNull(array.lookup(new int[] {0, 0}).value);
+    }
+
+    /**
+     * Tests the choice of container, given the sizes of the axes.
+     */
+    public void testChooseContainer() {
+        // Small and dense: array.
+        assertTrue(
+            RolapResult.createCellInfoContainer(
+                new int[] {100, 100}, false, true)
+            instanceof CellInfoArray);
+        // An empty axis counts as one position.
+        assertTrue(
+            RolapResult.createCellInfoContainer(
+                new int[] {0, 100}, false, true)
+            instanceof CellInfoArray);
+        // Largest array.
+        assertTrue(
+            RolapResult.createCellInfoContainer(
+                new int[] {1024, CellInfoArray.MAX_CELL_COUNT / 1024},
+                false, true)
+            instanceof CellInfoArray);
+        // One cell too many for an array.
+        assertTrue(
+            RolapResult.createCellInfoContainer(
+                new int[] {CellInfoArray.MAX_CELL_COUNT + 1}, false, true)
+            instanceof CellInfoPool);
+        // Not dense, or an axis has high cardinality: pool.
+        assertTrue(
+            RolapResult.createCellInfoContainer(
+                new int[] {100, 100}, false, false)
+            instanceof CellInfoPool);
+        assertTrue(
+            RolapResult.createCellInfoContainer(
+                new int[] {100, 100}, true, true)
+            instanceof CellInfoPool);
+        // Five axes whose product fits into a long: pool.
+        assertTrue(
+            RolapResult.createCellInfoContainer(
+                new int[] {1000, 1000, 1000, 1000, 1000}, false, true)
+            instanceof CellInfoPool);
+        // Product does not fit into a long: map.
+        assertTrue(
+            RolapResult.createCellInfoContainer(
+                new int[] {
+                    Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE
+                },
+                false, true)
+            instanceof CellInfoMap);
+    }
+
+    private static void assertDistinctKeys(
+        CellInfoPool.CellKeyMaker keyMaker,
+        int[]... positions)
+    {
+        final CellInfoPool pool = new CellInfoPool(keyMaker);
+        final Set<Long> keys = new HashSet<Long>();
+        for (int i = 0; i < positions.length; i++) {
+            final long key = keyMaker.generate(positions[i]);
+            assertTrue(Arrays.toString(positions[i]), key >= 0);
+            assertTrue(Arrays.toString(positions[i]), keys.add(key));
+            pool.store(positions[i], i, "fs" + i, null);
+        }
+        assertEquals(positions.length, pool.size());
+        for (int i = 0; i < positions.length; i++) {
+            assertCell(pool, positions[i], i);
+        }
+    }
+
+    private static void assertCell(
+        CellInfoContainer container,
+        int[] pos,
+        int i)
+    {
+        final CellInfo cellInfo = container.lookup(pos);
+        assertEquals(Arrays.toString(pos), i, cellInfo.value);
+        assertEquals("fs" + i, cellInfo.formatString);
+    }
+}
+
+// End CellInfoContainerTest.java
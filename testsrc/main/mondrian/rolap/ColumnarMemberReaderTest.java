@@ -0,0 +1,200 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap;
+
+import mondrian.olap.*;
+import mondrian.test.FoodMartTestCase;
+import mondrian.test.TestContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit test for {@link ColumnarMemberReader}.
+ */
+public class ColumnarMemberReaderTest extends FoodMartTestCase {
+    public ColumnarMemberReaderTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Tests that queries give the same results whether members are held in
+     * columnar form or by the usual member cache.
+     */
+    public void testSameResults() {
+        final String[] queries = {
+            // [Customers].[Name] has a name column; [Time] has no 'all'
+            // member.
+            "select {[Measures].[Unit Sales]} on 0,\n"
+            + "{[Customers].[USA].[CA].[San Francisco].Children,\n"
+            + " [Time].[1997].[Q2].Children} on 1\n"
+            + "from [Sales]",
+            "select {[Measures].[Unit Sales]} on 0,\n"
+            + "{[Store].[USA].[CA].[Beverly Hills].Lag(1)"
+            + " : [Store].[USA].[WA].[Bellingham],\n"
+            + " [Store].[USA].[OR].[Portland].[Store 11].Parent,\n"
+            + " [Product].[Food].[Deli].FirstChild.NextMember} on 1\n"
+            + "from [Sales]",
+            "select {[Measures].[Unit Sales]} on 0,\n"
+            + "Hierarchize({[Gender].[M], [Gender].[All Gender],"
+            + " [Gender].[F]}) on 1\n"
+            + "from [Sales]\n"
+            + "where [Customers].[USA].[WA].[Spokane].[Mary Francis Benigar]",
+        };
+        final List<String> expected = new ArrayList<String>();
+        for (String query : queries) {
+            expected.add(
+                TestContext.toString(getTestContext().executeQuery(query)));
+        }
+
+        propSaver.set(
+            MondrianProperties.instance().ColumnarMemberThreshold, 1);
+        final TestContext testContext =
+            getTestContext().withFreshConnection();
+        assertTrue(
+            memberReader(testContext, "Customers")
+            instanceof ColumnarMemberReader);
+        assertTrue(
+            memberReader(testContext, "Time")
+            instanceof ColumnarMemberReader);
+        for (int i = 0; i < queries.length; i++) {
+            assertEquals(
+                expected.get(i),
+                TestContext.toString(testContext.executeQuery(queries[i])));
+        }
+    }
+
+    /**
+     * Tests that a hierarchy is not held in columnar form if its leaf level
+     * has fewer members than the threshold.
+     */
+    public void testThreshold() {
+        propSaver.set(
+            MondrianProperties.instance().ColumnarMemberThreshold, 1000);
+        final TestContext testContext =
+            getTestContext().withFreshConnection();
+        assertTrue(
+            memberReader(testContext, "Customers")
+            instanceof ColumnarMemberReader);
+        assertFalse(
+            memberReader(testContext, "Gender")
+            instanceof ColumnarMemberReader);
+    }
+
+    /**
+     * Tests navigation and lookup directly against the reader.
+     */
+    public void testReader() {
+        propSaver.set(
+            MondrianProperties.instance().ColumnarMemberThreshold, 1);
+        final MemberReader reader =
+            memberReader(getTestContext().withFreshConnection(), "Store");
+        final RolapMember all = reader.getRootMembers().get(0);
+        assertTrue(all.isAll());
+
+        final RolapMember ca =
+            reader.lookupMember(
+                Util.parseIdentifier("[All Stores].[USA].[CA]"), true);
+        assertEquals("[Store].[USA].[CA]", ca.getUniqueName());
+        assertSame(
+            ca,
+            reader.lookupMember(Util.parseIdentifier("[USA].[CA]"), true));
+        assertNull(
+            reader.lookupMember(Util.parseIdentifier("[USA].[XX]"), false));
+
+        final List<RolapMember> cities = new ArrayList<RolapMember>();
+        reader.getMemberChildren(ca, cities);
+        assertEquals(
+            "[[Store].[USA].[CA].[Alameda], "
+            + "[Store].[USA].[CA].[Beverly Hills], "
+            + "[Store].[USA].[CA].[Los Angeles], "
+            + "[Store].[USA].[CA].[San Diego], "
+            + "[Store].[USA].[CA].[San Francisco]]",
+            cities.toString());
+        for (RolapMember city : cities) {
+            assertSame(ca, city.getParentMember());
+        }
+
+        // Lead crosses from the last city in CA to the first in OR.
+        final RolapMember sanFrancisco = cities.get(cities.size() - 1);
+        assertEquals(
+            "[Store].[USA].[OR].[Portland]",
+            reader.getLeadMember(sanFrancisco, 1).getUniqueName());
+        assertTrue(reader.getLeadMember(sanFrancisco, 1000).isNull());
+        assertTrue(reader.compare(ca, sanFrancisco, false) < 0);
+        assertTrue(reader.compare(sanFrancisco, cities.get(0), false) > 0);
+
+        // Each member is followed by its descendants.
+        final List<RolapMember> members = reader.getMembers();
+        assertEquals(reader.getMemberCount(), members.size());
+        assertSame(all, members.get(0));
+        assertSame(cities.get(0), members.get(members.indexOf(ca) + 1));
+    }
+
+    /**
+     * Tests {@link ColumnarMemberReader#getMemberByKey}. [Store City] does
+     * not have unique members, so its key includes the key of its parent.
+     */
+    public void testMemberByKey() {
+        propSaver.set(
+            MondrianProperties.instance().ColumnarMemberThreshold, 1);
+        final MemberReader reader =
+            memberReader(getTestContext().withFreshConnection(), "Store");
+        assertTrue(reader instanceof ColumnarMemberReader);
+        final Level[] levels = reader.getHierarchy().getLevels();
+        final RolapLevel stateLevel = (RolapLevel) levels[2];
+        final RolapLevel cityLevel = (RolapLevel) levels[3];
+        assertEquals("Store City", cityLevel.getName());
+
+        final RolapMember ca =
+            reader.getMemberByKey(
+                stateLevel, Arrays.<Comparable>asList("CA"));
+        assertEquals("[Store].[USA].[CA]", ca.getUniqueName());
+
+        final RolapMember beverlyHills =
+            reader.getMemberByKey(
+                cityLevel, Arrays.<Comparable>asList("Beverly Hills", "CA"));
+        assertEquals(
+            "[Store].[USA].[CA].[Beverly Hills]",
+            beverlyHills.getUniqueName());
+        assertSame(ca, beverlyHills.getParentMember());
+
+        // Right city, wrong state.
+        assertNull(
+            reader.getMemberByKey(
+                cityLevel, Arrays.<Comparable>asList("Beverly Hills", "WA")));
+        assertNull(
+            reader.getMemberByKey(
+                cityLevel, Arrays.<Comparable>asList("Nowhere", "CA")));
+    }
+
+    /**
+     * Returns the reader of the shared hierarchy underlying a dimension of
+     * the Sales cube. (The cube hierarchy's own reader is a cache that
+     * delegates to it.)
+     */
+    private static MemberReader memberReader(
+        TestContext testContext,
+        String dimensionName)
+    {
+        final Cube cube =
+            testContext.getConnection().getSchema().lookupCube("Sales", true);
+        for (Dimension dimension : cube.getDimensions()) {
+            if (dimension.getName().equals(dimensionName)) {
+                return ((RolapCubeHierarchy) dimension.getHierarchies()[0])
+                    .getRolapHierarchy().getMemberReader();
+            }
+        }
+        throw new AssertionError("dimension not found: " + dimensionName);
+    }
+}
+
+// End ColumnarMemberReaderTest.java
@@ -1035,12 +1035,13 @@ public class NonEmptyTest extends BatchTestCase {
 
     /**
      * Verify that a low value for maxConstraints disables native evaluation,
-     * even when ExpandNonNative is true.
+     * even when ExpandNonNative is true, unless the dialect can generate a
+     * predicate on a large list of values.
      */
     public void testExpandLowMaxConstraints() {
         propSaver.set(MondrianProperties.instance().MaxConstraints, 2);
         propSaver.set(MondrianProperties.instance().ExpandNonNative, true);
-        checkNotNative(
+        checkLowMaxConstraints(
             12,
             "select NonEmptyCrossJoin("
             + "    Filter([Store Type].Children, [Measures].[Unit Sales] > 10000), "
@@ -1189,11 +1190,12 @@ public class NonEmptyTest extends BatchTestCase {
     /**
      * Verify that native MemberLists inputs are subject to SQL constriant
      * limitation. If mondrian.rolap.maxConstraints is set too low, native
-     * evaluations will be turned off.
+     * evaluations will be turned off, unless the dialect can generate a
+     * predicate on a large list of values.
      */
     public void testEnumLowMaxConstraints() {
         propSaver.set(MondrianProperties.instance().MaxConstraints, 2);
-        checkNotNative(
+        checkLowMaxConstraints(
             12,
             "with "
             + "set [All Store Types] as {"
@@ -1240,6 +1242,25 @@ public class NonEmptyTest extends BatchTestCase {
             + "Row #0: 28,275\n");
     }
 
+    /**
+     * Checks a query that has more constraints than
+     * mondrian.rolap.maxConstraints. The dialect lifts that limit if it can
+     * generate a predicate on a large list of values (see
+     * {@link mondrian.spi.Dialect#supportsLargeInList()}), so then the query
+     * is evaluated natively; otherwise it is not.
+     */
+    private void checkLowMaxConstraints(
+        int rowCount,
+        String mdx,
+        String expectedResult)
+    {
+        if (getTestContext().getDialect().supportsLargeInList()) {
+            checkNative(0, rowCount, mdx, expectedResult, true);
+        } else {
+            checkNotNative(rowCount, mdx, expectedResult);
+        }
+    }
+
     /**
      * Verify that the presence of All member in all the inputs disables native
      * evaluation.
@@ -0,0 +1,217 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap;
+
+import mondrian.olap.Member;
+import mondrian.olap.MondrianProperties;
+import mondrian.olap.Query;
+import mondrian.olap.Util;
+import mondrian.test.FoodMartTestCase;
+import mondrian.test.TestContext;
+
+import org.olap4j.*;
+
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Unit test for {@link QueryCache}.
+ */
+public class QueryCacheTest extends FoodMartTestCase {
+    private static final String MDX =
+        "select {[Measures].[Unit Sales]} on 0,\n"
+        + "{[Gender].Children} on 1\n"
+        + "from [Sales]";
+
+    private static final String PARAMETER_MDX =
+        "with member [Measures].[Cutoff] as\n"
+        + "  Parameter(\"Cutoff\", NUMERIC, 100, \"Cutoff\")\n"
+        + "select {[Measures].[Cutoff]} on 0\n"
+        + "from [Sales]";
+
+    public QueryCacheTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Tests that a statement reuses the query of a statement that has
+     * closed, and gives the same result.
+     */
+    public void testReuse() throws SQLException {
+        propSaver.set(MondrianProperties.instance().QueryCacheSize, 10);
+        final OlapConnection connection =
+            getTestContext().getOlap4jConnection();
+        final QueryCache queryCache = queryCache(connection);
+        queryCache.clear();
+
+        final OlapStatement statement1 = connection.createStatement();
+        final String expected =
+            TestContext.toString(statement1.executeOlapQuery(MDX));
+        final Query query1 = query(statement1);
+        assertEquals(0, queryCache.size());
+        statement1.close();
+        assertEquals(1, queryCache.size());
+
+        final OlapStatement statement2 = connection.createStatement();
+        final String actual =
+            TestContext.toString(statement2.executeOlapQuery(MDX));
+        assertSame(query1, query(statement2));
+        assertEquals(0, queryCache.size());
+        assertEquals(expected, actual);
+
+        // Executing a different query returns the first one to the cache.
+        statement2.executeOlapQuery(
+            "select from [Sales] where [Measures].[Unit Sales]");
+        assertEquals(1, queryCache.size());
+        statement2.close();
+        assertEquals(2, queryCache.size());
+    }
+
+    /**
+     * Tests that a prepared statement does not see parameter values set by
+     * a previous statement that used the same query.
+     */
+    public void testParameterReset() throws SQLException {
+        propSaver.set(MondrianProperties.instance().QueryCacheSize, 10);
+        final OlapConnection connection =
+            getTestContext().getOlap4jConnection();
+        final QueryCache queryCache = queryCache(connection);
+        queryCache.clear();
+
+        final PreparedOlapStatement statement1 =
+            connection.prepareOlapStatement(PARAMETER_MDX);
+        statement1.setInt(1, 5);
+        assertEquals(5, cutoff(statement1.executeQuery()));
+        statement1.setInt(1, 7);
+        assertEquals(7, cutoff(statement1.executeQuery()));
+        final Query query1 = query(statement1);
+        statement1.close();
+
+        final PreparedOlapStatement statement2 =
+            connection.prepareOlapStatement(PARAMETER_MDX);
+        assertSame(query1, query(statement2));
+        assertEquals(100, cutoff(statement2.executeQuery()));
+        statement2.close();
+    }
+
+    /**
+     * Tests that a query compiled for one locale is not reused by a
+     * connection with a different locale. The locale is built into the
+     * compiled call to <code>Format</code>.
+     */
+    public void testLocale() throws SQLException {
+        propSaver.set(MondrianProperties.instance().QueryCacheSize, 10);
+        final OlapConnection connection =
+            getTestContext().getOlap4jConnection();
+        final QueryCache queryCache = queryCache(connection);
+        queryCache.clear();
+        final String mdx =
+            "with member [Measures].[Formatted] as\n"
+            + "  Format(1234.5, \"#,##0.00\")\n"
+            + "select {[Measures].[Formatted]} on 0\n"
+            + "from [Sales]";
+
+        connection.setLocale(Locale.US);
+        final OlapStatement statement1 = connection.createStatement();
+        assertEquals(
+            "1,234.50",
+            statement1.executeOlapQuery(mdx).getCell(0).getValue());
+        final Query query1 = query(statement1);
+        statement1.close();
+        assertEquals(1, queryCache.size());
+
+        connection.setLocale(Locale.GERMANY);
+        final OlapStatement statement2 = connection.createStatement();
+        assertEquals(
+            "1.234,50",
+            statement2.executeOlapQuery(mdx).getCell(0).getValue());
+        assertNotSame(query1, query(statement2));
+        statement2.close();
+
+        // Back in the first locale, the first query is reused.
+        connection.setLocale(Locale.US);
+        final OlapStatement statement3 = connection.createStatement();
+        statement3.executeOlapQuery(mdx);
+        assertSame(query1, query(statement3));
+        statement3.close();
+    }
+
+    /**
+     * Tests that a reused query forgets what its previous execution learned
+     * about the measures it uses.
+     */
+    public void testRebindResetsExecutionState() throws SQLException {
+        propSaver.set(MondrianProperties.instance().QueryCacheSize, 10);
+        final OlapConnection connection =
+            getTestContext().getOlap4jConnection();
+        queryCache(connection).clear();
+
+        final OlapStatement statement1 = connection.createStatement();
+        statement1.executeOlapQuery(MDX);
+        final Query query1 = query(statement1);
+        final Set<Member> measures =
+            new HashSet<Member>(query1.getMeasuresMembers());
+        final Member storeSales =
+            query1.getSchemaReader(false).getMemberByUniqueName(
+                Util.parseIdentifier("[Measures].[Store Sales]"), true);
+        assertFalse(measures.contains(storeSales));
+        query1.addMeasuresMembers(storeSales);
+        query1.setVirtualCubeNonNativeCrossJoin();
+        statement1.close();
+
+        final OlapStatement statement2 = connection.createStatement();
+        statement2.executeOlapQuery(MDX);
+        assertSame(query1, query(statement2));
+        assertEquals(
+            measures,
+            new HashSet<Member>(query1.getMeasuresMembers()));
+        assertTrue(query1.nativeCrossJoinVirtualCube());
+        statement2.close();
+    }
+
+    /**
+     * Tests that queries are not cached if the cache size is 0.
+     */
+    public void testDisabled() throws SQLException {
+        propSaver.set(MondrianProperties.instance().QueryCacheSize, 0);
+        final OlapConnection connection =
+            getTestContext().getOlap4jConnection();
+        final QueryCache queryCache = queryCache(connection);
+        queryCache.clear();
+
+        final OlapStatement statement1 = connection.createStatement();
+        statement1.executeOlapQuery(MDX);
+        final Query query1 = query(statement1);
+        statement1.close();
+        assertEquals(0, queryCache.size());
+
+        final OlapStatement statement2 = connection.createStatement();
+        statement2.executeOlapQuery(MDX);
+        assertNotSame(query1, query(statement2));
+        statement2.close();
+    }
+
+    private static QueryCache queryCache(OlapConnection connection)
+        throws SQLException
+    {
+        return connection.unwrap(RolapConnection.class).getSchema()
+            .getQueryCache();
+    }
+
+    private static Query query(OlapStatement statement) throws SQLException {
+        return statement.unwrap(mondrian.server.Statement.class).getQuery();
+    }
+
+    private static int cutoff(CellSet cellSet) {
+        return ((Number) cellSet.getCell(0).getValue()).intValue();
+    }
+}
+
+// End QueryCacheTest.java
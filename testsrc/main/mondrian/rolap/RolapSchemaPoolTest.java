@@ -19,6 +19,8 @@ import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.*;
+import java.util.concurrent.*;
 import javax.sql.DataSource;
 
 /**
@@ -168,6 +170,131 @@ public class RolapSchemaPoolTest extends FoodMartTestCase {
         assertTrue(schema == schemaDS);
     }
 
+    /**
+     * Tests that if several threads ask for the same schema at the same
+     * time, the schema is loaded once and they all get the same instance.
+     */
+    public void testConcurrentSchemaFetch() throws Exception {
+        final RolapSchemaPool pool = RolapSchemaPool.instance();
+        pool.clear();
+        final String catalogUrl = getFoodmartCatalogUrl().toString();
+        final Util.PropertyList connectInfo =
+            Util.parseConnectString(TestContext.getDefaultConnectString());
+        final int threadCount = 4;
+        final ExecutorService executor =
+            Executors.newFixedThreadPool(threadCount);
+        try {
+            final List<Future<RolapSchema>> futures =
+                new ArrayList<Future<RolapSchema>>();
+            for (int i = 0; i < threadCount; i++) {
+                futures.add(
+                    executor.submit(
+                        new Callable<RolapSchema>() {
+                            public RolapSchema call() {
+                                return pool.get(
+                                    catalogUrl,
+                                    "connectionKeyA",
+                                    "joeTheUser",
+                                    "aDataSource",
+                                    connectInfo);
+                            }
+                        }));
+            }
+            final RolapSchema schema = futures.get(0).get();
+            for (Future<RolapSchema> future : futures) {
+                assertSame(schema, future.get());
+            }
+            assertTrue(pool.contains(schema));
+            assertEquals(1, pool.getRolapSchemas().size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Tests that while one thread is reading a schema, which takes a long
+     * time, another thread can get a different schema.
+     */
+    public void testFetchDoesNotBlock() throws Exception {
+        final RolapSchemaPool pool = RolapSchemaPool.instance();
+        pool.clear();
+        final String catalogUrl = getFoodmartCatalogUrl().toString();
+        final Util.PropertyList connectInfo =
+            Util.parseConnectString(TestContext.getDefaultConnectString());
+        final Util.PropertyList connectInfoSlow = connectInfo.clone();
+        connectInfoSlow.put(
+            RolapConnectionProperties.DynamicSchemaProcessor.name(),
+            SlowDynamicSchemaProcessor.class.getName());
+        SlowDynamicSchemaProcessor.latch = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<RolapSchema> slowFuture =
+                executor.submit(
+                    new Callable<RolapSchema>() {
+                        public RolapSchema call() {
+                            return pool.get(
+                                catalogUrl,
+                                "connectionKeySlow",
+                                "joeTheUser",
+                                "aDataSource",
+                                connectInfoSlow);
+                        }
+                    });
+            final Future<RolapSchema> future =
+                executor.submit(
+                    new Callable<RolapSchema>() {
+                        public RolapSchema call() {
+                            return pool.get(
+                                catalogUrl,
+                                "connectionKeyA",
+                                "joeTheUser",
+                                "aDataSource",
+                                connectInfo);
+                        }
+                    });
+            final RolapSchema schema = future.get(60, TimeUnit.SECONDS);
+            assertTrue(pool.contains(schema));
+            assertFalse(slowFuture.isDone());
+
+            SlowDynamicSchemaProcessor.latch.countDown();
+            final RolapSchema slowSchema =
+                slowFuture.get(60, TimeUnit.SECONDS);
+            assertNotSame(schema, slowSchema);
+            assertTrue(pool.contains(slowSchema));
+        } finally {
+            SlowDynamicSchemaProcessor.latch.countDown();
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Tests that loading a catalog that has been loaded before does not
+     * parse it again, but that each load has its own schema definition.
+     */
+    public void testParsedCatalogIsReused() {
+        final RolapSchemaPool pool = RolapSchemaPool.instance();
+        pool.clear();
+        final String catalogUrl = getFoodmartCatalogUrl().toString();
+        final Util.PropertyList connectInfo =
+            Util.parseConnectString(TestContext.getDefaultConnectString());
+        connectInfo.put(
+            RolapConnectionProperties.UseSchemaPool.name(), "false");
+        final RolapSchema schema =
+            pool.get(
+                catalogUrl, "connectionKeyA", "joeTheUser", "aDataSource",
+                connectInfo);
+        final long hitCount = RolapSchema.getParsedCatalogStatistics().hitCount;
+        final RolapSchema schema2 =
+            pool.get(
+                catalogUrl, "connectionKeyA", "joeTheUser", "aDataSource",
+                connectInfo);
+        assertNotSame(schema, schema2);
+        assertNotSame(schema.getXMLSchema(), schema2.getXMLSchema());
+        assertEquals(schema.getChecksum(), schema2.getChecksum());
+        assertEquals(
+            hitCount + 1,
+            RolapSchema.getParsedCatalogStatistics().hitCount);
+    }
 
     protected URL getFoodmartCatalogUrl() {
         // Works if we are running in root directory of source tree
@@ -192,5 +319,21 @@ public class RolapSchemaPoolTest extends FoodMartTestCase {
             return Util.readVirtualFileAsString(schemaUrl);
         }
     }
+
+    /**
+     * Schema processor that waits until a test releases a latch.
+     */
+    public static class SlowDynamicSchemaProcessor
+        implements DynamicSchemaProcessor
+    {
+        static CountDownLatch latch;
+
+        public String processSchema(String schemaUrl, PropertyList connectInfo)
+            throws Exception
+        {
+            latch.await();
+            return Util.readVirtualFileAsString(schemaUrl);
+        }
+    }
 }
 // End RolapSchemaPoolTest.java
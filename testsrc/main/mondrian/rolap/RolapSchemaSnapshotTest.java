@@ -0,0 +1,106 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap;
+
+import mondrian.test.FoodMartTestCase;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Unit test for {@link RolapSchemaSnapshot}.
+ */
+public class RolapSchemaSnapshotTest extends FoodMartTestCase {
+    private File directory;
+
+    public RolapSchemaSnapshotTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = File.createTempFile("snapshots", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdir());
+    }
+
+    protected void tearDown() throws Exception {
+        // So that no schema loaded by this test writes snapshots later.
+        getConnection().getCacheControl(null).flushSchemaCache();
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+        super.tearDown();
+    }
+
+    /**
+     * Tests that a statistic computed by one instance of a schema is saved,
+     * and that the next instance of the schema reads it from the snapshot
+     * rather than computing it again.
+     */
+    public void testStatistics() {
+        propSaver.set(
+            propSaver.properties.SchemaSnapshotDir, directory.getPath());
+        final RolapStar star = loadSalesStar();
+        final RolapStar.Table factTable = star.getFactTable();
+        final int cardinality =
+            star.getStatisticsCache().getRelationCardinality(
+                factTable.getRelation(), factTable.getAlias(), -1);
+        assertTrue(cardinality > 0);
+        final File[] files = directory.listFiles();
+        assertEquals(1, files.length);
+        assertTrue(files[0].getName().startsWith("schema-"));
+
+        final RolapStar star2 = loadSalesStar();
+        assertNotSame(star, star2);
+        final List<String> sqlList =
+            Collections.synchronizedList(new ArrayList<String>());
+        RolapUtil.setHook(
+            new RolapUtil.ExecuteQueryHook() {
+                public void onExecuteQuery(String sql) {
+                    sqlList.add(sql);
+                }
+            });
+        final int cardinality2;
+        try {
+            cardinality2 =
+                star2.getStatisticsCache().getRelationCardinality(
+                    factTable.getRelation(), factTable.getAlias(), -1);
+        } finally {
+            RolapUtil.setHook(null);
+        }
+        assertEquals(cardinality, cardinality2);
+        assertEquals(Collections.<String>emptyList(), sqlList);
+    }
+
+    /**
+     * Loads a new instance of the FoodMart schema, and returns the star of
+     * the Sales cube.
+     */
+    private RolapStar loadSalesStar() {
+        getConnection().getCacheControl(null).flushSchemaCache();
+        final RolapSchema schema =
+            (RolapSchema) getTestContext().withFreshConnection()
+                .getConnection().getSchema();
+        for (RolapStar star : schema.getStars()) {
+            if (star.getFactTable().getTableName().equals("sales_fact_1997")) {
+                return star;
+            }
+        }
+        fail("star not found");
+        return null;
+    }
+}
+
+// End RolapSchemaSnapshotTest.java
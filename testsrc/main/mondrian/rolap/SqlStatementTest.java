@@ -0,0 +1,201 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap;
+
+import mondrian.olap.MondrianProperties;
+import mondrian.server.Execution;
+import mondrian.server.Locus;
+import mondrian.spi.Dialect;
+import mondrian.spi.impl.JdbcDialectImpl;
+import mondrian.test.FoodMartTestCase;
+
+import java.lang.reflect.*;
+import java.sql.*;
+import java.util.*;
+import javax.sql.DataSource;
+
+/**
+ * Test for {@link SqlStatement}.
+ */
+public class SqlStatementTest extends FoodMartTestCase {
+    public SqlStatementTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Tests that if the dialect needs a transaction to apply its fetch size,
+     * the statement turns off auto-commit while it reads, and turns it back
+     * on when it is closed.
+     */
+    public void testFetchSizeTurnsOffAutoCommit() throws SQLException {
+        propSaver.set(MondrianProperties.instance().FetchSize, -1);
+        final List<Boolean> autoCommits = new ArrayList<Boolean>();
+        final SqlStatement stmt = execute(autoCommits, true);
+        try {
+            assertEquals(Collections.singletonList(false), autoCommits);
+            assertEquals(25, countRows(stmt));
+        } finally {
+            stmt.close();
+        }
+        assertEquals(Arrays.asList(false, true), autoCommits);
+    }
+
+    /**
+     * Tests that the statement leaves auto-commit alone if the connection
+     * is already in a transaction.
+     */
+    public void testFetchSizeKeepsTransaction() throws SQLException {
+        propSaver.set(MondrianProperties.instance().FetchSize, -1);
+        final List<Boolean> autoCommits = new ArrayList<Boolean>();
+        final SqlStatement stmt = execute(autoCommits, false);
+        try {
+            assertEquals(25, countRows(stmt));
+        } finally {
+            stmt.close();
+        }
+        assertEquals(Collections.<Boolean>emptyList(), autoCommits);
+    }
+
+    /**
+     * Tests that by default the statement uses the driver's fetch size, and
+     * so does not need a transaction.
+     */
+    public void testDefaultFetchSize() throws SQLException {
+        final List<Boolean> autoCommits = new ArrayList<Boolean>();
+        final SqlStatement stmt = execute(autoCommits, true);
+        try {
+            assertEquals(25, countRows(stmt));
+        } finally {
+            stmt.close();
+        }
+        assertEquals(Collections.<Boolean>emptyList(), autoCommits);
+    }
+
+    /**
+     * Executes a query on the "store" table, via a data source whose
+     * connections record calls to {@link Connection#setAutoCommit}, and
+     * with a dialect that needs a transaction to apply its fetch size.
+     *
+     * @param autoCommits List to which to append the values passed to
+     *   {@link Connection#setAutoCommit}
+     * @param autoCommit Initial auto-commit mode of the connection
+     * @return Statement
+     */
+    private SqlStatement execute(
+        final List<Boolean> autoCommits,
+        final boolean autoCommit)
+        throws SQLException
+    {
+        final RolapConnection connection = (RolapConnection) getConnection();
+        final DataSource dataSource = connection.getDataSource();
+        final Dialect dialect;
+        final Connection jdbcConnection = dataSource.getConnection();
+        try {
+            dialect =
+                new JdbcDialectImpl(jdbcConnection) {
+                    public int getFetchSize() {
+                        return 10;
+                    }
+
+                    public boolean requiresTransactionForFetchSize() {
+                        return true;
+                    }
+                };
+        } finally {
+            jdbcConnection.close();
+        }
+        final DataSource recordingDataSource =
+            (DataSource) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class[] {DataSource.class},
+                new InvocationHandler() {
+                    public Object invoke(
+                        Object proxy, Method method, Object[] args)
+                        throws Throwable
+                    {
+                        if (method.getName().equals("getConnection")) {
+                            return recordingConnection(
+                                (Connection) SqlStatementTest.invoke(
+                                    dataSource, method, args),
+                                autoCommits,
+                                autoCommit);
+                        }
+                        return SqlStatementTest.invoke(
+                            dataSource, method, args);
+                    }
+                });
+        final String sql =
+            "select " + dialect.quoteIdentifier("store_id")
+            + " from " + dialect.quoteIdentifier("store");
+        final SqlStatement stmt =
+            new SqlStatement(
+                recordingDataSource, dialect, sql, null, 0, 0,
+                new Locus(
+                    new Execution(connection.getInternalStatement(), 0),
+                    getName(),
+                    null),
+                -1, -1);
+        stmt.execute();
+        return stmt;
+    }
+
+    /**
+     * Creates a connection that records calls to
+     * {@link Connection#setAutoCommit}, rather than passing them to the
+     * underlying connection, and otherwise delegates.
+     */
+    private static Connection recordingConnection(
+        final Connection connection,
+        final List<Boolean> autoCommits,
+        final boolean autoCommit)
+    {
+        final boolean[] autoCommitHolder = {autoCommit};
+        return (Connection) Proxy.newProxyInstance(
+            SqlStatementTest.class.getClassLoader(),
+            new Class[] {Connection.class},
+            new InvocationHandler() {
+                public Object invoke(
+                    Object proxy, Method method, Object[] args)
+                    throws Throwable
+                {
+                    if (method.getName().equals("getAutoCommit")) {
+                        return autoCommitHolder[0];
+                    }
+                    if (method.getName().equals("setAutoCommit")) {
+                        autoCommitHolder[0] = (Boolean) args[0];
+                        autoCommits.add((Boolean) args[0]);
+                        return null;
+                    }
+                    return SqlStatementTest.invoke(connection, method, args);
+                }
+            });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args)
+        throws Throwable
+    {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static int countRows(SqlStatement stmt) throws SQLException {
+        final ResultSet resultSet = stmt.getResultSet();
+        int rowCount = 0;
+        while (resultSet.next()) {
+            ++rowCount;
+        }
+        return rowCount;
+    }
+}
+
+// End SqlStatementTest.java
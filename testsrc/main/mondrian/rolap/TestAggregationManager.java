@@ -2502,6 +2502,49 @@ public class TestAggregationManager extends BatchTestCase {
             },
             false, false, true);
     }
+
+    /**
+     * Tests that a constraint with more values than
+     * {@link MondrianProperties#MaxConstraints} is dropped from the SQL that
+     * loads a segment, unless the dialect can generate a predicate on a large
+     * list of values, in which case the limit is lifted.
+     */
+    public void testMaxConstraintsLargeInList() {
+        propSaver.set(MondrianProperties.instance().MaxConstraints, 2);
+        propSaver.set(MondrianProperties.instance().LargeInListThreshold, 2);
+        TestContext.instance().flushSchemaCache();
+        final List<String> sqlList =
+            Collections.synchronizedList(new ArrayList<String>());
+        RolapUtil.setHook(
+            new RolapUtil.ExecuteQueryHook() {
+                public void onExecuteQuery(String sql) {
+                    sqlList.add(sql);
+                }
+            });
+        try {
+            executeQuery(
+                "select {[Store].[USA].[CA].[San Francisco],\n"
+                + "  [Store].[USA].[OR].[Portland],\n"
+                + "  [Store].[USA].[WA].[Seattle]} on 0\n"
+                + "from [Sales]");
+        } finally {
+            RolapUtil.setHook(null);
+        }
+        final boolean largeInList =
+            getTestContext().getDialect().supportsLargeInList();
+        int segmentSqlCount = 0;
+        synchronized (sqlList) {
+            for (String sql : sqlList) {
+                if (!sql.contains("sum(")) {
+                    // not a segment load
+                    continue;
+                }
+                ++segmentSqlCount;
+                assertEquals(sql, largeInList, sql.contains("'Portland'"));
+            }
+        }
+        assertTrue(sqlList.toString(), segmentSqlCount > 0);
+    }
 }
 
 // End TestAggregationManager.java
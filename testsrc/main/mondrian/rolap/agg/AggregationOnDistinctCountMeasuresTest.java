@@ -1492,6 +1492,53 @@ public class AggregationOnDistinctCountMeasuresTest extends BatchTestCase {
             optimized.toString());
     }
 
+    /**
+     * Tests the approx-distinct-count aggregator. Estimates should be close
+     * to the exact distinct count, whether cells are loaded via SQL, rolled
+     * up from cached cells, or aggregated over a set of members.
+     */
+    public void testApproxDistinctCount() {
+        final TestContext testContext =
+            TestContext.instance().createSubstitutingCube(
+                "Sales",
+                null,
+                "<Measure name=\"Approx Customer Count\" "
+                + "column=\"customer_id\" "
+                + "aggregator=\"approx-distinct-count\"/>",
+                "<CalculatedMember name=\"X\" dimension=\"Store\" "
+                + "formula=\"Aggregate({[Store].[USA].[CA], "
+                + "[Store].[USA].[OR]})\"/>",
+                null);
+        // The first query loads states; the second rolls them up to
+        // [Store].[USA], and aggregates two of them.
+        final String measures =
+            "select {[Measures].[Customer Count],\n"
+            + " [Measures].[Approx Customer Count]} on 0,\n";
+        final String[] queries = {
+            measures + "[Store].[Store State].Members on 1 from [Sales]",
+            measures + "{[Store].[USA], [Store].[X]} on 1 from [Sales]",
+        };
+        for (String query : queries) {
+            final Result result = testContext.executeQuery(query);
+            final int rowCount = result.getAxes()[1].getPositions().size();
+            for (int i = 0; i < rowCount; i++) {
+                final Object exact =
+                    result.getCell(new int[] {0, i}).getValue();
+                final Object approx =
+                    result.getCell(new int[] {1, i}).getValue();
+                if (exact == null) {
+                    assertNull(approx);
+                    continue;
+                }
+                final double expected = ((Number) exact).doubleValue();
+                final double actual = ((Number) approx).doubleValue();
+                assertTrue(
+                    "exact " + expected + ", approx " + actual,
+                    Math.abs(actual - expected) <= expected * 0.1d + 1d);
+            }
+        }
+    }
+
     private boolean tuppleListContains(
         TupleList tuples,
         Member memberByUniqueName)
@@ -0,0 +1,142 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap.agg;
+
+import mondrian.rolap.BitKey;
+import mondrian.spi.SegmentColumn;
+import mondrian.spi.SegmentHeader;
+import mondrian.util.ArraySortedSet;
+import mondrian.util.ByteString;
+
+import junit.framework.TestCase;
+
+import java.util.*;
+
+/**
+ * Unit test for {@link RollupPlanner}.
+ */
+public class RollupPlannerTest extends TestCase {
+    public RollupPlannerTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Tests the number of cells implied by a segment header.
+     */
+    public void testCellCount() {
+        final SegmentHeader header =
+            header(
+                column("year", 5, 1997, 1998),
+                column("state", 50),
+                column("gender", 2, "F"));
+        assertEquals(2d * 50d * 1d, RollupPlanner.cellCount(header));
+        assertEquals(
+            2d * 1d,
+            RollupPlanner.targetCellCount(
+                header,
+                new HashSet<String>(Arrays.asList("year", "gender"))));
+        assertEquals(
+            1d,
+            RollupPlanner.targetCellCount(
+                header, Collections.<String>emptySet()));
+    }
+
+    /**
+     * Tests that candidates are sorted by cost, and that a cheap rollup is
+     * chosen without looking for an aggregate table.
+     */
+    public void testCheapestCandidateFirst() {
+        final Set<String> keepColumns = Collections.singleton("year");
+        final List<SegmentHeader> big =
+            Collections.singletonList(
+                header(
+                    column("year", 5, 1997, 1998),
+                    column("customer", 10000)));
+        final List<SegmentHeader> small =
+            Arrays.asList(
+                header(
+                    column("year", 5, 1997),
+                    column("state", 50)),
+                header(
+                    column("year", 5, 1998),
+                    column("state", 50)));
+        final List<List<SegmentHeader>> candidates =
+            new ArrayList<List<SegmentHeader>>();
+        candidates.add(big);
+        candidates.add(small);
+        assertTrue(
+            RollupPlanner.rollupCost(small, keepColumns)
+            < RollupPlanner.rollupCost(big, keepColumns));
+
+        final RollupPlanner.Plan plan =
+            RollupPlanner.plan(
+                null, null, null, false, keepColumns, candidates);
+        assertTrue(plan.isRollup());
+        assertEquals(Arrays.asList(small, big), plan.candidates);
+        assertEquals(
+            RollupPlanner.rollupCost(small, keepColumns), plan.rollupCost);
+        assertEquals(-1d, plan.sqlCost);
+        assertNull(plan.aggTableName);
+    }
+
+    /**
+     * Tests that SQL against a small table is cheaper than rolling up a
+     * large segment, but not a small one.
+     */
+    public void testSqlCost() {
+        final Set<String> keepColumns = Collections.singleton("year");
+        final List<SegmentHeader> large =
+            Collections.singletonList(
+                header(
+                    column("year", 5, 1997, 1998),
+                    column("customer", 10000),
+                    column("product", 1500)));
+        final double rollupCost =
+            RollupPlanner.rollupCost(large, keepColumns);
+        assertTrue(RollupPlanner.sqlCost(10000, 2) < rollupCost);
+
+        final List<SegmentHeader> tiny =
+            Collections.singletonList(
+                header(
+                    column("year", 5, 1997, 1998),
+                    column("state", 50)));
+        assertTrue(
+            RollupPlanner.sqlCost(10000, 2)
+            > RollupPlanner.rollupCost(tiny, keepColumns));
+    }
+
+    private static SegmentColumn column(
+        String expression,
+        int valueCount,
+        Comparable... values)
+    {
+        return new SegmentColumn(
+            expression,
+            valueCount,
+            values.length == 0
+                ? null
+                : new ArraySortedSet(values));
+    }
+
+    private static SegmentHeader header(SegmentColumn... columns) {
+        return new SegmentHeader(
+            "FoodMart",
+            new ByteString(new byte[] {1, 2, 3}),
+            "Sales",
+            "Unit Sales",
+            Arrays.asList(columns),
+            Collections.<String>emptyList(),
+            "sales_fact_1997",
+            BitKey.Factory.makeBitKey(columns.length),
+            Collections.<SegmentColumn>emptyList());
+    }
+}
+
+// End RollupPlannerTest.java
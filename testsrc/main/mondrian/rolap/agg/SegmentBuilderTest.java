@@ -0,0 +1,208 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap.agg;
+
+import mondrian.olap.Aggregator;
+import mondrian.rolap.*;
+import mondrian.spi.*;
+import mondrian.spi.Dialect.Datatype;
+import mondrian.util.ByteString;
+import mondrian.util.Pair;
+
+import junit.framework.TestCase;
+
+import java.util.*;
+
+/**
+ * Unit test for {@link SegmentBuilder#rollup}.
+ *
+ * <p>Segments in these tests have two columns, "a" and "b"; each test rolls
+ * up to column "a".</p>
+ */
+public class SegmentBuilderTest extends TestCase {
+    public SegmentBuilderTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Tests rolling up a dense segment of doubles, one of whose cells is
+     * null.
+     */
+    public void testRollupDenseDouble() {
+        final BitSet nulls = new BitSet();
+        nulls.set(3);
+        final SegmentBody body =
+            new DenseDoubleSegmentBody(
+                nulls,
+                new double[] {1, 2, 3, 0, 5, 6},
+                axes(values(1, 2, 3), false, values("x", "y"), false));
+        final SegmentBody sum =
+            rollup(RolapAggregator.Sum, Datatype.Numeric, body);
+        assertTrue(sum instanceof DenseDoubleSegmentBody);
+        assertEquals(3d, valueAt(sum, 0));
+        assertEquals(3d, valueAt(sum, 1));
+        assertEquals(11d, valueAt(sum, 2));
+
+        final SegmentBody min =
+            rollup(RolapAggregator.Min, Datatype.Numeric, body);
+        assertEquals(1d, valueAt(min, 0));
+        assertEquals(3d, valueAt(min, 1));
+        assertEquals(5d, valueAt(min, 2));
+
+        final SegmentBody max =
+            rollup(RolapAggregator.Max, Datatype.Numeric, body);
+        assertEquals(2d, valueAt(max, 0));
+        assertEquals(3d, valueAt(max, 1));
+        assertEquals(6d, valueAt(max, 2));
+    }
+
+    /**
+     * Tests rolling up a dense segment of ints where both axes have a null
+     * value, and a row of the target segment is entirely null.
+     */
+    public void testRollupDenseIntWithNullAxis() {
+        // Axis "a" is {1, 2, null}, axis "b" is {"x", null}.
+        final BitSet nulls = new BitSet();
+        nulls.set(2);
+        nulls.set(3);
+        final SegmentBody body =
+            new DenseIntSegmentBody(
+                nulls,
+                new int[] {1, 2, 0, 0, 5, 6},
+                axes(values(1, 2), true, values("x"), true));
+        final SegmentBody sum =
+            rollup(RolapAggregator.Sum, Datatype.Integer, body);
+        assertTrue(sum instanceof DenseIntSegmentBody);
+        assertTrue(sum.getNullAxisFlags()[0]);
+        assertEquals(3, valueAt(sum, 0));
+        assertNull(valueAt(sum, 1));
+        assertEquals(11, valueAt(sum, 2));
+    }
+
+    /**
+     * Tests rolling up a dense segment and a sparse segment together.
+     */
+    public void testRollupDenseAndSparse() {
+        final SegmentBody dense =
+            new DenseDoubleSegmentBody(
+                new BitSet(),
+                new double[] {1, 2, 3, 4},
+                axes(values(1, 2), false, values("x", "y"), false));
+        final Map<CellKey, Object> data = new HashMap<CellKey, Object>();
+        data.put(CellKey.Generator.newCellKey(new int[] {0, 1}), 7d);
+        data.put(CellKey.Generator.newCellKey(new int[] {1, 0}), 8d);
+        data.put(CellKey.Generator.newCellKey(new int[] {1, 1}), 9d);
+        final SegmentBody sparse =
+            new SparseSegmentBody(
+                data,
+                axes(values(3, 4), false, values("x", "y"), false));
+        final SegmentBody sum =
+            rollup(RolapAggregator.Sum, Datatype.Numeric, dense, sparse);
+        assertEquals(3d, valueAt(sum, 0));
+        assertEquals(7d, valueAt(sum, 1));
+        assertEquals(7d, valueAt(sum, 2));
+        assertEquals(17d, valueAt(sum, 3));
+    }
+
+    /**
+     * Tests that a segment of objects, which the primitive kernel does not
+     * handle, gives the same result via the generic algorithm.
+     */
+    public void testRollupDenseObject() {
+        final SegmentBody body =
+            new DenseObjectSegmentBody(
+                new Object[] {1d, 2d, 3d, 4d},
+                axes(values(1, 2), false, values("x", "y"), false));
+        final SegmentBody sum =
+            rollup(RolapAggregator.Sum, Datatype.Numeric, body);
+        assertEquals(3d, valueAt(sum, 0));
+        assertEquals(7d, valueAt(sum, 1));
+    }
+
+    private static SortedSet<Comparable> values(Comparable... values) {
+        return new TreeSet<Comparable>(Arrays.asList(values));
+    }
+
+    private static List<Pair<SortedSet<Comparable>, Boolean>> axes(
+        SortedSet<Comparable> a,
+        boolean aHasNull,
+        SortedSet<Comparable> b,
+        boolean bHasNull)
+    {
+        final List<Pair<SortedSet<Comparable>, Boolean>> list =
+            new ArrayList<Pair<SortedSet<Comparable>, Boolean>>();
+        list.add(Pair.of(a, aHasNull));
+        list.add(Pair.of(b, bHasNull));
+        return list;
+    }
+
+    /**
+     * Rolls up segments to column "a", and returns the body of the result.
+     */
+    private static SegmentBody rollup(
+        Aggregator aggregator,
+        Datatype datatype,
+        SegmentBody... bodies)
+    {
+        final BitKey bitKey = BitKey.Factory.makeBitKey(2);
+        bitKey.set(0);
+        bitKey.set(1);
+        final Map<SegmentHeader, SegmentBody> map =
+            new LinkedHashMap<SegmentHeader, SegmentBody>();
+        for (int i = 0; i < bodies.length; i++) {
+            // Headers differ only in checksum, so that they are distinct
+            // keys.
+            map.put(
+                new SegmentHeader(
+                    "FoodMart",
+                    new ByteString(new byte[] {1, 2, (byte) i}),
+                    "Sales",
+                    "Unit Sales",
+                    Arrays.asList(
+                        new SegmentColumn("a", 10, null),
+                        new SegmentColumn("b", 10, null)),
+                    Collections.<String>emptyList(),
+                    "sales_fact_1997",
+                    bitKey,
+                    Collections.<SegmentColumn>emptyList()),
+                bodies[i]);
+        }
+        final BitKey targetBitKey = BitKey.Factory.makeBitKey(2);
+        targetBitKey.set(0);
+        return SegmentBuilder.rollup(
+            map,
+            Collections.singleton("a"),
+            targetBitKey,
+            aggregator,
+            datatype).right;
+    }
+
+    /**
+     * Returns the value of a cell of a one-dimensional segment body, or null.
+     */
+    private static Object valueAt(SegmentBody body, int ordinal) {
+        if (body instanceof SparseSegmentBody) {
+            return body.getValueMap().get(
+                CellKey.Generator.newCellKey(new int[] {ordinal}));
+        }
+        final Object values = body.getValueArray();
+        if (values instanceof Object[]) {
+            return ((Object[]) values)[ordinal];
+        }
+        if (body.getIndicators().get(ordinal)) {
+            return null;
+        }
+        return values instanceof double[]
+            ? (Object) ((double[]) values)[ordinal]
+            : (Object) ((int[]) values)[ordinal];
+    }
+}
+
+// End SegmentBuilderTest.java
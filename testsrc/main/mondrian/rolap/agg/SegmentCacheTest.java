@@ -14,11 +14,17 @@ import mondrian.olap.Cube;
 import mondrian.olap.MondrianProperties;
 import mondrian.olap.MondrianServer;
 import mondrian.rolap.agg.SegmentCacheManager.CompositeSegmentCache;
+import mondrian.rolap.cache.MemorySegmentCache;
+import mondrian.rolap.cache.OffHeapSegmentCache;
+import mondrian.rolap.cache.OffHeapSegmentCacheTest;
+import mondrian.rolap.cache.OffHeapSegmentCacheTest.TestSegmentBody;
 import mondrian.spi.SegmentCache;
 import mondrian.spi.SegmentHeader;
 import mondrian.test.BasicQueryTest;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -65,7 +71,7 @@ public class SegmentCacheTest extends BasicQueryTest {
     public void testSegmentCacheEvents() throws Exception {
         SegmentCache mockCache = new MockSegmentCache();
         SegmentCacheWorker testWorker =
-            new SegmentCacheWorker(mockCache, null);
+            new SegmentCacheWorker(mockCache, (Thread) null);
 
         // Flush the cache before we start. Wait a second for the cache
         // flush to propagate.
@@ -149,6 +155,58 @@ public class SegmentCacheTest extends BasicQueryTest {
         }
         return null;
     }
+
+    /**
+     * Tests that when a cache evicts a segment, the event that removes the
+     * segment's header from the index is passed on only if no other cache
+     * holds the segment.
+     */
+    public void testEvictionListener() {
+        final OffHeapSegmentCache sizer =
+            new OffHeapSegmentCache(Integer.MAX_VALUE);
+        sizer.put(
+            OffHeapSegmentCacheTest.header("x"), new TestSegmentBody(100));
+        final OffHeapSegmentCache offHeapCache =
+            new OffHeapSegmentCache(sizer.getByteCount() * 3 / 2);
+        final MemorySegmentCache memoryCache = new MemorySegmentCache();
+        final List<SegmentCacheWorker> workers =
+            Arrays.asList(
+                new SegmentCacheWorker(offHeapCache, (Thread) null),
+                new SegmentCacheWorker(memoryCache, (Thread) null));
+        final List<SegmentHeader> deletedHeaders =
+            new ArrayList<SegmentHeader>();
+        offHeapCache.addListener(
+            new SegmentCacheManager.EvictionListener(
+                workers,
+                new SegmentCache.SegmentCacheListener() {
+                    public void handle(SegmentCacheEvent e) {
+                        if (e.getEventType()
+                            == SegmentCacheEvent.EventType.ENTRY_DELETED)
+                        {
+                            deletedHeaders.add(e.getSource());
+                        }
+                    }
+                }));
+
+        // Segment 'a' is in both caches. Evicting it from the off-heap cache
+        // leaves it in the memory cache, so its header stays in the index.
+        final SegmentHeader a = OffHeapSegmentCacheTest.header("a");
+        final SegmentHeader b = OffHeapSegmentCacheTest.header("b");
+        final SegmentHeader c = OffHeapSegmentCacheTest.header("c");
+        final TestSegmentBody body = new TestSegmentBody(100);
+        memoryCache.put(a, body);
+        offHeapCache.put(a, body);
+        offHeapCache.put(b, new TestSegmentBody(100));
+        assertFalse(offHeapCache.contains(a));
+        assertTrue(memoryCache.contains(a));
+        assertEquals(0, deletedHeaders.size());
+
+        // Segment 'b' is only in the off-heap cache. Evicting it removes it
+        // from the index.
+        offHeapCache.put(c, new TestSegmentBody(100));
+        assertFalse(offHeapCache.contains(b));
+        assertEquals(Collections.singletonList(b), deletedHeaders);
+    }
 }
 
 // End SegmentCacheTest.java
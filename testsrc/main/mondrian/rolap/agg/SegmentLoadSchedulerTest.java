@@ -0,0 +1,211 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap.agg;
+
+import junit.framework.TestCase;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Unit test for {@link SegmentLoadScheduler}.
+ */
+public class SegmentLoadSchedulerTest extends TestCase {
+    private ExecutorService executor;
+
+    public SegmentLoadSchedulerTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    protected void tearDown() throws Exception {
+        executor.shutdownNow();
+        executor = null;
+        super.tearDown();
+    }
+
+    /**
+     * Tests that no more than the limit of tasks run at a time for one data
+     * source, and that waiting tasks run when a slot becomes free.
+     */
+    public void testDataSourceLimit() throws Exception {
+        final SegmentLoadScheduler scheduler =
+            new SegmentLoadScheduler(executor, 0, 2, 0);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final List<Future<String>> futures = new ArrayList<Future<String>>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(
+                scheduler.submit(null, "ds", 0, new BlockingTask(latch)));
+        }
+        // A task for another data source is not held up.
+        final Future<String> other =
+            scheduler.submit(null, "ds2", 0, new BlockingTask(null));
+        assertEquals("done", other.get(5, TimeUnit.SECONDS));
+        assertEquals(1, scheduler.getPendingCount());
+        latch.countDown();
+        for (Future<String> future : futures) {
+            assertEquals("done", future.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    /**
+     * Tests that waiting tasks run cheapest first, and in order of
+     * submission if their costs are equal.
+     */
+    public void testPriority() throws Exception {
+        final SegmentLoadScheduler scheduler =
+            new SegmentLoadScheduler(executor, 1, 0, 0);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Future<String> blocker =
+            scheduler.submit(null, "ds", 0, new BlockingTask(latch));
+        final List<String> order =
+            Collections.synchronizedList(new ArrayList<String>());
+        final List<Future<String>> futures = new ArrayList<Future<String>>();
+        final String[] names = {"a", "b", "c", "d"};
+        final long[] costs = {5, 1, 3, 1};
+        for (int i = 0; i < names.length; i++) {
+            futures.add(
+                scheduler.submit(
+                    null, "ds", costs[i], new RecordingTask(names[i], order)));
+        }
+        assertEquals(4, scheduler.getPendingCount());
+        latch.countDown();
+        assertEquals("done", blocker.get(5, TimeUnit.SECONDS));
+        for (Future<String> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(Arrays.asList("b", "d", "c", "a"), order);
+    }
+
+    /**
+     * Tests that a task that has waited longer than the maximum wait runs
+     * before cheaper tasks that were submitted later.
+     */
+    public void testMaxWait() throws Exception {
+        final SegmentLoadScheduler scheduler =
+            new SegmentLoadScheduler(executor, 1, 0, 50);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Future<String> blocker =
+            scheduler.submit(null, "ds", 0, new BlockingTask(latch));
+        final List<String> order =
+            Collections.synchronizedList(new ArrayList<String>());
+        final List<Future<String>> futures = new ArrayList<Future<String>>();
+        futures.add(
+            scheduler.submit(null, "ds", 100, new RecordingTask("a", order)));
+        futures.add(
+            scheduler.submit(null, "ds", 50, new RecordingTask("b", order)));
+        Thread.sleep(200);
+        // 'a' and 'b' have waited too long; 'c' and 'd' are cheaper, but new.
+        futures.add(
+            scheduler.submit(null, "ds", 1, new RecordingTask("c", order)));
+        futures.add(
+            scheduler.submit(null, "ds", 2, new RecordingTask("d", order)));
+        latch.countDown();
+        assertEquals("done", blocker.get(5, TimeUnit.SECONDS));
+        for (Future<String> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(Arrays.asList("a", "b", "c", "d"), order);
+    }
+
+    /**
+     * Tests that if the executor rejects a task, tasks that were waiting for
+     * its slots are dispatched, rather than waiting forever.
+     */
+    public void testRejected() throws Exception {
+        final boolean[] reject = {false};
+        final ExecutorService rejectingExecutor =
+            new ThreadPoolExecutor(
+                4, 4, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>())
+            {
+                public void execute(Runnable command) {
+                    synchronized (reject) {
+                        if (reject[0]) {
+                            reject[0] = false;
+                            throw new RejectedExecutionException();
+                        }
+                    }
+                    super.execute(command);
+                }
+            };
+        try {
+            final SegmentLoadScheduler scheduler =
+                new SegmentLoadScheduler(rejectingExecutor, 1, 0, 0);
+            final CountDownLatch latch = new CountDownLatch(1);
+            final Future<String> blocker =
+                scheduler.submit(null, "ds", 0, new BlockingTask(latch));
+            final Future<String> rejected =
+                scheduler.submit(null, "ds", 0, new BlockingTask(null));
+            final Future<String> waiting =
+                scheduler.submit(null, "ds", 1, new BlockingTask(null));
+            assertEquals(2, scheduler.getPendingCount());
+            synchronized (reject) {
+                reject[0] = true;
+            }
+            latch.countDown();
+            assertEquals("done", blocker.get(5, TimeUnit.SECONDS));
+            try {
+                rejected.get(5, TimeUnit.SECONDS);
+                fail("expected error");
+            } catch (ExecutionException e) {
+                assertTrue(
+                    e.getCause() instanceof RejectedExecutionException);
+            }
+            assertEquals("done", waiting.get(5, TimeUnit.SECONDS));
+            assertEquals(0, scheduler.getPendingCount());
+        } finally {
+            rejectingExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Task that waits for a latch.
+     */
+    private static class BlockingTask implements Callable<String> {
+        private final CountDownLatch latch;
+
+        BlockingTask(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        public String call() throws Exception {
+            if (latch != null) {
+                latch.await();
+            }
+            return "done";
+        }
+    }
+
+    /**
+     * Task that adds its name to a list.
+     */
+    private static class RecordingTask implements Callable<String> {
+        private final String name;
+        private final List<String> order;
+
+        RecordingTask(String name, List<String> order) {
+            this.name = name;
+            this.order = order;
+        }
+
+        public String call() {
+            order.add(name);
+            return name;
+        }
+    }
+}
+
+// End SegmentLoadSchedulerTest.java
@@ -121,6 +121,7 @@ public class SegmentLoaderTest extends BatchTestCase {
         SegmentLoader loader = new SegmentLoader(cacheMgr) {
             SqlStatement createExecuteSql(
                 int cellRequestCount,
+                long queueNanos,
                 final GroupingSetsList groupingSetsList,
                 List<StarPredicate> compoundPredicateList)
             {
@@ -201,6 +202,7 @@ public class SegmentLoaderTest extends BatchTestCase {
         SegmentLoader loader = new SegmentLoader(cacheMgr) {
             SqlStatement createExecuteSql(
                 int cellRequestCount,
+                long queueNanos,
                 GroupingSetsList groupingSetsList,
                 List<StarPredicate> compoundPredicateList)
             {
@@ -234,6 +236,7 @@ public class SegmentLoaderTest extends BatchTestCase {
         SegmentLoader loader = new SegmentLoader(cacheMgr) {
             SqlStatement createExecuteSql(
                 int cellRequestCount,
+                long queueNanos,
                 GroupingSetsList groupingSetsList,
                 List<StarPredicate> compoundPredicateList)
             {
@@ -311,6 +314,7 @@ public class SegmentLoaderTest extends BatchTestCase {
         SegmentLoader loader = new SegmentLoader(cacheMgr) {
             SqlStatement createExecuteSql(
                 int cellRequestCount,
+                long queueNanos,
                 GroupingSetsList groupingSetsList,
                 List<StarPredicate> compoundPredicateList)
             {
@@ -358,6 +362,7 @@ public class SegmentLoaderTest extends BatchTestCase {
             @Override
             SqlStatement createExecuteSql(
                 int cellRequestCount,
+                long queueNanos,
                 GroupingSetsList groupingSetsList,
                 List<StarPredicate> compoundPredicateList)
             {
@@ -433,6 +438,7 @@ public class SegmentLoaderTest extends BatchTestCase {
             @Override
             SqlStatement createExecuteSql(
                 int cellRequestCount,
+                long queueNanos,
                 GroupingSetsList groupingSetsList,
                 List<StarPredicate> compoundPredicateList)
             {
@@ -476,6 +482,7 @@ public class SegmentLoaderTest extends BatchTestCase {
             @Override
             SqlStatement createExecuteSql(
                 int cellRequestCount,
+                long queueNanos,
                 GroupingSetsList groupingSetsList,
                 List<StarPredicate> compoundPredicateList)
             {
@@ -585,6 +592,57 @@ public class SegmentLoaderTest extends BatchTestCase {
         }
     }
 
+    /**
+     * Tests that key columns of a {@link SegmentLoader.RowList} are
+     * dictionary-encoded: each distinct value gets one code, and values and
+     * nulls decode correctly.
+     */
+    public void testRowListDictionaryEncoding() {
+        final SegmentLoader.RowList rowList =
+            new SegmentLoader.RowList(
+                Arrays.asList(
+                    SqlStatement.Type.STRING,
+                    SqlStatement.Type.INT,
+                    SqlStatement.Type.DOUBLE),
+                2,
+                2);
+        assertTrue(rowList.isDictionaryEncoded(0));
+        assertTrue(rowList.isDictionaryEncoded(1));
+        assertFalse(rowList.isDictionaryEncoded(2));
+        final String[] strings = {"M", "F", "M", "M", "F"};
+        for (int i = 0; i < 100; i++) {
+            rowList.createRow();
+            rowList.setObject(0, strings[i % strings.length]);
+            if (i % 10 == 0) {
+                rowList.setNull(1, true);
+            } else {
+                rowList.setInt(1, i % 7);
+            }
+            rowList.setDouble(2, i);
+        }
+        assertEquals(100, rowList.size());
+        assertEquals(Arrays.<Object>asList("M", "F"), rowList.getDictionary(0));
+        // 7 distinct ints, plus null
+        assertEquals(8, rowList.getDictionary(1).size());
+        assertTrue(rowList.getDictionary(1).contains(null));
+        int i = 0;
+        for (rowList.first(); rowList.next(); i++) {
+            assertEquals(strings[i % strings.length], rowList.getObject(0));
+            assertEquals(
+                rowList.getObject(0),
+                rowList.getDictionary(0).get(rowList.getCode(0)));
+            if (i % 10 == 0) {
+                assertTrue(rowList.isNull(1));
+                assertNull(rowList.getObject(1));
+            } else {
+                assertFalse(rowList.isNull(1));
+                assertEquals(i % 7, rowList.getObject(1));
+            }
+            assertEquals((double) i, rowList.getObject(2));
+        }
+        assertEquals(100, i);
+    }
+
     public void testGetGroupingBitKey() throws SQLException {
         Object[] data = {
             "1997", "Food", "Deli", "M", "6047", 0, 0, 0, 0
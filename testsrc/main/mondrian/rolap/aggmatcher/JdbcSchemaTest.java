@@ -0,0 +1,125 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap.aggmatcher;
+
+import mondrian.rolap.RolapConnection;
+import mondrian.test.FoodMartTestCase;
+
+import java.io.File;
+import java.util.*;
+import javax.sql.DataSource;
+
+/**
+ * Unit test for {@link JdbcSchema}: loading columns in parallel, and
+ * metadata snapshots.
+ */
+public class JdbcSchemaTest extends FoodMartTestCase {
+    public JdbcSchemaTest(String name) {
+        super(name);
+    }
+
+    private DataSource getDataSource() {
+        return ((RolapConnection) getConnection()).getDataSource();
+    }
+
+    /**
+     * Tests that loading columns in parallel batches gives the same result
+     * as loading them one table at a time.
+     */
+    public void testLoadColumnsParallel() throws Exception {
+        final JdbcSchema serial = new JdbcSchema(getDataSource());
+        serial.load();
+        assertEquals(
+            serial.getTables().size(),
+            serial.loadColumns(serial.getTables(), 1));
+
+        final JdbcSchema parallel = new JdbcSchema(getDataSource());
+        parallel.load();
+        assertEquals(
+            parallel.getTables().size(),
+            parallel.loadColumns(parallel.getTables(), 4));
+        assertEquals(describe(serial), describe(parallel));
+        assertTrue(describe(parallel).contains("("));
+
+        // Second time, there is nothing to load.
+        assertEquals(0, parallel.loadColumns(parallel.getTables(), 4));
+    }
+
+    /**
+     * Tests writing a snapshot and reading it into another schema.
+     */
+    public void testSnapshot() throws Exception {
+        final JdbcSchema db = new JdbcSchema(getDataSource());
+        db.load();
+        final List<JdbcSchema.Table> someTables =
+            new ArrayList<JdbcSchema.Table>(db.getTables()).subList(0, 2);
+        assertEquals(2, db.loadColumns(someTables, 2));
+
+        final File file = File.createTempFile("jdbc", ".dat");
+        try {
+            db.writeSnapshot(file);
+
+            final JdbcSchema db2 = new JdbcSchema(getDataSource());
+            assertTrue(db2.readSnapshot(file));
+            assertEquals(describe(db), describe(db2));
+
+            // Tables whose columns were not in the snapshot can still be
+            // loaded from JDBC.
+            assertEquals(
+                db2.getTables().size() - 2,
+                db2.loadColumns(db2.getTables(), 1));
+
+            // Does not read into a schema whose tables are already loaded.
+            assertFalse(db2.readSnapshot(file));
+
+            // Does not read a file that does not exist.
+            assertTrue(file.delete());
+            assertFalse(new JdbcSchema(getDataSource()).readSnapshot(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Returns a description of the tables and loaded columns of a schema
+     * that does not depend on the order in which they were loaded.
+     */
+    private static String describe(JdbcSchema db) {
+        final StringBuilder buf = new StringBuilder();
+        for (JdbcSchema.Table table : db.getTables()) {
+            buf.append(table.getName())
+                .append(':')
+                .append(table.getTableType());
+            final SortedMap<String, JdbcSchema.Table.Column> columns =
+                new TreeMap<String, JdbcSchema.Table.Column>();
+            for (JdbcSchema.Table.Column column : table.getColumns()) {
+                columns.put(column.getName(), column);
+            }
+            if (!columns.isEmpty()) {
+                buf.append('(');
+                for (JdbcSchema.Table.Column column : columns.values()) {
+                    buf.append(column.getName())
+                        .append(' ')
+                        .append(column.getTypeName())
+                        .append(' ')
+                        .append(column.getColumnSize())
+                        .append(column.isNullable() ? "" : " not null")
+                        .append(", ");
+                }
+                buf.append(')');
+            }
+            buf.append(table.getTotalColumnSize())
+                .append('\n');
+        }
+        return buf.toString();
+    }
+}
+
+// End JdbcSchemaTest.java
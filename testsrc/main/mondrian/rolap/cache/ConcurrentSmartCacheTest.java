@@ -0,0 +1,119 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap.cache;
+
+import junit.framework.TestCase;
+
+import java.util.*;
+
+/**
+ * Unit test for {@link ConcurrentSmartCache}.
+ */
+public class ConcurrentSmartCacheTest extends TestCase {
+    public ConcurrentSmartCacheTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Tests that the least recently used entries are evicted when the cache
+     * exceeds its maximum weight, and that statistics are kept.
+     */
+    public void testEvictLeastRecentlyUsed() {
+        final ConcurrentSmartCache<String, String> cache =
+            new ConcurrentSmartCache<String, String>(3, 1);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        cache.put("c", "C");
+        assertEquals("A", cache.get("a"));
+        cache.put("d", "D");
+        assertEquals(3, cache.size());
+        assertNull(cache.get("b"));
+        assertEquals("A", cache.get("a"));
+        assertEquals("C", cache.get("c"));
+        assertEquals("D", cache.get("d"));
+
+        final ConcurrentSmartCache.Statistics statistics =
+            cache.getStatistics();
+        assertEquals(4, statistics.hitCount);
+        assertEquals(1, statistics.missCount);
+        assertEquals(1, statistics.evictionCount);
+        assertEquals(3, statistics.weight);
+    }
+
+    /**
+     * Tests a cache whose entries are lists, weighed by their length.
+     */
+    public void testWeight() {
+        final ConcurrentSmartCache<String, List<String>> cache =
+            new ConcurrentSmartCache<String, List<String>>(5, 1) {
+                protected int weigh(List<String> value) {
+                    return value.size();
+                }
+            };
+        cache.put("x", Arrays.asList("1", "2"));
+        cache.put("y", Arrays.asList("1", "2", "3"));
+        assertEquals(2, cache.size());
+        assertEquals(5, cache.getStatistics().weight);
+
+        // Replacing an entry adjusts the weight.
+        cache.put("x", Arrays.asList("1"));
+        assertEquals(4, cache.getStatistics().weight);
+
+        // Exceeds the maximum; "y" is least recently used.
+        cache.put("z", Arrays.asList("1", "2"));
+        assertNull(cache.get("y"));
+        assertEquals(3, cache.getStatistics().weight);
+
+        // An entry heavier than the maximum is kept, but is the only one.
+        cache.put("w", Arrays.asList("1", "2", "3", "4", "5", "6"));
+        assertEquals(1, cache.size());
+        assertEquals(6, cache.getStatistics().weight);
+    }
+
+    /**
+     * Tests that a cache with no maximum weight never evicts, that putting
+     * null removes an entry, and that a task can remove entries.
+     */
+    public void testUnboundedAndExecute() {
+        final ConcurrentSmartCache<Integer, String> cache =
+            new ConcurrentSmartCache<Integer, String>(0);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, String.valueOf(i));
+        }
+        assertEquals(1000, cache.size());
+        assertEquals("7", cache.put(7, null));
+        assertNull(cache.get(7));
+        assertEquals(999, cache.size());
+
+        cache.execute(
+            new SmartCache.SmartCacheTask<Integer, String>() {
+                public void execute(
+                    Iterator<Map.Entry<Integer, String>> iterator)
+                {
+                    while (iterator.hasNext()) {
+                        if (iterator.next().getKey() % 2 == 0) {
+                            iterator.remove();
+                        }
+                    }
+                }
+            });
+        assertEquals(499, cache.size());
+        assertEquals(499, cache.getStatistics().weight);
+        assertNull(cache.get(10));
+        assertEquals("11", cache.get(11));
+        assertEquals(0, cache.getStatistics().evictionCount);
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getStatistics().weight);
+    }
+}
+
+// End ConcurrentSmartCacheTest.java
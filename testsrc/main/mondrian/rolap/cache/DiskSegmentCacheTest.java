@@ -0,0 +1,268 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap.cache;
+
+import mondrian.rolap.BitKey;
+import mondrian.spi.*;
+import mondrian.util.ByteString;
+
+import junit.framework.TestCase;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Unit test for {@link DiskSegmentCache}.
+ */
+public class DiskSegmentCacheTest extends TestCase {
+    private static final ByteString CHECKSUM1 =
+        new ByteString(new byte[] {1, 2, 3});
+    private static final ByteString CHECKSUM2 =
+        new ByteString(new byte[] {4, 5, 6});
+
+    private File directory;
+
+    public DiskSegmentCacheTest(String name) {
+        super(name);
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = File.createTempFile("segments", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdir());
+    }
+
+    protected void tearDown() throws Exception {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+        super.tearDown();
+    }
+
+    /**
+     * Tests that a body survives a round trip through the cache.
+     */
+    public void testPutGet() {
+        final DiskSegmentCache cache = new DiskSegmentCache(directory, 0);
+        final SegmentHeader header = OffHeapSegmentCacheTest.header("a");
+        assertNull(cache.get(header));
+        assertTrue(
+            cache.put(
+                header, new OffHeapSegmentCacheTest.TestSegmentBody(100)));
+        assertTrue(cache.contains(header));
+        final SegmentBody body = cache.get(header);
+        assertNotNull(body);
+        final double[] values = (double[]) body.getValueArray();
+        assertEquals(100, values.length);
+        assertEquals(99d, values[99]);
+
+        assertTrue(cache.remove(header));
+        assertFalse(cache.remove(header));
+        assertNull(cache.get(header));
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    /**
+     * Tests that segments are still available after the cache is torn down
+     * and a new cache is created in the same directory, and that files that
+     * are not valid segments are discarded.
+     */
+    public void testRestart() throws IOException {
+        final DiskSegmentCache cache = new DiskSegmentCache(directory, 0);
+        final SegmentHeader a = OffHeapSegmentCacheTest.header("a");
+        final SegmentHeader b = OffHeapSegmentCacheTest.header("b");
+        cache.put(a, new OffHeapSegmentCacheTest.TestSegmentBody(10));
+        cache.put(b, new OffHeapSegmentCacheTest.TestSegmentBody(20));
+        cache.tearDown();
+
+        final File bogus = new File(directory, "bogus.seg");
+        final FileOutputStream out = new FileOutputStream(bogus);
+        out.write(new byte[] {1, 2, 3});
+        out.close();
+
+        final DiskSegmentCache cache2 = new DiskSegmentCache(directory, 0);
+        assertEquals(2, cache2.getSegmentHeaders().size());
+        assertTrue(cache2.contains(a));
+        final SegmentBody body = cache2.get(b);
+        assertNotNull(body);
+        assertEquals(20, ((double[]) body.getValueArray()).length);
+        assertFalse(bogus.exists());
+    }
+
+    /**
+     * Tests that when the files exceed the budget, the least recently used
+     * segments are evicted, with a non-local event, whatever schema they
+     * belong to.
+     */
+    public void testEvict() {
+        final SegmentHeader a = header("FoodMart", CHECKSUM1, "a");
+        final SegmentHeader b = header("FoodMart", CHECKSUM2, "b");
+        final SegmentHeader c = header("SteelWheels", CHECKSUM1, "c");
+        final SegmentHeader d = header("FoodMart", CHECKSUM1, "d");
+        final DiskSegmentCache cache0 = new DiskSegmentCache(directory, 0);
+        cache0.put(a, new OffHeapSegmentCacheTest.TestSegmentBody(10));
+        cache0.put(b, new OffHeapSegmentCacheTest.TestSegmentBody(10));
+        cache0.put(c, new OffHeapSegmentCacheTest.TestSegmentBody(10));
+        cache0.tearDown();
+
+        // Room for exactly these three segments; "d" is the same size as
+        // "a" and "b".
+        final DiskSegmentCache cache =
+            new DiskSegmentCache(directory, totalLength());
+        assertEquals(3, cache.getSegmentHeaders().size());
+        final List<SegmentHeader> evicted = new ArrayList<SegmentHeader>();
+        cache.addListener(
+            new SegmentCache.SegmentCacheListener() {
+                public void handle(SegmentCacheEvent e) {
+                    if (e.getEventType()
+                        == SegmentCacheEvent.EventType.ENTRY_DELETED)
+                    {
+                        assertFalse(e.isLocal());
+                        evicted.add(e.getSource());
+                    }
+                }
+            });
+
+        // Reading makes "b" the least recently used.
+        assertNotNull(cache.get(a));
+        assertNotNull(cache.get(b));
+        assertNotNull(cache.get(c));
+        assertNotNull(cache.get(a));
+        assertTrue(
+            cache.put(d, new OffHeapSegmentCacheTest.TestSegmentBody(10)));
+        assertEquals(Collections.singletonList(b), evicted);
+        assertTrue(cache.contains(a));
+        assertFalse(cache.contains(b));
+        assertTrue(cache.contains(c));
+        assertTrue(cache.contains(d));
+        assertEquals(3, directory.listFiles().length);
+
+        // A segment larger than the budget is not stored.
+        assertFalse(
+            cache.put(
+                header("FoodMart", CHECKSUM1, "e"),
+                new OffHeapSegmentCacheTest.TestSegmentBody(1000)));
+        assertEquals(3, directory.listFiles().length);
+    }
+
+    /**
+     * Tests that creating a cache deletes no segments if the files are within
+     * budget, whatever schema they belong to, and deletes the oldest files
+     * if they are not.
+     */
+    public void testRestartEvict() {
+        final SegmentHeader a = header("FoodMart", CHECKSUM1, "a");
+        final SegmentHeader b = header("FoodMart", CHECKSUM2, "b");
+        final SegmentHeader c = header("SteelWheels", CHECKSUM1, "c");
+        final DiskSegmentCache cache = new DiskSegmentCache(directory, 0);
+        cache.put(a, new OffHeapSegmentCacheTest.TestSegmentBody(10));
+        cache.put(b, new OffHeapSegmentCacheTest.TestSegmentBody(10));
+        cache.put(c, new OffHeapSegmentCacheTest.TestSegmentBody(10));
+        cache.tearDown();
+        final long now = System.currentTimeMillis();
+        long lengthA = 0;
+        for (File file : directory.listFiles()) {
+            // File "a" is the oldest.
+            final boolean isA =
+                file.getName().startsWith(a.getUniqueID().toString());
+            if (isA) {
+                lengthA = file.length();
+            }
+            assertTrue(file.setLastModified(isA ? now - 60000 : now - 1000));
+        }
+        assertTrue(lengthA > 0);
+        final long totalLength = totalLength();
+
+        final DiskSegmentCache cache2 =
+            new DiskSegmentCache(directory, totalLength);
+        assertEquals(3, cache2.getSegmentHeaders().size());
+        cache2.tearDown();
+
+        final DiskSegmentCache cache3 =
+            new DiskSegmentCache(directory, totalLength - lengthA);
+        assertEquals(2, cache3.getSegmentHeaders().size());
+        assertFalse(cache3.contains(a));
+        assertTrue(cache3.contains(b));
+        assertTrue(cache3.contains(c));
+        assertEquals(2, directory.listFiles().length);
+    }
+
+    /**
+     * Tests that threads writing the same segment at the same time each
+     * use their own temporary file, and leave one complete segment file.
+     */
+    public void testConcurrentPut() throws InterruptedException {
+        final DiskSegmentCache cache = new DiskSegmentCache(directory, 0);
+        final SegmentHeader header = OffHeapSegmentCacheTest.header("a");
+        final int threadCount = 4;
+        final int putCount = 20;
+        final List<Boolean> results =
+            Collections.synchronizedList(new ArrayList<Boolean>());
+        final Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < putCount; j++) {
+                        results.add(
+                            cache.put(
+                                header,
+                                new OffHeapSegmentCacheTest.TestSegmentBody(
+                                    1000)));
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(threadCount * putCount, results.size());
+        assertFalse(results.contains(Boolean.FALSE));
+        assertEquals(1, directory.listFiles().length);
+        final SegmentBody body = cache.get(header);
+        assertNotNull(body);
+        assertEquals(1000, ((double[]) body.getValueArray()).length);
+    }
+
+    /**
+     * Returns the total length of the files in the directory.
+     */
+    private long totalLength() {
+        long length = 0;
+        for (File file : directory.listFiles()) {
+            length += file.length();
+        }
+        return length;
+    }
+
+    private static SegmentHeader header(
+        String schemaName,
+        ByteString schemaChecksum,
+        String measureName)
+    {
+        return new SegmentHeader(
+            schemaName,
+            schemaChecksum,
+            "Sales",
+            measureName,
+            Collections.<SegmentColumn>emptyList(),
+            Collections.<String>emptyList(),
+            "sales_fact_1997",
+            BitKey.Factory.makeBitKey(0),
+            Collections.<SegmentColumn>emptyList());
+    }
+}
+
+// End DiskSegmentCacheTest.java
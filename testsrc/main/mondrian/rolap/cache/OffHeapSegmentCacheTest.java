@@ -0,0 +1,152 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.rolap.cache;
+
+import mondrian.rolap.BitKey;
+import mondrian.rolap.CellKey;
+import mondrian.spi.*;
+import mondrian.util.ByteString;
+
+import junit.framework.TestCase;
+
+import java.util.*;
+
+/**
+ * Unit test for {@link OffHeapSegmentCache}.
+ */
+public class OffHeapSegmentCacheTest extends TestCase {
+    public OffHeapSegmentCacheTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Tests that a body survives a round trip through the cache.
+     */
+    public void testPutGet() {
+        final OffHeapSegmentCache cache = new OffHeapSegmentCache(100000);
+        final SegmentHeader header = header("Unit Sales");
+        assertNull(cache.get(header));
+        assertTrue(cache.put(header, new TestSegmentBody(100)));
+        assertTrue(cache.contains(header));
+        final SegmentBody body = cache.get(header);
+        assertNotNull(body);
+        assertNotSame(body, cache.get(header));
+        final double[] values = (double[]) body.getValueArray();
+        assertEquals(100, values.length);
+        assertEquals(99d, values[99]);
+        assertTrue(cache.getByteCount() > 800);
+
+        assertTrue(cache.remove(header));
+        assertFalse(cache.remove(header));
+        assertNull(cache.get(header));
+        assertEquals(0, cache.getByteCount());
+    }
+
+    /**
+     * Tests that the least recently used segments are evicted when the cache
+     * exceeds its budget, and that listeners are told.
+     */
+    public void testEviction() {
+        final long bodySize = serializedSize(new TestSegmentBody(1000));
+        final OffHeapSegmentCache cache =
+            new OffHeapSegmentCache(bodySize * 3 + bodySize / 2);
+        final List<SegmentHeader> deleted = new ArrayList<SegmentHeader>();
+        cache.addListener(
+            new SegmentCache.SegmentCacheListener() {
+                public void handle(SegmentCacheEvent e) {
+                    if (e.getEventType()
+                        == SegmentCacheEvent.EventType.ENTRY_DELETED)
+                    {
+                        assertFalse(e.isLocal());
+                        deleted.add(e.getSource());
+                    }
+                }
+            });
+        final SegmentHeader a = header("a");
+        final SegmentHeader b = header("b");
+        final SegmentHeader c = header("c");
+        final SegmentHeader d = header("d");
+        cache.put(a, new TestSegmentBody(1000));
+        cache.put(b, new TestSegmentBody(1000));
+        cache.put(c, new TestSegmentBody(1000));
+        assertTrue(deleted.isEmpty());
+
+        // Touch 'a', so that 'b' becomes the least recently used.
+        assertNotNull(cache.get(a));
+        cache.put(d, new TestSegmentBody(1000));
+        assertEquals(Collections.singletonList(b), deleted);
+        assertFalse(cache.contains(b));
+        assertTrue(cache.contains(a));
+        assertTrue(cache.contains(d));
+        assertTrue(cache.getByteCount() <= bodySize * 3 + bodySize / 2);
+        assertEquals(3, cache.getSegmentHeaders().size());
+
+        // A body larger than the whole budget is rejected.
+        assertFalse(cache.put(header("e"), new TestSegmentBody(5000)));
+        assertEquals(3, cache.getSegmentHeaders().size());
+    }
+
+    private static long serializedSize(SegmentBody body) {
+        final OffHeapSegmentCache cache =
+            new OffHeapSegmentCache(Integer.MAX_VALUE);
+        cache.put(header("x"), body);
+        return cache.getByteCount();
+    }
+
+    public static SegmentHeader header(String measureName) {
+        return new SegmentHeader(
+            "FoodMart",
+            new ByteString(new byte[] {1, 2, 3}),
+            "Sales",
+            measureName,
+            Collections.<SegmentColumn>emptyList(),
+            Collections.<String>emptyList(),
+            "sales_fact_1997",
+            BitKey.Factory.makeBitKey(0),
+            Collections.<SegmentColumn>emptyList());
+    }
+
+    /**
+     * Segment body that holds an array of doubles.
+     */
+    public static class TestSegmentBody implements SegmentBody {
+        private final double[] values;
+
+        public TestSegmentBody(int size) {
+            values = new double[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = i;
+            }
+        }
+
+        public Map<CellKey, Object> getValueMap() {
+            throw new UnsupportedOperationException();
+        }
+
+        public Object getValueArray() {
+            return values;
+        }
+
+        public BitSet getIndicators() {
+            return new BitSet();
+        }
+
+        public SortedSet<Comparable>[] getAxisValueSets() {
+            //noinspection unchecked
+            return new SortedSet[0];
+        }
+
+        public boolean[] getNullAxisFlags() {
+            return new boolean[0];
+        }
+    }
+}
+
+// End OffHeapSegmentCacheTest.java
@@ -11,11 +11,18 @@
 package mondrian.rolap.sql;
 
 import mondrian.olap.MondrianProperties;
-import mondrian.rolap.BatchTestCase;
+import mondrian.olap.Position;
+import mondrian.olap.Result;
+import mondrian.rolap.*;
+import mondrian.rolap.agg.ListColumnPredicate;
+import mondrian.rolap.agg.ValueColumnPredicate;
 import mondrian.spi.Dialect;
+import mondrian.spi.impl.JdbcDialectImpl;
 import mondrian.test.SqlPattern;
 import mondrian.test.TestContext;
+import mondrian.util.Pair;
 
+import java.sql.SQLException;
 import java.util.*;
 
 /**
@@ -659,6 +666,208 @@ public class SqlQueryTest extends BatchTestCase {
             true,
             true);
     }
+
+    /**
+     * Tests that {@link SqlQuery#quote} generates bind parameters, and that
+     * {@link SqlQuery#extractBindValues} converts them to "?" markers and
+     * values.
+     */
+    public void testBindParameters() {
+        final Dialect dialect = getTestContext().getDialect();
+        final SqlQuery sqlQuery = new SqlQuery(dialect);
+        final StringBuilder buf = new StringBuilder();
+        sqlQuery.quote(buf, "O'Brien", Dialect.Datatype.String);
+        final String literal = buf.toString();
+        assertEquals(
+            Pair.of(literal, Collections.<Object>emptyList()),
+            SqlQuery.extractBindValues(literal));
+
+        sqlQuery.setBindParameters(true);
+        buf.setLength(0);
+        buf.append("a in (");
+        sqlQuery.quote(buf, "O'Brien", Dialect.Datatype.String);
+        buf.append(", ");
+        sqlQuery.quote(buf, 12, Dialect.Datatype.Integer);
+        buf.append(", ");
+        sqlQuery.quote(buf, "1.5", Dialect.Datatype.Integer);
+        buf.append(") and b = ");
+        sqlQuery.quote(buf, "1997-01-31", Dialect.Datatype.Date);
+        buf.append(" and c = ");
+        // Not a valid date, so generated as a literal.
+        sqlQuery.quote(buf, "xyz", Dialect.Datatype.Date);
+        final Pair<String, List<Object>> pair =
+            SqlQuery.extractBindValues(buf.toString());
+        final StringBuilder expected = new StringBuilder();
+        expected.append("a in (?, ?, ?) and b = ? and c = ");
+        dialect.quote(expected, "xyz", Dialect.Datatype.Date);
+        assertEquals(expected.toString(), pair.left);
+        assertEquals(
+            Arrays.<Object>asList(
+                "O'Brien",
+                12L,
+                new java.math.BigDecimal("1.5"),
+                java.sql.Date.valueOf("1997-01-31")),
+            pair.right);
+    }
+
+    /**
+     * Tests that a query gives the same results when its SQL statements
+     * use bind parameters.
+     */
+    public void testBindParametersQuery() {
+        final String mdx =
+            "select {[Measures].[Unit Sales]} on 0,\n"
+            + " {[Store].[USA].[CA].Children} on 1\n"
+            + "from [Sales]\n"
+            + "where [Gender].[F]";
+        final String expected = TestContext.toString(executeQuery(mdx));
+        getConnection().getCacheControl(null).flushSchemaCache();
+        propSaver.set(prop.SqlBindParameters, true);
+        assertQueryReturns(mdx, expected);
+    }
+
+    /**
+     * Tests that a list predicate with more values than
+     * {@link MondrianProperties#LargeInListThreshold} is generated in the
+     * dialect's form for large lists, including when the list contains null.
+     */
+    public void testLargeInList() throws SQLException {
+        final RolapStar.Column column =
+            getCube("Sales").getStar().lookupColumn("store", "store_state");
+        final SqlQuery sqlQuery = new SqlQuery(createLargeInListDialect(true));
+        final String expr = column.generateExprString(sqlQuery);
+
+        // Below the threshold: regular IN list.
+        assertEquals(
+            expr + " in ('CA', 'OR', 'WA')",
+            toSql(sqlQuery, column, "CA", "OR", "WA"));
+
+        propSaver.set(prop.LargeInListThreshold, 2);
+        assertEquals(
+            "(" + expr + " in ('CA', 'OR') or " + expr + " in ('WA'))",
+            toSql(sqlQuery, column, "CA", "OR", "WA"));
+        assertEquals(
+            "((" + expr + " in ('CA', 'OR') or " + expr + " in ('WA'))"
+            + " or " + expr + " is null)",
+            toSql(sqlQuery, column, "CA", RolapUtil.sqlNullValue, "OR", "WA"));
+
+        // One value and null, above the threshold: no IN list at all.
+        propSaver.set(prop.LargeInListThreshold, 1);
+        assertEquals(
+            "(" + expr + " = 'CA' or " + expr + " is null)",
+            toSql(sqlQuery, column, "CA", RolapUtil.sqlNullValue));
+
+        // Dialect without a form for large lists: regular IN list.
+        final SqlQuery sqlQuery2 =
+            new SqlQuery(createLargeInListDialect(false));
+        assertEquals(
+            expr + " in ('CA', 'OR', 'WA')",
+            toSql(sqlQuery2, column, "CA", "OR", "WA"));
+    }
+
+    /**
+     * Tests that a constraint on members of a non-unique level, which
+     * compares rows of several columns, is generated in the dialect's form
+     * for large lists if there are more members than
+     * {@link MondrianProperties#LargeInListThreshold}.
+     */
+    public void testLargeInListMultiColumn() throws SQLException {
+        final Result result =
+            executeQuery(
+                "select {[Store].[USA].[CA].[San Francisco],\n"
+                + "  [Store].[USA].[OR].[Portland],\n"
+                + "  [Store].[USA].[WA].[Seattle]} on 0\n"
+                + "from [Sales]");
+        final RolapCube cube = (RolapCube) result.getQuery().getCube();
+        final List<RolapMember> members = new ArrayList<RolapMember>();
+        for (Position position : result.getAxes()[0].getPositions()) {
+            members.add((RolapMember) position.get(0));
+        }
+        final Dialect dialect = createLargeInListDialect(true);
+        final SqlQuery sqlQuery = new SqlQuery(dialect);
+        final String columns =
+            "("
+            + cube.getStar().lookupColumn("store", "store_city")
+                .generateExprString(sqlQuery)
+            + ", "
+            + cube.getStar().lookupColumn("store", "store_state")
+                .generateExprString(sqlQuery)
+            + ")";
+
+        // Below the threshold: regular multi-value IN list.
+        SqlConstraintUtils.addMemberConstraint(
+            sqlQuery, cube, null, members, true, true, false);
+        assertContains(
+            columns + " in (('San Francisco', 'CA'), ('Portland', 'OR'),"
+            + " ('Seattle', 'WA'))",
+            sqlQuery.toString());
+
+        propSaver.set(prop.LargeInListThreshold, 2);
+        final SqlQuery sqlQuery2 = new SqlQuery(dialect);
+        SqlConstraintUtils.addMemberConstraint(
+            sqlQuery2, cube, null, members, true, true, false);
+        assertContains(
+            "(" + columns + " in (('San Francisco', 'CA'), ('Portland', 'OR'))"
+            + " or " + columns + " in (('Seattle', 'WA')))",
+            sqlQuery2.toString());
+    }
+
+    private static void assertContains(String expected, String actual) {
+        assertTrue(actual, actual.contains(expected));
+    }
+
+    /**
+     * Generates the SQL for a predicate that a column has one of a list of
+     * values.
+     */
+    private static String toSql(
+        SqlQuery sqlQuery,
+        RolapStar.Column column,
+        Object... values)
+    {
+        final List<StarColumnPredicate> predicates =
+            new ArrayList<StarColumnPredicate>();
+        for (Object value : values) {
+            predicates.add(new ValueColumnPredicate(column, value));
+        }
+        final StringBuilder buf = new StringBuilder();
+        new ListColumnPredicate(column, predicates).toSql(sqlQuery, buf);
+        return buf.toString();
+    }
+
+    /**
+     * Creates a dialect for the test database that supports multi-value IN
+     * expressions and, if <code>largeInList</code>, generates a predicate on
+     * a large list of values as a disjunction of IN lists of at most two
+     * values each.
+     */
+    private Dialect createLargeInListDialect(final boolean largeInList)
+        throws SQLException
+    {
+        final RolapConnection connection = (RolapConnection) getConnection();
+        final java.sql.Connection jdbcConnection =
+            connection.getDataSource().getConnection();
+        try {
+            return new JdbcDialectImpl(jdbcConnection) {
+                public boolean supportsMultiValueInExpr() {
+                    return true;
+                }
+
+                public boolean supportsLargeInList() {
+                    return largeInList;
+                }
+
+                public String generateLargeInList(
+                    List<String> exprs,
+                    List<String[]> valueList)
+                {
+                    return generateLargeInListGeneric(exprs, valueList, 2);
+                }
+            };
+        } finally {
+            jdbcConnection.close();
+        }
+    }
 }
 
 // End SqlQueryTest.java
@@ -0,0 +1,93 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.server.monitor;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+/**
+ * Unit test for {@link Histogram}.
+ */
+public class HistogramTest extends TestCase {
+    public HistogramTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Tests that every value falls in a bucket whose range contains it,
+     * and that buckets are no wider than about 3% of their values.
+     */
+    public void testBuckets() {
+        final Random random = new Random(0);
+        for (int i = 0; i < 100000; i++) {
+            final long value =
+                i < 1000
+                    ? i
+                    : (random.nextLong() >>> 1) >>> random.nextInt(62);
+            final int bucket = Histogram.bucket(value);
+            assertTrue(value <= Histogram.upperBound(bucket));
+            if (bucket > 0) {
+                assertTrue(value > Histogram.upperBound(bucket - 1));
+            }
+            if (value >= 64) {
+                final long width =
+                    Histogram.upperBound(bucket)
+                    - Histogram.upperBound(bucket - 1);
+                assertTrue(width <= value / 32 + 1);
+            }
+        }
+        assertEquals(
+            Long.MAX_VALUE,
+            Histogram.upperBound(Histogram.bucket(Long.MAX_VALUE)));
+    }
+
+    /**
+     * Tests count, mean, max and percentiles.
+     */
+    public void testPercentiles() {
+        final Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(0d, histogram.getMean());
+
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(500.5d, histogram.getMean());
+        assertWithin(500, histogram.getValueAtPercentile(50));
+        assertWithin(990, histogram.getValueAtPercentile(99));
+        assertEquals(1000, histogram.getValueAtPercentile(100));
+        assertEquals(1, histogram.getValueAtPercentile(0));
+
+        // Small values are exact.
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        histogram.record(3);
+        histogram.record(7);
+        histogram.record(-5);
+        assertEquals(0, histogram.getValueAtPercentile(10));
+        assertEquals(3, histogram.getValueAtPercentile(50));
+        assertEquals(7, histogram.getValueAtPercentile(90));
+        assertEquals(
+            "count=3, mean=3, p50=3, p90=7, p99=7, max=7",
+            histogram.toString());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(
+            "expected " + expected + ", was " + actual,
+            Math.abs(actual - expected) <= expected / 32 + 1);
+    }
+}
+
+// End HistogramTest.java
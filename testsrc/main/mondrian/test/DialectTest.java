@@ -1057,6 +1057,71 @@ public class DialectTest extends TestCase {
         assertFalse(couldTranslate);
     }
 
+    /**
+     * Tests that the driver accepts the dialect's fetch size, and that a
+     * result set read with that fetch size has all of its rows.
+     */
+    public void testFetchSize() throws SQLException {
+        final Dialect dialect = getDialect();
+        final int fetchSize = dialect.getFetchSize();
+        if (dialect.requiresTransactionForFetchSize()) {
+            assertTrue(fetchSize > 0);
+        }
+        final String sql =
+            "select " + dialect.quoteIdentifier("customer_id")
+            + " from " + dialect.quoteIdentifier("sales_fact_1997");
+        final Connection connection = getDataSource().getConnection();
+        final boolean autoCommit = connection.getAutoCommit();
+        try {
+            if (dialect.requiresTransactionForFetchSize()) {
+                connection.setAutoCommit(false);
+            }
+            final Statement statement = connection.createStatement();
+            statement.setFetchSize(fetchSize);
+            final ResultSet resultSet = statement.executeQuery(sql);
+            int rowCount = 0;
+            while (resultSet.next()) {
+                ++rowCount;
+            }
+            resultSet.close();
+            statement.close();
+            assertEquals(86837, rowCount);
+        } finally {
+            connection.setAutoCommit(autoCommit);
+            connection.close();
+        }
+    }
+
+    /**
+     * Tests that the predicate generated by
+     * {@link Dialect#generateLargeInList} for a list larger than any
+     * database's limit on IN lists is valid, and matches the right rows.
+     */
+    public void testLargeInList() throws SQLException {
+        final Dialect dialect = getDialect();
+        if (!dialect.supportsLargeInList()) {
+            return;
+        }
+        final List<String[]> valueList = new ArrayList<String[]>();
+        for (int i = 0; i < 2500; i++) {
+            // Customer ids are between 1 and 10281. Include each value twice.
+            valueList.add(new String[] {Integer.toString(i % 2000 * 3)});
+        }
+        final String sql =
+            "select count(*) from " + dialect.quoteIdentifier("customer")
+            + " where "
+            + dialect.generateLargeInList(
+                Collections.singletonList(
+                    dialect.quoteIdentifier("customer", "customer_id")),
+                valueList);
+        final ResultSet resultSet =
+            getConnection().createStatement().executeQuery(sql);
+        assertTrue(resultSet.next());
+        // 3, 6, ..., 5997
+        assertEquals(1999, resultSet.getInt(1));
+        resultSet.close();
+    }
+
     /**
      * Translates a regular expression into SQL and executes the query.
      * Returns whether the dialect was able to translate the regex.
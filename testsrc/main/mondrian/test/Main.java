@@ -21,8 +21,12 @@ import mondrian.olap.type.TypeTest;
 import mondrian.rolap.*;
 import mondrian.rolap.agg.*;
 import mondrian.rolap.aggmatcher.*;
+import mondrian.rolap.cache.ConcurrentSmartCacheTest;
+import mondrian.rolap.cache.DiskSegmentCacheTest;
+import mondrian.rolap.cache.OffHeapSegmentCacheTest;
 import mondrian.rolap.sql.SelectNotInGroupByTest;
 import mondrian.rolap.sql.SqlQueryTest;
+import mondrian.server.monitor.HistogramTest;
 import mondrian.test.build.CodeComplianceTest;
 import mondrian.test.clearview.*;
 import mondrian.test.comp.ResultComparatorTest;
@@ -30,7 +34,9 @@ import mondrian.udf.CurrentDateMemberUdfTest;
 import mondrian.udf.NullValueTest;
 import mondrian.util.*;
 import mondrian.xmla.*;
+import mondrian.xmla.impl.DefaultXmlaServletTest;
 import mondrian.xmla.impl.DynamicDatasourceXmlaServletTest;
+import mondrian.xmla.impl.XmlaRequestParserTest;
 import mondrian.xmla.test.XmlaTest;
 
 import junit.framework.Test;
@@ -188,6 +194,7 @@ public class Main extends TestSuite {
                 addTest(suite, SegmentLoaderTest.class); // 2f, 1e as of 13571
                 addTest(suite, AggGenTest.class); // passes
                 addTest(suite, DefaultRuleTest.class); // passes
+                addTest(suite, JdbcSchemaTest.class);
                 addTest(suite, SelectNotInGroupByTest.class);
                 addTest(suite, CVConcurrentMdxTest.class);
                 addTest(suite, CacheHitTest.class);
@@ -218,6 +225,14 @@ public class Main extends TestSuite {
             addTest(suite, ScenarioTest.class);
             addTest(suite, BasicQueryTest.class);
             addTest(suite, SegmentCacheTest.class);
+            addTest(suite, SegmentLoadSchedulerTest.class);
+            addTest(suite, RollupPlannerTest.class);
+            addTest(suite, SegmentBuilderTest.class);
+            addTest(suite, QueryCacheTest.class);
+            addTest(suite, ColumnarMemberReaderTest.class);
+            addTest(suite, OffHeapSegmentCacheTest.class);
+            addTest(suite, ConcurrentSmartCacheTest.class);
+            addTest(suite, DiskSegmentCacheTest.class);
             addTest(suite, CVBasicTest.class, "suite");
             addTest(suite, GrandTotalTest.class, "suite");
             addTest(suite, HangerDimensionTest.class, "suite");
@@ -240,6 +255,7 @@ public class Main extends TestSuite {
             addTest(suite, ScheduleTest.class);
             addTest(suite, UtilTestCase.class);
             addTest(suite, PartiallyOrderedSetTest.class);
+            addTest(suite, HyperLogLogTest.class);
             addTest(suite, ExpiringReferenceTest.class);
             addTest(suite, Olap4jTest.class);
             addTest(suite, SortTest.class);
@@ -265,6 +281,9 @@ public class Main extends TestSuite {
             addTest(suite, XmlaTabularTest.class);
             addTest(suite, XmlaTests.class);
             addTest(suite, DynamicDatasourceXmlaServletTest.class);
+            addTest(suite, XmlaRequestParserTest.class);
+            addTest(suite, DefaultXmlaServletTest.class);
+            addTest(suite, XmlaCompactCellSetTest.class);
             addTest(suite, XmlaTest.class, "suite");
             if (isRunOnce()) {
                 addTest(suite, TestCalculatedMembers.class);
@@ -295,6 +314,7 @@ public class Main extends TestSuite {
             addTest(suite, ModulosTest.class);
             addTest(suite, PrimeFinderTest.class);
             addTest(suite, CellKeyTest.class);
+            addTest(suite, CellInfoContainerTest.class);
             addTest(suite, RolapAxisTest.class);
             addTest(suite, CrossJoinTest.class);
             if (Bug.BugMondrian503Fixed) {
@@ -308,6 +328,8 @@ public class Main extends TestSuite {
             addTest(suite, RolapCubeTest.class);
             addTest(suite, RolapStarTest.class);
             addTest(suite, RolapSchemaPoolTest.class);
+            addTest(suite, RolapSchemaSnapshotTest.class);
+            addTest(suite, SqlStatementTest.class);
             addTest(suite, NullMemberRepresentationTest.class);
             addTest(suite, IgnoreUnrelatedDimensionsTest.class);
             addTest(
@@ -323,6 +345,7 @@ public class Main extends TestSuite {
             addTest(suite, MultipleColsInTupleAggTest.class);
             addTest(suite, DynamicSchemaProcessorTest.class);
             addTest(suite, MonitorTest.class);
+            addTest(suite, HistogramTest.class);
             addTest(suite, CodeComplianceTest.class);
 
             boolean testNonEmpty = isRunOnce();
@@ -10,8 +10,11 @@
 package mondrian.test;
 
 import mondrian.olap.*;
+import mondrian.olap.type.*;
+import mondrian.spi.UserDefinedFunction;
 
-import java.util.Random;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A <code>ParameterTest</code> is a test suite for functionality relating to
@@ -31,6 +34,178 @@ public class ParallelTest extends FoodMartTestCase {
         checkSchemaFlush(5, 8, 10);
     }
 
+    /**
+     * Tests that evaluating the cells of a query in parallel gives the same
+     * result as evaluating them serially.
+     */
+    public void testParallelCellEvaluation() {
+        checkParallelCellEvaluation(
+            "with member [Measures].[Sales Ratio] as\n"
+            + "  '[Measures].[Store Sales] / [Measures].[Unit Sales]'\n"
+            + "select {[Measures].[Unit Sales], [Measures].[Sales Ratio],\n"
+            + "    [Measures].[Customer Count]} on columns,\n"
+            + "  crossjoin([Gender].Members, [Product].[Product Department]"
+            + ".Members) on rows\n"
+            + "from [Sales]\n"
+            + "where [Time].[1997].[Q1]");
+    }
+
+    /**
+     * Tests parallel evaluation of a query whose cell requests exceed the
+     * batch size, so that the tasks stop early and the cells are evaluated
+     * again after each batch is loaded.
+     */
+    public void testParallelCellEvaluationQuantumExceeded() {
+        propSaver.set(propSaver.properties.CellBatchSize, 7);
+        checkParallelCellEvaluation(
+            "select {[Measures].[Unit Sales], [Measures].[Store Cost],\n"
+            + "    [Measures].[Customer Count]} on columns,\n"
+            + "  crossjoin([Gender].Members, [Product].[Product Category]"
+            + ".Members) on rows\n"
+            + "from [Sales]");
+    }
+
+    /**
+     * Tests that an error in one of the tasks that evaluate cells in
+     * parallel fails the query, that the other tasks have stopped by the
+     * time the error reaches the caller, and that later queries succeed.
+     */
+    public void testParallelCellEvaluationError() {
+        final TestContext testContext = createStripeTestContext();
+        final String query =
+            "with member [Measures].[Foo] as\n"
+            + "  'ParallelFail([Product].CurrentMember.Name)'\n"
+            + "select {[Measures].[Foo]} on columns,\n"
+            + "  crossjoin([Gender].Members, [Product].[Product Department]"
+            + ".Members) on rows\n"
+            + "from [Sales]";
+        final String okQuery = query.replace("ParallelFail", "ParallelSleep");
+        final String expected =
+            TestContext.toString(testContext.executeQuery(okQuery));
+
+        propSaver.set(propSaver.properties.CellEvaluationThreads, 4);
+        propSaver.set(
+            propSaver.properties.CellEvaluationParallelThreshold, 0);
+        testContext.assertQueryThrows(query, "failed for Beverages");
+        assertEquals(0, StripeUdf.ACTIVE.get());
+        assertEquals(
+            expected, TestContext.toString(testContext.executeQuery(okQuery)));
+    }
+
+    /**
+     * Tests that a query whose cells are evaluated in parallel times out,
+     * and that the tasks evaluating its cells have stopped by the time the
+     * timeout reaches the caller.
+     */
+    public void testParallelCellEvaluationTimeout() {
+        final TestContext testContext = createStripeTestContext();
+        propSaver.set(propSaver.properties.CellEvaluationThreads, 4);
+        propSaver.set(
+            propSaver.properties.CellEvaluationParallelThreshold, 0);
+        propSaver.set(propSaver.properties.QueryTimeout, 1);
+        // About 20,000 cells, each of which sleeps 1 ms in every phase; 4
+        // threads take several seconds.
+        testContext.assertQueryThrows(
+            "with member [Measures].[Foo] as\n"
+            + "  'ParallelSleep([Product].CurrentMember.Name)'\n"
+            + "select {[Measures].[Foo]} on columns,\n"
+            + "  crossjoin([Product].Members,\n"
+            + "    crossjoin([Gender].Members, [Marital Status].Members))\n"
+            + "  on rows\n"
+            + "from [Sales]",
+            "Query timeout of 1 seconds reached");
+        assertEquals(0, StripeUdf.ACTIVE.get());
+    }
+
+    /**
+     * Executes a query serially, then in parallel with a cold cache and with
+     * a warm cache, and checks that the results are the same.
+     *
+     * @param query MDX query
+     */
+    private void checkParallelCellEvaluation(String query) {
+        final String expected =
+            TestContext.toString(executeQuery(query));
+
+        getConnection().getCacheControl(null).flushSchemaCache();
+        propSaver.set(propSaver.properties.CellEvaluationThreads, 4);
+        propSaver.set(
+            propSaver.properties.CellEvaluationParallelThreshold, 0);
+        assertEquals(expected, TestContext.toString(executeQuery(query)));
+
+        // Again, with a warm cache.
+        assertEquals(expected, TestContext.toString(executeQuery(query)));
+    }
+
+    private TestContext createStripeTestContext() {
+        return TestContext.instance().create(
+            null, null, null, null,
+            "<UserDefinedFunction name=\"ParallelSleep\" className=\""
+            + StripeUdf.class.getName()
+            + "\"/>\n"
+            + "<UserDefinedFunction name=\"ParallelFail\" className=\""
+            + StripeUdf.class.getName()
+            + "\"/>\n",
+            null);
+    }
+
+    /**
+     * Tests that threads reading the same members at the same time, with a
+     * member cache small enough to evict, see the same member objects.
+     */
+    public void testParallelMemberReads() {
+        propSaver.set(propSaver.properties.MemberCacheSize, 10);
+        final TestContext testContext = getTestContext().withFreshConnection();
+        final String query =
+            "select {[Measures].[Unit Sales]} on columns,\n"
+            + "  {[Customers].[USA].[CA].Children,\n"
+            + "   [Customers].[USA].[OR].Children} on rows\n"
+            + "from [Sales]";
+        final int count = 8;
+        final List<List<Member>> memberLists =
+            Collections.synchronizedList(new ArrayList<List<Member>>());
+        final Worker[] workers = new Worker[count];
+        final Thread[] threads = new Thread[count];
+        for (int i = 0; i < count; i++) {
+            workers[i] = new Worker() {
+                public void runSafe() {
+                    final Result result = testContext.executeQuery(query);
+                    final List<Member> members = new ArrayList<Member>();
+                    for (Position position
+                        : result.getAxes()[1].getPositions())
+                    {
+                        members.add(position.get(0));
+                    }
+                    memberLists.add(members);
+                }
+            };
+            threads[i] = new Thread(workers[i]);
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (int i = 0; i < count; i++) {
+            try {
+                threads[i].join();
+            } catch (InterruptedException e) {
+                throw Util.newInternal(e, "while joining thread #" + i);
+            }
+            if (workers[i].throwable != null) {
+                throw Util.newInternal(
+                    workers[i].throwable, "in thread #" + i);
+            }
+        }
+        assertEquals(count, memberLists.size());
+        final List<Member> first = memberLists.get(0);
+        assertTrue(first.size() > 10);
+        for (List<Member> members : memberLists) {
+            assertEquals(first.size(), members.size());
+            for (int i = 0; i < first.size(); i++) {
+                assertSame(first.get(i), members.get(i));
+            }
+        }
+    }
+
     /**
      * Tests several threads, each of which is creating connections and
      * periodically flushing the schema cache.
@@ -106,6 +281,64 @@ public class ParallelTest extends FoodMartTestCase {
 
         public abstract void runSafe();
     }
+
+    /**
+     * User-defined function that sleeps for 1 millisecond and returns 1.
+     * As "ParallelFail", throws an error if its argument is "Beverages".
+     * Counts how many calls are in progress, so that tests can check that
+     * no task is still evaluating cells.
+     */
+    public static class StripeUdf implements UserDefinedFunction {
+        static final AtomicInteger ACTIVE = new AtomicInteger();
+
+        private final String name;
+
+        public StripeUdf(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDescription() {
+            return "Sleeps 1 ms and returns 1";
+        }
+
+        public Syntax getSyntax() {
+            return Syntax.Function;
+        }
+
+        public Type getReturnType(Type[] parameterTypes) {
+            return new NumericType();
+        }
+
+        public Type[] getParameterTypes() {
+            return new Type[] {new StringType()};
+        }
+
+        public Object execute(Evaluator evaluator, Argument[] arguments) {
+            final Object argValue = arguments[0].evaluateScalar(evaluator);
+            ACTIVE.incrementAndGet();
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                return null;
+            } finally {
+                ACTIVE.decrementAndGet();
+            }
+            if (name.equals("ParallelFail") && "Beverages".equals(argValue)) {
+                // An Error, because the evaluator turns exceptions into
+                // cell errors.
+                throw new Error(name + " failed for " + argValue);
+            }
+            return 1;
+        }
+
+        public String[] getReservedWords() {
+            return null;
+        }
+    }
 }
 
 // End ParallelTest.java
@@ -12,6 +12,13 @@ package mondrian.test;
 import mondrian.olap.*;
 import mondrian.olap.fun.FunUtil;
 import mondrian.olap.type.*;
+import mondrian.rolap.*;
+import mondrian.rolap.agg.SegmentCacheManager;
+import mondrian.rolap.cache.SegmentCacheIndex;
+import mondrian.server.Execution;
+import mondrian.server.Locus;
+import mondrian.spi.SegmentColumn;
+import mondrian.spi.SegmentHeader;
 import mondrian.spi.UserDefinedFunction;
 import mondrian.util.Bug;
 
@@ -771,6 +778,380 @@ public class PerformanceTest extends FoodMartTestCase {
         }
     }
 
+    /**
+     * Measures the throughput of the segment cache manager's actors when
+     * several query threads look up segments of several stars.
+     *
+     * <p>First runs queries against four cubes of the FoodMart schema, so
+     * that the cache holds real segments for four stars. Then, for each
+     * number of actors, creates a cache manager, adds those segment headers
+     * to its indexes, and for {@code starCount} stars (N) and
+     * {@code threadCount} threads (M) has each thread send
+     * {@code lookupCount} pairs of commands: a locate for a cell of a
+     * segment, and a search for rollup candidates for the same cell with one
+     * fewer column, as a query does when it starts. Throughput is logged at
+     * debug level for each combination of actors, N and M. With one actor,
+     * all requests contend for the same thread; with more, requests for
+     * different stars are processed concurrently.</p>
+     */
+    public void testSegmentCacheManagerContention() throws Exception {
+        final int lookupCount = LOGGER.isDebugEnabled() ? 10000 : 100;
+        final RolapConnection connection =
+            (RolapConnection) getConnection();
+        final MondrianServer server = MondrianServer.forConnection(connection);
+        final Map<RolapStar, List<SegmentHeader>> headerMap =
+            loadSegments(connection);
+        final List<RolapStar> stars =
+            new ArrayList<RolapStar>(headerMap.keySet());
+        assertTrue(stars.size() > 1);
+        final Map<RolapStar, List<Lookup>> lookupMap =
+            new HashMap<RolapStar, List<Lookup>>();
+        for (RolapStar star : stars) {
+            final List<Lookup> lookups = new ArrayList<Lookup>();
+            for (SegmentHeader header : headerMap.get(star)) {
+                lookups.add(new Lookup(star, header));
+            }
+            lookupMap.put(star, lookups);
+        }
+        final Locus locus =
+            new Locus(
+                new Execution(connection.getInternalStatement(), 0),
+                getName(),
+                null);
+        for (int actorCount : new int[] {1, 4}) {
+            propSaver.set(
+                propSaver.properties.SegmentCacheManagerNumberActors,
+                actorCount);
+            final SegmentCacheManager cacheMgr =
+                new SegmentCacheManager(server);
+            try {
+                for (RolapStar star : stars) {
+                    cacheMgr.execute(
+                        star,
+                        new AddCommand(
+                            cacheMgr, locus, star, headerMap.get(star)));
+                }
+                for (int starCount : new int[] {1, 2, 4}) {
+                    if (starCount > stars.size()) {
+                        continue;
+                    }
+                    for (int threadCount : new int[] {1, 4, 16}) {
+                        checkSegmentCacheManagerContention(
+                            cacheMgr, locus, stars.subList(0, starCount),
+                            lookupMap, threadCount, lookupCount);
+                    }
+                }
+            } finally {
+                cacheMgr.shutdown();
+            }
+        }
+    }
+
+    private void checkSegmentCacheManagerContention(
+        final SegmentCacheManager cacheMgr,
+        final Locus locus,
+        final List<RolapStar> stars,
+        final Map<RolapStar, List<Lookup>> lookupMap,
+        int threadCount,
+        final int lookupCount)
+        throws InterruptedException
+    {
+        final long start = System.currentTimeMillis();
+        final List<Thread> threads = new ArrayList<Thread>();
+        final AtomicInteger failureCount = new AtomicInteger();
+        final AtomicInteger hitCount = new AtomicInteger();
+        for (int i = 0; i < threadCount; i++) {
+            final int threadOrdinal = i;
+            final Thread thread = new Thread(
+                new Runnable() {
+                    public void run() {
+                        try {
+                            int hits = 0;
+                            for (int j = 0; j < lookupCount; j++) {
+                                final RolapStar star =
+                                    stars.get(
+                                        (threadOrdinal + j) % stars.size());
+                                final List<Lookup> lookups =
+                                    lookupMap.get(star);
+                                final Lookup lookup =
+                                    lookups.get(j % lookups.size());
+                                final List<SegmentHeader> headers =
+                                    cacheMgr.execute(
+                                        star,
+                                        new LocateCommand(
+                                            cacheMgr, locus, lookup));
+                                if (!headers.isEmpty()) {
+                                    ++hits;
+                                }
+                                cacheMgr.execute(
+                                    star,
+                                    new RollupCommand(
+                                        cacheMgr, locus, lookup));
+                            }
+                            hitCount.addAndGet(hits);
+                        } catch (Throwable e) {
+                            failureCount.incrementAndGet();
+                            LOGGER.error(e);
+                        }
+                    }
+                });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, failureCount.get());
+        // Every cell was taken from a segment, so every locate finds it.
+        assertEquals(threadCount * lookupCount, hitCount.get());
+        final long duration = printDuration(
+            "segment cache manager, " + cacheMgr.getActorCount() + " actors, "
+            + stars.size() + " stars, " + threadCount + " threads",
+            start);
+        LOGGER.debug(
+            "throughput: "
+            + (threadCount * lookupCount * 1000L / Math.max(duration, 1))
+            + " lookups/sec");
+    }
+
+    /**
+     * Runs queries against the Sales, Warehouse, Store and HR cubes, each of
+     * which has its own star, and returns the segment headers that are then
+     * in the cache, grouped by star.
+     */
+    private Map<RolapStar, List<SegmentHeader>> loadSegments(
+        RolapConnection connection)
+    {
+        final String[] queries = {
+            "select [Measures].Members on 0,\n"
+            + " [Gender].Members * [Marital Status].Members on 1\n"
+            + "from [Sales]",
+            "select [Measures].Members on 0,\n"
+            + " [Time].[1997].Children * [Product].[Product Family].Members\n"
+            + " on 1\n"
+            + "from [Sales]",
+            "select [Measures].Members on 0,\n"
+            + " [Store].[Store State].Members * [Promotion Media].Members\n"
+            + " on 1\n"
+            + "from [Sales]",
+            "select [Measures].Members on 0,\n"
+            + " [Warehouse].[Country].Members * [Time].[1997].Children on 1\n"
+            + "from [Warehouse]",
+            "select [Measures].Members on 0,\n"
+            + " [Product].[Product Family].Members on 1\n"
+            + "from [Warehouse]",
+            "select [Measures].Members on 0,\n"
+            + " [Store Type].Members * [Has coffee bar].Members on 1\n"
+            + "from [Store]",
+            "select [Measures].Members on 0,\n"
+            + " [Store].[Store State].Members on 1\n"
+            + "from [Store]",
+            "select [Measures].Members on 0,\n"
+            + " [Position].Members * [Time].[1997].Children on 1\n"
+            + "from [HR]",
+            "select [Measures].Members on 0,\n"
+            + " [Department].Members on 1\n"
+            + "from [HR]",
+        };
+        for (String query : queries) {
+            executeQuery(query);
+        }
+        final RolapSchema schema = connection.getSchema();
+        final Map<RolapStar, List<SegmentHeader>> headerMap =
+            new LinkedHashMap<RolapStar, List<SegmentHeader>>();
+        for (SegmentHeader header
+            : connection.getServer().getAggregationManager().cacheMgr
+                .compositeCache.getSegmentHeaders())
+        {
+            // Skip segments of other schemas, and segments that have been
+            // partially flushed by other tests.
+            if (!header.schemaChecksum.equals(schema.getChecksum())
+                || !header.getExcludedRegions().isEmpty())
+            {
+                continue;
+            }
+            final RolapStar star =
+                schema.getStar(header.rolapStarFactTableName);
+            if (star == null) {
+                continue;
+            }
+            List<SegmentHeader> headers = headerMap.get(star);
+            if (headers == null) {
+                headers = new ArrayList<SegmentHeader>();
+                headerMap.put(star, headers);
+            }
+            headers.add(header);
+        }
+        return headerMap;
+    }
+
+    /**
+     * Cell of a segment, and the arguments with which to look it up in the
+     * index of its star.
+     */
+    private static class Lookup {
+        final RolapStar star;
+        final SegmentHeader header;
+        final Map<String, Comparable> coordinates =
+            new HashMap<String, Comparable>();
+        final BitKey rollupBitKey;
+        final Map<String, Comparable> rollupCoordinates;
+
+        /**
+         * Creates a Lookup for the first cell of a segment. The rollup
+         * lookup asks for the same cell, aggregated over the segment's last
+         * column.
+         *
+         * @param star Star
+         * @param header Segment header
+         */
+        Lookup(RolapStar star, SegmentHeader header) {
+            this.star = star;
+            this.header = header;
+            final BitKey bitKey = header.getConstrainedColumnsBitKey();
+            String lastColumn = null;
+            int lastBit = -1;
+            for (int bit = bitKey.nextSetBit(0);
+                 bit >= 0;
+                 bit = bitKey.nextSetBit(bit + 1))
+            {
+                lastBit = bit;
+                lastColumn =
+                    star.getColumn(bit).getExpression().getGenericExpression();
+                final SegmentColumn column =
+                    header.getConstrainedColumn(lastColumn);
+                final SortedSet<Comparable> values = column.getValues();
+                if (values != null && !values.isEmpty()) {
+                    coordinates.put(lastColumn, values.first());
+                }
+            }
+            rollupBitKey = bitKey.copy();
+            rollupCoordinates = new HashMap<String, Comparable>(coordinates);
+            if (lastBit >= 0) {
+                rollupBitKey.clear(lastBit);
+                rollupCoordinates.remove(lastColumn);
+            }
+        }
+    }
+
+    /**
+     * Command that adds segment headers to the index of a star, as if the
+     * segments had been loaded.
+     */
+    private static class AddCommand
+        implements SegmentCacheManager.Command<Void>
+    {
+        private final SegmentCacheManager cacheMgr;
+        private final Locus locus;
+        private final RolapStar star;
+        private final List<SegmentHeader> headers;
+
+        AddCommand(
+            SegmentCacheManager cacheMgr,
+            Locus locus,
+            RolapStar star,
+            List<SegmentHeader> headers)
+        {
+            this.cacheMgr = cacheMgr;
+            this.locus = locus;
+            this.star = star;
+            this.headers = headers;
+        }
+
+        public Void call() {
+            final SegmentCacheIndex index =
+                cacheMgr.getIndexRegistry().getIndex(star);
+            for (SegmentHeader header : headers) {
+                index.add(header, false, null);
+            }
+            return null;
+        }
+
+        public Locus getLocus() {
+            return locus;
+        }
+    }
+
+    /**
+     * Command that looks up the segments that contain a cell, as
+     * {@link SegmentCacheManager#peek} does when a query starts.
+     */
+    private static class LocateCommand
+        implements SegmentCacheManager.Command<List<SegmentHeader>>
+    {
+        private final SegmentCacheManager cacheMgr;
+        private final Locus locus;
+        private final Lookup lookup;
+
+        LocateCommand(
+            SegmentCacheManager cacheMgr,
+            Locus locus,
+            Lookup lookup)
+        {
+            this.cacheMgr = cacheMgr;
+            this.locus = locus;
+            this.lookup = lookup;
+        }
+
+        public List<SegmentHeader> call() {
+            final SegmentHeader header = lookup.header;
+            return cacheMgr.getIndexRegistry().getIndex(lookup.star).locate(
+                header.schemaName,
+                header.schemaChecksum,
+                header.cubeName,
+                header.measureName,
+                header.rolapStarFactTableName,
+                header.getConstrainedColumnsBitKey(),
+                lookup.coordinates,
+                header.compoundPredicates);
+        }
+
+        public Locus getLocus() {
+            return locus;
+        }
+    }
+
+    /**
+     * Command that looks for segments that can be rolled up to a cell, as
+     * {@link FastBatchingCellReader} does for a cell that is not in any
+     * segment.
+     */
+    private static class RollupCommand
+        implements SegmentCacheManager.Command<List<List<SegmentHeader>>>
+    {
+        private final SegmentCacheManager cacheMgr;
+        private final Locus locus;
+        private final Lookup lookup;
+
+        RollupCommand(
+            SegmentCacheManager cacheMgr,
+            Locus locus,
+            Lookup lookup)
+        {
+            this.cacheMgr = cacheMgr;
+            this.locus = locus;
+            this.lookup = lookup;
+        }
+
+        public List<List<SegmentHeader>> call() {
+            final SegmentHeader header = lookup.header;
+            return cacheMgr.getIndexRegistry().getIndex(lookup.star)
+                .findRollupCandidates(
+                    header.schemaName,
+                    header.schemaChecksum,
+                    header.cubeName,
+                    header.measureName,
+                    header.rolapStarFactTableName,
+                    lookup.rollupBitKey,
+                    lookup.rollupCoordinates,
+                    header.compoundPredicates);
+        }
+
+        public Locus getLocus() {
+            return locus;
+        }
+    }
+
     /**
      * Collects statistics for a test that is run multiple times.
      */
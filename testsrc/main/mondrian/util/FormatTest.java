@@ -625,6 +625,45 @@ public class FormatTest extends TestCase {
             assertEquals(i + ".", s);
             buf.append("#");
         }
+        assertSame(
+            Format.get("#,##0.00", Locale.GERMANY),
+            Format.get("#,##0.00", Locale.GERMANY));
+        assertNotSame(
+            Format.get("#,##0.00", Locale.GERMANY),
+            Format.get("#,##0.00", null));
+    }
+
+    /**
+     * Tests {@link Format#format(double[])} and
+     * {@link Format#format(Object, StringBuilder)}, and that formatting
+     * a value does not affect the next value formatted by the same thread.
+     */
+    public void testBulk() {
+        final Format format = Format.get("#,##0.00", null);
+        final double[] values = {
+            1234.5, -0.001, 1e7, 999999.995, 0, -1234567.891
+        };
+        assertEquals(
+            "[1,234.50, 0.00, 10,000,000.00, 1,000,000.00, 0.00, "
+            + "-1,234,567.89]",
+            Arrays.toString(format.format(values)));
+
+        final StringBuilder buf = new StringBuilder("x=");
+        assertSame(buf, format.format(12345.678, buf));
+        format.format(null, buf.append(", y="));
+        Format.get("#,##,###", null).format(1234567, buf.append(", z="));
+        assertEquals("x=12,345.68, y=, z=12,34,567", buf.toString());
+    }
+
+    /**
+     * Tests an exponent that ends in zero. Previously the trailing zero was
+     * printed as a NUL character.
+     */
+    public void testExponentTrailingZero() {
+        checkFormat(null, 1.5e10, "0.00E+00", "1.50E+10");
+        checkFormat(null, 2.5e-20, "0.00E+00", "2.50E-20");
+        checkFormat(null, 4e100, "0.0E+0", "4.0E+100");
+        checkFormat(null, 12345, "0.00E+00", "1.23E+04");
     }
 
     public void testString() {
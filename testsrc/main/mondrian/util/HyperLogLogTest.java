@@ -0,0 +1,151 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.util;
+
+import junit.framework.TestCase;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Unit test for {@link HyperLogLog}.
+ */
+public class HyperLogLogTest extends TestCase {
+    public HyperLogLogTest(String name) {
+        super(name);
+    }
+
+    public void testPrecisionForError() {
+        assertEquals(12, HyperLogLog.precisionForError(0.02d));
+        assertEquals(11, HyperLogLog.precisionForError(0.025d));
+        assertEquals(HyperLogLog.MIN_PRECISION,
+            HyperLogLog.precisionForError(1d));
+        assertEquals(HyperLogLog.MAX_PRECISION,
+            HyperLogLog.precisionForError(0.0001d));
+    }
+
+    /**
+     * Tests that the estimate is within a few standard errors of the true
+     * count, for small and large collections.
+     */
+    public void testEstimate() {
+        final int precision = 12;
+        final double error = 1.04d / Math.sqrt(1 << precision);
+        for (int n : new int[] {0, 1, 10, 100, 1000, 10000, 200000}) {
+            final HyperLogLog hll = new HyperLogLog(precision);
+            for (int i = 0; i < n; i++) {
+                hll.add(i);
+                // Duplicates do not change the estimate.
+                hll.add((long) i);
+            }
+            assertWithin(n, hll.estimate(), 4 * error);
+        }
+    }
+
+    /**
+     * Tests that values of different types hash the same if they are equal
+     * as numbers or strings.
+     */
+    public void testNormalize() {
+        final HyperLogLog hll = new HyperLogLog(10);
+        hll.add(7);
+        hll.add(7L);
+        hll.add(7d);
+        hll.add(new java.math.BigDecimal("7.000"));
+        hll.add((short) 7);
+        hll.add(null);
+        assertEquals(1, hll.estimate());
+        hll.add("abc");
+        hll.add(new StringBuilder("abc"));
+        hll.add(7.5d);
+        assertEquals(3, hll.estimate());
+    }
+
+    /**
+     * Tests that merging sketches is the same as adding all values to one
+     * sketch, and that {@link HyperLogLog#union} does not modify its
+     * arguments.
+     */
+    public void testUnion() {
+        final HyperLogLog a = new HyperLogLog(12);
+        final HyperLogLog b = new HyperLogLog(12);
+        final HyperLogLog all = new HyperLogLog(12);
+        for (int i = 0; i < 30000; i++) {
+            (i % 3 == 0 ? a : b).add("v" + (i % 20000));
+            all.add("v" + (i % 20000));
+        }
+        final long aEstimate = a.estimate();
+        final HyperLogLog union = HyperLogLog.union(Arrays.asList(a, b));
+        assertEquals(all, union);
+        assertEquals(all.estimate(), union.estimate());
+        assertEquals(aEstimate, a.estimate());
+        assertNull(HyperLogLog.union(Arrays.asList()));
+    }
+
+    /**
+     * Tests that a sketch folded to a lower precision is the same as if the
+     * values had been added at that precision.
+     */
+    public void testUnionMixedPrecision() {
+        final HyperLogLog low = new HyperLogLog(8);
+        final HyperLogLog high = new HyperLogLog(14);
+        final HyperLogLog expected = new HyperLogLog(8);
+        for (int i = 0; i < 5000; i++) {
+            (i % 2 == 0 ? low : high).add(i);
+            expected.add(i);
+        }
+        final HyperLogLog union = HyperLogLog.union(Arrays.asList(high, low));
+        assertEquals(8, union.getPrecision());
+        assertEquals(expected, union);
+        try {
+            low.merge(high);
+            high.merge(low);
+            fail("expected error");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    /**
+     * Tests that a sparse sketch is small, and that a sketch survives
+     * serialization.
+     */
+    public void testSerialize() throws Exception {
+        final HyperLogLog hll = new HyperLogLog(16);
+        for (int i = 0; i < 10; i++) {
+            hll.add(i);
+        }
+        assertTrue(hll.getBytes() < 100);
+        for (int i = 0; i < 100000; i++) {
+            hll.add(i);
+        }
+        assertEquals(1 << 16, hll.getBytes());
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(hll);
+        out.close();
+        final Object o =
+            new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        assertEquals(hll, o);
+        assertEquals(hll.estimate(), ((HyperLogLog) o).estimate());
+    }
+
+    private static void assertWithin(
+        long expected, long actual, double relativeError)
+    {
+        assertTrue(
+            "expected " + expected + ", was " + actual,
+            Math.abs(actual - expected) <= expected * relativeError + 1);
+    }
+}
+
+// End HyperLogLogTest.java
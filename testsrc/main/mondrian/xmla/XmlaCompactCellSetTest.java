@@ -0,0 +1,353 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.xmla;
+
+import mondrian.olap.Util;
+import mondrian.rolap.RolapConnectionProperties;
+import mondrian.test.FoodMartTestCase;
+import mondrian.tui.XmlUtil;
+import mondrian.tui.XmlaSupport;
+
+import org.w3c.dom.*;
+
+import java.util.*;
+import javax.servlet.Servlet;
+
+/**
+ * Tests the compact format of a cell set returned by an XMLA "Execute"
+ * request (the "CompactCellSet" property), by decoding it and comparing it
+ * with the same cell set in the standard format.
+ */
+public class XmlaCompactCellSetTest extends FoodMartTestCase {
+    public XmlaCompactCellSetTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Tests an axis whose tuples repeat members, and cells whose format
+     * strings alternate, so that there are several runs of format strings.
+     */
+    public void testRepeatedMembers() throws Exception {
+        assertRoundTrip(
+            "select [Gender].Members\n"
+            + "  * {[Store].[USA], [Store].[USA].[CA], [Store].[USA].[OR]}\n"
+            + "  * {[Measures].[Unit Sales], [Measures].[Store Sales]}"
+            + " on 0\n"
+            + "from [Sales]",
+            1);
+    }
+
+    /**
+     * Tests a cell set large enough to have several blocks, some of whose
+     * cells are null, and whose last blocks are all null, and so omitted.
+     */
+    public void testNullBlocks() throws Exception {
+        assertRoundTrip(
+            "select [Product].[Product Name].Members on 0,\n"
+            + "  {[Time].[1997].[Q1], [Time].[1998].[Q1]} on 1\n"
+            + "from [Sales]",
+            2);
+    }
+
+    /**
+     * Tests a block whose values are not all of the same numeric type, so
+     * that each value is written with its own type.
+     */
+    public void testMixedValueTypes() throws Exception {
+        assertRoundTrip(
+            "with member [Measures].[Size] as\n"
+            + "  'IIf([Measures].[Unit Sales] > 30000, \"big\", \"small\")'\n"
+            + "select {[Measures].[Unit Sales], [Measures].[Size]} on 0,\n"
+            + "  [Product].[Product Family].Members on 1\n"
+            + "from [Sales]",
+            1);
+    }
+
+    /**
+     * Executes a query in the standard and compact formats, and checks
+     * that the two cell sets have the same axes and cells.
+     *
+     * @param mdx MDX query
+     * @param expectedBlockCount Number of blocks of cell data expected in
+     *   the compact format
+     */
+    private void assertRoundTrip(String mdx, int expectedBlockCount)
+        throws Exception
+    {
+        final Servlet servlet = makeServlet();
+        final Element standard;
+        final Element compact;
+        try {
+            standard = execute(servlet, mdx, false);
+            compact = execute(servlet, mdx, true);
+        } finally {
+            servlet.destroy();
+        }
+
+        final List<Element> standardAxes =
+            children(child(standard, "Axes"), "Axis");
+        final List<Element> compactAxes =
+            children(child(compact, "Axes"), "Axis");
+        assertEquals(standardAxes.size(), compactAxes.size());
+        for (int i = 0; i < standardAxes.size(); i++) {
+            final Element compactAxis = compactAxes.get(i);
+            assertEquals(
+                standardAxes.get(i).getAttribute("name"),
+                compactAxis.getAttribute("name"));
+            if (!compactAxis.getAttribute("name").equals("SlicerAxis")) {
+                assertNotNull(child(compactAxis, "Members"));
+            }
+            assertEquals(
+                decodeAxis(standardAxes.get(i)),
+                decodeAxis(compactAxis));
+        }
+
+        final Element compactCellData = child(compact, "CellData");
+        assertEquals(
+            expectedBlockCount,
+            children(compactCellData, "Block").size());
+        final Map<Integer, String> standardCells =
+            decodeCells(child(standard, "CellData"));
+        assertFalse(standardCells.isEmpty());
+        assertEquals(standardCells, decodeCells(compactCellData));
+    }
+
+    private Servlet makeServlet() throws Exception {
+        final String connectString = getTestContext().getConnectString();
+        final String catalog =
+            Util.parseConnectString(connectString).get(
+                RolapConnectionProperties.Catalog.name());
+        return XmlaSupport.makeServlet(
+            connectString,
+            Collections.singletonMap("FoodMart", catalog),
+            Collections.<String, String>emptyMap());
+    }
+
+    /**
+     * Executes a query and returns the "root" element of the response.
+     */
+    private static Element execute(
+        Servlet servlet,
+        String mdx,
+        boolean compact)
+        throws Exception
+    {
+        final String request =
+            "<SOAP-ENV:Envelope"
+            + " xmlns:SOAP-ENV=\"http://schemas.xmlsoap.org/soap/envelope/\">\n"
+            + "<SOAP-ENV:Body>\n"
+            + "<Execute xmlns=\"urn:schemas-microsoft-com:xml-analysis\">\n"
+            + "<Command><Statement>"
+            + mdx.replace("&", "&amp;").replace("<", "&lt;")
+            + "</Statement></Command>\n"
+            + "<Properties><PropertyList>\n"
+            + "<DataSourceInfo>" + XmlaSupport.DATASOURCE_INFO
+            + "</DataSourceInfo>\n"
+            + "<Catalog>" + XmlaSupport.CATALOG_NAME + "</Catalog>\n"
+            + "<Format>Multidimensional</Format>\n"
+            + "<AxisFormat>TupleFormat</AxisFormat>\n"
+            + (compact ? "<CompactCellSet>true</CompactCellSet>\n" : "")
+            + "</PropertyList></Properties>\n"
+            + "</Execute>\n"
+            + "</SOAP-ENV:Body>\n"
+            + "</SOAP-ENV:Envelope>";
+        final byte[] bytes = XmlaSupport.processSoapXmla(request, servlet);
+        final Document doc = XmlUtil.parse(bytes);
+        final NodeList roots = doc.getElementsByTagName("root");
+        assertEquals(new String(bytes, "UTF-8"), 1, roots.getLength());
+        return (Element) roots.item(0);
+    }
+
+    /**
+     * Decodes an axis, in standard or compact format, into a list of
+     * tuples. Each tuple is a list of members, and each member is a sorted
+     * map of its hierarchy and properties.
+     */
+    private static List<List<Map<String, String>>> decodeAxis(Element axis) {
+        final List<List<Map<String, String>>> tuples =
+            new ArrayList<List<Map<String, String>>>();
+        final Element tuplesElement = child(axis, "Tuples");
+        final Element membersElement = child(axis, "Members");
+        if (membersElement == null) {
+            for (Element tuple : children(tuplesElement, "Tuple")) {
+                final List<Map<String, String>> members =
+                    new ArrayList<Map<String, String>>();
+                for (Element member : children(tuple, "Member")) {
+                    members.add(decodeMember(member));
+                }
+                tuples.add(members);
+            }
+            return tuples;
+        }
+        final List<Element> dictionary =
+            children(membersElement, "Member");
+        for (Element tuple : children(tuplesElement, "T")) {
+            final String[] ordinals = text(tuple).split(" ");
+            final String[] displayInfos =
+                tuple.getAttribute("DisplayInfo").split(" ");
+            final List<Map<String, String>> members =
+                new ArrayList<Map<String, String>>();
+            for (int i = 0; i < ordinals.length; i++) {
+                final Map<String, String> member =
+                    decodeMember(
+                        dictionary.get(Integer.parseInt(ordinals[i])));
+                assertNull(member.put("DisplayInfo", displayInfos[i]));
+                members.add(member);
+            }
+            tuples.add(members);
+        }
+        return tuples;
+    }
+
+    private static Map<String, String> decodeMember(Element member) {
+        final Map<String, String> map = new TreeMap<String, String>();
+        map.put("Hierarchy", member.getAttribute("Hierarchy"));
+        for (Element property : children(member, null)) {
+            map.put(localName(property), text(property));
+        }
+        return map;
+    }
+
+    /**
+     * Decodes cell data, in standard or compact format, into a map from
+     * cell ordinal to a description of the cell's value, formatted value
+     * and format string. Cells without a value are ignored.
+     */
+    private static Map<Integer, String> decodeCells(Element cellData) {
+        final Map<Integer, String> cells = new TreeMap<Integer, String>();
+        final List<Element> blocks = children(cellData, "Block");
+        if (blocks.isEmpty()) {
+            for (Element cell : children(cellData, "Cell")) {
+                final Element value = child(cell, "Value");
+                if (value == null) {
+                    continue;
+                }
+                cells.put(
+                    Integer.valueOf(cell.getAttribute("CellOrdinal")),
+                    describe(
+                        value.getAttribute("xsi:type"),
+                        text(value),
+                        text(child(cell, "FmtValue")),
+                        text(child(cell, "FormatString"))));
+            }
+            return cells;
+        }
+        for (Element block : blocks) {
+            final int start = Integer.parseInt(block.getAttribute("Start"));
+            final int count = Integer.parseInt(block.getAttribute("Count"));
+            final List<Integer> offsets = new ArrayList<Integer>();
+            final Element ordinals = child(block, "Ordinals");
+            if (ordinals == null) {
+                for (int i = 0; i < count; i++) {
+                    offsets.add(i);
+                }
+            } else {
+                for (String s : text(ordinals).split(" ")) {
+                    offsets.add(Integer.valueOf(s));
+                }
+            }
+
+            final List<String> types = new ArrayList<String>();
+            final List<String> values = new ArrayList<String>();
+            final Element value = child(block, "Value");
+            final List<Element> vs = children(value, "V");
+            if (vs.isEmpty()) {
+                for (String s : text(value).split(" ")) {
+                    types.add(value.getAttribute("xsi:type"));
+                    values.add(s);
+                }
+            } else {
+                for (Element v : vs) {
+                    types.add(v.getAttribute("xsi:type"));
+                    values.add(text(v));
+                }
+            }
+
+            final List<String> fmtValues = new ArrayList<String>();
+            for (Element f : children(child(block, "FmtValue"), "F")) {
+                fmtValues.add(f.hasChildNodes() ? text(f) : null);
+            }
+
+            final List<String> formatStrings = new ArrayList<String>();
+            for (Element r
+                : children(child(block, "FormatString"), "R"))
+            {
+                final int runCount =
+                    Integer.parseInt(r.getAttribute("Count"));
+                for (int i = 0; i < runCount; i++) {
+                    formatStrings.add(r.hasChildNodes() ? text(r) : null);
+                }
+            }
+
+            assertEquals(offsets.size(), values.size());
+            assertEquals(offsets.size(), fmtValues.size());
+            assertEquals(offsets.size(), formatStrings.size());
+            for (int i = 0; i < offsets.size(); i++) {
+                if (types.get(i).length() == 0) {
+                    continue;
+                }
+                cells.put(
+                    start + offsets.get(i),
+                    describe(
+                        types.get(i), values.get(i), fmtValues.get(i),
+                        formatStrings.get(i)));
+            }
+        }
+        return cells;
+    }
+
+    private static String describe(
+        String type,
+        String value,
+        String fmtValue,
+        String formatString)
+    {
+        return type + ":" + value + "|" + fmtValue + "|" + formatString;
+    }
+
+    private static String localName(Node node) {
+        final String name = node.getNodeName();
+        return name.substring(name.indexOf(':') + 1);
+    }
+
+    /**
+     * Returns the child elements of an element with a given local name, or
+     * all child elements if the name is null.
+     */
+    private static List<Element> children(Element element, String name) {
+        final List<Element> list = new ArrayList<Element>();
+        if (element == null) {
+            return list;
+        }
+        for (Node node = element.getFirstChild();
+             node != null;
+             node = node.getNextSibling())
+        {
+            if (node instanceof Element
+                && (name == null || localName(node).equals(name)))
+            {
+                list.add((Element) node);
+            }
+        }
+        return list;
+    }
+
+    private static Element child(Element element, String name) {
+        final List<Element> list = children(element, name);
+        assertTrue(list.size() <= 1);
+        return list.isEmpty() ? null : list.get(0);
+    }
+
+    private static String text(Element element) {
+        return element == null ? null : element.getTextContent();
+    }
+}
+
+// End XmlaCompactCellSetTest.java
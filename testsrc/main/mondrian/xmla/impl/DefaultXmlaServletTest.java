@@ -0,0 +1,299 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.xmla.impl;
+
+import mondrian.olap.Util;
+import mondrian.rolap.RolapConnectionProperties;
+import mondrian.test.FoodMartTestCase;
+import mondrian.tui.*;
+import mondrian.xmla.*;
+
+import org.w3c.dom.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import javax.servlet.Servlet;
+
+/**
+ * Unit test for {@link DefaultXmlaServlet}.
+ */
+public class DefaultXmlaServletTest extends FoodMartTestCase {
+    public DefaultXmlaServletTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Tests negotiation of the content encoding of a compressed response.
+     */
+    public void testChooseContentEncoding() {
+        assertNull(DefaultXmlaServlet.chooseContentEncoding(null));
+        assertNull(DefaultXmlaServlet.chooseContentEncoding(""));
+        assertNull(DefaultXmlaServlet.chooseContentEncoding("identity"));
+        assertEquals(
+            "gzip", DefaultXmlaServlet.chooseContentEncoding("gzip"));
+        assertEquals(
+            "gzip",
+            DefaultXmlaServlet.chooseContentEncoding("deflate, GZIP"));
+        assertEquals(
+            "deflate",
+            DefaultXmlaServlet.chooseContentEncoding("gzip;q=0, deflate"));
+        assertEquals(
+            "deflate",
+            DefaultXmlaServlet.chooseContentEncoding(
+                "deflate; q=0.5, identity"));
+        assertNull(
+            DefaultXmlaServlet.chooseContentEncoding(
+                "gzip;q=0.0, deflate;q=0"));
+        assertNull(DefaultXmlaServlet.chooseContentEncoding("gzip;q=x"));
+        assertEquals(
+            "gzip", DefaultXmlaServlet.chooseContentEncoding("*"));
+        assertEquals(
+            "deflate",
+            DefaultXmlaServlet.chooseContentEncoding("*, gzip;q=0"));
+        assertEquals(
+            "gzip",
+            DefaultXmlaServlet.chooseContentEncoding("*;q=0, gzip"));
+        assertNull(
+            DefaultXmlaServlet.chooseContentEncoding(
+                "*, gzip;q=0, deflate;q=0"));
+    }
+
+    /**
+     * Tests that if the servlet is configured to compress responses and the
+     * client accepts gzip, the response is gzip-encoded, and decompresses
+     * to the response that an uncompressed servlet would send.
+     */
+    public void testCompressResponse() throws Exception {
+        final MockHttpServletResponse plain =
+            execute("gzip", DefaultXmlaServlet.COMPRESS_RESPONSE, "false");
+        assertNull(plain.getHeader("Content-Encoding"));
+
+        final MockHttpServletResponse compressed =
+            execute("gzip", DefaultXmlaServlet.COMPRESS_RESPONSE, "true");
+        assertEquals("gzip", compressed.getHeader("Content-Encoding"));
+        final byte[] bytes =
+            readFully(
+                new GZIPInputStream(
+                    new ByteArrayInputStream(compressed.toByteArray())));
+        assertEquals(bodyString(plain), new String(bytes, "UTF-8"));
+
+        // Client does not accept a compressed response.
+        final MockHttpServletResponse identity =
+            execute("identity", DefaultXmlaServlet.COMPRESS_RESPONSE, "true");
+        assertNull(identity.getHeader("Content-Encoding"));
+        assertEquals(bodyString(plain), bodyString(identity));
+    }
+
+    /**
+     * Tests that a streamed response, large enough to be sent before the
+     * query has finished, is the same as a buffered response.
+     */
+    public void testStreamResponse() throws Exception {
+        final MockHttpServletResponse buffered =
+            execute(null, DefaultXmlaServlet.STREAM_RESPONSE, "false");
+        final MockHttpServletResponse streamed =
+            execute(null, DefaultXmlaServlet.STREAM_RESPONSE, "true");
+        assertTrue(buffered.toByteArray().length > 64 * 1024);
+        assertEquals(
+            buffered.getHeader("Content-Type"),
+            streamed.getHeader("Content-Type"));
+        assertEquals(bodyString(buffered), bodyString(streamed));
+    }
+
+    /**
+     * Tests that if a streamed response fails before any of it has been
+     * sent, the client receives just a SOAP fault.
+     */
+    public void testStreamResponseEarlyError() throws Exception {
+        final Element body = executeFailing(10);
+        final List<Element> elements = childElements(body);
+        assertEquals(1, elements.size());
+        assertFault(elements.get(0));
+    }
+
+    /**
+     * Tests that if a streamed response fails after some of it has been
+     * sent, the response is still well-formed XML, and ends with a SOAP
+     * fault.
+     */
+    public void testStreamResponseLateError() throws Exception {
+        final Element body = executeFailing(10000);
+        final List<Element> elements = childElements(body);
+        assertEquals(2, elements.size());
+        assertEquals("ExecuteResponse", elements.get(0).getNodeName());
+        assertEquals(
+            10000, elements.get(0).getElementsByTagName("row").getLength());
+        assertFault(elements.get(1));
+    }
+
+    /**
+     * Executes a request with a streaming servlet whose handler writes a
+     * given number of rows and then fails.
+     *
+     * @param rowCount Number of rows to write before failing
+     * @return Body element of the response
+     */
+    private Element executeFailing(final int rowCount) throws Exception {
+        final MondrianXmlaServlet servlet =
+            new MondrianXmlaServlet() {
+                protected XmlaHandler getXmlaHandler() {
+                    return new XmlaHandler(null, "cxmla") {
+                        public void process(
+                            XmlaRequest request,
+                            XmlaResponse response)
+                        {
+                            final SaxWriter writer = response.getWriter();
+                            writer.startDocument();
+                            writer.startElement(
+                                "ExecuteResponse",
+                                "xmlns", XmlaConstants.NS_XMLA);
+                            writer.startElement("return");
+                            writer.startSequence("rows", "row");
+                            for (int i = 0; i < rowCount; i++) {
+                                writer.textElement("row", i);
+                            }
+                            throw new RuntimeException("failed after rows");
+                        }
+                    };
+                }
+            };
+        final MockHttpServletResponse response =
+            execute(servlet, null, DefaultXmlaServlet.STREAM_RESPONSE, "true");
+        final Document doc = XmlUtil.parse(response.toByteArray());
+        final NodeList bodies =
+            doc.getElementsByTagName(XmlaConstants.SOAP_PREFIX + ":Body");
+        assertEquals(bodyString(response), 1, bodies.getLength());
+        return (Element) bodies.item(0);
+    }
+
+    private static void assertFault(Element fault) {
+        assertEquals(XmlaConstants.SOAP_PREFIX + ":Fault", fault.getNodeName());
+        final NodeList codes = fault.getElementsByTagName("code");
+        assertEquals(1, codes.getLength());
+        assertEquals(
+            XmlaConstants.HSB_PROCESS_CODE, codes.item(0).getTextContent());
+    }
+
+    private static List<Element> childElements(Element element) {
+        final List<Element> list = new ArrayList<Element>();
+        for (Node node = element.getFirstChild();
+             node != null;
+             node = node.getNextSibling())
+        {
+            if (node instanceof Element) {
+                list.add((Element) node);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Executes a query using a new servlet.
+     *
+     * @param acceptEncoding Value of the request's "Accept-Encoding"
+     *   header, or null
+     * @param initParams Name/value pairs of servlet init parameters
+     * @return Response
+     */
+    private MockHttpServletResponse execute(
+        String acceptEncoding,
+        String... initParams)
+        throws Exception
+    {
+        return execute(new MondrianXmlaServlet(), acceptEncoding, initParams);
+    }
+
+    /**
+     * Initializes a servlet, executes a query, and destroys the servlet.
+     *
+     * @param servlet Servlet
+     * @param acceptEncoding Value of the request's "Accept-Encoding"
+     *   header, or null
+     * @param initParams Name/value pairs of servlet init parameters
+     * @return Response
+     */
+    private MockHttpServletResponse execute(
+        Servlet servlet,
+        String acceptEncoding,
+        String... initParams)
+        throws Exception
+    {
+        final String connectString = getTestContext().getConnectString();
+        final String catalog =
+            Util.parseConnectString(connectString).get(
+                RolapConnectionProperties.Catalog.name());
+        final Map<String, String> initParamMap =
+            new HashMap<String, String>();
+        for (int i = 0; i < initParams.length; i += 2) {
+            initParamMap.put(initParams[i], initParams[i + 1]);
+        }
+        XmlaSupport.makeServlet(
+            servlet,
+            connectString,
+            Collections.singletonMap("FoodMart", catalog),
+            initParamMap);
+        try {
+            final MockHttpServletRequest request =
+                new MockHttpServletRequest(
+                    EXECUTE_REQUEST.getBytes("UTF-8"));
+            request.setMethod("POST");
+            request.setContentType("text/xml");
+            if (acceptEncoding != null) {
+                request.setHeader("Accept-Encoding", acceptEncoding);
+            }
+            final MockHttpServletResponse response =
+                new MockHttpServletResponse();
+            response.setCharacterEncoding("UTF-8");
+            servlet.service(request, response);
+            return response;
+        } finally {
+            servlet.destroy();
+        }
+    }
+
+    private static String bodyString(MockHttpServletResponse response)
+        throws IOException
+    {
+        return new String(response.toByteArray(), "UTF-8");
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buf = new byte[4096];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            out.write(buf, 0, n);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    private static final String EXECUTE_REQUEST =
+        "<SOAP-ENV:Envelope"
+        + " xmlns:SOAP-ENV=\"http://schemas.xmlsoap.org/soap/envelope/\">\n"
+        + "<SOAP-ENV:Body>\n"
+        + "<Execute xmlns=\"urn:schemas-microsoft-com:xml-analysis\">\n"
+        + "<Command><Statement>"
+        + "select [Product].[Product Name].Members on 0 from [Sales]"
+        + "</Statement></Command>\n"
+        + "<Properties><PropertyList>\n"
+        + "<DataSourceInfo>" + XmlaSupport.DATASOURCE_INFO
+        + "</DataSourceInfo>\n"
+        + "<Catalog>" + XmlaSupport.CATALOG_NAME + "</Catalog>\n"
+        + "<Format>Multidimensional</Format>\n"
+        + "<AxisFormat>TupleFormat</AxisFormat>\n"
+        + "</PropertyList></Properties>\n"
+        + "</Execute>\n"
+        + "</SOAP-ENV:Body>\n"
+        + "</SOAP-ENV:Envelope>";
+}
+
+// End DefaultXmlaServletTest.java
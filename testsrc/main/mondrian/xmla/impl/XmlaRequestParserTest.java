@@ -0,0 +1,160 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2012-2012 Pentaho and others
+// All Rights Reserved.
+*/
+package mondrian.xmla.impl;
+
+import mondrian.xmla.*;
+
+import junit.framework.TestCase;
+
+import org.olap4j.metadata.XmlaConstants.Method;
+
+import org.w3c.dom.Element;
+import org.xml.sax.SAXException;
+
+import java.io.ByteArrayInputStream;
+
+/**
+ * Unit test for {@link XmlaRequestParser}.
+ *
+ * <p>Checks that a request parsed by SAX is the same as a request created
+ * from a DOM tree.</p>
+ */
+public class XmlaRequestParserTest extends TestCase {
+    private static final String ENVELOPE_START =
+        "<SOAP-ENV:Envelope"
+        + " xmlns:SOAP-ENV=\"http://schemas.xmlsoap.org/soap/envelope/\">\n";
+
+    private static final String ENVELOPE_END =
+        "</SOAP-ENV:Envelope>";
+
+    public XmlaRequestParserTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Tests a Discover request with a session header.
+     */
+    public void testDiscover() throws Exception {
+        final String method =
+            "<Discover xmlns=\"urn:schemas-microsoft-com:xml-analysis\">\n"
+            + "<RequestType>MDSCHEMA_CUBES</RequestType>\n"
+            + "<Restrictions><RestrictionList>\n"
+            + "<CUBE_NAME>Sales</CUBE_NAME>\n"
+            + "<CUBE_NAME>Warehouse</CUBE_NAME>\n"
+            + "</RestrictionList></Restrictions>\n"
+            + "<Properties><PropertyList>\n"
+            + "<DataSourceInfo>FoodMart</DataSourceInfo>\n"
+            + "<Format>Tabular</Format>\n"
+            + "</PropertyList></Properties>\n"
+            + "</Discover>";
+        final XmlaRequestParser.Request parsedRequest =
+            parse(
+                ENVELOPE_START
+                + "<SOAP-ENV:Header>\n"
+                + "<Session xmlns=\"urn:schemas-microsoft-com:xml-analysis\""
+                + " mustUnderstand=\"1\" SessionId=\"abc\"/>\n"
+                + "</SOAP-ENV:Header>\n"
+                + "<SOAP-ENV:Body>" + method + "</SOAP-ENV:Body>\n"
+                + ENVELOPE_END);
+        final Element session =
+            XmlaUtil.filterChildElements(
+                parsedRequest.getHeader(), XmlaConstants.NS_XMLA, "Session")[0];
+        assertEquals("abc", session.getAttribute("SessionId"));
+        assertEquals(
+            1,
+            XmlaUtil.filterChildElements(
+                parsedRequest.getBody(), XmlaConstants.NS_XMLA, "Discover")
+                .length);
+
+        final XmlaRequest request =
+            new DefaultXmlaRequest(parsedRequest, null, null, null, null);
+        final XmlaRequest domRequest =
+            new DefaultXmlaRequest(
+                XmlaUtil.text2Element(method), null, null, null, null);
+        assertEquals(Method.DISCOVER, request.getMethod());
+        assertEquals("MDSCHEMA_CUBES", request.getRequestType());
+        assertEquals(domRequest.getProperties(), request.getProperties());
+        assertEquals(domRequest.getRestrictions(), request.getRestrictions());
+        assertEquals("Tabular", request.getProperties().get("Format"));
+    }
+
+    /**
+     * Tests an Execute request.
+     */
+    public void testExecute() throws Exception {
+        final String method =
+            "<Execute xmlns=\"urn:schemas-microsoft-com:xml-analysis\">\n"
+            + "<Command><Statement>DRILLTHROUGH select\r\n"
+            + "from [Sales]</Statement></Command>\n"
+            + "<Properties><PropertyList>\n"
+            + "<Catalog>FoodMart</Catalog>\n"
+            + "</PropertyList></Properties>\n"
+            + "</Execute>";
+        final XmlaRequest request =
+            new DefaultXmlaRequest(
+                parse(
+                    ENVELOPE_START
+                    + "<SOAP-ENV:Body>" + method + "</SOAP-ENV:Body>\n"
+                    + ENVELOPE_END),
+                null, null, null, null);
+        final XmlaRequest domRequest =
+            new DefaultXmlaRequest(
+                XmlaUtil.text2Element(method), null, null, null, null);
+        assertEquals(Method.EXECUTE, request.getMethod());
+        assertEquals(
+            "DRILLTHROUGH select\nfrom [Sales]", request.getStatement());
+        assertEquals(domRequest.getStatement(), request.getStatement());
+        assertTrue(request.isDrillThrough());
+        assertEquals(domRequest.getProperties(), request.getProperties());
+    }
+
+    /**
+     * Tests that invalid envelopes and requests are rejected.
+     */
+    public void testInvalid() throws Exception {
+        try {
+            parse("<Envelope/>");
+            fail("expected error");
+        } catch (SAXException e) {
+            assertTrue(e.getMessage().contains("Envelope"));
+        }
+        try {
+            parse(ENVELOPE_START + ENVELOPE_END);
+            fail("expected error");
+        } catch (SAXException e) {
+            assertTrue(e.getMessage().contains("Body"));
+        }
+        final XmlaRequestParser.Request parsedRequest =
+            parse(
+                ENVELOPE_START
+                + "<SOAP-ENV:Body>"
+                + "<Execute xmlns=\"urn:schemas-microsoft-com:xml-analysis\">"
+                + "<Properties/>"
+                + "</Execute>"
+                + "</SOAP-ENV:Body>\n"
+                + ENVELOPE_END);
+        try {
+            new DefaultXmlaRequest(parsedRequest, null, null, null, null);
+            fail("expected error");
+        } catch (XmlaException e) {
+            assertEquals(
+                XmlaConstants.HSB_BAD_COMMAND_CODE, e.getCode());
+        }
+    }
+
+    private static XmlaRequestParser.Request parse(String s)
+        throws Exception
+    {
+        return new XmlaRequestParser().parse(
+            new ByteArrayInputStream(s.getBytes("UTF-8")));
+    }
+}
+
+// End XmlaRequestParserTest.java